@@ -0,0 +1,87 @@
+package jp.co.axa.apidemo.jmh;
+
+import jp.co.axa.apidemo.entities.Employee;
+import org.ehcache.Cache;
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of sizing the employee heap cache by bytes rather than by entry count, as ehcache.xml does.
+ * A cache sized by bytes measures every value it stores by walking its object graph. On JDK 9 and later,
+ * that needs the --add-opens options below, which is why ehcache.xml sizes by entry count
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-opens=java.base/java.lang=ALL-UNNAMED",
+                                  "--add-opens=java.base/java.util=ALL-UNNAMED"})
+public class CacheSizingBenchmark {
+
+    private static final int KEYS = 10000;
+
+    @Param({"entries", "bytes"})
+    private String sizing;
+
+    private CacheManager cacheManager;
+
+    private Cache<Long, Employee> cache;
+
+    private Employee employee;
+
+    @Setup
+    public void setUp() {
+        ResourcePoolsBuilder resources = "bytes".equals(sizing)
+                ? ResourcePoolsBuilder.newResourcePoolsBuilder().heap(64, MemoryUnit.MB)
+                : ResourcePoolsBuilder.heap(50000);
+        cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+                .withCache("employeeCache", CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                        Long.class, Employee.class, resources))
+                .build(true);
+        cache = cacheManager.getCache("employeeCache", Long.class, Employee.class);
+
+        employee = new Employee();
+        employee.setId(1L);
+        employee.setName("Employee 1");
+        employee.setSalary(30000);
+        employee.setDepartment("Department 1");
+        employee.setVersion(0L);
+        for (long key = 0; key < KEYS; key++) {
+            cache.put(key, employee);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cacheManager.close();
+    }
+
+    @Benchmark
+    public void put() {
+        cache.put(ThreadLocalRandom.current().nextLong(KEYS), employee);
+    }
+
+    @Benchmark
+    public Employee get() {
+        return cache.get(ThreadLocalRandom.current().nextLong(KEYS));
+    }
+}
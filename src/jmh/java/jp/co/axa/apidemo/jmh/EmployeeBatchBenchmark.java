@@ -0,0 +1,82 @@
+package jp.co.axa.apidemo.jmh;
+
+import jp.co.axa.apidemo.ApiDemoApplication;
+import jp.co.axa.apidemo.TestConfigurationExcludeFilter;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.BatchItemResult;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static jp.co.axa.apidemo.jmh.EmployeeFixtures.newEmployee;
+
+/**
+ * Compares the time per inserted row of the single-item save path against the batch save path,
+ * inserting the same number of employees per invocation. Rows are kept, so the table grows during the run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeBatchBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeService employeeService;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ApiDemoApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN")
+                .initializers(TestConfigurationExcludeFilter.initializer())
+                .run();
+        employeeService = context.getBean(EmployeeService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insertOneByOne(Blackhole blackhole) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            blackhole.consume(employeeService.saveEmployee(newEmployee(next++)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<BatchItemResult> insertInBatch() {
+        List<Employee> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(newEmployee(next++));
+        }
+        return employeeService.saveEmployees(batch);
+    }
+}
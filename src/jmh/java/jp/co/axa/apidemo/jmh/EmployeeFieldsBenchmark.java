@@ -0,0 +1,99 @@
+package jp.co.axa.apidemo.jmh;
+
+import jp.co.axa.apidemo.ApiDemoApplication;
+import jp.co.axa.apidemo.TestConfigurationExcludeFilter;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static jp.co.axa.apidemo.jmh.EmployeeFixtures.newEmployee;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Compares list, search and export requests returning full employees against the same requests returning only
+ * id and name, against H2 seeded with 20k employees. Requests go through MockMvc, so the whole request runs on the
+ * benchmark thread: run with -prof gc to compare allocations as well. Each benchmark returns the response size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeFieldsBenchmark {
+
+    private static final int ROWS = 20000;
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"all", "id,name"})
+    private String fields;
+
+    private ConfigurableApplicationContext context;
+
+    private MockMvc mockMvc;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ApiDemoApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN")
+                .initializers(TestConfigurationExcludeFilter.initializer())
+                .run();
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+
+        EmployeeService employeeService = context.getBean(EmployeeService.class);
+        for (int i = 0; i < ROWS; i += BATCH_SIZE) {
+            List<Employee> batch = new ArrayList<>(BATCH_SIZE);
+            for (int j = i; j < i + BATCH_SIZE; j++) {
+                batch.add(newEmployee(j));
+            }
+            employeeService.saveEmployees(batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int listPage() throws Exception {
+        return perform("/api/v1/employees?limit=1000");
+    }
+
+    @Benchmark
+    public int searchPage() throws Exception {
+        return perform("/api/v1/employees/search?minSalary=30000&limit=1000");
+    }
+
+    @Benchmark
+    public int exportAll() throws Exception {
+        return perform("/api/v1/employees/export");
+    }
+
+    private int perform(String url) throws Exception {
+        if (!"all".equals(fields)) url += (url.contains("?") ? "&" : "?") + "fields=" + fields;
+        return mockMvc.perform(get(url)).andReturn().getResponse().getContentAsByteArray().length;
+    }
+}
@@ -0,0 +1,35 @@
+package jp.co.axa.apidemo.jmh;
+
+import jp.co.axa.apidemo.entities.Employee;
+
+/**
+ * Employees the benchmarks save or serialize. Names and salaries vary with i, and departments cycle through 20
+ */
+final class EmployeeFixtures {
+
+    private EmployeeFixtures() {
+    }
+
+    /**
+     * @param i
+     * @return new employee without an ID, as given to be saved
+     */
+    static Employee newEmployee(int i) {
+        Employee employee = new Employee();
+        employee.setName("Employee " + i);
+        employee.setSalary(30000 + i % 50000);
+        employee.setDepartment("Department " + i % 20);
+        return employee;
+    }
+
+    /**
+     * @param i
+     * @return employee with ID i and version 0, as read back once saved
+     */
+    static Employee savedEmployee(int i) {
+        Employee employee = newEmployee(i);
+        employee.setId((long) i);
+        employee.setVersion(0L);
+        return employee;
+    }
+}
@@ -0,0 +1,73 @@
+package jp.co.axa.apidemo.jmh;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.entities.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static jp.co.axa.apidemo.jmh.EmployeeFixtures.savedEmployee;
+
+/**
+ * Measures Jackson serialization of one employee and of lists of employees,
+ * with an ObjectMapper configured as Spring Boot configures the application's one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    private Employee employee;
+
+    @State(Scope.Benchmark)
+    public static class EmployeeList {
+
+        @Param({"100", "1000"})
+        private int listSize;
+
+        private List<Employee> employees;
+
+        @Setup
+        public void setUp() {
+            employees = new ArrayList<>(listSize);
+            for (int i = 0; i < listSize; i++) {
+                employees.add(savedEmployee(i));
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        employee = savedEmployee(1);
+    }
+
+    @Benchmark
+    public byte[] serializeEmployee() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(employee);
+    }
+
+    @Benchmark
+    public byte[] serializeList(EmployeeList list) throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(list.employees);
+    }
+}
@@ -0,0 +1,120 @@
+package jp.co.axa.apidemo.jmh;
+
+import jp.co.axa.apidemo.ApiDemoApplication;
+import jp.co.axa.apidemo.TestConfigurationExcludeFilter;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.BatchItemResult;
+import jp.co.axa.apidemo.message.EmployeePage;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static jp.co.axa.apidemo.jmh.EmployeeFixtures.newEmployee;
+
+/**
+ * Measures EmployeeService reads against the embedded H2 database, seeded with the given number of employees:
+ * getEmployee() served from employeeCache and from the database, and retrieveEmployees() pages.
+ * The application runs with the same cache and database configuration as in production, on a random port
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeServiceBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000", "100000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+
+    private EmployeeService employeeService;
+
+    private Cache employeeCache;
+
+    private long firstId;
+
+    private long cachedId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ApiDemoApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN")
+                .initializers(TestConfigurationExcludeFilter.initializer())
+                .run();
+        employeeService = context.getBean(EmployeeService.class);
+        employeeCache = context.getBean(CacheManager.class).getCache("employeeCache");
+
+        for (int i = 0; i < rows; i += BATCH_SIZE) {
+            List<Employee> batch = new ArrayList<>(BATCH_SIZE);
+            for (int j = i; j < Math.min(rows, i + BATCH_SIZE); j++) {
+                batch.add(newEmployee(j));
+            }
+            List<BatchItemResult> results = employeeService.saveEmployees(batch);
+            if (i == 0) firstId = results.get(0).getId();
+        }
+        // saving puts every employee in cache. Start from an empty cache, holding only the employee read on cache hits
+        employeeCache.clear();
+        cachedId = firstId;
+        employeeService.getEmployee(cachedId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Employee getEmployeeCacheHit() {
+        return employeeService.getEmployee(cachedId);
+    }
+
+    /**
+     * Evicts a random employee, then gets them, so that they are read from the database and put back in cache
+     */
+    @Benchmark
+    public Employee getEmployeeCacheMiss() {
+        long id = randomId();
+        employeeCache.evict(id);
+        return employeeService.getEmployee(id);
+    }
+
+    @Benchmark
+    public EmployeePage retrieveEmployeesFirstPage() {
+        return employeeService.retrieveEmployees(null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public EmployeePage retrieveEmployeesRandomPage() {
+        return employeeService.retrieveEmployees(randomId(), PAGE_SIZE);
+    }
+
+    private long randomId() {
+        return firstId + ThreadLocalRandom.current().nextInt(rows);
+    }
+}
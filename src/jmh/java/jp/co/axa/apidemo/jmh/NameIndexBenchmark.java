@@ -0,0 +1,101 @@
+package jp.co.axa.apidemo.jmh;
+
+import jp.co.axa.apidemo.index.IndexedEmployee;
+import jp.co.axa.apidemo.index.NameIndex;
+import jp.co.axa.apidemo.message.NameSuggestion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures type-ahead queries on the name index at a million employees, sampled so that JMH reports percentiles,
+ * the cost of keeping it up to date, and the time to load it in bulk. Queries are prefixes of given names,
+ * family names and surrogate numbers, as if typed one character at a time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NameIndexBenchmark {
+
+    private static final int EMPLOYEES = 1_000_000;
+
+    private static final int QUERIES = 20000;
+
+    private static final String[] GIVEN_NAMES = {"Taro", "Hanako", "Ken", "Yui", "Haruto", "Sakura", "Ren", "Aoi",
+            "Sota", "Mei", "Yuto", "Rin", "Kaito", "Hina", "John", "Mary", "David", "Sarah", "Michael", "Emma"};
+
+    private static final String[] FAMILY_NAMES = {"Sato", "Suzuki", "Takahashi", "Tanaka", "Watanabe", "Ito",
+            "Yamamoto", "Nakamura", "Kobayashi", "Kato", "Yoshida", "Yamada", "Sasaki", "Yamaguchi", "Matsumoto",
+            "Smith", "Johnson", "Williams", "Brown", "Jones"};
+
+    private List<IndexedEmployee> employees;
+
+    private NameIndex index;
+
+    private String[] queries;
+
+    private long nextId = EMPLOYEES + 1L;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        employees = new ArrayList<>(EMPLOYEES);
+        for (long id = 1; id <= EMPLOYEES; id++) {
+            employees.add(new IndexedEmployee(id, randomName(random), "Sales", 100, 0L));
+        }
+        index = new NameIndex();
+        index.load(employees);
+
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String name = employees.get(random.nextInt(EMPLOYEES)).getName();
+            int from = random.nextBoolean() ? 0 : name.indexOf(' ') + 1;
+            queries[i] = name.substring(from, Math.min(name.length(), from + 1 + random.nextInt(8)));
+        }
+    }
+
+    @Benchmark
+    public List<NameSuggestion> suggest() {
+        return index.suggest(queries[ThreadLocalRandom.current().nextInt(QUERIES)], 10);
+    }
+
+    /**
+     * Adds a new employee and deletes them again, so the index stays the same size
+     */
+    @Benchmark
+    public void insertAndDelete() {
+        IndexedEmployee added = new IndexedEmployee(nextId++, randomName(ThreadLocalRandom.current()), "Sales", 100, 0L);
+        index.update(null, added);
+        index.update(added, null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public NameIndex load() {
+        NameIndex loaded = new NameIndex();
+        loaded.load(employees);
+        return loaded;
+    }
+
+    private static String randomName(Random random) {
+        return GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)] + " "
+                + FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)] + random.nextInt(10000);
+    }
+}
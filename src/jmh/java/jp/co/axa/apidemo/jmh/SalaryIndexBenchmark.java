@@ -0,0 +1,94 @@
+package jp.co.axa.apidemo.jmh;
+
+import jp.co.axa.apidemo.index.IndexedEmployee;
+import jp.co.axa.apidemo.index.SalaryIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures top earner and percentile queries on the salary index at a million employees,
+ * the cost of keeping it up to date, and the time to load it one employee at a time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SalaryIndexBenchmark {
+
+    private static final int EMPLOYEES = 1_000_000;
+
+    private static final int DEPARTMENTS = 20;
+
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private SalaryIndex index;
+
+    private long nextId = EMPLOYEES + 1L;
+
+    @Setup
+    public void setUp() {
+        index = load(new Random(42));
+    }
+
+    @Benchmark
+    public long[] topEarners() {
+        return index.topEarners(null, 100);
+    }
+
+    @Benchmark
+    public int[] percentiles() {
+        return index.percentiles(null, PERCENTILES);
+    }
+
+    @Benchmark
+    public int[] departmentPercentiles() {
+        return index.percentiles(randomDepartment(ThreadLocalRandom.current()), PERCENTILES);
+    }
+
+    /**
+     * Adds a new employee and deletes them again, so the index stays the same size
+     */
+    @Benchmark
+    public void insertAndDelete() {
+        IndexedEmployee added = employee(nextId++, ThreadLocalRandom.current());
+        index.update(null, added);
+        index.update(added, null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SalaryIndex load() {
+        return load(ThreadLocalRandom.current());
+    }
+
+    private static SalaryIndex load(Random random) {
+        SalaryIndex loaded = new SalaryIndex();
+        for (long id = 1; id <= EMPLOYEES; id++) {
+            loaded.update(null, employee(id, random));
+        }
+        return loaded;
+    }
+
+    private static String randomDepartment(Random random) {
+        return "Department" + random.nextInt(DEPARTMENTS);
+    }
+
+    private static IndexedEmployee employee(long id, Random random) {
+        return new IndexedEmployee(id, "Name" + id, randomDepartment(random), 30000 + random.nextInt(170000), 0L);
+    }
+}
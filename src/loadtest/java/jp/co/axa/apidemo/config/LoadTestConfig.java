@@ -0,0 +1,32 @@
+package jp.co.axa.apidemo.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.loadtest.DatasetSeeder;
+import jp.co.axa.apidemo.loadtest.LoadDriver;
+import jp.co.axa.apidemo.loadtest.LoadTestProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * End-to-end load test, enabled with the loadtest profile. Seeds the database with synthetic employees at startup,
+ * then runs the load driver against this node, or against the node at loadtest.driver.target-url.
+ * See application-loadtest.properties for the settings
+ */
+@Configuration
+@Profile("loadtest")
+@EnableConfigurationProperties(LoadTestProperties.class)
+public class LoadTestConfig {
+
+    @Bean
+    public DatasetSeeder datasetSeeder(JdbcTemplate jdbcTemplate, LoadTestProperties properties) {
+        return new DatasetSeeder(jdbcTemplate, properties.getSeed());
+    }
+
+    @Bean
+    public LoadDriver loadDriver(LoadTestProperties properties, ObjectMapper objectMapper) {
+        return new LoadDriver(properties.getDriver(), objectMapper);
+    }
+}
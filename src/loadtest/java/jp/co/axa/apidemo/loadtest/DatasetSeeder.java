@@ -0,0 +1,91 @@
+package jp.co.axa.apidemo.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bulk-loads synthetic employees at startup, before the indexes are loaded and the load driver starts.
+ * Rows are inserted with batched JDBC rather than through EmployeeService, which is an order of magnitude faster
+ * for millions of rows and keeps them out of the caches. Names are drawn from common first and last names,
+ * departments have Zipf-distributed sizes, and salaries follow the configured distribution.
+ * The same random seed always produces the same dataset
+ */
+public class DatasetSeeder implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(DatasetSeeder.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    // the allocation size of the employee ID sequence, see Employee
+    private static final int ID_ALLOCATION_SIZE = 50;
+
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+            "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+            "Hiroshi", "Yuki", "Takeshi", "Aiko", "Kenji", "Haruka", "Satoshi", "Naomi", "Daisuke", "Emi",
+            "Wei", "Mei", "Arjun", "Priya", "Luca", "Sofia", "Mateo", "Camila", "Noah", "Emma"};
+
+    private static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Sato", "Suzuki", "Takahashi", "Tanaka", "Watanabe", "Ito", "Yamamoto", "Nakamura", "Kobayashi", "Kato",
+            "Wang", "Li", "Zhang", "Chen", "Kumar", "Singh", "Rossi", "Russo", "Muller", "Schmidt",
+            "Martin", "Bernard", "Dubois", "Silva", "Santos", "Kim", "Lee", "Park", "Nguyen", "Tran"};
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final LoadTestProperties.Seed settings;
+
+    public DatasetSeeder(JdbcTemplate jdbcTemplate, LoadTestProperties.Seed settings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = settings;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (settings.getEmployees() > 0) seed();
+    }
+
+    /**
+     * Inserts the configured number of employees after the ones already stored, then moves the ID sequence
+     * past them, so that employees saved afterwards through JPA do not reuse their IDs
+     */
+    public void seed() {
+        long start = System.currentTimeMillis();
+        Random random = new Random(settings.getRandomSeed());
+        ZipfGenerator departments = new ZipfGenerator(settings.getDepartments(), settings.getDepartmentSkew());
+        long firstId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(ID), 0) FROM EMPLOYEE", Long.class) + 1;
+
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < settings.getEmployees(); i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            batch.add(new Object[]{firstId + i, name, salary(random), "Department " + departments.next(random)});
+            if (batch.size() == BATCH_SIZE || i == settings.getEmployees() - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO EMPLOYEE (ID, EMPLOYEE_NAME, EMPLOYEE_SALARY, DEPARTMENT, VERSION) "
+                                         + "VALUES (?, ?, ?, ?, 0)", batch);
+                batch.clear();
+            }
+        }
+        // Hibernate hands out a block of IDs below each sequence value, so the sequence has to be a block past them
+        long lastId = firstId + settings.getEmployees() - 1;
+        jdbcTemplate.execute("ALTER SEQUENCE EMPLOYEE_SEQ RESTART WITH " + (lastId + 2 * ID_ALLOCATION_SIZE));
+        logger.info("Employees seeded - employees: " + settings.getEmployees()
+                + ", time: " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private int salary(Random random) {
+        int min = settings.getSalaryMin();
+        int max = settings.getSalaryMax();
+        if (settings.getSalaryDistribution() == LoadTestProperties.SalaryDistribution.UNIFORM) {
+            return min + random.nextInt(max - min + 1);
+        }
+        double salary = settings.getSalaryMedian() * Math.exp(settings.getSalarySigma() * random.nextGaussian());
+        return (int) Math.max(min, Math.min(max, Math.round(salary)));
+    }
+}
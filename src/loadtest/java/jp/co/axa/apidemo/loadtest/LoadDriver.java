@@ -0,0 +1,295 @@
+package jp.co.axa.apidemo.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a mix of EmployeeController operations to a node over HTTP, and logs the throughput and latency percentiles
+ * of each operation once done.
+ * In the closed model, each worker sends its next request as soon as the previous one is answered. In the open model,
+ * requests are scheduled at a fixed rate, and latency is measured from when a request was due rather than when it
+ * was sent, so that a slow server is not hidden by requests that were delayed waiting for it (coordinated omission).
+ * The IDs of the stored employees are read once at the start. Reads and updates pick them with a Zipf distribution,
+ * so that a few employees are hot, and deletes remove the least popular ones, up to half of them
+ */
+public class LoadDriver {
+    private static final Logger logger = LoggerFactory.getLogger(LoadDriver.class);
+
+    private static final int ID_PAGE_SIZE = 1000;
+
+    private static final int LIST_PAGE_SIZE = 100;
+
+    // highest latency recorded, in microseconds. Slower requests are recorded as this value
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final LoadTestProperties.Driver settings;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    // 404 responses, counted apart from errors: gets and updates can pick an employee that a delete just removed
+    private final Map<Operation, LongAdder> notFound = new EnumMap<>(Operation.class);
+
+    private RestTemplate restTemplate;
+
+    private String baseUrl;
+
+    // stored employee IDs, most popular first
+    private List<Long> ids;
+
+    private ZipfGenerator keys;
+
+    // deletes take IDs from the end of ids, moving this down
+    private AtomicInteger deletableEnd;
+
+    private Operation[] operations;
+
+    private int[] cumulativeWeights;
+
+    private volatile boolean stopped;
+
+    public LoadDriver(LoadTestProperties.Driver settings, ObjectMapper objectMapper) {
+        this.settings = settings;
+        this.objectMapper = objectMapper;
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(MAX_LATENCY_MICROS, 3));
+            errors.put(operation, new LongAdder());
+            notFound.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * Starts the run on its own thread once the application is ready, and stops the application after it
+     * if loadtest.driver.exit-when-done is set
+     * @param event
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(ApplicationReadyEvent event) {
+        if (!settings.isEnabled()) return;
+        ApplicationContext context = event.getApplicationContext();
+        String target = settings.getTargetUrl().isEmpty()
+                ? "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                : settings.getTargetUrl();
+        Thread thread = new Thread(() -> {
+            try {
+                run(target);
+            } catch (Exception e) {
+                logger.error("Load test failed", e);
+            }
+            if (settings.isExitWhenDone()) System.exit(SpringApplication.exit(context));
+        }, "load-driver");
+        thread.start();
+    }
+
+    /**
+     * Runs the warm-up then the measured period against the node, and logs the report
+     * @param target base URL of the node, without /api/v1
+     */
+    public void run(String target) throws InterruptedException {
+        int concurrency = settings.getConcurrency();
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setMaxConnTotal(concurrency).setMaxConnPerRoute(concurrency).build();
+        restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        restTemplate.setErrorHandler(new IgnoreErrors());
+        baseUrl = target + "/api/v1/employees";
+        try {
+            loadIds();
+            buildMix();
+            logger.info("Load test starting - target: " + target + ", model: " + settings.getModel()
+                    + ", concurrency: " + concurrency + ", employees: " + ids.size());
+
+            long start = System.nanoTime();
+            List<Thread> workers = new ArrayList<>(concurrency);
+            for (int w = 0; w < concurrency; w++) {
+                int worker = w;
+                Thread thread = new Thread(() -> work(worker, start), "load-worker-" + w);
+                thread.start();
+                workers.add(thread);
+            }
+
+            TimeUnit.SECONDS.sleep(settings.getWarmupSeconds());
+            // discard what was recorded during the warm-up
+            recorders.values().forEach(Recorder::getIntervalHistogram);
+            errors.values().forEach(LongAdder::reset);
+            notFound.values().forEach(LongAdder::reset);
+            long measureStart = System.nanoTime();
+
+            TimeUnit.SECONDS.sleep(settings.getDurationSeconds());
+            stopped = true;
+            for (Thread worker : workers) worker.join();
+            double seconds = (System.nanoTime() - measureStart) / 1e9;
+
+            Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+            recorders.forEach((operation, recorder) -> histograms.put(operation, recorder.getIntervalHistogram()));
+            logger.info(new LoadReport(settings, histograms, errors, notFound, seconds).format());
+        } finally {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close HTTP client", e);
+            }
+        }
+    }
+
+    private void work(int worker, long start) {
+        Random random = ThreadLocalRandom.current();
+        boolean open = settings.getModel() == LoadTestProperties.Model.OPEN;
+        // each worker sends every concurrency-th request of the schedule, so together they send rate requests a second
+        long interval = open ? TimeUnit.SECONDS.toNanos(settings.getConcurrency()) / settings.getRate() : 0;
+        long due = start + worker * interval / Math.max(1, settings.getConcurrency());
+        while (!stopped) {
+            long sent;
+            if (open) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                sent = due;
+                due += interval;
+            } else {
+                sent = System.nanoTime();
+            }
+            Operation operation = pickOperation(random);
+            try {
+                int status = send(operation, random);
+                if (status == 404) notFound.get(operation).increment();
+                else if (status >= 400) errors.get(operation).increment();
+            } catch (Exception e) {
+                errors.get(operation).increment();
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent);
+            recorders.get(operation).recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+        }
+    }
+
+    private int send(Operation operation, Random random) {
+        switch (operation) {
+            case GET:
+                return exchange(HttpMethod.GET, baseUrl + "/" + pickId(random), null);
+            case LIST:
+                return exchange(HttpMethod.GET, baseUrl + "?limit=" + LIST_PAGE_SIZE + "&after=" + pickId(random), null);
+            case UPDATE:
+                return exchange(HttpMethod.PUT, baseUrl + "/" + pickId(random), newEmployee(random));
+            case DELETE:
+                int index = deletableEnd.decrementAndGet();
+                // once half the employees are deleted, deletes are sent as creates
+                if (index >= ids.size() / 2) return exchange(HttpMethod.DELETE, baseUrl + "/" + ids.get(index), null);
+                return exchange(HttpMethod.POST, baseUrl, newEmployee(random));
+            case CREATE:
+            default:
+                return exchange(HttpMethod.POST, baseUrl, newEmployee(random));
+        }
+    }
+
+    private int exchange(HttpMethod method, String url, Object body) {
+        HttpHeaders headers = new HttpHeaders();
+        if (body != null) headers.setContentType(MediaType.APPLICATION_JSON);
+        return restTemplate.exchange(url, method, new HttpEntity<>(body, headers), byte[].class).getStatusCodeValue();
+    }
+
+    /**
+     * Reads the IDs of every stored employee, a page at a time, then shuffles them with a fixed seed
+     * so that the popular employees are spread over the whole ID range
+     */
+    private void loadIds() {
+        ids = new ArrayList<>();
+        String cursor = "";
+        while (true) {
+            JsonNode page = restTemplate.getForObject(baseUrl + "?fields=id&limit=" + ID_PAGE_SIZE + cursor, JsonNode.class);
+            if (page == null || !page.has("employees"))
+                throw new IllegalStateException("Unexpected response reading employee IDs: " + page);
+            page.get("employees").forEach(employee -> ids.add(employee.get("id").asLong()));
+            JsonNode next = page.get("nextCursor");
+            if (next == null || next.isNull()) break;
+            cursor = "&after=" + next.asLong();
+        }
+        if (ids.isEmpty()) throw new IllegalStateException("No employees to load test - set loadtest.seed.employees");
+        Collections.shuffle(ids, new Random(0));
+        keys = new ZipfGenerator(ids.size(), settings.getKeySkew());
+        deletableEnd = new AtomicInteger(ids.size());
+    }
+
+    private void buildMix() {
+        List<Map.Entry<Operation, Integer>> weights = new ArrayList<>(settings.getMix().entrySet());
+        weights.removeIf(e -> e.getValue() == null || e.getValue() <= 0);
+        if (weights.isEmpty()) throw new IllegalStateException("loadtest.driver.mix has no operation with a positive weight");
+        operations = new Operation[weights.size()];
+        cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        for (int i = 0; i < weights.size(); i++) {
+            total += weights.get(i).getValue();
+            operations[i] = weights.get(i).getKey();
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    private Operation pickOperation(Random random) {
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (cumulativeWeights[i] <= r) i++;
+        return operations[i];
+    }
+
+    private long pickId(Random random) {
+        return ids.get(keys.next(random) - 1);
+    }
+
+    private String newEmployee(Random random) {
+        Map<String, Object> employee = new LinkedHashMap<>();
+        employee.put("name", "Load Test " + random.nextInt(1_000_000));
+        employee.put("salary", 20_000 + random.nextInt(200_000));
+        employee.put("department", "Department " + (1 + random.nextInt(20)));
+        try {
+            return objectMapper.writeValueAsString(employee);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Lets every response through, so that error statuses are counted rather than thrown
+     */
+    private static class IgnoreErrors implements ResponseErrorHandler {
+        @Override
+        public boolean hasError(ClientHttpResponse response) {
+            return false;
+        }
+
+        @Override
+        public void handleError(ClientHttpResponse response) {
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package jp.co.axa.apidemo.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput, error counts and latency percentiles of a load test run, per operation and overall
+ */
+class LoadReport {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final String ROW_FORMAT = "%-8s %10s %10s %8s %8s %9s %9s %9s %9s %9s%n";
+
+    private final LoadTestProperties.Driver settings;
+
+    private final Map<Operation, Histogram> histograms;
+
+    private final Map<Operation, LongAdder> errors;
+
+    private final Map<Operation, LongAdder> notFound;
+
+    private final double seconds;
+
+    LoadReport(LoadTestProperties.Driver settings, Map<Operation, Histogram> histograms,
+               Map<Operation, LongAdder> errors, Map<Operation, LongAdder> notFound, double seconds) {
+        this.settings = settings;
+        this.histograms = histograms;
+        this.errors = errors;
+        this.notFound = notFound;
+        this.seconds = seconds;
+    }
+
+    /**
+     * @return report as a table, with latencies in milliseconds
+     */
+    String format() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Load test finished - model: %s, concurrency: %d%s, measured: %.1f s%n",
+                settings.getModel(), settings.getConcurrency(),
+                settings.getModel() == LoadTestProperties.Model.OPEN ? ", rate: " + settings.getRate() + "/s" : "",
+                seconds));
+        report.append(String.format(ROW_FORMAT, "op", "requests", "req/s", "errors", "404s",
+                                    "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+
+        Histogram all = new Histogram(3);
+        long allErrors = 0;
+        long allNotFound = 0;
+        for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.getTotalCount() == 0) continue;
+            long opErrors = errors.get(entry.getKey()).sum();
+            long opNotFound = notFound.get(entry.getKey()).sum();
+            report.append(row(entry.getKey().name().toLowerCase(), histogram, opErrors, opNotFound));
+            all.add(histogram);
+            allErrors += opErrors;
+            allNotFound += opNotFound;
+        }
+        report.append(row("all", all, allErrors, allNotFound));
+        return report.toString();
+    }
+
+    private String row(String name, Histogram histogram, long errorCount, long notFoundCount) {
+        Object[] values = new Object[5 + PERCENTILES.length + 1];
+        values[0] = name;
+        values[1] = String.valueOf(histogram.getTotalCount());
+        values[2] = String.format("%.1f", histogram.getTotalCount() / seconds);
+        values[3] = String.valueOf(errorCount);
+        values[4] = String.valueOf(notFoundCount);
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            values[5 + p] = millis(histogram.getValueAtPercentile(PERCENTILES[p]));
+        }
+        values[values.length - 1] = millis(histogram.getMaxValue());
+        return String.format(ROW_FORMAT, values);
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,76 @@
+package jp.co.axa.apidemo.loadtest;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings of the load test profile, under loadtest.seed and loadtest.driver
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "loadtest")
+public class LoadTestProperties {
+
+    private final Seed seed = new Seed();
+
+    private final Driver driver = new Driver();
+
+    public enum SalaryDistribution { UNIFORM, LOGNORMAL }
+
+    public enum Model {
+        // each worker sends its next request as soon as the previous one is answered
+        CLOSED,
+        // requests are sent at a fixed rate, whether or not earlier ones have been answered
+        OPEN
+    }
+
+    @Getter
+    @Setter
+    public static class Seed {
+        // number of employees inserted at startup. 0 inserts none
+        private int employees = 1_000_000;
+        private int departments = 20;
+        // Zipf exponent of department sizes: 0 gives every department the same size, higher values make a few large
+        private double departmentSkew = 1.0;
+        private SalaryDistribution salaryDistribution = SalaryDistribution.LOGNORMAL;
+        private int salaryMin = 20_000;
+        private int salaryMax = 300_000;
+        // lognormal distribution only
+        private int salaryMedian = 60_000;
+        private double salarySigma = 0.5;
+        private long randomSeed = 42;
+    }
+
+    @Getter
+    @Setter
+    public static class Driver {
+        private boolean enabled = true;
+        // base URL of the node under test, without /api/v1. Empty targets this application
+        private String targetUrl = "";
+        private Model model = Model.CLOSED;
+        // number of concurrent connections
+        private int concurrency = 32;
+        // requests per second, open model only
+        private int rate = 2000;
+        private int warmupSeconds = 10;
+        private int durationSeconds = 60;
+        // Zipf exponent of the employee IDs read and updated: 0 reads all employees equally often
+        private double keySkew = 0.99;
+        // relative weight of each operation
+        private Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        // stops the application once the report is logged
+        private boolean exitWhenDone = true;
+
+        public Driver() {
+            mix.put(Operation.GET, 80);
+            mix.put(Operation.LIST, 10);
+            mix.put(Operation.CREATE, 5);
+            mix.put(Operation.UPDATE, 4);
+            mix.put(Operation.DELETE, 1);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package jp.co.axa.apidemo.loadtest;
+
+/**
+ * EmployeeController operations sent by the load driver
+ */
+public enum Operation {
+    // GET /employees/{id}
+    GET,
+    // GET /employees, a page after a random ID
+    LIST,
+    // POST /employees
+    CREATE,
+    // PUT /employees/{id}
+    UPDATE,
+    // DELETE /employees/{id}
+    DELETE
+}
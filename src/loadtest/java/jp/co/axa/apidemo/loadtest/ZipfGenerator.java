@@ -0,0 +1,81 @@
+package jp.co.axa.apidemo.loadtest;
+
+import java.util.Random;
+
+/**
+ * Draws ranks from 1 to n following Zipf's law: rank k is drawn with probability proportional to 1 / k^exponent,
+ * so a few ranks are drawn most of the time. An exponent of 0 draws every rank equally often.
+ * Uses rejection-inversion sampling (Hörmann and Derflinger), which takes constant time and memory whatever n is,
+ * so that millions of keys need no table of probabilities.
+ * Safe for use by many threads, as long as each passes its own Random
+ */
+class ZipfGenerator {
+
+    private final int n;
+
+    private final double exponent;
+
+    private final double hIntegralX1;
+
+    private final double hIntegralN;
+
+    private final double s;
+
+    ZipfGenerator(int n, double exponent) {
+        if (n < 1) throw new IllegalArgumentException("n must be positive - n: " + n);
+        if (exponent < 0) throw new IllegalArgumentException("exponent must not be negative - exponent: " + exponent);
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    /**
+     * @param random
+     * @return rank between 1 and n, where 1 is the most likely
+     */
+    int next(Random random) {
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) k = 1;
+            else if (k > n) k = n;
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) return k;
+        }
+    }
+
+    /**
+     * Integral of h from 1 to x, shifted so that it is continuous at an exponent of 1
+     */
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return expm1Ratio((1 - exponent) * logX) * logX;
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = Math.max(-1, x * (1 - exponent));
+        return Math.exp(log1pRatio(t) * x);
+    }
+
+    /**
+     * log(1 + x) / x, with a series near 0 where the division loses precision
+     */
+    private static double log1pRatio(double x) {
+        if (Math.abs(x) > 1e-8) return Math.log1p(x) / x;
+        return 1 - x * (1.0 / 2 - x * (1.0 / 3 - x / 4));
+    }
+
+    /**
+     * (e^x - 1) / x, with a series near 0 where the division loses precision
+     */
+    private static double expm1Ratio(double x) {
+        if (Math.abs(x) > 1e-8) return Math.expm1(x) / x;
+        return 1 + x / 2 * (1 + x / 3 * (1 + x / 4));
+    }
+}
@@ -0,0 +1,63 @@
+package jp.co.axa.apidemo.loadtest;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+// altering the ID sequence commits the seeded rows, so they would be seen by other tests sharing the database
+@DirtiesContext
+public class DatasetSeederTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    /**
+     * Tests that seed() inserts the configured number of employees within the configured departments and salary range,
+     * and that employees saved afterwards get IDs after the seeded ones
+     */
+    @Test
+    public void shouldSeedEmployeesThenLeaveIdsForNewOnes() {
+        LoadTestProperties.Seed settings = new LoadTestProperties.Seed();
+        settings.setEmployees(2500);
+        settings.setDepartments(5);
+        settings.setSalaryMin(30000);
+        settings.setSalaryMax(90000);
+        new DatasetSeeder(jdbcTemplate, settings).seed();
+
+        List<Employee> employees = new ArrayList<>();
+        employeeRepository.findAll().forEach(employees::add);
+        assertThat(employees).hasSize(2500);
+        assertThat(employees).allSatisfy(e -> {
+            assertThat(e.getName()).isNotBlank();
+            assertThat(e.getSalary()).isBetween(30000, 90000);
+            assertThat(e.getDepartment()).isIn("Department 1", "Department 2", "Department 3", "Department 4",
+                                               "Department 5");
+            assertThat(e.getVersion()).isZero();
+        });
+        // department sizes are skewed, so the first department is the largest
+        long first = employees.stream().filter(e -> e.getDepartment().equals("Department 1")).count();
+        long last = employees.stream().filter(e -> e.getDepartment().equals("Department 5")).count();
+        assertThat(first).isGreaterThan(last * 2);
+
+        long maxSeededId = employees.stream().mapToLong(Employee::getId).max().getAsLong();
+        Employee created = new Employee();
+        created.setName("New Employee");
+        assertThat(employeeRepository.save(created).getId()).isGreaterThan(maxSeededId);
+    }
+}
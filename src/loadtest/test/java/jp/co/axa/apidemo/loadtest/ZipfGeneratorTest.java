@@ -0,0 +1,54 @@
+package jp.co.axa.apidemo.loadtest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class ZipfGeneratorTest {
+
+    private static final int SAMPLES = 200_000;
+
+    /**
+     * Tests that ranks are drawn with probability proportional to 1 / rank^exponent
+     */
+    @Test
+    public void shouldDrawRanksFollowingZipfsLaw() {
+        int n = 1000;
+        int[] counts = draw(new ZipfGenerator(n, 1.0), n);
+
+        double harmonic = 0;
+        for (int k = 1; k <= n; k++) harmonic += 1.0 / k;
+        for (int k = 1; k <= 3; k++) {
+            assertThat((double) counts[k] / SAMPLES).isCloseTo(1.0 / k / harmonic, within(0.005));
+        }
+        assertThat(counts[1]).isGreaterThan(counts[10] * 5);
+    }
+
+    /**
+     * Tests that an exponent of 0 draws every rank equally often, and that ranks stay between 1 and n
+     */
+    @Test
+    public void shouldDrawUniformlyWithExponentZero() {
+        int n = 10;
+        int[] counts = draw(new ZipfGenerator(n, 0), n);
+
+        assertThat(counts[0]).isZero();
+        for (int k = 1; k <= n; k++) {
+            assertThat((double) counts[k] / SAMPLES).isCloseTo(0.1, within(0.005));
+        }
+    }
+
+    private static int[] draw(ZipfGenerator generator, int n) {
+        Random random = new Random(1);
+        int[] counts = new int[n + 1];
+        for (int i = 0; i < SAMPLES; i++) {
+            int rank = generator.next(random);
+            assertThat(rank).isBetween(1, n);
+            counts[rank]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,97 @@
+package jp.co.axa.apidemo.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes many cache entries at once. Spring's Cache interface only works with one key at a time,
+ * so for JCache caches these go through the native cache's getAll and putAll,
+ * which take the store's locks once per call rather than once per key.
+ * Other caches fall back to one operation per key
+ */
+public final class BulkCacheOperations {
+
+    private BulkCacheOperations() {}
+
+    /**
+     * Gets the cached values for the given keys
+     * @param cache
+     * @param keys
+     * @param type
+     * @return values found in cache. Keys that are not cached, or whose value is not of the given type, are left out
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> getAll(Cache cache, Set<K> keys, Class<V> type) {
+        Map<K, V> values = new HashMap<>();
+        if (cache.getNativeCache() instanceof javax.cache.Cache) {
+            javax.cache.Cache<K, Object> nativeCache = (javax.cache.Cache<K, Object>) cache.getNativeCache();
+            nativeCache.getAll(keys).forEach((key, value) -> {
+                if (type.isInstance(value)) values.put(key, type.cast(value));
+            });
+        } else {
+            for (K key : keys) {
+                Cache.ValueWrapper wrapper = cache.get(key);
+                if (wrapper != null && type.isInstance(wrapper.get())) values.put(key, type.cast(wrapper.get()));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Stores all given entries in cache
+     * @param cache
+     * @param values
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> void putAll(Cache cache, Map<K, V> values) {
+        if (values.isEmpty()) return;
+        if (cache.getNativeCache() instanceof javax.cache.Cache) {
+            ((javax.cache.Cache<K, V>) cache.getNativeCache()).putAll(values);
+        } else {
+            values.forEach(cache::put);
+        }
+    }
+
+    /**
+     * Stores the given entries whose keys are not cached yet, leaving the values already cached as they are.
+     * Neither JCache nor Spring has a bulk form of this, so each entry is an atomic putIfAbsent of its own
+     * @param cache
+     * @param values
+     * @return number of entries stored
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> int putAllIfAbsent(Cache cache, Map<K, V> values) {
+        int stored = 0;
+        if (cache.getNativeCache() instanceof javax.cache.Cache) {
+            javax.cache.Cache<K, V> nativeCache = (javax.cache.Cache<K, V>) cache.getNativeCache();
+            for (Map.Entry<K, V> entry : values.entrySet()) {
+                if (nativeCache.putIfAbsent(entry.getKey(), entry.getValue())) stored++;
+            }
+        } else {
+            for (Map.Entry<K, V> entry : values.entrySet()) {
+                if (cache.putIfAbsent(entry.getKey(), entry.getValue()) == null) stored++;
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Removes all given keys from cache
+     * @param cache
+     * @param keys
+     */
+    @SuppressWarnings("unchecked")
+    public static <K> void evictAll(Cache cache, Collection<K> keys) {
+        if (keys.isEmpty()) return;
+        if (cache.getNativeCache() instanceof javax.cache.Cache) {
+            ((javax.cache.Cache<K, ?>) cache.getNativeCache()).removeAll(new HashSet<>(keys));
+        } else {
+            keys.forEach(cache::evict);
+        }
+    }
+}
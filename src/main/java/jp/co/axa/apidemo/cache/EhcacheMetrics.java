@@ -0,0 +1,99 @@
+package jp.co.axa.apidemo.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import org.ehcache.core.statistics.CacheStatistics;
+import org.ehcache.core.statistics.TierStatistics;
+
+/**
+ * Metrics of an Ehcache cache, read from Ehcache's own statistics: gets (hits and misses), puts, evictions,
+ * removals, expirations and the number of entries, plus the hits, misses, evictions, entries and bytes
+ * of each tier (heap, off-heap, disk), tagged with the tier.
+ * Micrometer's JCache binder reads the JSR-107 statistics MBeans instead, which have no entry count
+ */
+public class EhcacheMetrics extends CacheMeterBinder {
+
+    // names of the tiers in Ehcache's statistics, from the lowest tier, which holds every entry of the cache
+    private static final String[] TIERS = {"Disk", "OffHeap", "OnHeap"};
+
+    private final CacheStatistics statistics;
+
+    public EhcacheMetrics(Object cache, String cacheName, CacheStatistics statistics, Iterable<Tag> tags) {
+        super(cache, cacheName, tags);
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return number of entries in the lowest tier, as higher tiers only hold copies of some of its entries
+     */
+    @Override
+    protected Long size() {
+        for (String tier : TIERS) {
+            TierStatistics tierStatistics = statistics.getTierStatistics().get(tier);
+            if (tierStatistics != null) return tierStatistics.getMappings();
+        }
+        return null;
+    }
+
+    @Override
+    protected long hitCount() {
+        return statistics.getCacheHits();
+    }
+
+    @Override
+    protected Long missCount() {
+        return statistics.getCacheMisses();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        return statistics.getCacheEvictions();
+    }
+
+    @Override
+    protected long putCount() {
+        return statistics.getCachePuts();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("cache.removals", statistics, CacheStatistics::getCacheRemovals)
+                .tags(getTagsWithCacheName())
+                .description("The number of entries removed from the cache")
+                .register(registry);
+        FunctionCounter.builder("cache.expirations", statistics, CacheStatistics::getCacheExpirations)
+                .tags(getTagsWithCacheName())
+                .description("The number of entries that expired, which is what the TTL should be tuned against")
+                .register(registry);
+
+        statistics.getTierStatistics().forEach((name, tier) -> {
+            Tags tags = Tags.of(getTagsWithCacheName()).and("tier", name.toLowerCase());
+            FunctionCounter.builder("cache.tier.gets", tier, TierStatistics::getHits)
+                    .tags(tags).tag("result", "hit")
+                    .description("The number of gets answered by this tier")
+                    .register(registry);
+            FunctionCounter.builder("cache.tier.gets", tier, TierStatistics::getMisses)
+                    .tags(tags).tag("result", "miss")
+                    .description("The number of gets that this tier passed on to the tier below it")
+                    .register(registry);
+            FunctionCounter.builder("cache.tier.evictions", tier, TierStatistics::getEvictions)
+                    .tags(tags)
+                    .description("The number of entries evicted from this tier to make room")
+                    .register(registry);
+            Gauge.builder("cache.tier.size", tier, TierStatistics::getMappings)
+                    .tags(tags)
+                    .description("The number of entries in this tier")
+                    .register(registry);
+            // -1 for tiers sized by entry count
+            Gauge.builder("cache.tier.occupied", tier, t -> t.getOccupiedByteSize() < 0 ? Double.NaN : t.getOccupiedByteSize())
+                    .tags(tags)
+                    .baseUnit("bytes")
+                    .description("The memory or disk space used by the entries of this tier, where Ehcache measures it")
+                    .register(registry);
+        });
+    }
+}
@@ -0,0 +1,110 @@
+package jp.co.axa.apidemo.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key, so that only one caller runs the loader
+ * and every other caller asking for that key at the same time waits for its result.
+ * Only loads that are in progress are shared. Once a load finishes, the next call for the key runs the loader again,
+ * so results should be cached by the caller. A loader must not load a key that its own thread is already loading
+ * @param <K> key type
+ * @param <V> value type. Loaders may return null, which is passed on to every waiting caller
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Loads value for one key, or waits for the load already in progress for that key
+     * @param key
+     * @param loader
+     * @return loaded value
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) return join(existing);
+
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Loads values for many keys. Keys that are already being loaded by other callers are waited for,
+     * and all remaining keys are passed to the loader in a single call.
+     * @param keys
+     * @param loader gets the set of keys to load, and returns the values it found. Keys without a value can be left out
+     * @return values found for the given keys. Keys without a value are left out
+     */
+    public Map<K, V> loadAll(Collection<K> keys, Function<Set<K>, Map<K, V>> loader) {
+        Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> joined = new HashMap<>();
+        for (K key : keys) {
+            if (owned.containsKey(key) || joined.containsKey(key)) continue;
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                joined.put(key, existing);
+            } else {
+                owned.put(key, future);
+            }
+        }
+
+        // finish our own loads before waiting on anyone else's, so that two bulk loads can never wait on each other
+        Map<K, V> values = new HashMap<>();
+        if (!owned.isEmpty()) {
+            try {
+                Map<K, V> loaded = loader.apply(owned.keySet());
+                owned.forEach((key, future) -> {
+                    V value = loaded.get(key);
+                    future.complete(value);
+                    if (value != null) values.put(key, value);
+                });
+            } catch (RuntimeException | Error e) {
+                owned.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                owned.forEach(inFlight::remove);
+            }
+        }
+
+        joined.forEach((key, future) -> {
+            V value = join(future);
+            if (value != null) values.put(key, value);
+        });
+        return values;
+    }
+
+    /**
+     * Waits for a load started by another caller, rethrowing its error if it failed
+     * @param future
+     * @return loaded value
+     */
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package jp.co.axa.apidemo.cache.invalidation;
+
+import jp.co.axa.apidemo.cache.BulkCacheOperations;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static jp.co.axa.apidemo.services.EmployeeJsonService.EMPLOYEE_JSON_CACHE_NAME;
+import static jp.co.axa.apidemo.services.EmployeeService.EMPLOYEE_CACHE_NAME;
+import static jp.co.axa.apidemo.services.EmployeeService.NOT_FOUND_CACHE_NAME;
+
+/**
+ * Keeps the employee caches of nodes that share a database consistent with each other.
+ * The IDs of employees changed on this node are collected after each commit, and sent to the other nodes
+ * every flush interval through the InvalidationTransport. Each node evicts the IDs it receives from its own caches,
+ * so its next read goes to the database.
+ * IDs are collected in a set, so that an employee written many times during a burst is sent once per flush,
+ * and the set is sent in batches of at most maxBatchSize IDs.
+ * Invalidations are sent after commit, so a node that stops between a commit and the next flush does not send them,
+ * and the other nodes see the change once the cache entry expires
+ */
+public class CacheInvalidationBus {
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    private static final String[] CACHE_NAMES = {EMPLOYEE_CACHE_NAME, EMPLOYEE_JSON_CACHE_NAME, NOT_FOUND_CACHE_NAME};
+
+    private final CacheManager cacheManager;
+
+    private final InvalidationTransport transport;
+
+    private final long flushIntervalMillis;
+
+    private final int maxBatchSize;
+
+    // IDs changed on this node since the last flush
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService flusher;
+
+    public CacheInvalidationBus(CacheManager cacheManager, InvalidationTransport transport,
+                                long flushIntervalMillis, int maxBatchSize) {
+        this.cacheManager = cacheManager;
+        this.transport = transport;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChange(EmployeeChangeEvent event) {
+        pending.add(event.getEmployeeId());
+    }
+
+    public void start() {
+        transport.start(this::evict);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-invalidation-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sending, after one last flush of the IDs changed so far, then stops receiving
+     */
+    public void stop() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        transport.stop();
+    }
+
+    /**
+     * Sends the IDs changed since the last flush. A batch that fails to send is kept for the next flush
+     */
+    public synchronized void flush() {
+        while (!pending.isEmpty()) {
+            List<Long> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+            Iterator<Long> it = pending.iterator();
+            while (it.hasNext() && batch.size() < maxBatchSize) {
+                batch.add(it.next());
+                it.remove();
+            }
+            try {
+                transport.publish(batch);
+            } catch (RuntimeException e) {
+                pending.addAll(batch);
+                logger.warn("Failed to publish " + batch.size() + " cache invalidations, will retry", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Evicts employees changed on another node from the caches of this node
+     * @param employeeIds
+     */
+    public void evict(Collection<Long> employeeIds) {
+        for (String name : CACHE_NAMES) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) BulkCacheOperations.evictAll(cache, employeeIds);
+        }
+        logger.debug("Evicted " + employeeIds.size() + " employees changed on other nodes");
+    }
+}
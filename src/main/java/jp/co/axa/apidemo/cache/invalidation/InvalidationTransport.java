@@ -0,0 +1,26 @@
+package jp.co.axa.apidemo.cache.invalidation;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Carries the IDs of changed employees between the nodes that share a database, for CacheInvalidationBus.
+ * Delivery is at least once: receiving an ID twice only evicts it twice
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Sends IDs changed on this node to every other node
+     * @param employeeIds
+     */
+    void publish(Collection<Long> employeeIds);
+
+    /**
+     * Starts delivering IDs published by the other nodes. IDs published by this node are not delivered back to it
+     * @param receiver called with each set of IDs received, from a thread of the transport
+     */
+    void start(Consumer<Set<Long>> receiver);
+
+    void stop();
+}
@@ -0,0 +1,157 @@
+package jp.co.axa.apidemo.cache.invalidation;
+
+import jp.co.axa.apidemo.entities.CacheInvalidation;
+import jp.co.axa.apidemo.repositories.CacheInvalidationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Transport that goes through the database the nodes already share, so no broker is needed.
+ * Each published batch is one row of the CACHE_INVALIDATION table, and every node polls the table for rows
+ * inserted since its last poll.
+ * Row IDs are assigned at insert but become visible at commit, so a poll can see a row before one with a lower ID
+ * that is still being inserted. The IDs skipped over are looked up again on each poll for GAP_TIMEOUT_MILLIS,
+ * after which they are assumed to belong to rolled back inserts.
+ * Rows older than the retention period are deleted by every node, as a delete that finds nothing costs little
+ */
+public class OutboxInvalidationTransport implements InvalidationTransport {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxInvalidationTransport.class);
+
+    static final int POLL_BATCH_SIZE = 100;
+
+    static final long GAP_TIMEOUT_MILLIS = 10_000;
+
+    // bounds the gaps tracked, in case IDs jump (H2 skips a block of identity values when it restarts)
+    static final int MAX_GAPS = 10_000;
+
+    private static final long CLEANUP_INTERVAL_MILLIS = 60_000;
+
+    private final CacheInvalidationRepository repository;
+
+    private final String nodeId;
+
+    private final long pollIntervalMillis;
+
+    private final long retentionMillis;
+
+    // IDs skipped by a poll, with the time they were first found missing
+    private final Map<Long, Long> gaps = new HashMap<>();
+
+    // highest ID read so far
+    private long cursor;
+
+    private long lastCleanup;
+
+    private Consumer<Set<Long>> receiver;
+
+    private ScheduledExecutorService poller;
+
+    public OutboxInvalidationTransport(CacheInvalidationRepository repository, String nodeId,
+                                       long pollIntervalMillis, long retentionMillis) {
+        this.repository = repository;
+        this.nodeId = nodeId;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    public void publish(Collection<Long> employeeIds) {
+        if (employeeIds.isEmpty()) return;
+        String ids = employeeIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        repository.save(new CacheInvalidation(nodeId, ids, System.currentTimeMillis()));
+    }
+
+    /**
+     * Starts polling from the rows inserted after this call. Earlier rows are about changes that the caches
+     * of this node, which are filled after startup, already see
+     * @param receiver
+     */
+    public synchronized void start(Consumer<Set<Long>> receiver) {
+        this.receiver = receiver;
+        Long maxId = repository.findMaxId();
+        cursor = maxId == null ? 0 : maxId;
+        lastCleanup = System.currentTimeMillis();
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-invalidation-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                logger.warn("Failed to poll cache invalidations", e);
+            }
+        }, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (poller == null) return;
+        poller.shutdown();
+        try {
+            poller.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the rows inserted since the last poll, and the rows skipped by earlier polls that have committed since,
+     * then delivers the IDs published by the other nodes in one set
+     */
+    synchronized void poll() {
+        long now = System.currentTimeMillis();
+        List<CacheInvalidation> rows = new ArrayList<>();
+        if (!gaps.isEmpty()) {
+            for (CacheInvalidation row : repository.findAllById(new ArrayList<>(gaps.keySet()))) {
+                gaps.remove(row.getId());
+                rows.add(row);
+            }
+            gaps.values().removeIf(since -> now - since > GAP_TIMEOUT_MILLIS);
+        }
+
+        List<CacheInvalidation> page;
+        do {
+            page = repository.findByIdGreaterThanOrderByIdAsc(cursor, PageRequest.of(0, POLL_BATCH_SIZE));
+            for (CacheInvalidation row : page) {
+                for (long missing = cursor + 1; missing < row.getId() && gaps.size() < MAX_GAPS; missing++) {
+                    gaps.put(missing, now);
+                }
+                cursor = row.getId();
+                rows.add(row);
+            }
+        } while (page.size() == POLL_BATCH_SIZE);
+
+        Set<Long> employeeIds = new HashSet<>();
+        for (CacheInvalidation row : rows) {
+            if (nodeId.equals(row.getNodeId())) continue;
+            for (String id : row.getEmployeeIds().split(",")) {
+                employeeIds.add(Long.valueOf(id));
+            }
+        }
+        if (!employeeIds.isEmpty()) receiver.accept(employeeIds);
+
+        if (now - lastCleanup >= CLEANUP_INTERVAL_MILLIS) {
+            lastCleanup = now;
+            int deleted = repository.deleteCreatedBefore(now - retentionMillis);
+            if (deleted > 0) logger.debug("Deleted " + deleted + " old cache invalidations");
+        }
+    }
+
+    int getGapCount() {
+        return gaps.size();
+    }
+}
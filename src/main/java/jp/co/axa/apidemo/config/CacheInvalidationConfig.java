@@ -0,0 +1,44 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.cache.invalidation.CacheInvalidationBus;
+import jp.co.axa.apidemo.cache.invalidation.InvalidationTransport;
+import jp.co.axa.apidemo.cache.invalidation.OutboxInvalidationTransport;
+import jp.co.axa.apidemo.repositories.CacheInvalidationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.UUID;
+
+/**
+ * Cross-node invalidation of the employee caches, enabled with app.cache.invalidation.enabled=true
+ * when several nodes share one database (an H2 server, for example jdbc:h2:tcp://host/~/employees).
+ * The transport is chosen with app.cache.invalidation.transport. The outbox transport is built in;
+ * another one can be plugged in by setting a different value and declaring an InvalidationTransport bean
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.cache.invalidation.enabled", havingValue = "true")
+public class CacheInvalidationConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.cache.invalidation.transport", havingValue = "outbox", matchIfMissing = true)
+    public OutboxInvalidationTransport outboxInvalidationTransport(
+            CacheInvalidationRepository repository,
+            @Value("${app.cache.invalidation.node-id:}") String nodeId,
+            @Value("${app.cache.invalidation.outbox.poll-interval-ms:200}") long pollIntervalMillis,
+            @Value("${app.cache.invalidation.outbox.retention-seconds:300}") long retentionSeconds) {
+        // a node ID that is not configured is made unique to this run, which is all the transport needs
+        String id = nodeId.isEmpty() ? UUID.randomUUID().toString() : nodeId;
+        return new OutboxInvalidationTransport(repository, id, pollIntervalMillis, retentionSeconds * 1000);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public CacheInvalidationBus cacheInvalidationBus(
+            CacheManager cacheManager, InvalidationTransport transport,
+            @Value("${app.cache.invalidation.flush-interval-ms:50}") long flushIntervalMillis,
+            @Value("${app.cache.invalidation.max-batch-size:500}") int maxBatchSize) {
+        return new CacheInvalidationBus(cacheManager, transport, flushIntervalMillis, maxBatchSize);
+    }
+}
@@ -0,0 +1,42 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.cache.EhcacheMetrics;
+import jp.co.axa.apidemo.tracing.TracingCache;
+import org.ehcache.impl.internal.statistics.DefaultStatisticsService;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.jcache.JCacheCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Binds the metrics of JCache caches backed by Ehcache to EhcacheMetrics, including when they are wrapped
+     * for request tracing. Ordered ahead of Spring Boot's JCache binder, which is still used for any cache
+     * that is not backed by Ehcache
+     * @return
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public CacheMeterBinderProvider<Cache> ehcacheMeterBinderProvider() {
+        // collects the statistics of each cache it is told about. The JCache cache manager keeps its own instance,
+        // which is not reachable from outside
+        DefaultStatisticsService statisticsService = new DefaultStatisticsService();
+        return (cache, tags) -> {
+            Cache target = cache instanceof TracingCache ? ((TracingCache) cache).getTarget() : cache;
+            if (!(target instanceof JCacheCache)) return null;
+            org.ehcache.Cache<?, ?> ehcache;
+            try {
+                ehcache = ((JCacheCache) target).getNativeCache().unwrap(org.ehcache.Cache.class);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            statisticsService.cacheAdded(cache.getName(), ehcache);
+            return new EhcacheMetrics(cache, cache.getName(), statisticsService.getCacheStatistics(cache.getName()), tags);
+        };
+    }
+}
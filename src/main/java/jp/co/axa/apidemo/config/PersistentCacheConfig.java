@@ -0,0 +1,29 @@
+package jp.co.axa.apidemo.config;
+
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+/**
+ * Disk-persistent employeeCache, enabled with the persistent-cache profile. See ehcache-persistent.xml
+ */
+@Configuration
+@Profile("persistent-cache")
+public class PersistentCacheConfig {
+
+    static final String CACHE_DIRECTORY_PROPERTY = "app.cache.directory";
+
+    /**
+     * Ehcache can only substitute system properties in its XML configuration, so copies app.cache.directory
+     * to a system property before the cache manager is created
+     * @param environment
+     * @return
+     */
+    @Bean
+    public static BeanFactoryPostProcessor cacheDirectoryProperty(Environment environment) {
+        return beanFactory -> System.setProperty(CACHE_DIRECTORY_PROPERTY,
+                                                 environment.getRequiredProperty(CACHE_DIRECTORY_PROPERTY));
+    }
+}
@@ -0,0 +1,122 @@
+package jp.co.axa.apidemo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.co.axa.apidemo.datasource.ReadYourWritesFilter;
+import jp.co.axa.apidemo.datasource.ReplicaRoutingDataSource;
+import jp.co.axa.apidemo.datasource.ReplicaRoutingProperties;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read replica routing, enabled with app.datasource.routing.enabled=true. Read-only transactions, which include
+ * Spring Data's read methods, go to the replicas under app.datasource.routing.replicas, and everything else to the
+ * primary configured with spring.datasource. Each pool is a Hikari pool with the spring.datasource.hikari settings,
+ * reporting hikaricp metrics under its own pool name (primary, replica-1, ...).
+ * See application-replicas.properties for the settings
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.routing.enabled", havingValue = "true")
+@EnableConfigurationProperties(ReplicaRoutingProperties.class)
+public class ReplicaRoutingConfig implements DisposableBean {
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    /**
+     * Replaces Spring Boot's DataSource. The pools are not beans themselves, so that only this DataSource is
+     * found by everything that looks for one
+     */
+    @Bean
+    public DataSource dataSource(DataSourceProperties dataSourceProperties, ReplicaRoutingProperties properties,
+                                 Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        configurePool(primary, "primary", environment, meterRegistry);
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<ReplicaRoutingProperties.Replica> replicaProperties = properties.getReplicas();
+        for (int i = 0; i < replicaProperties.size(); i++) {
+            ReplicaRoutingProperties.Replica replica = replicaProperties.get(i);
+            HikariDataSource pool = DataSourceBuilder.create().type(HikariDataSource.class).url(replica.getUrl())
+                    .username(replica.getUsername()).password(replica.getPassword()).build();
+            String name = "replica-" + (i + 1);
+            configurePool(pool, name, environment, meterRegistry);
+            pool.setReadOnly(true);
+            if (replica.getMaximumPoolSize() > 0) pool.setMaximumPoolSize(replica.getMaximumPoolSize());
+            replicas.put(name, pool);
+        }
+
+        routingDataSource = new ReplicaRoutingDataSource(primary, replicas, properties.getSelection());
+        routingDataSource.startHealthChecks(properties.getHealthCheckIntervalMs(),
+                                            properties.getHealthCheckTimeoutSeconds());
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Hibernate holds on to a session's connection until the session is closed, and with open session in view that is
+     * the end of the request, so every transaction of a request would use the connection of its first one.
+     * Releasing it after each transaction lets the next one be routed by its own read-only flag
+     */
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return hibernateProperties -> hibernateProperties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    /**
+     * Stops Spring from preparing each transaction's connection (read-only flag, isolation level) through the session,
+     * which would take a further connection to reset once the transaction's own one has already been released
+     */
+    @Bean
+    public static BeanPostProcessor unpreparedTransactionConnections() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof HibernateJpaVendorAdapter) ((HibernateJpaVendorAdapter) bean).setPrepareConnection(false);
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(ReplicaRoutingProperties properties) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration =
+                new FilterRegistrationBean<>(new ReadYourWritesFilter(properties.getReadYourWritesWindowMs()));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        registration.setEnabled(properties.getReadYourWritesWindowMs() > 0);
+        return registration;
+    }
+
+    public void destroy() {
+        if (routingDataSource != null) routingDataSource.close();
+    }
+
+    private static void configurePool(HikariDataSource pool, String name, Environment environment,
+                                      ObjectProvider<MeterRegistry> meterRegistry) {
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        meterRegistry.ifAvailable(registry -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+    }
+}
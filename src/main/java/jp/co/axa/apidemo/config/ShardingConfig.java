@@ -0,0 +1,180 @@
+package jp.co.axa.apidemo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.co.axa.apidemo.repositories.CacheInvalidationRepository;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.repositories.EmployeeTombstoneRepository;
+import jp.co.axa.apidemo.sharding.ShardContext;
+import jp.co.axa.apidemo.sharding.ShardRoutingDataSource;
+import jp.co.axa.apidemo.sharding.ShardedEmployeeRepository;
+import jp.co.axa.apidemo.sharding.ShardedSequenceGenerator;
+import jp.co.axa.apidemo.sharding.Shards;
+import jp.co.axa.apidemo.sharding.ShardingProperties;
+import jp.co.axa.apidemo.sharding.UnshardedRepository;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Employee sharding, enabled with app.sharding.enabled=true. Employees are split across the databases under
+ * app.sharding.shards, by department or in turn, and EmployeeRepository is replaced by one that sends each call to
+ * the shards it concerns: single employees to their own shard, lists and searches to every shard in parallel,
+ * merged back in order. Every other table stays on shard 0, and the repositories of those tables are replaced by ones
+ * that run every call there.
+ * Hibernate creates the schema on shard 0, and it is copied from there to the other shards, which needs them to be H2.
+ * The change feed (app.changes.enabled) needs one order of changes across all employees, which shards with change
+ * sequences of their own cannot give, so the application does not start with both enabled.
+ * See application-sharded.properties for the settings
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ShardingConfig.class);
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    private Shards shards;
+
+    /**
+     * Replaces Spring Boot's DataSource. The pools are not beans themselves, so that only this DataSource is
+     * found by everything that looks for one
+     */
+    @Bean
+    public DataSource dataSource(ShardingProperties properties, Environment environment,
+                                 ObjectProvider<MeterRegistry> meterRegistry,
+                                 @Value("${app.changes.enabled:true}") boolean changesEnabled) {
+        List<ShardingProperties.Shard> shardProperties = properties.getShards();
+        if (shardProperties.isEmpty()) throw new IllegalStateException("app.sharding.shards is empty");
+        if (changesEnabled) {
+            throw new IllegalStateException("The change feed cannot list changes in order across shards,"
+                    + " set app.changes.enabled=false when app.sharding.enabled=true");
+        }
+        for (int i = 0; i < shardProperties.size(); i++) {
+            ShardingProperties.Shard shard = shardProperties.get(i);
+            HikariDataSource pool = DataSourceBuilder.create().type(HikariDataSource.class).url(shard.getUrl())
+                    .username(shard.getUsername()).password(shard.getPassword()).build();
+            Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+            pool.setPoolName("shard-" + i);
+            meterRegistry.ifAvailable(registry -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            if (shard.getMaximumPoolSize() > 0) pool.setMaximumPoolSize(shard.getMaximumPoolSize());
+            pools.add(pool);
+        }
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(new ArrayList<>(pools)));
+    }
+
+    /**
+     * Releases connections after each transaction rather than at the end of the session (the request, with open
+     * session in view), so that each transaction of a request takes its connection from its own shard.
+     * Also tells ShardedSequenceGenerator how many shards there are
+     */
+    @Bean
+    public HibernatePropertiesCustomizer shardingHibernateProperties(ShardingProperties properties) {
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.CONNECTION_HANDLING,
+                    PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+            hibernateProperties.put(ShardedSequenceGenerator.SHARD_COUNT_SETTING,
+                    String.valueOf(properties.getShards().size()));
+        };
+    }
+
+    /**
+     * Stops Spring from preparing each transaction's connection (read-only flag, isolation level) through the session,
+     * which would take a further connection to reset once the transaction's own one has already been released
+     */
+    @Bean
+    public static BeanPostProcessor unpreparedTransactionConnections() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof HibernateJpaVendorAdapter) ((HibernateJpaVendorAdapter) bean).setPrepareConnection(false);
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public Shards shards(ShardingProperties properties, PlatformTransactionManager transactionManager) {
+        int count = properties.getShards().size();
+        int threads = properties.getFanOutThreads() > 0 ? properties.getFanOutThreads() : 2 * count;
+        shards = new Shards(count, properties.getPlacement(), threads, transactionManager);
+        return shards;
+    }
+
+    /**
+     * The repository everything else is given. Spring Data's own one is still there under its bean name
+     */
+    @Bean
+    @Primary
+    public EmployeeRepository shardedEmployeeRepository(@Qualifier("employeeRepository") EmployeeRepository target,
+                                                        Shards shards) {
+        return new ShardedEmployeeRepository(target, shards);
+    }
+
+    @Bean
+    @Primary
+    public EmployeeTombstoneRepository unshardedTombstoneRepository(
+            @Qualifier("employeeTombstoneRepository") EmployeeTombstoneRepository target, Shards shards) {
+        return UnshardedRepository.create(EmployeeTombstoneRepository.class, target, shards);
+    }
+
+    @Bean
+    @Primary
+    public CacheInvalidationRepository unshardedCacheInvalidationRepository(
+            @Qualifier("cacheInvalidationRepository") CacheInvalidationRepository target, Shards shards) {
+        return UnshardedRepository.create(CacheInvalidationRepository.class, target, shards);
+    }
+
+    /**
+     * Copies the schema that Hibernate created on shard 0 to the other shards, once all singletons are created
+     * (so after Hibernate) and before anything runs on ApplicationReadyEvent
+     */
+    @Bean
+    public SmartInitializingSingleton shardSchemaCopy(DataSource dataSource, ShardingProperties properties) {
+        return () -> {
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            List<String> statements = ShardContext.callOn(0, () -> jdbc.queryForList("SCRIPT NODATA", String.class));
+            statements.removeIf(statement -> statement.startsWith("--"));
+            for (int shard = 1; shard < properties.getShards().size(); shard++) {
+                ShardContext.callOn(shard, () -> {
+                    statements.forEach(jdbc::execute);
+                    return null;
+                });
+            }
+            logger.info("Schema copied to shards - shards: " + properties.getShards().size()
+                    + ", statements: " + statements.size());
+        };
+    }
+
+    public void destroy() {
+        if (shards != null) shards.shutdown();
+        pools.forEach(HikariDataSource::close);
+    }
+}
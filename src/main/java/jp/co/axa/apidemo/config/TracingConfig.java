@@ -0,0 +1,64 @@
+package jp.co.axa.apidemo.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.tracing.RequestTraceFilter;
+import jp.co.axa.apidemo.tracing.TracingCacheManager;
+import jp.co.axa.apidemo.tracing.TracingDataSource;
+import jp.co.axa.apidemo.tracing.TracingJsonHttpMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import javax.sql.DataSource;
+
+/**
+ * Request tracing, enabled with app.tracing.enabled=true. Wraps the DataSource, the CacheManager and the JSON converter
+ * so that each request records its SQL, cache and serialization time, and returns it in a Server-Timing header.
+ * Requests slower than app.tracing.slow-request-threshold-ms are logged with their breakdown
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.tracing.enabled", havingValue = "true")
+public class TracingConfig {
+
+    @Bean
+    public static BeanPostProcessor tracingBeanPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof TracingDataSource)) {
+                    return new TracingDataSource((DataSource) bean);
+                }
+                if (bean instanceof CacheManager && !(bean instanceof TracingCacheManager)) {
+                    return new TracingCacheManager((CacheManager) bean);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<RequestTraceFilter> requestTraceFilter(
+            @Value("${app.tracing.slow-request-threshold-ms:500}") long slowRequestMillis) {
+        FilterRegistrationBean<RequestTraceFilter> registration =
+                new FilterRegistrationBean<>(new RequestTraceFilter(slowRequestMillis));
+        // outside every other filter, so that the whole request is timed
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    /**
+     * Replaces Spring Boot's JSON converter
+     * @param objectMapper
+     * @return
+     */
+    @Bean
+    public MappingJackson2HttpMessageConverter tracingJsonHttpMessageConverter(ObjectMapper objectMapper) {
+        return new TracingJsonHttpMessageConverter(objectMapper);
+    }
+}
@@ -0,0 +1,65 @@
+package jp.co.axa.apidemo.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.services.ChangeSequenceWatermark;
+import jp.co.axa.apidemo.services.EmployeeService;
+import jp.co.axa.apidemo.writebehind.EmployeeWriteQueue;
+import jp.co.axa.apidemo.writebehind.WriteAheadLog;
+import jp.co.axa.apidemo.writebehind.WriteBehindEmployeeService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.validation.Validator;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Write-behind mode for updates of single employees, enabled with app.write-behind.enabled=true.
+ * Updates are logged to app.write-behind.log-dir and acknowledged, then written to the database in batches every
+ * app.write-behind.flush-interval-ms, or once app.write-behind.max-batch-size employees are queued.
+ * An update that fails to be written app.write-behind.max-attempts times is moved to the log's dead letters.
+ * The number of queued updates is reported as the employee.write.queued gauge
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.write-behind.enabled", havingValue = "true")
+public class WriteBehindConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public EmployeeWriteQueue employeeWriteQueue(
+            EmployeeRepository employeeRepository, ChangeSequenceWatermark changeWatermark,
+            PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher,
+            CacheManager cacheManager, ObjectMapper objectMapper, ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${app.write-behind.log-dir:./data/write-behind}") String logDir,
+            @Value("${app.write-behind.flush-interval-ms:200}") long flushIntervalMillis,
+            @Value("${app.write-behind.max-batch-size:500}") int maxBatchSize,
+            @Value("${app.write-behind.max-attempts:20}") int maxAttempts) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(Paths.get(logDir), objectMapper);
+        EmployeeWriteQueue queue = new EmployeeWriteQueue(log, employeeRepository, changeWatermark, transactionManager,
+                                                          eventPublisher, cacheManager, flushIntervalMillis,
+                                                          maxBatchSize, maxAttempts);
+        meterRegistry.ifAvailable(registry -> Gauge.builder("employee.write.queued", queue, EmployeeWriteQueue::size)
+                .description("Employee updates acknowledged but not yet written to the database").register(registry));
+        return queue;
+    }
+
+    /**
+     * The EmployeeService everything else is given. EmployeeServiceImpl is still there under its bean name
+     */
+    @Bean
+    @Primary
+    public EmployeeService writeBehindEmployeeService(@Qualifier("employeeServiceImpl") EmployeeService target,
+                                                      EmployeeWriteQueue queue, Validator validator) {
+        return new WriteBehindEmployeeService(target, queue, validator);
+    }
+}
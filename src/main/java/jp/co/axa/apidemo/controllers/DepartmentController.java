@@ -0,0 +1,36 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.exceptions.ServiceUnavailableException;
+import jp.co.axa.apidemo.index.DepartmentStatsIndex;
+import jp.co.axa.apidemo.index.EmployeeIndexUpdater;
+import jp.co.axa.apidemo.message.DepartmentStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1")
+public class DepartmentController {
+
+    @Autowired
+    private DepartmentStatsIndex departmentStatsIndex;
+
+    @Autowired
+    private EmployeeIndexUpdater employeeIndexUpdater;
+
+    /**
+     * Gets headcount and salary aggregates of every department, from memory rather than the database.
+     * If the aggregates are still being loaded at startup, throws error
+     * @return
+     */
+    @GetMapping("/departments/stats")
+    public ResponseEntity<List<DepartmentStats>> getDepartmentStats() {
+        if (!employeeIndexUpdater.isReady())
+            throw new ServiceUnavailableException("Department stats are still being loaded");
+        return ResponseEntity.ok(departmentStatsIndex.getStats());
+    }
+}
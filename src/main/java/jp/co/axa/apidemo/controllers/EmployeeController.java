@@ -1,49 +1,354 @@
 package jp.co.axa.apidemo.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jp.co.axa.apidemo.entities.Employee;
 import jp.co.axa.apidemo.exceptions.EntityNotFoundException;
+import jp.co.axa.apidemo.exceptions.InvalidRequestException;
+import jp.co.axa.apidemo.exceptions.PreconditionFailedException;
+import jp.co.axa.apidemo.exceptions.ServiceUnavailableException;
+import jp.co.axa.apidemo.index.EmployeeIndexUpdater;
+import jp.co.axa.apidemo.index.NameIndex;
+import jp.co.axa.apidemo.index.SalaryIndex;
+import jp.co.axa.apidemo.message.BatchItemResult;
+import jp.co.axa.apidemo.message.ETags;
+import jp.co.axa.apidemo.message.EmployeeChanges;
+import jp.co.axa.apidemo.message.EmployeeFieldsPage;
+import jp.co.axa.apidemo.message.EmployeeLookup;
+import jp.co.axa.apidemo.message.EmployeePage;
+import jp.co.axa.apidemo.message.EmployeeSearchCriteria;
+import jp.co.axa.apidemo.message.EncodedEmployee;
+import jp.co.axa.apidemo.message.NameSuggestion;
 import jp.co.axa.apidemo.message.ResponseMessage;
+import jp.co.axa.apidemo.message.SalaryPercentiles;
+import jp.co.axa.apidemo.services.EmployeeFeedService;
+import jp.co.axa.apidemo.services.EmployeeJsonService;
 import jp.co.axa.apidemo.services.EmployeeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/v1")
 public class EmployeeController {
     private static final Logger logger = LoggerFactory.getLogger(EmployeeController.class);
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int MAX_BATCH_SIZE = 10000;
+
+    private static final int MAX_LOOKUP_SIZE = 500;
+
+    private static final int MAX_SUGGESTIONS = 100;
+
+    // fields of Employee that can be asked for with ?fields=
+    private static final List<String> EMPLOYEE_FIELDS = Arrays.asList("id", "name", "salary", "department", "version");
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     @Autowired
     private EmployeeService employeeService;
 
+    @Autowired
+    private EmployeeJsonService employeeJsonService;
+
+    @Autowired
+    private EmployeeFeedService employeeFeedService;
+
+    @Autowired
+    private SalaryIndex salaryIndex;
+
+    @Autowired
+    private NameIndex nameIndex;
+
+    @Autowired
+    private EmployeeIndexUpdater employeeIndexUpdater;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // the change feed is turned off when employees are sharded, see ShardingConfig
+    @Value("${app.changes.enabled:true}")
+    private boolean changesEnabled;
+
     public void setEmployeeService(EmployeeService employeeService) {
         this.employeeService = employeeService;
     }
 
     /**
-     * Gets list of all employees
+     * Gets one page of employees, ordered by ID. To get the next page, pass the nextCursor
+     * of the response as the "after" parameter. If limit is outside of 1 to MAX_PAGE_SIZE, throws error.
+     * The page has an ETag built from the IDs and versions of its employees,
+     * so a client that sends it back in If-None-Match gets Not Modified while the page is unchanged
+     * @param after
+     * @param limit
      * @return
      */
     @GetMapping("/employees")
-    public ResponseEntity<List<Employee>> getEmployees() {
-        List<Employee> employees = employeeService.retrieveEmployees();
-        return ResponseEntity.ok(employees);
+    public ResponseEntity<EmployeePage> getEmployees(@RequestParam(name="after", required=false) Long after,
+                                                     @RequestParam(name="limit", defaultValue="100") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new InvalidRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE + " - limit: " + limit);
+
+        EmployeePage page = employeeService.retrieveEmployees(after, limit);
+        return ResponseEntity.ok().eTag(pageETag(page)).body(page);
+    }
+
+    /**
+     * Gets one page of employees as getEmployees() does, holding only the given comma separated fields
+     * (for example ?fields=id,name). Only the columns of these fields are read from the database.
+     * If a field is unknown, or limit is outside of 1 to MAX_PAGE_SIZE, throws error
+     * @param fields
+     * @param after
+     * @param limit
+     * @return
+     */
+    @GetMapping(value = "/employees", params = "fields")
+    public ResponseEntity<EmployeeFieldsPage> getEmployeeFields(@RequestParam(name="fields") String fields,
+                                                                @RequestParam(name="after", required=false) Long after,
+                                                                @RequestParam(name="limit", defaultValue="100") int limit) {
+        List<String> fieldList = parseFields(fields);
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new InvalidRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE + " - limit: " + limit);
+
+        return ResponseEntity.ok(employeeService.retrieveEmployeeFields(fieldList, after, limit));
+    }
+
+    /**
+     * Searches employees by department, salary range (inclusive) and name prefix, ordered by ID.
+     * Conditions that are not given are not applied. Paginated in the same way as getEmployees().
+     * If limit is outside of 1 to MAX_PAGE_SIZE, or minSalary is greater than maxSalary, throws error
+     * @param department
+     * @param minSalary
+     * @param maxSalary
+     * @param namePrefix
+     * @param after
+     * @param limit
+     * @return
+     */
+    @GetMapping("/employees/search")
+    public ResponseEntity<EmployeePage> searchEmployees(@RequestParam(name="department", required=false) String department,
+                                                        @RequestParam(name="minSalary", required=false) Integer minSalary,
+                                                        @RequestParam(name="maxSalary", required=false) Integer maxSalary,
+                                                        @RequestParam(name="namePrefix", required=false) String namePrefix,
+                                                        @RequestParam(name="after", required=false) Long after,
+                                                        @RequestParam(name="limit", defaultValue="100") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new InvalidRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE + " - limit: " + limit);
+
+        EmployeeSearchCriteria criteria = searchCriteria(department, minSalary, maxSalary, namePrefix);
+        return ResponseEntity.ok(employeeService.searchEmployees(criteria, after, limit));
+    }
+
+    /**
+     * Searches employees as searchEmployees() does, holding only the given comma separated fields
+     * (for example ?fields=id,name). Only the columns of these fields are read from the database.
+     * If a field is unknown, limit is outside of 1 to MAX_PAGE_SIZE, or minSalary is greater than maxSalary,
+     * throws error
+     * @param fields
+     * @param department
+     * @param minSalary
+     * @param maxSalary
+     * @param namePrefix
+     * @param after
+     * @param limit
+     * @return
+     */
+    @GetMapping(value = "/employees/search", params = "fields")
+    public ResponseEntity<EmployeeFieldsPage> searchEmployeeFields(@RequestParam(name="fields") String fields,
+                                                                   @RequestParam(name="department", required=false) String department,
+                                                                   @RequestParam(name="minSalary", required=false) Integer minSalary,
+                                                                   @RequestParam(name="maxSalary", required=false) Integer maxSalary,
+                                                                   @RequestParam(name="namePrefix", required=false) String namePrefix,
+                                                                   @RequestParam(name="after", required=false) Long after,
+                                                                   @RequestParam(name="limit", defaultValue="100") int limit) {
+        List<String> fieldList = parseFields(fields);
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new InvalidRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE + " - limit: " + limit);
+
+        EmployeeSearchCriteria criteria = searchCriteria(department, minSalary, maxSalary, namePrefix);
+        return ResponseEntity.ok(employeeService.searchEmployeeFields(criteria, fieldList, after, limit));
+    }
+
+    /**
+     * Gets the n employees with the highest salaries, highest first, optionally within one department.
+     * The ranking comes from the in-memory salary index, and the employees themselves from cache where possible.
+     * If n is outside of 1 to MAX_LOOKUP_SIZE, or the index is still being loaded at startup, throws error
+     * @param n
+     * @param department
+     * @return
+     */
+    @GetMapping("/employees/top")
+    public ResponseEntity<List<Employee>> getTopEarners(@RequestParam(name="n", defaultValue="10") int n,
+                                                        @RequestParam(name="department", required=false) String department) {
+        if (n < 1 || n > MAX_LOOKUP_SIZE)
+            throw new InvalidRequestException("n must be between 1 and " + MAX_LOOKUP_SIZE + " - n: " + n);
+        checkIndexesReady();
+
+        List<Long> ids = Arrays.stream(salaryIndex.topEarners(department, n)).boxed().collect(Collectors.toList());
+        return ResponseEntity.ok(employeeService.getEmployees(ids).getEmployees());
+    }
+
+    /**
+     * Gets salary percentiles (by default p50, p90 and p99) from the in-memory salary index,
+     * optionally within one department.
+     * If a percentile is outside of 0 (exclusive) to 100, or the index is still being loaded at startup, throws error
+     * @param department
+     * @param percentiles
+     * @return
+     */
+    @GetMapping("/employees/salary-percentiles")
+    public ResponseEntity<SalaryPercentiles> getSalaryPercentiles(
+            @RequestParam(name="department", required=false) String department,
+            @RequestParam(name="p", defaultValue="50,90,99") List<Double> percentiles) {
+        for (Double p : percentiles) {
+            if (!(p > 0 && p <= 100))
+                throw new InvalidRequestException("Percentile must be greater than 0 and at most 100 - p: " + p);
+        }
+        checkIndexesReady();
+
+        double[] sorted = percentiles.stream().mapToDouble(Double::doubleValue).sorted().distinct().toArray();
+        int[] salaries = salaryIndex.percentiles(department, sorted);
+        Map<String, Integer> byName = new LinkedHashMap<>();
+        for (int i = 0; i < salaries.length; i++) {
+            byName.put(percentileName(sorted[i]), salaries[i]);
+        }
+        return ResponseEntity.ok(new SalaryPercentiles(department, salaryIndex.count(department), byName));
+    }
+
+    /**
+     * Suggests employees for type-ahead from the in-memory name index: names starting with q first,
+     * then names containing it elsewhere. Matching ignores case.
+     * If q is blank, limit is outside of 1 to MAX_SUGGESTIONS, or the index is still being loaded at startup, throws error
+     * @param query
+     * @param limit
+     * @return
+     */
+    @GetMapping("/employees/suggest")
+    public ResponseEntity<List<NameSuggestion>> suggestEmployees(@RequestParam(name="q") String query,
+                                                                 @RequestParam(name="limit", defaultValue="10") int limit) {
+        if (query.trim().isEmpty())
+            throw new InvalidRequestException("q must not be blank");
+        if (limit < 1 || limit > MAX_SUGGESTIONS)
+            throw new InvalidRequestException("limit must be between 1 and " + MAX_SUGGESTIONS + " - limit: " + limit);
+        checkIndexesReady();
+
+        return ResponseEntity.ok(nameIndex.suggest(query, limit));
+    }
+
+    /**
+     * Gets many employees by ID in one call, given as a comma separated list (for example ?ids=1,2,3).
+     * Employees are returned in the requested order, and IDs that do not exist are listed separately.
+     * If more than MAX_LOOKUP_SIZE IDs are requested, or the list has an empty element (for example ?ids=1,,2),
+     * throws error
+     * @param ids
+     * @return
+     */
+    @GetMapping(value = "/employees", params = "ids")
+    public ResponseEntity<EmployeeLookup> getEmployeesById(@RequestParam(name="ids") List<Long> ids) {
+        checkLookup(ids);
+        return ResponseEntity.ok(employeeService.getEmployees(ids));
+    }
+
+    /**
+     * Gets many employees by ID in one call, given as a JSON array in the request body.
+     * Same as getEmployeesById(), for lists of IDs too long to fit comfortably in a URL
+     * @param ids
+     * @return
+     */
+    @PostMapping("/employees/lookup")
+    public ResponseEntity<EmployeeLookup> lookupEmployees(@RequestBody List<Long> ids) {
+        checkLookup(ids);
+        return ResponseEntity.ok(employeeService.getEmployees(ids));
+    }
+
+    /**
+     * Gets employees inserted, updated or deleted since the given cursor, oldest change first.
+     * Start with since=0, then pass the cursor of each response as "since" on the next call.
+     * If hasMore is true, further changes are already waiting and can be fetched straight away.
+     * If limit is outside of 1 to MAX_PAGE_SIZE, or since is negative, throws error.
+     * If the cursor is behind deletes that have been purged, returns Gone, and the client has to start again from 0.
+     * If the change feed is turned off with app.changes.enabled=false, returns Not Found
+     * @param since
+     * @param limit
+     * @return
+     */
+    @GetMapping("/employees/changes")
+    public ResponseEntity<EmployeeChanges> getChanges(@RequestParam(name="since", defaultValue="0") long since,
+                                                      @RequestParam(name="limit", defaultValue="100") int limit) {
+        if (!changesEnabled)
+            throw new EntityNotFoundException("Change feed is turned off (app.changes.enabled=false)");
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new InvalidRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE + " - limit: " + limit);
+        if (since < 0)
+            throw new InvalidRequestException("Cursor must not be negative - since: " + since);
+
+        return ResponseEntity.ok(employeeService.getChanges(since, limit));
+    }
+
+    /**
+     * Streams employee changes as server-sent events, named "created", "updated" or "deleted", as they are committed.
+     * A client that reconnects with the Last-Event-ID header is first sent the events it missed, if they are still kept.
+     * A "resync" event means events were dropped, because the client fell behind or missed too many;
+     * the client should then catch up with GET /employees/changes
+     * @param lastEventId
+     * @return
+     */
+    @GetMapping(value = "/employees/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestHeader(name="Last-Event-ID", required=false) Long lastEventId) {
+        return employeeFeedService.subscribe(lastEventId);
+    }
+
+    /**
+     * Writes all employees as newline-delimited JSON, one employee per line, in ID order.
+     * Each employee is written as soon as it is read from the database, so the whole list is never held in memory.
+     * If comma separated fields are given (for example ?fields=id,name), only those fields are read and written.
+     * If a field is unknown, throws error
+     * @param fields
+     * @param response
+     * @throws IOException
+     */
+    @GetMapping(value = "/employees/export", produces = APPLICATION_NDJSON_VALUE)
+    public void exportEmployees(@RequestParam(name="fields", required=false) String fields,
+                                HttpServletResponse response) throws IOException {
+        if (fields == null) {
+            writeLines(response, objectMapper.writerFor(Employee.class), employeeService::exportEmployees);
+        } else {
+            List<String> fieldList = parseFields(fields);
+            this.<Map<String, Object>>writeLines(response, objectMapper.writerFor(Map.class),
+                    consumer -> employeeService.exportEmployeeFields(fieldList, consumer));
+        }
     }
 
     /**
-     * Gets one employee by ID. If no employee currently exists with given ID, throws error
+     * Gets one employee by ID. If no employee currently exists with given ID, throws error.
+     * The employee is written as cached JSON bytes, along with their ETag
      * @param employeeId
      * @return
      */
-    @GetMapping("/employees/{employeeId}")
-    public ResponseEntity<Employee> getEmployee(@PathVariable(name="employeeId")Long employeeId) {
-        Employee emp = employeeService.getEmployee(employeeId);
+    @GetMapping(value = "/employees/{employeeId}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<byte[]> getEmployee(@PathVariable(name="employeeId")Long employeeId) {
+        EncodedEmployee emp = employeeJsonService.getEncodedEmployee(employeeId);
         if (emp == null) throw new EntityNotFoundException("Employee not found - ID: " + employeeId);
-        return ResponseEntity.ok(emp);
+        return ResponseEntity.ok().eTag(emp.getETag()).body(emp.getJson());
     }
 
     /**
@@ -73,23 +378,156 @@ public class EmployeeController {
     }
 
     /**
-     * Gets one employee by ID and overwrites their data with contents of request body.
-     * If no employee currently exists with given ID, throws error
+     * Overwrites data of the employee with given ID with contents of request body.
+     * If an If-Match header is sent, the employee is only updated if the ETag matches their current version.
+     * If no employee currently exists with given ID, or If-Match does not match, throws error
      * @param employee
      * @param employeeId
+     * @param ifMatch
      * @return
      */
     @PutMapping("/employees/{employeeId}")
     public ResponseEntity<ResponseMessage> updateEmployee(@RequestBody Employee employee,
-                               @PathVariable(name="employeeId")Long employeeId){
-        // check if employee exists prior to attempting update
-        if (employeeService.getEmployee(employeeId) == null)
-            throw new EntityNotFoundException("Employee not found - ID: " + employeeId);
+                               @PathVariable(name="employeeId")Long employeeId,
+                               @RequestHeader(name="If-Match", required=false) String ifMatch){
+        Long expectedVersion = null;
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            expectedVersion = ETags.parseVersion(ifMatch);
+            if (expectedVersion == null)
+                throw new PreconditionFailedException("If-Match does not match any version of employee - ID: " + employeeId);
+        }
 
-        employeeService.updateEmployee(employee, employeeId);
+        Employee updated = employeeService.updateEmployee(employee, employeeId, expectedVersion);
         String successMsg = "Employee updated successfully - ID: " + employeeId;
         logger.info(successMsg);
-        return ResponseEntity.ok(new ResponseMessage(successMsg));
+        return ResponseEntity.ok().eTag(ETags.forVersion(updated.getVersion())).body(new ResponseMessage(successMsg));
+    }
+
+    /**
+     * Stores list of new employee entries in database, using JDBC batching.
+     * If the list is larger than MAX_BATCH_SIZE, throws error
+     * @param employees
+     * @return result for each employee, in the same order as the request
+     */
+    @PostMapping("/employees/batch")
+    public ResponseEntity<List<BatchItemResult>> saveEmployees(@RequestBody List<Employee> employees) {
+        checkBatchSize(employees);
+        List<BatchItemResult> results = employeeService.saveEmployees(employees);
+        logger.info("Employee batch saved - size: " + employees.size());
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Overwrites data of existing employees with contents of request body, matching them by ID, using JDBC batching.
+     * Employees that do not exist are reported in the results rather than failing the whole batch.
+     * If the list is larger than MAX_BATCH_SIZE, throws error
+     * @param employees
+     * @return result for each employee, in the same order as the request
+     */
+    @PutMapping("/employees/batch")
+    public ResponseEntity<List<BatchItemResult>> updateEmployees(@RequestBody List<Employee> employees) {
+        checkBatchSize(employees);
+        List<BatchItemResult> results = employeeService.updateEmployees(employees);
+        logger.info("Employee batch updated - size: " + employees.size());
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Builds ETag for a page of employees from the ID and version of each employee on it, and the cursor to the next page
+     * @param page
+     * @return
+     */
+    private String pageETag(EmployeePage page) {
+        StringBuilder versions = new StringBuilder();
+        for (Employee emp : page.getEmployees()) {
+            versions.append(emp.getId()).append(':').append(emp.getVersion()).append(',');
+        }
+        versions.append(page.getNextCursor());
+        return "\"" + DigestUtils.md5DigestAsHex(versions.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Names a percentile as "p" followed by its value, without a fraction if it is a whole number (for example "p90")
+     * @param percentile
+     * @return
+     */
+    private static String percentileName(double percentile) {
+        return percentile == Math.rint(percentile) ? "p" + (long) percentile : "p" + percentile;
+    }
+
+    /**
+     * Writes each item the source passes on as one line of JSON
+     * @param response
+     * @param writer
+     * @param source
+     * @throws IOException
+     */
+    private <T> void writeLines(HttpServletResponse response, ObjectWriter writer,
+                                Consumer<Consumer<T>> source) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        boolean[] firstLine = {true};
+
+        source.accept(item -> {
+            try {
+                out.write(writer.writeValueAsBytes(item));
+                out.write('\n');
+                // send the first line straight away so the client does not wait for a full buffer
+                if (firstLine[0]) {
+                    response.flushBuffer();
+                    firstLine[0] = false;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.flush();
+    }
+
+    /**
+     * Splits a comma separated list of fields, dropping repeats. If a field is not one of EMPLOYEE_FIELDS,
+     * or no field is given, throws error
+     * @param fields
+     * @return
+     */
+    private List<String> parseFields(String fields) {
+        List<String> fieldList = Arrays.stream(fields.split(",")).map(String::trim).filter(f -> !f.isEmpty())
+                .distinct().collect(Collectors.toList());
+        if (fieldList.isEmpty())
+            throw new InvalidRequestException("fields must not be empty");
+        for (String field : fieldList) {
+            if (!EMPLOYEE_FIELDS.contains(field))
+                throw new InvalidRequestException("Unknown field - field: " + field + ", known fields: "
+                        + String.join(",", EMPLOYEE_FIELDS));
+        }
+        return fieldList;
+    }
+
+    private EmployeeSearchCriteria searchCriteria(String department, Integer minSalary, Integer maxSalary,
+                                                  String namePrefix) {
+        if (minSalary != null && maxSalary != null && minSalary > maxSalary)
+            throw new InvalidRequestException("minSalary must not be greater than maxSalary - minSalary: " + minSalary
+                    + ", maxSalary: " + maxSalary);
+        return new EmployeeSearchCriteria(department, minSalary, maxSalary,
+                namePrefix == null || namePrefix.isEmpty() ? null : namePrefix);
+    }
+
+    private void checkIndexesReady() {
+        if (!employeeIndexUpdater.isReady())
+            throw new ServiceUnavailableException("Employee indexes are still being loaded");
+    }
+
+    private void checkLookup(List<Long> ids) {
+        if (ids.size() > MAX_LOOKUP_SIZE)
+            throw new InvalidRequestException("Lookup must contain at most " + MAX_LOOKUP_SIZE + " IDs - size: " + ids.size());
+        int missing = ids.indexOf(null);
+        if (missing >= 0)
+            throw new InvalidRequestException("Lookup IDs must not be empty - position: " + missing);
+    }
+
+    private void checkBatchSize(List<Employee> employees) {
+        if (employees.size() > MAX_BATCH_SIZE)
+            throw new InvalidRequestException("Batch must contain at most " + MAX_BATCH_SIZE + " employees - size: " + employees.size());
     }
 
 }
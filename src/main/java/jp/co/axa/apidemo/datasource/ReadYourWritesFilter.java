@@ -0,0 +1,66 @@
+package jp.co.axa.apidemo.datasource;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Sends the reads of a client to the primary for a short window after it writes, so that it sees its own writes
+ * even when the replicas lag behind. The end of the window is kept by the client in a cookie, which is set on every
+ * write request, so any node can honour it. Clients that do not keep cookies read from the replicas right away
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String COOKIE_NAME = "primary-until";
+
+    private static final Set<String> READ_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS"));
+
+    private final long windowMillis;
+
+    public ReadYourWritesFilter(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        boolean write = !READ_METHODS.contains(request.getMethod());
+        if (write) {
+            // set before the response is committed, whether or not the write succeeds
+            Cookie cookie = new Cookie(COOKIE_NAME, String.valueOf(now + windowMillis));
+            cookie.setMaxAge((int) Math.max(1, (windowMillis + 999) / 1000));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+
+        ReplicaRoutingDataSource.setPrimaryRequired(write || primaryUntil(request) > now);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.setPrimaryRequired(false);
+        }
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        if (request.getCookies() == null) return 0;
+        for (Cookie cookie : request.getCookies()) {
+            if (!COOKIE_NAME.equals(cookie.getName())) continue;
+            try {
+                return Long.parseLong(cookie.getValue());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,237 @@
+package jp.co.axa.apidemo.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * DataSource that sends the connections of read-only transactions to read replicas, and every other connection
+ * to the primary. The transaction has to be known to be read-only before its connection is taken,
+ * so this is used behind a LazyConnectionDataSourceProxy, which takes it at the first statement.
+ * Replicas are checked in the background, and those that fail a check or a connection attempt are skipped
+ * until they pass a check again. When no replica is healthy, reads go to the primary.
+ * A thread can require the primary for its reads, for example to read its own writes before the replicas have them
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final ThreadLocal<Boolean> primaryRequired = new ThreadLocal<>();
+
+    public enum Selection {
+        // each replica in turn
+        ROUND_ROBIN,
+        // the replica with the fewest connections handed out by this DataSource and not yet closed
+        LEAST_CONNECTIONS
+    }
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final Selection selection;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private ScheduledExecutorService healthChecker;
+
+    /**
+     * @param primary
+     * @param replicas replica DataSources by name, used in logs
+     * @param selection
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, Selection selection) {
+        this.primary = primary;
+        this.selection = selection;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+    }
+
+    /**
+     * Sets whether reads of the current thread go to the primary, until it is set again
+     * @param required
+     */
+    public static void setPrimaryRequired(boolean required) {
+        if (required) {
+            primaryRequired.set(Boolean.TRUE);
+        } else {
+            primaryRequired.remove();
+        }
+    }
+
+    public static boolean isPrimaryRequired() {
+        return Boolean.TRUE.equals(primaryRequired.get());
+    }
+
+    /**
+     * Runs call with the reads of the current thread sent to the primary, then restores the previous setting
+     * @param call
+     * @return
+     */
+    public static <T> T callOnPrimary(Supplier<T> call) {
+        boolean required = isPrimaryRequired();
+        setPrimaryRequired(true);
+        try {
+            return call.get();
+        } finally {
+            setPrimaryRequired(required);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = selectReplica();
+        if (replica == null) return primary.getConnection();
+        try {
+            return replica.track(replica.dataSource.getConnection());
+        } catch (SQLException e) {
+            replica.markHealthy(false, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Replica replica = selectReplica();
+        if (replica == null) return primary.getConnection(username, password);
+        try {
+            return replica.track(replica.dataSource.getConnection(username, password));
+        } catch (SQLException e) {
+            replica.markHealthy(false, e);
+            return primary.getConnection(username, password);
+        }
+    }
+
+    /**
+     * Checks every replica now, then every interval
+     * @param intervalMillis
+     * @param timeoutSeconds time a replica has to answer a check
+     */
+    public void startHealthChecks(long intervalMillis, int timeoutSeconds) {
+        healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(() -> checkHealth(timeoutSeconds), 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the health checks, and closes the primary and replica DataSources that can be closed
+     */
+    public void close() {
+        if (healthChecker != null) healthChecker.shutdownNow();
+        closeIfPossible(primary);
+        replicas.forEach(replica -> closeIfPossible(replica.dataSource));
+    }
+
+    /**
+     * Checks that a connection to each replica can be taken and is valid
+     * @param timeoutSeconds
+     */
+    public void checkHealth(int timeoutSeconds) {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                replica.markHealthy(connection.isValid(timeoutSeconds), null);
+            } catch (SQLException e) {
+                replica.markHealthy(false, e);
+            }
+        }
+    }
+
+    /**
+     * @return the names of the replicas that reads are sent to
+     */
+    public List<String> getHealthyReplicas() {
+        List<String> names = new ArrayList<>();
+        replicas.stream().filter(r -> r.healthy).forEach(r -> names.add(r.name));
+        return names;
+    }
+
+    /**
+     * @return the replica for the connection requested by the current thread, or null for the primary
+     */
+    private Replica selectReplica() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || isPrimaryRequired()) return null;
+        List<Replica> healthy = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica.healthy) healthy.add(replica);
+        }
+        if (healthy.isEmpty()) return null;
+
+        // starting from the next replica in turn, so that ties in the number of connections are spread out too
+        int start = Math.floorMod(nextReplica.getAndIncrement(), healthy.size());
+        Replica selected = healthy.get(start);
+        if (selection == Selection.LEAST_CONNECTIONS) {
+            for (int i = 1; i < healthy.size(); i++) {
+                Replica replica = healthy.get((start + i) % healthy.size());
+                if (replica.activeConnections.get() < selected.activeConnections.get()) selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    private static void closeIfPossible(DataSource dataSource) {
+        if (!(dataSource instanceof AutoCloseable)) return;
+        try {
+            ((AutoCloseable) dataSource).close();
+        } catch (Exception e) {
+            logger.warn("Failed to close DataSource", e);
+        }
+    }
+
+    private static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private final AtomicInteger activeConnections = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private void markHealthy(boolean healthy, SQLException cause) {
+            if (this.healthy == healthy) return;
+            this.healthy = healthy;
+            if (healthy) {
+                logger.info("Replica " + name + " is healthy again, sending reads to it");
+            } else {
+                logger.warn("Replica " + name + " is unhealthy, no longer sending reads to it", cause);
+            }
+        }
+
+        /**
+         * Counts the connection as active until it is closed
+         */
+        private Connection track(Connection connection) {
+            activeConnections.incrementAndGet();
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(ReplicaRoutingDataSource.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+                            activeConnections.decrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
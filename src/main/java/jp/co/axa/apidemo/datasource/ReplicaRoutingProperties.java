@@ -0,0 +1,38 @@
+package jp.co.axa.apidemo.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of read replica routing, under app.datasource.routing. The primary is configured with spring.datasource
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.datasource.routing")
+public class ReplicaRoutingProperties {
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    private ReplicaRoutingDataSource.Selection selection = ReplicaRoutingDataSource.Selection.ROUND_ROBIN;
+
+    private long healthCheckIntervalMs = 5000;
+
+    private int healthCheckTimeoutSeconds = 1;
+
+    // time after a client's write during which its reads go to the primary. 0 sends them to the replicas right away
+    private long readYourWritesWindowMs = 0;
+
+    @Getter
+    @Setter
+    public static class Replica {
+        private String url;
+        private String username = "sa";
+        private String password = "";
+        // 0 keeps the pool size of spring.datasource.hikari
+        private int maximumPoolSize = 0;
+    }
+}
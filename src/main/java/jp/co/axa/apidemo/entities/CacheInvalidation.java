@@ -0,0 +1,53 @@
+package jp.co.axa.apidemo.entities;
+
+import lombok.Getter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+/**
+ * Batch of employee IDs changed on one node, written to the shared database so that the other nodes
+ * evict them from their caches. See OutboxInvalidationTransport
+ */
+@Entity
+@Table(name="CACHE_INVALIDATION", indexes = @Index(name="IDX_CACHE_INVALIDATION_CREATED_AT", columnList="CREATED_AT"))
+public class CacheInvalidation {
+
+    // an identity column rather than a sequence with a pooled allocation, so that IDs follow the order in which
+    // rows are inserted by all nodes, and readers can spot the rows of transactions that have not committed yet
+    @Getter
+    @Id
+    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @Column(name="ID")
+    private Long id;
+
+    @Getter
+    @Column(name="NODE_ID", nullable=false)
+    private String nodeId;
+
+    // comma separated
+    @Getter
+    @Lob
+    @Column(name="EMPLOYEE_IDS", nullable=false)
+    private String employeeIds;
+
+    // epoch milliseconds, used to delete old rows
+    @Getter
+    @Column(name="CREATED_AT", nullable=false)
+    private Long createdAt;
+
+    protected CacheInvalidation() {
+    }
+
+    public CacheInvalidation(String nodeId, String employeeIds, long createdAt) {
+        this.nodeId = nodeId;
+        this.employeeIds = employeeIds;
+        this.createdAt = createdAt;
+    }
+}
@@ -1,24 +1,45 @@
 package jp.co.axa.apidemo.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
+import java.io.Serializable;
 
 @Entity
-@Table(name="EMPLOYEE")
-public class Employee {
+// the indexes on department, salary and name are used by the search conditions in EmployeeSpecifications
+@Table(name="EMPLOYEE", indexes = {
+        @Index(name="IDX_EMPLOYEE_CHANGE_SEQ", columnList="CHANGE_SEQ"),
+        @Index(name="IDX_EMPLOYEE_DEPARTMENT", columnList="DEPARTMENT"),
+        @Index(name="IDX_EMPLOYEE_SALARY", columnList="EMPLOYEE_SALARY"),
+        @Index(name="IDX_EMPLOYEE_NAME", columnList="EMPLOYEE_NAME")})
+// serializable so that employeeCache can hold employees off heap and on disk
+public class Employee implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @Getter
     @Setter
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    // IDs come from a sequence rather than an identity column so that Hibernate can batch inserts.
+    // The pooled optimizer hands out increment_size IDs per database round trip.
+    // When employees are sharded, the ID also tells which shard the employee is stored in
+    @GeneratedValue(strategy= GenerationType.SEQUENCE, generator="employee_seq")
+    @GenericGenerator(name="employee_seq", strategy="jp.co.axa.apidemo.sharding.ShardedSequenceGenerator", parameters = {
+            @Parameter(name="sequence_name", value="EMPLOYEE_SEQ"),
+            @Parameter(name="increment_size", value="50"),
+            @Parameter(name="optimizer", value="pooled")})
     private Long id;
 
     @Getter
@@ -37,4 +58,20 @@ public class Employee {
     @Column(name="DEPARTMENT")
     private String department;
 
+    // incremented on every update. Used for optimistic locking and as the ETag of the employee
+    @Getter
+    @Setter
+    @Version
+    @Column(name="VERSION")
+    private Long version;
+
+    // position of the employee's latest change in the sequence shared with EmployeeTombstone.
+    // The database assigns it on every insert and update, including bulk JPQL updates, so Hibernate never writes it
+    // and the value held by an entity that has just been saved is not up to date
+    @Getter
+    @JsonIgnore
+    @Column(name="CHANGE_SEQ", insertable=false, updatable=false,
+            columnDefinition="BIGINT DEFAULT NEXT VALUE FOR EMPLOYEE_CHANGE_SEQ ON UPDATE NEXT VALUE FOR EMPLOYEE_CHANGE_SEQ")
+    private Long changeSeq;
+
 }
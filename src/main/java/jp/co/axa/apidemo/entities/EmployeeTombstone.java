@@ -0,0 +1,46 @@
+package jp.co.axa.apidemo.entities;
+
+import lombok.Getter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+/**
+ * Record of a deleted employee, so that clients syncing changes find out about the delete.
+ * Its ID is taken from the same sequence as Employee.changeSeq, so deletes and updates share one ordering
+ */
+@Entity
+@Table(name="EMPLOYEE_TOMBSTONE")
+public class EmployeeTombstone {
+
+    // allocationSize is 1 because Employee.changeSeq draws from the same sequence in the database,
+    // which would be given values inside a block that Hibernate had already reserved for itself
+    @Getter
+    @Id
+    @GeneratedValue(strategy= GenerationType.SEQUENCE, generator="employee_change_seq")
+    @SequenceGenerator(name="employee_change_seq", sequenceName="EMPLOYEE_CHANGE_SEQ", allocationSize=1)
+    @Column(name="CHANGE_SEQ")
+    private Long changeSeq;
+
+    @Getter
+    @Column(name="EMPLOYEE_ID", nullable=false)
+    private Long employeeId;
+
+    // epoch milliseconds, used to delete tombstones older than the retention period
+    @Getter
+    @Column(name="DELETED_AT", nullable=false)
+    private Long deletedAt;
+
+    protected EmployeeTombstone() {
+    }
+
+    public EmployeeTombstone(Long employeeId, long deletedAt) {
+        this.employeeId = employeeId;
+        this.deletedAt = deletedAt;
+    }
+}
@@ -0,0 +1,8 @@
+package jp.co.axa.apidemo.exceptions;
+
+public class CursorExpiredException extends RuntimeException {
+
+    public CursorExpiredException(String errorMessage) {
+        super(errorMessage);
+    }
+}
@@ -0,0 +1,8 @@
+package jp.co.axa.apidemo.exceptions;
+
+public class InvalidRequestException extends RuntimeException {
+
+    public InvalidRequestException(String errorMessage) {
+        super(errorMessage);
+    }
+}
@@ -0,0 +1,8 @@
+package jp.co.axa.apidemo.exceptions;
+
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String errorMessage) {
+        super(errorMessage);
+    }
+}
@@ -39,6 +39,57 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseMessage(ex.getMessage()));
     }
 
+    /**
+     * Handles custom error thrown when request parameters are outside of their allowed values
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(InvalidRequestException.class)
+    protected ResponseEntity<Object> handleInvalidRequest(
+            InvalidRequestException ex) {
+        logger.error(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseMessage(ex.getMessage()));
+    }
+
+    /**
+     * Handles custom error thrown when a conditional request's precondition does not hold.
+     * For example, if the If-Match header of an update does not match the employee's current version
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(PreconditionFailedException.class)
+    protected ResponseEntity<Object> handlePreconditionFailed(
+            PreconditionFailedException ex) {
+        logger.error(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(new ResponseMessage(ex.getMessage()));
+    }
+
+    /**
+     * Handles custom error thrown when a cursor points at data that is no longer kept.
+     * For example, a change feed cursor behind deletes whose tombstones have been purged
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(CursorExpiredException.class)
+    protected ResponseEntity<Object> handleCursorExpired(
+            CursorExpiredException ex) {
+        logger.error(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GONE).body(new ResponseMessage(ex.getMessage()));
+    }
+
+    /**
+     * Handles custom error thrown when the server cannot take on more work of some kind right now.
+     * For example, if the change stream already has as many subscribers as it allows
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(ServiceUnavailableException.class)
+    protected ResponseEntity<Object> handleServiceUnavailable(
+            ServiceUnavailableException ex) {
+        logger.error(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ResponseMessage(ex.getMessage()));
+    }
+
     /**
      * Handles error thrown when request violates constraints. For example, if field with @NotNull annotation is null in request
      * @param ex
@@ -0,0 +1,8 @@
+package jp.co.axa.apidemo.exceptions;
+
+public class ServiceUnavailableException extends RuntimeException {
+
+    public ServiceUnavailableException(String errorMessage) {
+        super(errorMessage);
+    }
+}
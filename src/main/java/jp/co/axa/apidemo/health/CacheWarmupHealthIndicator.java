@@ -0,0 +1,34 @@
+package jp.co.axa.apidemo.health;
+
+import jp.co.axa.apidemo.message.CacheWarmupStatus;
+import jp.co.axa.apidemo.services.EmployeeCacheWarmupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the node out of service until the employee cache warm-up is over, whether it finished or timed out.
+ * /actuator/health then answers 503, so that a load balancer checking it does not route requests to a cold node
+ */
+@Component
+public class CacheWarmupHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    private EmployeeCacheWarmupService warmupService;
+
+    public void setWarmupService(EmployeeCacheWarmupService warmupService) {
+        this.warmupService = warmupService;
+    }
+
+    @Override
+    public Health health() {
+        CacheWarmupStatus status = warmupService.getStatus();
+        Health.Builder health = status.isFinished() ? Health.up() : Health.outOfService();
+        return health.withDetail("state", status.getState())
+                .withDetail("cached", status.getCached())
+                .withDetail("target", status.getTarget())
+                .withDetail("elapsedMillis", status.getElapsedMillis())
+                .build();
+    }
+}
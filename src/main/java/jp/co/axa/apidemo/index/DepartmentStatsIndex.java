@@ -0,0 +1,103 @@
+package jp.co.axa.apidemo.index;
+
+import jp.co.axa.apidemo.message.DepartmentStats;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headcount and salary aggregates per department, updated incrementally on every change.
+ * Each department has its own lock-free counters, so concurrent writes only share memory with writes
+ * to the same department, and reading the stats of every department costs O(departments)
+ */
+@Component
+public class DepartmentStatsIndex implements EmployeeIndex {
+
+    // ConcurrentHashMap does not allow null keys, so employees without a department are kept under this key
+    private static final String NO_DEPARTMENT = "";
+
+    private final Map<String, Aggregate> departments = new ConcurrentHashMap<>();
+
+    @Override
+    public void update(IndexedEmployee previous, IndexedEmployee current) {
+        if (previous != null && current != null
+                && Objects.equals(previous.getDepartment(), current.getDepartment())
+                && Objects.equals(previous.getSalary(), current.getSalary())) {
+            // only the name changed
+            return;
+        }
+        if (previous != null) aggregate(previous.getDepartment()).remove(previous.getSalary());
+        if (current != null) aggregate(current.getDepartment()).add(current.getSalary());
+    }
+
+    /**
+     * Gets aggregates of every department that has employees, ordered by department name.
+     * Employees without a department are reported under a null department, first
+     * @return
+     */
+    public List<DepartmentStats> getStats() {
+        List<DepartmentStats> stats = new ArrayList<>(departments.size());
+        departments.forEach((name, aggregate) -> {
+            DepartmentStats departmentStats = aggregate.toStats(NO_DEPARTMENT.equals(name) ? null : name);
+            if (departmentStats.getHeadcount() > 0) stats.add(departmentStats);
+        });
+        stats.sort(Comparator.comparing(DepartmentStats::getDepartment, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return stats;
+    }
+
+    private Aggregate aggregate(String department) {
+        return departments.computeIfAbsent(department == null ? NO_DEPARTMENT : department, d -> new Aggregate());
+    }
+
+    /**
+     * Counters of one department. Aggregates are never removed, even once the department is empty,
+     * so that a concurrent add can never update an aggregate that is no longer in the map
+     */
+    private static class Aggregate {
+        private final LongAdder headcount = new LongAdder();
+        private final LongAdder salaried = new LongAdder();
+        private final LongAdder totalSalary = new LongAdder();
+        // number of employees at each salary, so that min and max stay correct when an employee is removed
+        private final ConcurrentNavigableMap<Integer, Integer> salaries = new ConcurrentSkipListMap<>();
+
+        private void add(Integer salary) {
+            headcount.increment();
+            if (salary == null) return;
+            salaried.increment();
+            totalSalary.add(salary);
+            salaries.merge(salary, 1, Integer::sum);
+        }
+
+        private void remove(Integer salary) {
+            headcount.decrement();
+            if (salary == null) return;
+            salaried.decrement();
+            totalSalary.add(-salary);
+            // a count that drops to 0 returns null, which removes the salary from the map
+            salaries.merge(salary, -1, (count, delta) -> count + delta == 0 ? null : count + delta);
+        }
+
+        /**
+         * Reads the counters. While writes are in progress, the figures may not all reflect the same set of changes
+         * @param department
+         * @return
+         */
+        private DepartmentStats toStats(String department) {
+            long count = salaried.sum();
+            long total = totalSalary.sum();
+            Map.Entry<Integer, Integer> min = salaries.firstEntry();
+            Map.Entry<Integer, Integer> max = salaries.lastEntry();
+            return new DepartmentStats(department, headcount.sum(), total,
+                    min == null ? null : min.getKey(), max == null ? null : max.getKey(),
+                    count > 0 ? (double) total / count : null);
+        }
+    }
+}
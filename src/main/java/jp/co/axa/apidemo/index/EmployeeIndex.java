@@ -0,0 +1,29 @@
+package jp.co.axa.apidemo.index;
+
+import java.util.Collection;
+
+/**
+ * In-memory structure derived from employee data, kept up to date by EmployeeIndexUpdater.
+ * Implementations must be safe to call from many threads at once. Calls for the same employee ID never overlap,
+ * and arrive in the order the changes were applied
+ */
+public interface EmployeeIndex {
+
+    /**
+     * Applies one change to the index
+     * @param previous employee data before the change, or null if the employee was created
+     * @param current employee data after the change, or null if the employee was deleted
+     */
+    void update(IndexedEmployee previous, IndexedEmployee current);
+
+    /**
+     * Adds all employees at startup, before any change is applied.
+     * Indexes that can be built faster in bulk than one employee at a time override this
+     * @param employees
+     */
+    default void load(Collection<IndexedEmployee> employees) {
+        for (IndexedEmployee employee : employees) {
+            update(null, employee);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package jp.co.axa.apidemo.index;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps every EmployeeIndex up to date with the employees stored in database.
+ * Indexes are loaded once at startup with all employees, then updated from the change events
+ * that EmployeeService publishes after each commit, so they never query the database themselves.
+ * The last known data of each employee is kept here, so that indexes are told what a change replaced
+ * (for example, which department an employee moved out of) without reading it back from the database.
+ * That copy costs about 130 bytes per employee (map entry, boxed ID, salary and version) plus its name, which
+ * NameIndex shares, so around 190 MB for 1M employees with short names. Department names are stored once each
+ */
+@Component
+public class EmployeeIndexUpdater {
+    private static final Logger logger = LoggerFactory.getLogger(EmployeeIndexUpdater.class);
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private List<EmployeeIndex> indexes;
+
+    private final ConcurrentHashMap<Long, IndexedEmployee> employees = new ConcurrentHashMap<>();
+
+    // one instance of each department name, shared by every employee of the department
+    private final ConcurrentHashMap<String, String> departments = new ConcurrentHashMap<>();
+
+    // IDs deleted before the indexes were loaded, so that rows read by the seed before their delete are not added back
+    private final Set<Long> deletedBeforeReady = ConcurrentHashMap.newKeySet();
+
+    // changes hold the read lock while they are applied, and loading the indexes holds the write lock,
+    // so that no change is applied to an index while it is being loaded
+    private final ReadWriteLock applyLock = new ReentrantReadWriteLock();
+
+    private volatile boolean ready;
+
+    public void setIndexes(List<EmployeeIndex> indexes) {
+        this.indexes = indexes;
+    }
+
+    public void setEmployeeService(EmployeeService employeeService) {
+        this.employeeService = employeeService;
+    }
+
+    /**
+     * Seeds the indexes in background, so that startup does not wait for all employees to be read.
+     * Endpoints served by the indexes answer 503 until they are ready
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread thread = new Thread(() -> {
+            try {
+                seed();
+            } catch (RuntimeException e) {
+                logger.error("Employee indexes could not be seeded", e);
+            }
+        }, "index-seed");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads all employees stored in database, then loads them into the indexes in bulk.
+     * Changes committed before the indexes are loaded are only recorded, and take precedence over the rows read here
+     */
+    public void seed() {
+        long start = System.currentTimeMillis();
+        employeeService.exportEmployees(emp -> {
+            IndexedEmployee seeded = indexed(emp);
+            employees.compute(seeded.getId(),
+                    (id, known) -> known != null || deletedBeforeReady.contains(id) ? known : seeded);
+        });
+
+        applyLock.writeLock().lock();
+        try {
+            for (EmployeeIndex index : indexes) {
+                index.load(employees.values());
+            }
+            ready = true;
+            deletedBeforeReady.clear();
+        } finally {
+            applyLock.writeLock().unlock();
+        }
+        logger.info("Employee indexes seeded - employees: " + employees.size()
+                + ", time: " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * @return true once the indexes hold every employee stored in database
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Applies a committed change to the indexes, or only records it if the indexes are not loaded yet.
+     * Changes to the same employee are applied one at a time. If a change arrives after a newer version of the
+     * employee has already been applied (two commits racing to publish), it is ignored
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChange(EmployeeChangeEvent event) {
+        applyLock.readLock().lock();
+        try {
+            boolean loaded = ready;
+            if (event.getType() == EmployeeChangeEvent.Type.DELETED) {
+                if (!loaded) deletedBeforeReady.add(event.getEmployeeId());
+                employees.computeIfPresent(event.getEmployeeId(), (id, known) -> {
+                    if (loaded) apply(known, null);
+                    return null;
+                });
+                return;
+            }
+
+            IndexedEmployee current = indexed(event.getEmployee());
+            employees.compute(current.getId(), (id, known) -> {
+                if (known != null && isOlder(current, known)) return known;
+                if (loaded) apply(known, current);
+                return current;
+            });
+        } finally {
+            applyLock.readLock().unlock();
+        }
+    }
+
+    private IndexedEmployee indexed(Employee employee) {
+        String department = employee.getDepartment() == null ? null
+                : departments.computeIfAbsent(employee.getDepartment(), name -> name);
+        return new IndexedEmployee(employee.getId(), employee.getName(), department,
+                employee.getSalary(), employee.getVersion());
+    }
+
+    private void apply(IndexedEmployee previous, IndexedEmployee current) {
+        for (EmployeeIndex index : indexes) {
+            index.update(previous, current);
+        }
+    }
+
+    /**
+     * Whether employee is an older version than known. Every write publishes the version it wrote,
+     * so a version is only unknown for employees given without one, whose change is then assumed to be newer
+     * @param employee
+     * @param known
+     * @return
+     */
+    private static boolean isOlder(IndexedEmployee employee, IndexedEmployee known) {
+        return employee.getVersion() != null && known.getVersion() != null
+                && employee.getVersion() < known.getVersion();
+    }
+}
@@ -0,0 +1,46 @@
+package jp.co.axa.apidemo.index;
+
+/**
+ * Immutable copy of the fields of an employee that the in-memory indexes use.
+ * Employee entities are mutable and shared with the cache, so the indexes never keep references to them
+ */
+public final class IndexedEmployee {
+
+    private final long id;
+
+    private final String name;
+
+    private final String department;
+
+    private final Integer salary;
+
+    private final Long version;
+
+    public IndexedEmployee(long id, String name, String department, Integer salary, Long version) {
+        this.id = id;
+        this.name = name;
+        this.department = department;
+        this.salary = salary;
+        this.version = version;
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getDepartment() {
+        return this.department;
+    }
+
+    public Integer getSalary() {
+        return this.salary;
+    }
+
+    public Long getVersion() {
+        return this.version;
+    }
+}
@@ -0,0 +1,301 @@
+package jp.co.axa.apidemo.index;
+
+import jp.co.axa.apidemo.message.NameSuggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Case-insensitive index of employee names for type-ahead: prefix and substring matches.
+ * Prefixes of up to PREFIX_DEPTH characters map to the IDs of the names starting with them, which is a prefix trie
+ * cut off at that depth and flattened into one map. Every three consecutive characters (trigram) of a name map to
+ * the IDs of the names containing them. A longer query is matched by narrowing down candidates with these postings,
+ * then checking the candidate names themselves.
+ * Keys are characters packed into a long, and postings are sorted primitive arrays of IDs.
+ * Reads share a lock and writes take it exclusively
+ */
+@Component
+public class NameIndex implements EmployeeIndex {
+    private static final Logger logger = LoggerFactory.getLogger(NameIndex.class);
+
+    static final int PREFIX_DEPTH = 3;
+
+    // bytes used by a map entry with a Long key: the entry itself, the boxed key and the slot in the table
+    private static final int MAP_ENTRY_BYTES = 32 + 16 + 8;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Map<Long, PostingList> prefixes = new HashMap<>();
+
+    private Map<Long, PostingList> trigrams = new HashMap<>();
+
+    private Map<Long, String> names = new HashMap<>();
+
+    @Override
+    public void update(IndexedEmployee previous, IndexedEmployee current) {
+        if (previous != null && current != null && Objects.equals(previous.getName(), current.getName())) return;
+        lock.writeLock().lock();
+        try {
+            if (previous != null && previous.getName() != null) remove(previous.getId(), previous.getName());
+            if (current != null && current.getName() != null) add(current.getId(), current.getName());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Builds the index from all employees in parallel: each chunk of employees is split into keys on its own thread,
+     * and the posting lists are then merged and sorted, again in parallel
+     * @param employees
+     */
+    @Override
+    public void load(Collection<IndexedEmployee> employees) {
+        lock.writeLock().lock();
+        try {
+            if (!names.isEmpty()) {
+                EmployeeIndex.super.load(employees);
+                return;
+            }
+            List<IndexedEmployee> named = employees.stream().filter(e -> e.getName() != null).collect(Collectors.toList());
+            int chunks = Runtime.getRuntime().availableProcessors() * 4;
+            int chunkSize = (named.size() + chunks - 1) / chunks;
+            List<Keys> partials = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> new Keys(named.subList(Math.min(named.size(), c * chunkSize),
+                                                          Math.min(named.size(), (c + 1) * chunkSize))))
+                    .collect(Collectors.toList());
+
+            Keys merged = new Keys(Collections.emptyList());
+            partials.forEach(merged::addAll);
+            prefixes = toPostingLists(merged.prefixes);
+            trigrams = toPostingLists(merged.trigrams);
+            names = new HashMap<>(named.size() * 4 / 3 + 1);
+            named.forEach(e -> names.put(e.getId(), e.getName()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Name index loaded - names: " + size() + ", memory: " + (memoryBytes() >> 20) + " MB");
+    }
+
+    /**
+     * Gets employees whose names start with the query, followed by those whose names contain it elsewhere,
+     * each in ID order, up to limit employees. Matching ignores case.
+     * Queries shorter than three characters only match prefixes
+     * @param query
+     * @param limit
+     * @return
+     */
+    public List<NameSuggestion> suggest(String query, int limit) {
+        String q = query.trim();
+        List<NameSuggestion> results = new ArrayList<>(Math.min(limit, 16));
+        if (q.isEmpty()) return results;
+
+        lock.readLock().lock();
+        try {
+            // every name that matches contains each trigram of the query, so these lists narrow down both passes
+            List<PostingList> lists = new ArrayList<>();
+            for (int i = 0; i + 3 <= q.length(); i++) {
+                PostingList list = trigrams.get(trigramKey(q, i));
+                if (list == null) return results;
+                lists.add(list);
+            }
+            PostingList startingWith = prefixes.get(prefixKey(q, Math.min(q.length(), PREFIX_DEPTH)));
+            if (startingWith != null) {
+                List<PostingList> prefixLists = new ArrayList<>(lists);
+                prefixLists.add(startingWith);
+                addMatches(q, prefixLists, true, null, limit, results);
+            }
+            // names that start with the query were already added as prefix matches. Their postings can only be skipped
+            // when they hold the whole query: names sharing just the first PREFIX_DEPTH characters may contain it later
+            PostingList excluded = q.length() <= PREFIX_DEPTH ? startingWith : null;
+            if (!lists.isEmpty()) addMatches(q, lists, false, excluded, limit, results);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of names in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return names.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimates the memory used by the index: its maps and posting lists.
+     * The name strings are not counted, as they are shared with the data kept by EmployeeIndexUpdater
+     * @return approximate number of bytes
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) MAP_ENTRY_BYTES * (prefixes.size() + trigrams.size() + names.size());
+            for (PostingList list : prefixes.values()) bytes += list.memoryBytes();
+            for (PostingList list : trigrams.values()) bytes += list.memoryBytes();
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the names whose IDs are in every one of lists and that start with the query (prefix) or contain it
+     * elsewhere (not prefix), up to limit names. IDs in excluded are skipped without looking up their names.
+     * The shortest list is walked in ID order, and the others are sought forward from where the last ID was found
+     */
+    private void addMatches(String q, List<PostingList> lists, boolean prefix, PostingList excluded, int limit,
+                            List<NameSuggestion> results) {
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        PostingList shortest = lists.get(0);
+        int[] positions = new int[lists.size()];
+        int excludedPosition = 0;
+        for (int i = 0; i < shortest.size() && results.size() < limit; i++) {
+            long id = shortest.get(i);
+            if (!allContain(lists, positions, id)) continue;
+            if (excluded != null) {
+                excludedPosition = excluded.seek(id, excludedPosition);
+                if (excludedPosition < excluded.size() && excluded.get(excludedPosition) == id) continue;
+            }
+            String name = names.get(id);
+            boolean matches = prefix ? startsWithIgnoreCase(name, q)
+                                     : !startsWithIgnoreCase(name, q) && containsIgnoreCase(name, q);
+            if (matches) results.add(new NameSuggestion(id, name));
+        }
+    }
+
+    private static boolean allContain(List<PostingList> lists, int[] positions, long id) {
+        for (int l = 1; l < lists.size(); l++) {
+            PostingList list = lists.get(l);
+            positions[l] = list.seek(id, positions[l]);
+            if (positions[l] == list.size() || list.get(positions[l]) != id) return false;
+        }
+        return true;
+    }
+
+    private void add(long id, String name) {
+        names.put(id, name);
+        for (int d = 1; d <= Math.min(name.length(), PREFIX_DEPTH); d++) {
+            prefixes.computeIfAbsent(prefixKey(name, d), k -> new PostingList()).add(id);
+        }
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            trigrams.computeIfAbsent(trigramKey(name, i), k -> new PostingList()).add(id);
+        }
+    }
+
+    private void remove(long id, String name) {
+        names.remove(id);
+        for (int d = 1; d <= Math.min(name.length(), PREFIX_DEPTH); d++) {
+            removeFrom(prefixes, prefixKey(name, d), id);
+        }
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            removeFrom(trigrams, trigramKey(name, i), id);
+        }
+    }
+
+    private static void removeFrom(Map<Long, PostingList> postings, long key, long id) {
+        PostingList list = postings.get(key);
+        if (list == null) return;
+        list.remove(id);
+        if (list.size() == 0) postings.remove(key);
+    }
+
+    private static Map<Long, PostingList> toPostingLists(Map<Long, Ids> ids) {
+        return ids.entrySet().parallelStream().collect(Collectors.toMap(Map.Entry::getKey,
+                e -> new PostingList(e.getValue().values, e.getValue().size), (a, b) -> a, HashMap::new));
+    }
+
+    /**
+     * Key of the first length characters of text, lower case. The length is kept in the top bits,
+     * so that a prefix never has the same key as a longer prefix padded with zeros
+     */
+    private static long prefixKey(String text, int length) {
+        long key = (long) length << 48;
+        for (int i = 0; i < length; i++) {
+            key |= (long) Character.toLowerCase(text.charAt(i)) << (16 * (2 - i));
+        }
+        return key;
+    }
+
+    /**
+     * Key of the three characters of text starting at from, lower case
+     */
+    private static long trigramKey(String text, int from) {
+        return (long) Character.toLowerCase(text.charAt(from)) << 32
+                | (long) Character.toLowerCase(text.charAt(from + 1)) << 16
+                | Character.toLowerCase(text.charAt(from + 2));
+    }
+
+    private static boolean startsWithIgnoreCase(String name, String q) {
+        return name.regionMatches(true, 0, q, 0, q.length());
+    }
+
+    private static boolean containsIgnoreCase(String name, String q) {
+        for (int i = 0; i + q.length() <= name.length(); i++) {
+            if (name.regionMatches(true, i, q, 0, q.length())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Unsorted, growable list of IDs
+     */
+    private static class Ids {
+        private long[] values = new long[4];
+        private int size;
+
+        private void add(long id) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = id;
+        }
+
+        private void addAll(Ids other) {
+            if (size + other.size > values.length) values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+    }
+
+    /**
+     * Keys of a chunk of names, along with the IDs of the names that have each key
+     */
+    private static class Keys {
+        private final Map<Long, Ids> prefixes = new HashMap<>();
+        private final Map<Long, Ids> trigrams = new HashMap<>();
+
+        private Keys(List<IndexedEmployee> employees) {
+            for (IndexedEmployee employee : employees) {
+                String name = employee.getName();
+                for (int d = 1; d <= Math.min(name.length(), PREFIX_DEPTH); d++) {
+                    prefixes.computeIfAbsent(prefixKey(name, d), k -> new Ids()).add(employee.getId());
+                }
+                for (int i = 0; i + 3 <= name.length(); i++) {
+                    trigrams.computeIfAbsent(trigramKey(name, i), k -> new Ids()).add(employee.getId());
+                }
+            }
+        }
+
+        private void addAll(Keys other) {
+            other.prefixes.forEach((key, ids) -> prefixes.computeIfAbsent(key, k -> new Ids()).addAll(ids));
+            other.trigrams.forEach((key, ids) -> trigrams.computeIfAbsent(key, k -> new Ids()).addAll(ids));
+        }
+    }
+}
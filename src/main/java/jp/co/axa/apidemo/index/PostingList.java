@@ -0,0 +1,95 @@
+package jp.co.axa.apidemo.index;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of employee IDs held in a primitive array, used as a posting list of an inverted index.
+ * New employees get increasing IDs, so adding one is usually an append.
+ * Not thread safe: NameIndex guards all posting lists with its own lock
+ */
+class PostingList {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] ids;
+
+    private int size;
+
+    PostingList() {
+        this.ids = EMPTY;
+    }
+
+    /**
+     * Creates posting list holding the given IDs, which may be in any order and contain duplicates
+     * @param ids
+     * @param size number of IDs of the array to use
+     */
+    PostingList(long[] ids, int size) {
+        Arrays.sort(ids, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || ids[i] != ids[unique - 1]) ids[unique++] = ids[i];
+        }
+        this.ids = Arrays.copyOf(ids, unique);
+        this.size = unique;
+    }
+
+    void add(long id) {
+        int pos = size > 0 && ids[size - 1] < id ? -(size + 1) : Arrays.binarySearch(ids, 0, size, id);
+        if (pos >= 0) return;
+        pos = -(pos + 1);
+        if (size == ids.length) ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        ids[pos] = id;
+        size++;
+    }
+
+    void remove(long id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos < 0) return;
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size--;
+        // give memory back once the list has shrunk to a quarter of its capacity
+        if (size < ids.length >> 2) ids = Arrays.copyOf(ids, size);
+    }
+
+    boolean contains(long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    /**
+     * Finds the first position at or after from whose ID is not less than id, by galloping forward from from.
+     * Walking a list with ascending IDs this way costs O(log distance) per call, so intersecting a short list
+     * with a long one does not visit every ID of the long one
+     * @param id
+     * @param from
+     * @return the position, or size() if every ID from there on is less than id
+     */
+    int seek(long id, int from) {
+        int step = 1;
+        int high = from;
+        while (high < size && ids[high] < id) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        int pos = Arrays.binarySearch(ids, from, Math.min(high + 1, size), id);
+        return pos >= 0 ? pos : -(pos + 1);
+    }
+
+    long get(int index) {
+        return ids[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return approximate number of bytes used by this posting list
+     */
+    long memoryBytes() {
+        // object header and fields, plus array header and elements
+        return 24 + 16 + 8L * ids.length;
+    }
+}
@@ -0,0 +1,74 @@
+package jp.co.axa.apidemo.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Employee IDs sorted by salary, for all employees and per department, for top earner and percentile queries.
+ * Employees without a salary are not indexed
+ */
+@Component
+public class SalaryIndex implements EmployeeIndex {
+
+    // ConcurrentHashMap does not allow null keys, so employees without a department are kept under this key
+    private static final String NO_DEPARTMENT = "";
+
+    private final SortedSalaryList all = new SortedSalaryList();
+
+    private final Map<String, SortedSalaryList> byDepartment = new ConcurrentHashMap<>();
+
+    @Override
+    public void update(IndexedEmployee previous, IndexedEmployee current) {
+        if (previous != null && current != null
+                && Objects.equals(previous.getDepartment(), current.getDepartment())
+                && Objects.equals(previous.getSalary(), current.getSalary())) {
+            return;
+        }
+        if (previous != null && previous.getSalary() != null) {
+            all.remove(previous.getSalary(), previous.getId());
+            list(previous.getDepartment()).remove(previous.getSalary(), previous.getId());
+        }
+        if (current != null && current.getSalary() != null) {
+            all.add(current.getSalary(), current.getId());
+            list(current.getDepartment()).add(current.getSalary(), current.getId());
+        }
+    }
+
+    /**
+     * Gets the IDs of the employees with the highest salaries, highest first
+     * @param department department to look in, or null for all employees
+     * @param n maximum number of IDs
+     * @return
+     */
+    public long[] topEarners(String department, int n) {
+        SortedSalaryList list = department == null ? all : byDepartment.get(department);
+        return list == null ? new long[0] : list.highest(n);
+    }
+
+    /**
+     * Gets salary percentiles, using the nearest-rank method
+     * @param department department to look in, or null for all employees
+     * @param percentiles percentiles between 0 (exclusive) and 100 (inclusive), in ascending order
+     * @return salary at each percentile, or an empty array if no employee has a salary
+     */
+    public int[] percentiles(String department, double[] percentiles) {
+        SortedSalaryList list = department == null ? all : byDepartment.get(department);
+        return list == null ? new int[0] : list.percentiles(percentiles);
+    }
+
+    /**
+     * @param department department to look in, or null for all employees
+     * @return number of employees with a salary
+     */
+    public int count(String department) {
+        SortedSalaryList list = department == null ? all : byDepartment.get(department);
+        return list == null ? 0 : list.size();
+    }
+
+    private SortedSalaryList list(String department) {
+        return byDepartment.computeIfAbsent(department == null ? NO_DEPARTMENT : department, d -> new SortedSalaryList());
+    }
+}
@@ -0,0 +1,208 @@
+package jp.co.axa.apidemo.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Employee IDs sorted by salary, then by ID, held in primitive arrays so that nothing is boxed.
+ * Entries are split into blocks of at most BLOCK_SIZE, so an insert or removal only shifts the entries of one block,
+ * while the highest salaries and the salary at a given rank are found without visiting every entry.
+ * Safe for use by many threads: reads share a lock, and writes take it exclusively
+ */
+class SortedSalaryList {
+
+    static final int BLOCK_SIZE = 1024;
+
+    private final List<Block> blocks = new ArrayList<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int size;
+
+    void add(int salary, long id) {
+        lock.writeLock().lock();
+        try {
+            if (blocks.isEmpty()) blocks.add(new Block());
+            int b = findBlock(salary, id);
+            Block block = blocks.get(b);
+            if (block.size == BLOCK_SIZE) {
+                blocks.add(b + 1, block.splitUpperHalf());
+                if (compare(salary, id, block.salaries[block.size - 1], block.ids[block.size - 1]) > 0) {
+                    block = blocks.get(b + 1);
+                }
+            }
+            if (block.insert(salary, id)) size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param salary
+     * @param id
+     * @return true if the entry was found and removed
+     */
+    boolean remove(int salary, long id) {
+        lock.writeLock().lock();
+        try {
+            if (blocks.isEmpty()) return false;
+            int b = findBlock(salary, id);
+            Block block = blocks.get(b);
+            if (!block.remove(salary, id)) return false;
+            if (block.size == 0) blocks.remove(b);
+            size--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the IDs with the highest salaries, highest first. Among equal salaries, higher IDs come first
+     * @param n maximum number of IDs
+     * @return
+     */
+    long[] highest(int n) {
+        lock.readLock().lock();
+        try {
+            long[] ids = new long[Math.min(n, size)];
+            int count = 0;
+            for (int b = blocks.size() - 1; b >= 0 && count < ids.length; b--) {
+                Block block = blocks.get(b);
+                for (int i = block.size - 1; i >= 0 && count < ids.length; i--) {
+                    ids[count++] = block.ids[i];
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the salary at each of the given percentiles, using the nearest-rank method
+     * (the smallest salary that at least p percent of salaries are less than or equal to)
+     * @param percentiles percentiles between 0 (exclusive) and 100 (inclusive), in ascending order
+     * @return salary at each percentile, or an empty array if the list is empty
+     */
+    int[] percentiles(double[] percentiles) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) return new int[0];
+            int[] salaries = new int[percentiles.length];
+            // the ranks ascend, so all of them are found in one pass over the blocks
+            int b = 0;
+            int blockStart = 0;
+            for (int p = 0; p < percentiles.length; p++) {
+                int rank = Math.max(1, (int) Math.ceil(percentiles[p] / 100 * size)) - 1;
+                while (rank >= blockStart + blocks.get(b).size) {
+                    blockStart += blocks.get(b).size;
+                    b++;
+                }
+                salaries[p] = blocks.get(b).salaries[rank - blockStart];
+            }
+            return salaries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the block that holds the entry, or where it belongs: the first block whose last entry is not less than it,
+     * or the last block if the entry is greater than all of them
+     */
+    private int findBlock(int salary, long id) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Block block = blocks.get(mid);
+            if (compare(block.salaries[block.size - 1], block.ids[block.size - 1], salary, id) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int compare(int salary1, long id1, int salary2, long id2) {
+        int bySalary = Integer.compare(salary1, salary2);
+        return bySalary != 0 ? bySalary : Long.compare(id1, id2);
+    }
+
+    private static class Block {
+        private final int[] salaries = new int[BLOCK_SIZE];
+        private final long[] ids = new long[BLOCK_SIZE];
+        private int size;
+
+        /**
+         * @return position of the entry, or (-(insertion point) - 1) if it is not in the block
+         */
+        private int search(int salary, long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(salaries[mid], ids[mid], salary, id);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * @return false if the entry was already in the block
+         */
+        private boolean insert(int salary, long id) {
+            int pos = search(salary, id);
+            if (pos >= 0) return false;
+            pos = -(pos + 1);
+            System.arraycopy(salaries, pos, salaries, pos + 1, size - pos);
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            salaries[pos] = salary;
+            ids[pos] = id;
+            size++;
+            return true;
+        }
+
+        private boolean remove(int salary, long id) {
+            int pos = search(salary, id);
+            if (pos < 0) return false;
+            System.arraycopy(salaries, pos + 1, salaries, pos, size - pos - 1);
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Moves the upper half of the entries into a new block
+         * @return the new block
+         */
+        private Block splitUpperHalf() {
+            Block upper = new Block();
+            int half = size / 2;
+            upper.size = size - half;
+            System.arraycopy(salaries, half, upper.salaries, 0, upper.size);
+            System.arraycopy(ids, half, upper.ids, 0, upper.size);
+            size = half;
+            return upper;
+        }
+    }
+}
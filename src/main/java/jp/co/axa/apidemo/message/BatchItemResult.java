@@ -0,0 +1,46 @@
+package jp.co.axa.apidemo.message;
+
+/**
+ * Outcome of one item of a batch create or update request.
+ * index is the position of the item in the request body, and id is the employee ID if the item was written
+ */
+public class BatchItemResult {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        NOT_FOUND,
+        INVALID
+    }
+
+    private final int index;
+
+    private final Long id;
+
+    private final Status status;
+
+    private final String message;
+
+    public BatchItemResult(int index, Long id, Status status, String message) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.message = message;
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public String getMessage() {
+        return this.message;
+    }
+}
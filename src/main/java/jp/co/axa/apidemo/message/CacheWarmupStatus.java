@@ -0,0 +1,62 @@
+package jp.co.axa.apidemo.message;
+
+/**
+ * Progress of the employee cache warm-up run at startup
+ */
+public class CacheWarmupStatus {
+
+    public enum State {
+        // waiting for the application to be ready
+        PENDING,
+        RUNNING,
+        DONE,
+        // stopped before every partition was loaded
+        TIMED_OUT,
+        FAILED,
+        DISABLED
+    }
+
+    private final State state;
+
+    private final long cached;
+
+    private final long target;
+
+    private final long elapsedMillis;
+
+    public CacheWarmupStatus(State state, long cached, long target, long elapsedMillis) {
+        this.state = state;
+        this.cached = cached;
+        this.target = target;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * @return number of employees stored in cache so far
+     */
+    public long getCached() {
+        return this.cached;
+    }
+
+    /**
+     * @return number of employees to store in cache, once known
+     */
+    public long getTarget() {
+        return this.target;
+    }
+
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    /**
+     * @return true once the warm-up is over, whether or not it loaded every employee it meant to
+     */
+    public boolean isFinished() {
+        return state != State.PENDING && state != State.RUNNING;
+    }
+}
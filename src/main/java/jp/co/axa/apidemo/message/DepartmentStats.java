@@ -0,0 +1,54 @@
+package jp.co.axa.apidemo.message;
+
+/**
+ * Aggregates of the employees of one department.
+ * Salary figures only include employees with a salary, and are null if none of them have one
+ */
+public class DepartmentStats {
+
+    private final String department;
+
+    private final long headcount;
+
+    private final long totalSalary;
+
+    private final Integer minSalary;
+
+    private final Integer maxSalary;
+
+    private final Double averageSalary;
+
+    public DepartmentStats(String department, long headcount, long totalSalary,
+                           Integer minSalary, Integer maxSalary, Double averageSalary) {
+        this.department = department;
+        this.headcount = headcount;
+        this.totalSalary = totalSalary;
+        this.minSalary = minSalary;
+        this.maxSalary = maxSalary;
+        this.averageSalary = averageSalary;
+    }
+
+    public String getDepartment() {
+        return this.department;
+    }
+
+    public long getHeadcount() {
+        return this.headcount;
+    }
+
+    public long getTotalSalary() {
+        return this.totalSalary;
+    }
+
+    public Integer getMinSalary() {
+        return this.minSalary;
+    }
+
+    public Integer getMaxSalary() {
+        return this.maxSalary;
+    }
+
+    public Double getAverageSalary() {
+        return this.averageSalary;
+    }
+}
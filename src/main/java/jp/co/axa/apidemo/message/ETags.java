@@ -0,0 +1,35 @@
+package jp.co.axa.apidemo.message;
+
+/**
+ * Converts between employee versions and ETag header values.
+ * The ETag of an employee is their version in quotes, for example "3", so that an If-Match header
+ * can be checked by the database as part of the update rather than by reading the employee first
+ */
+public final class ETags {
+
+    private ETags() {}
+
+    /**
+     * Gets strong ETag for the given employee version
+     * @param version
+     * @return
+     */
+    public static String forVersion(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Gets the employee version from a strong ETag
+     * @param eTag
+     * @return version, or null if the value is not a strong ETag created by forVersion()
+     */
+    public static Long parseVersion(String eTag) {
+        String value = eTag.trim();
+        if (value.length() < 3 || !value.startsWith("\"") || !value.endsWith("\"")) return null;
+        try {
+            return Long.valueOf(value.substring(1, value.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
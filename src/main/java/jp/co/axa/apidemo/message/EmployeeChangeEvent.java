@@ -0,0 +1,41 @@
+package jp.co.axa.apidemo.message;
+
+import jp.co.axa.apidemo.entities.Employee;
+
+/**
+ * Notification that an employee was created, updated or deleted.
+ * Published by EmployeeService and sent to subscribers of the change stream once the change is committed.
+ * employee holds the written data, and is null for deletes
+ */
+public class EmployeeChangeEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final Type type;
+
+    private final Long employeeId;
+
+    private final Employee employee;
+
+    public EmployeeChangeEvent(Type type, Long employeeId, Employee employee) {
+        this.type = type;
+        this.employeeId = employeeId;
+        this.employee = employee;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public Long getEmployeeId() {
+        return this.employeeId;
+    }
+
+    public Employee getEmployee() {
+        return this.employee;
+    }
+}
@@ -0,0 +1,44 @@
+package jp.co.axa.apidemo.message;
+
+import jp.co.axa.apidemo.entities.Employee;
+
+import java.util.List;
+
+/**
+ * Employees changed since a position in the change sequence.
+ * upserts holds the current data of employees inserted or updated, and deletes the IDs of employees deleted.
+ * cursor is the value to pass as "since" on the next call, and hasMore is true if more changes are already waiting
+ */
+public class EmployeeChanges {
+
+    private final List<Employee> upserts;
+
+    private final List<Long> deletes;
+
+    private final Long cursor;
+
+    private final boolean hasMore;
+
+    public EmployeeChanges(List<Employee> upserts, List<Long> deletes, Long cursor, boolean hasMore) {
+        this.upserts = upserts;
+        this.deletes = deletes;
+        this.cursor = cursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<Employee> getUpserts() {
+        return this.upserts;
+    }
+
+    public List<Long> getDeletes() {
+        return this.deletes;
+    }
+
+    public Long getCursor() {
+        return this.cursor;
+    }
+
+    public boolean isHasMore() {
+        return this.hasMore;
+    }
+}
@@ -0,0 +1,29 @@
+package jp.co.axa.apidemo.message;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of employees returned by keyset pagination, holding only the fields that were asked for.
+ * Each employee maps field names to values, in the order the fields were asked for.
+ * nextCursor holds the value to pass as "after" to get the next page, or null if this is the last page
+ */
+public class EmployeeFieldsPage {
+
+    private final List<Map<String, Object>> employees;
+
+    private final Long nextCursor;
+
+    public EmployeeFieldsPage(List<Map<String, Object>> employees, Long nextCursor) {
+        this.employees = employees;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Map<String, Object>> getEmployees() {
+        return this.employees;
+    }
+
+    public Long getNextCursor() {
+        return this.nextCursor;
+    }
+}
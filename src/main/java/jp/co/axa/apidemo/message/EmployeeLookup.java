@@ -0,0 +1,29 @@
+package jp.co.axa.apidemo.message;
+
+import jp.co.axa.apidemo.entities.Employee;
+
+import java.util.List;
+
+/**
+ * Result of looking up many employees by ID.
+ * employees are in the order their IDs were requested, and notFound holds the requested IDs that do not exist
+ */
+public class EmployeeLookup {
+
+    private final List<Employee> employees;
+
+    private final List<Long> notFound;
+
+    public EmployeeLookup(List<Employee> employees, List<Long> notFound) {
+        this.employees = employees;
+        this.notFound = notFound;
+    }
+
+    public List<Employee> getEmployees() {
+        return this.employees;
+    }
+
+    public List<Long> getNotFound() {
+        return this.notFound;
+    }
+}
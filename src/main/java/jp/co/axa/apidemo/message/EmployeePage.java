@@ -0,0 +1,29 @@
+package jp.co.axa.apidemo.message;
+
+import jp.co.axa.apidemo.entities.Employee;
+
+import java.util.List;
+
+/**
+ * One page of employees returned by keyset pagination.
+ * nextCursor holds the value to pass as "after" to get the next page, or null if this is the last page
+ */
+public class EmployeePage {
+
+    private final List<Employee> employees;
+
+    private final Long nextCursor;
+
+    public EmployeePage(List<Employee> employees, Long nextCursor) {
+        this.employees = employees;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Employee> getEmployees() {
+        return this.employees;
+    }
+
+    public Long getNextCursor() {
+        return this.nextCursor;
+    }
+}
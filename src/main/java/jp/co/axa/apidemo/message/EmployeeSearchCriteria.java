@@ -0,0 +1,38 @@
+package jp.co.axa.apidemo.message;
+
+/**
+ * Conditions of an employee search. Conditions that are null are not applied
+ */
+public class EmployeeSearchCriteria {
+
+    private final String department;
+
+    private final Integer minSalary;
+
+    private final Integer maxSalary;
+
+    private final String namePrefix;
+
+    public EmployeeSearchCriteria(String department, Integer minSalary, Integer maxSalary, String namePrefix) {
+        this.department = department;
+        this.minSalary = minSalary;
+        this.maxSalary = maxSalary;
+        this.namePrefix = namePrefix;
+    }
+
+    public String getDepartment() {
+        return this.department;
+    }
+
+    public Integer getMinSalary() {
+        return this.minSalary;
+    }
+
+    public Integer getMaxSalary() {
+        return this.maxSalary;
+    }
+
+    public String getNamePrefix() {
+        return this.namePrefix;
+    }
+}
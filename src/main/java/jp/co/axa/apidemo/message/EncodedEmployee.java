@@ -0,0 +1,29 @@
+package jp.co.axa.apidemo.message;
+
+import java.io.Serializable;
+
+/**
+ * Employee already serialized as UTF-8 JSON, along with the strong ETag of the serialized version.
+ * Cached so that hot reads can write the bytes to the response without serializing the employee again
+ */
+public class EncodedEmployee implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] json;
+
+    private final String eTag;
+
+    public EncodedEmployee(byte[] json, String eTag) {
+        this.json = json;
+        this.eTag = eTag;
+    }
+
+    public byte[] getJson() {
+        return this.json;
+    }
+
+    public String getETag() {
+        return this.eTag;
+    }
+}
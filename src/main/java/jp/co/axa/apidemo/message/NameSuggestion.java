@@ -0,0 +1,24 @@
+package jp.co.axa.apidemo.message;
+
+/**
+ * Employee whose name matches a type-ahead query
+ */
+public class NameSuggestion {
+
+    private final long id;
+
+    private final String name;
+
+    public NameSuggestion(long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+}
@@ -0,0 +1,35 @@
+package jp.co.axa.apidemo.message;
+
+import java.util.Map;
+
+/**
+ * Salary percentiles of a department, or of all employees if department is null.
+ * count is the number of employees with a salary, and percentiles maps names such as "p90" to salaries.
+ * percentiles is empty if no employee has a salary
+ */
+public class SalaryPercentiles {
+
+    private final String department;
+
+    private final int count;
+
+    private final Map<String, Integer> percentiles;
+
+    public SalaryPercentiles(String department, int count, Map<String, Integer> percentiles) {
+        this.department = department;
+        this.count = count;
+        this.percentiles = percentiles;
+    }
+
+    public String getDepartment() {
+        return this.department;
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    public Map<String, Integer> getPercentiles() {
+        return this.percentiles;
+    }
+}
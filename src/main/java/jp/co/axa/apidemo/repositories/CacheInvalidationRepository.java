@@ -0,0 +1,37 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.entities.CacheInvalidation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface CacheInvalidationRepository extends JpaRepository<CacheInvalidation,Long> {
+
+    /**
+     * Gets invalidations inserted after the given ID, oldest first
+     * @param afterId
+     * @param pageable
+     * @return
+     */
+    List<CacheInvalidation> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    @Query("select max(i.id) from CacheInvalidation i")
+    Long findMaxId();
+
+    /**
+     * Deletes invalidations created before the given time
+     * @param createdAt epoch milliseconds
+     * @return number of rows deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from CacheInvalidation i where i.createdAt < :createdAt")
+    int deleteCreatedBefore(@Param("createdAt") long createdAt);
+}
@@ -1,9 +1,92 @@
 package jp.co.axa.apidemo.repositories;
 
 import jp.co.axa.apidemo.entities.Employee;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 @Repository
-public interface EmployeeRepository extends JpaRepository<Employee,Long> {
+public interface EmployeeRepository extends JpaRepository<Employee,Long>, EmployeeRepositoryCustom {
+
+    /**
+     * Number of rows the JDBC driver fetches per round trip when streaming employees
+     */
+    String STREAM_FETCH_SIZE = "500";
+
+    /**
+     * Gets employees with an ID greater than the given cursor, ordered by ID.
+     * Uses the primary key index, so the cost of a page does not depend on how deep into the table it starts.
+     * Returning a List (rather than a Page) means no count query is run
+     * @param afterId
+     * @param pageable
+     * @return
+     */
+    List<Employee> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    /**
+     * Gets employees inserted or updated after the given position in the change sequence, oldest change first.
+     * Uses the index on CHANGE_SEQ, so the cost depends on the number of changes rather than the size of the table
+     * @param since
+     * @param pageable
+     * @return
+     */
+    List<Employee> findByChangeSeqGreaterThanOrderByChangeSeqAsc(Long since, Pageable pageable);
+
+    /**
+     * Streams all employees ordered by ID, reading them from the database in chunks of STREAM_FETCH_SIZE rows.
+     * Must be called within a transaction, and the stream must be closed after use.
+     * Employees are loaded read-only, so Hibernate does not keep snapshots of them for dirty checking
+     * @return
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+                 @QueryHint(name = HINT_READONLY, value = "true")})
+    Stream<Employee> streamAllByOrderByIdAsc();
+
+    /**
+     * Gets the current version of the employee with given ID, without loading the employee.
+     * Called after updateIfVersionMatches() in the same transaction, it returns the version that update wrote
+     * @param id
+     * @return
+     */
+    @Query("select e.version from Employee e where e.id = :id")
+    Long findVersionById(@Param("id") Long id);
+
+    @Query("select min(e.id) from Employee e")
+    Long findMinId();
+
+    @Query("select max(e.id) from Employee e")
+    Long findMaxId();
+
+    /**
+     * Gets positions in the change sequence of the latest change of each employee, most recent first.
+     * Uses the index on CHANGE_SEQ, so a page deep into the list is found without reading the employees
+     * @param pageable
+     * @return
+     */
+    @Query("select e.changeSeq from Employee e order by e.changeSeq desc")
+    List<Long> findChangeSeqsDesc(Pageable pageable);
+
+    /**
+     * Gets employees with an ID greater than afterId and up to toId, whose latest change is at or after minChangeSeq,
+     * ordered by ID. Employees are loaded read-only, so Hibernate does not keep snapshots of them for dirty checking
+     * @param afterId
+     * @param toId
+     * @param minChangeSeq
+     * @param pageable
+     * @return
+     */
+    @Query("select e from Employee e where e.id > :afterId and e.id <= :toId and e.changeSeq >= :minChangeSeq order by e.id")
+    @QueryHints(@QueryHint(name = HINT_READONLY, value = "true"))
+    List<Employee> findChangedSinceInRange(@Param("afterId") Long afterId, @Param("toId") Long toId,
+                                           @Param("minChangeSeq") Long minChangeSeq, Pageable pageable);
 }
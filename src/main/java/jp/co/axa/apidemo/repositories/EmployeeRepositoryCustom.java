@@ -0,0 +1,66 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.entities.Employee;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.Tuple;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Repository operations that need direct access to the persistence context
+ */
+public interface EmployeeRepositoryCustom {
+
+    /**
+     * Removes employee from the persistence context so that it can be garbage collected.
+     * Used when streaming through many employees within one transaction
+     * @param employee
+     */
+    void detach(Employee employee);
+
+    /**
+     * Overwrites the data of the employee with the same ID in a single UPDATE statement, without reading it first,
+     * and increments its version. Must be called within a transaction
+     * @param employee new data, including the ID of the employee to update
+     * @param expectedVersion if not null, the employee is only updated if this is its current version
+     * @return number of employees updated: 0 if no employee has this ID, or if its version is not expectedVersion
+     */
+    int updateIfVersionMatches(Employee employee, Long expectedVersion);
+
+    /**
+     * Overwrites the data and version of each employee with the same ID, sending the UPDATE statements
+     * as one JDBC batch, without reading the employees first. Must be called within a transaction
+     * @param employees new data, including the ID of the employee to update and the version to give it
+     * @return IDs of the employees updated, in the order given. Employees that no longer exist are skipped
+     */
+    List<Long> updateAll(List<Employee> employees);
+
+    /**
+     * Gets employees matching the given conditions, ordered by ID, up to limit employees.
+     * Unlike JpaSpecificationExecutor.findAll(spec, pageable), no count query is run
+     * @param spec
+     * @param limit
+     * @return
+     */
+    List<Employee> findAllOrderById(Specification<Employee> spec, int limit);
+
+    /**
+     * Gets only the given attributes of employees matching the conditions, ordered by ID, up to limit employees.
+     * Only their columns (and the ID, which is always selected) are read, and no managed entities are created
+     * @param spec
+     * @param attributes names of Employee attributes. Each tuple holds their values under the attribute names
+     * @param limit
+     * @return
+     */
+    List<Tuple> findAttributesOrderById(Specification<Employee> spec, List<String> attributes, int limit);
+
+    /**
+     * Streams the given attributes of all employees ordered by ID, as findAttributesOrderById() selects them,
+     * reading them from the database in chunks of STREAM_FETCH_SIZE rows.
+     * Must be called within a transaction, and the stream must be closed after use
+     * @param attributes
+     * @return
+     */
+    Stream<Tuple> streamAttributesOrderById(List<String> attributes);
+}
@@ -0,0 +1,108 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.entities.Employee;
+import org.hibernate.Session;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static jp.co.axa.apidemo.repositories.EmployeeRepository.STREAM_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public class EmployeeRepositoryImpl implements EmployeeRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public void detach(Employee employee) {
+        entityManager.detach(employee);
+    }
+
+    public int updateIfVersionMatches(Employee employee, Long expectedVersion) {
+        String jpql = "update Employee e set e.name = :name, e.salary = :salary, e.department = :department,"
+                + " e.version = e.version + 1 where e.id = :id";
+        if (expectedVersion != null) jpql += " and e.version = :version";
+
+        Query query = entityManager.createQuery(jpql)
+                .setParameter("name", employee.getName())
+                .setParameter("salary", employee.getSalary())
+                .setParameter("department", employee.getDepartment())
+                .setParameter("id", employee.getId());
+        if (expectedVersion != null) query.setParameter("version", expectedVersion);
+        return query.executeUpdate();
+    }
+
+    public List<Long> updateAll(List<Employee> employees) {
+        if (employees.isEmpty()) return new ArrayList<>();
+        String sql = "UPDATE EMPLOYEE SET EMPLOYEE_NAME = ?, EMPLOYEE_SALARY = ?, DEPARTMENT = ?, VERSION = ? WHERE ID = ?";
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (Employee employee : employees) {
+                    statement.setString(1, employee.getName());
+                    statement.setObject(2, employee.getSalary(), Types.INTEGER);
+                    statement.setString(3, employee.getDepartment());
+                    statement.setLong(4, employee.getVersion());
+                    statement.setLong(5, employee.getId());
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                List<Long> updated = new ArrayList<>(counts.length);
+                for (int i = 0; i < counts.length; i++) {
+                    // drivers may report that a statement succeeded without telling how many rows it changed
+                    if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) updated.add(employees.get(i).getId());
+                }
+                return updated;
+            }
+        });
+    }
+
+    public List<Employee> findAllOrderById(Specification<Employee> spec, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Employee> query = cb.createQuery(Employee.class);
+        Root<Employee> root = query.from(Employee.class);
+        query.select(root).orderBy(cb.asc(root.get("id")));
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) query.where(predicate);
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    public List<Tuple> findAttributesOrderById(Specification<Employee> spec, List<String> attributes, int limit) {
+        return entityManager.createQuery(attributesQuery(spec, attributes)).setMaxResults(limit).getResultList();
+    }
+
+    public Stream<Tuple> streamAttributesOrderById(List<String> attributes) {
+        return entityManager.createQuery(attributesQuery(Specification.where(null), attributes))
+                .setHint(HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .getResultStream();
+    }
+
+    private CriteriaQuery<Tuple> attributesQuery(Specification<Employee> spec, List<String> attributes) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Employee> root = query.from(Employee.class);
+        List<Selection<?>> selections = new ArrayList<>();
+        // the ID is needed for the cursor of the next page even when it was not asked for
+        if (!attributes.contains("id")) selections.add(root.get("id").alias("id"));
+        for (String attribute : attributes) {
+            selections.add(root.get(attribute).alias(attribute));
+        }
+        query.multiselect(selections).orderBy(cb.asc(root.get("id")));
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) query.where(predicate);
+        return query;
+    }
+}
@@ -0,0 +1,51 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.entities.Employee;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Conditions on employees that can be combined into search queries.
+ * Each condition is on an indexed column, and is written so that the database can use the index
+ * (for example, a name prefix becomes LIKE 'prefix%' rather than a LIKE with a leading wildcard)
+ */
+public final class EmployeeSpecifications {
+
+    private static final char LIKE_ESCAPE = '\\';
+
+    private EmployeeSpecifications() {
+    }
+
+    public static Specification<Employee> idGreaterThan(Long afterId) {
+        return (root, query, cb) -> cb.greaterThan(root.get("id"), afterId);
+    }
+
+    public static Specification<Employee> inDepartment(String department) {
+        return (root, query, cb) -> cb.equal(root.get("department"), department);
+    }
+
+    public static Specification<Employee> salaryAtLeast(Integer minSalary) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("salary"), minSalary);
+    }
+
+    public static Specification<Employee> salaryAtMost(Integer maxSalary) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("salary"), maxSalary);
+    }
+
+    public static Specification<Employee> nameStartsWith(String prefix) {
+        return (root, query, cb) -> cb.like(root.get("name"), escapeLike(prefix) + "%", LIKE_ESCAPE);
+    }
+
+    /**
+     * Escapes the characters that have a special meaning in a LIKE pattern, so that they match themselves
+     * @param value
+     * @return
+     */
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) escaped.append(LIKE_ESCAPE);
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package jp.co.axa.apidemo.repositories;
+
+import jp.co.axa.apidemo.entities.EmployeeTombstone;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface EmployeeTombstoneRepository extends JpaRepository<EmployeeTombstone,Long> {
+
+    /**
+     * Gets deletes recorded after the given position in the change sequence, oldest first.
+     * The change sequence is the primary key of the tombstone table, so this is a range scan of its index
+     * @param since
+     * @param pageable
+     * @return
+     */
+    List<EmployeeTombstone> findByChangeSeqGreaterThanOrderByChangeSeqAsc(Long since, Pageable pageable);
+
+    /**
+     * Gets the tombstone first in the change sequence, or null if there is none
+     * @return
+     */
+    EmployeeTombstone findFirstByOrderByChangeSeqAsc();
+
+    /**
+     * Gets the position in the change sequence of the newest tombstone recorded before the given time
+     * @param deletedAt epoch milliseconds
+     * @return
+     */
+    @Query("select max(t.changeSeq) from EmployeeTombstone t where t.deletedAt < :deletedAt")
+    Long findMaxChangeSeqDeletedBefore(@Param("deletedAt") long deletedAt);
+
+    /**
+     * Deletes tombstones before the given position in the change sequence
+     * @param changeSeq
+     * @return number of rows deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from EmployeeTombstone t where t.changeSeq < :changeSeq")
+    int deleteByChangeSeqBefore(@Param("changeSeq") long changeSeq);
+
+    /**
+     * Gets the last value taken from the change sequence shared by employees and tombstones, by any session.
+     * Values taken afterwards are greater
+     * @return
+     */
+    @Query(value = "select CURRENT_VALUE from INFORMATION_SCHEMA.SEQUENCES where SEQUENCE_NAME = 'EMPLOYEE_CHANGE_SEQ'",
+           nativeQuery = true)
+    Long findChangeSeqCurrentValue();
+}
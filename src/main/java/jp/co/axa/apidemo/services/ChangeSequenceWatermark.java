@@ -0,0 +1,85 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.repositories.EmployeeTombstoneRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the change feed from handing out a cursor past a change that has not committed yet.
+ * Change sequence values are taken when a row is written rather than when its transaction commits, so a transaction
+ * can commit a value lower than one a client has already read past, and that client would never see it.
+ * Each write of employees or tombstones runs through write(), which records the current value of the sequence
+ * before the write takes any, until its transaction completes. Every value the write takes is greater than the one
+ * recorded, so changes up to committedUpTo() are all committed or rolled back, and no later commit can fall below it.
+ * Only the writes made by this node are tracked, so with several nodes sharing a database, a late commit of another
+ * node can still be missed. Costs one query per write while the change feed is enabled (app.changes.enabled)
+ */
+@Component
+public class ChangeSequenceWatermark {
+
+    private final EmployeeTombstoneRepository tombstoneRepository;
+
+    private final boolean enabled;
+
+    // sequence value recorded before each write in flight, with the number of writes that recorded it
+    private final ConcurrentSkipListMap<Long, Integer> inFlight = new ConcurrentSkipListMap<>();
+
+    public ChangeSequenceWatermark(EmployeeTombstoneRepository tombstoneRepository,
+                                   @Value("${app.changes.enabled:true}") boolean enabled) {
+        this.tombstoneRepository = tombstoneRepository;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Runs a write that takes change sequence values, and keeps it in flight until its transaction completes,
+     * or until it returns if there is no transaction
+     * @param write
+     * @return result of write
+     */
+    public <T> T write(Supplier<T> write) {
+        if (!enabled) return write.get();
+        long before = currentValue();
+        inFlight.merge(before, 1, Integer::sum);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                return write.get();
+            } finally {
+                release(before);
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                release(before);
+            }
+        });
+        return write.get();
+    }
+
+    /**
+     * Gets the position in the change sequence up to which every change is committed or rolled back.
+     * Changes up to it that are committed are visible to queries run after this call
+     * @return
+     */
+    public long committedUpTo() {
+        // the sequence is read before the writes in flight: a write that took a value up to it was recorded before
+        long current = currentValue();
+        Map.Entry<Long, Integer> oldest = inFlight.firstEntry();
+        return oldest == null ? current : Math.min(current, oldest.getKey());
+    }
+
+    private long currentValue() {
+        Long current = tombstoneRepository.findChangeSeqCurrentValue();
+        return current == null ? 0 : current;
+    }
+
+    private void release(long before) {
+        inFlight.computeIfPresent(before, (value, count) -> count == 1 ? null : count - 1);
+    }
+}
@@ -0,0 +1,10 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.message.CacheWarmupStatus;
+
+public interface EmployeeCacheWarmupService {
+
+    public void warmUp(int maxEmployees, int workers, long timeoutMillis);
+
+    public CacheWarmupStatus getStatus();
+}
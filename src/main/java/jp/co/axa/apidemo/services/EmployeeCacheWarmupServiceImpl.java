@@ -0,0 +1,200 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.cache.BulkCacheOperations;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.CacheWarmupStatus;
+import jp.co.axa.apidemo.message.CacheWarmupStatus.State;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static jp.co.axa.apidemo.datasource.ReplicaRoutingDataSource.callOnPrimary;
+import static jp.co.axa.apidemo.services.EmployeeService.EMPLOYEE_CACHE_NAME;
+
+/**
+ * Fills employeeCache at startup, so that a new node does not answer its first requests from the database.
+ * The most recently changed employees, up to a cap, are read from the primary in ID-range partitions by a bounded
+ * pool of workers. Until the warm-up is over, the node reports itself out of service (see CacheWarmupHealthIndicator),
+ * so the load balancer does not send it requests.
+ * Employees are only stored for IDs that are not cached yet, so a row read before a concurrent write never replaces
+ * the newer employee that a request, or an invalidation from another node followed by a reload, has cached since.
+ * As with any cache miss, a write committed between the read and the store can still leave the older row cached
+ */
+@Service
+public class EmployeeCacheWarmupServiceImpl implements EmployeeCacheWarmupService {
+    private static final Logger logger = LoggerFactory.getLogger(EmployeeCacheWarmupServiceImpl.class);
+
+    // employees read and stored in cache at once
+    private static final int CHUNK_SIZE = 1000;
+
+    // partitions per worker, so that workers that finish early take over the remaining ranges
+    private static final int PARTITIONS_PER_WORKER = 4;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Value("${app.cache.warmup.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.cache.warmup.max-employees:50000}")
+    private int maxEmployees;
+
+    @Value("${app.cache.warmup.workers:4}")
+    private int workers;
+
+    @Value("${app.cache.warmup.timeout-seconds:120}")
+    private long timeoutSeconds;
+
+    private volatile State state = State.PENDING;
+
+    private final AtomicLong cached = new AtomicLong();
+
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    private volatile long target;
+
+    private volatile long start;
+
+    private volatile long end;
+
+    public void setEmployeeRepository(EmployeeRepository employeeRepository) {
+        this.employeeRepository = employeeRepository;
+    }
+
+    public void setCacheManager(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * Starts the warm-up on its own thread once the application is ready, with the configured settings
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            state = State.DISABLED;
+            return;
+        }
+        Thread thread = new Thread(() -> warmUp(maxEmployees, workers, TimeUnit.SECONDS.toMillis(timeoutSeconds)),
+                                   "cache-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stores the maxEmployees most recently changed employees in employeeCache, and waits for it to be done.
+     * Gives up after timeoutMillis, keeping the employees already cached
+     * @param maxEmployees
+     * @param workers number of partitions read at the same time, each using a database connection
+     * @param timeoutMillis
+     */
+    public void warmUp(int maxEmployees, int workers, long timeoutMillis) {
+        start = System.currentTimeMillis();
+        state = State.RUNNING;
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new WorkerThreadFactory());
+        try {
+            Long minId = employeeRepository.findMinId();
+            if (minId == null || maxEmployees < 1) {
+                finish(State.DONE);
+                return;
+            }
+            long maxId = employeeRepository.findMaxId();
+            List<Long> changeSeqs = employeeRepository.findChangeSeqsDesc(PageRequest.of(maxEmployees - 1, 1));
+            // with fewer employees than the cap, every employee is cached
+            long minChangeSeq = changeSeqs.isEmpty() ? Long.MIN_VALUE : changeSeqs.get(0);
+            target = Math.min(maxEmployees, employeeRepository.count());
+
+            int partitions = workers * PARTITIONS_PER_WORKER;
+            long partitionSize = (maxId - minId) / partitions + 1;
+            Cache cache = cacheManager.getCache(EMPLOYEE_CACHE_NAME);
+            for (long from = minId; from <= maxId; from += partitionSize) {
+                long afterId = from - 1;
+                long toId = Math.min(maxId, from + partitionSize - 1);
+                executor.execute(() -> loadPartition(cache, afterId, toId, minChangeSeq));
+            }
+            executor.shutdown();
+            if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                finish(failed.get() ? State.FAILED : State.DONE);
+            } else {
+                executor.shutdownNow();
+                finish(State.TIMED_OUT);
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            finish(State.TIMED_OUT);
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            executor.shutdownNow();
+            finish(State.FAILED);
+            logger.error("Employee cache warm-up failed", e);
+        }
+    }
+
+    public CacheWarmupStatus getStatus() {
+        long elapsed = start == 0 ? 0 : (end == 0 ? System.currentTimeMillis() : end) - start;
+        return new CacheWarmupStatus(state, cached.get(), target, elapsed);
+    }
+
+    /**
+     * Reads the employees of one ID range, a chunk at a time, and stores those of each chunk not cached yet.
+     * Stops between chunks once the warm-up has timed out
+     */
+    private void loadPartition(Cache cache, long afterId, long toId, long minChangeSeq) {
+        long cursor = afterId;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long after = cursor;
+                List<Employee> employees = callOnPrimary(() -> employeeRepository.findChangedSinceInRange(
+                        after, toId, minChangeSeq, PageRequest.of(0, CHUNK_SIZE)));
+                if (employees.isEmpty()) return;
+                Map<Long, Employee> byId = new LinkedHashMap<>();
+                employees.forEach(employee -> byId.put(employee.getId(), employee));
+                cached.addAndGet(BulkCacheOperations.putAllIfAbsent(cache, byId));
+                if (employees.size() < CHUNK_SIZE) return;
+                cursor = employees.get(employees.size() - 1).getId();
+            }
+        } catch (RuntimeException e) {
+            failed.set(true);
+            logger.error("Employee cache warm-up failed for IDs " + (afterId + 1) + " to " + toId, e);
+        }
+    }
+
+    private void finish(State finalState) {
+        end = System.currentTimeMillis();
+        state = finalState;
+        logger.info("Employee cache warm-up finished - state: " + finalState + ", cached: " + cached.get()
+                + ", time: " + (end - start) + " ms");
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cache-warmup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public interface EmployeeFeedService {
+
+    public SseEmitter subscribe(Long lastEventId);
+
+    public void onEmployeeChange(EmployeeChangeEvent event);
+}
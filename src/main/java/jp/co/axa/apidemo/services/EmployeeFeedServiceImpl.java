@@ -0,0 +1,198 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.exceptions.ServiceUnavailableException;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class EmployeeFeedServiceImpl implements EmployeeFeedService {
+    private static final Logger logger = LoggerFactory.getLogger(EmployeeFeedServiceImpl.class);
+
+    // number of most recent events kept for subscribers that reconnect with Last-Event-ID
+    static final int HISTORY_SIZE = 1024;
+
+    // number of events held for a subscriber that has not yet been sent them
+    static final int SUBSCRIBER_BUFFER_SIZE = 1024;
+
+    static final int MAX_SUBSCRIBERS = 2000;
+
+    // subscribers are sent a "resync" event when events meant for them were dropped
+    static final String RESYNC_EVENT_NAME = "resync";
+
+    private static final long SUBSCRIPTION_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+    private static final int SENDER_THREADS = 4;
+
+    private final Executor senders;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    // guards history and nextEventId, and makes registering a subscriber atomic with replaying history to them
+    private final Object lock = new Object();
+
+    private final FeedEvent[] history = new FeedEvent[HISTORY_SIZE];
+
+    private long nextEventId = 1;
+
+    public EmployeeFeedServiceImpl() {
+        this(Executors.newFixedThreadPool(SENDER_THREADS));
+    }
+
+    /**
+     * @param senders runs the tasks that write buffered events to subscribers
+     */
+    EmployeeFeedServiceImpl(Executor senders) {
+        this.senders = senders;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (senders instanceof ExecutorService) ((ExecutorService) senders).shutdownNow();
+    }
+
+    /**
+     * Subscribes to employee changes, as a stream of server-sent events.
+     * If lastEventId is given, the events after it are sent first. If those events are no longer kept
+     * (or lastEventId is unknown, for example because the server restarted), a resync event is sent instead,
+     * telling the client to catch up with the changes endpoint.
+     * If there are already MAX_SUBSCRIBERS subscribers, throws error
+     * @param lastEventId ID of the last event the client received, or null to only get new events
+     * @return
+     */
+    public SseEmitter subscribe(Long lastEventId) {
+        return subscribe(lastEventId, new SseEmitter(SUBSCRIPTION_TIMEOUT_MILLIS));
+    }
+
+    SseEmitter subscribe(Long lastEventId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        synchronized (lock) {
+            if (subscribers.size() >= MAX_SUBSCRIBERS)
+                throw new ServiceUnavailableException("Too many subscribers to employee changes - limit: " + MAX_SUBSCRIBERS);
+            if (lastEventId != null) {
+                long oldestKept = Math.max(1, nextEventId - HISTORY_SIZE);
+                if (lastEventId < oldestKept - 1 || lastEventId >= nextEventId) {
+                    subscriber.requestResync();
+                } else {
+                    for (long id = lastEventId + 1; id < nextEventId; id++) {
+                        subscriber.offer(history[(int) (id % HISTORY_SIZE)]);
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscriber.schedule();
+        return emitter;
+    }
+
+    /**
+     * Sends change to all subscribers, and keeps it for subscribers that reconnect later.
+     * Runs once the transaction that made the change has committed, or straight away if there was no transaction,
+     * so subscribers never hear of changes that were rolled back.
+     * Never waits for subscribers: the event is only added to each subscriber's buffer
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeeChange(EmployeeChangeEvent event) {
+        synchronized (lock) {
+            FeedEvent feedEvent = new FeedEvent(nextEventId++, event);
+            history[(int) (feedEvent.id % HISTORY_SIZE)] = feedEvent;
+            // offered while holding the lock, so that every subscriber gets events in ID order
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(feedEvent);
+            }
+        }
+    }
+
+    /**
+     * Change event along with the ID it is sent with
+     */
+    private static class FeedEvent {
+        private final long id;
+        private final EmployeeChangeEvent event;
+
+        private FeedEvent(long id, EmployeeChangeEvent event) {
+            this.id = id;
+            this.event = event;
+        }
+    }
+
+    /**
+     * One open stream. Events are added to a bounded buffer, which a sender thread drains into the stream.
+     * When the buffer is full, the subscriber is not keeping up: everything buffered is dropped
+     * and a resync event is sent in its place, so memory per subscriber stays bounded
+     */
+    private class Subscriber implements Runnable {
+        private final SseEmitter emitter;
+        private final BlockingQueue<FeedEvent> buffer = new ArrayBlockingQueue<>(SUBSCRIBER_BUFFER_SIZE);
+        private final AtomicBoolean resync = new AtomicBoolean();
+        // true while a sender task for this subscriber is queued or running
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(FeedEvent event) {
+            if (!buffer.offer(event)) {
+                buffer.clear();
+                requestResync();
+            }
+            schedule();
+        }
+
+        private void requestResync() {
+            resync.set(true);
+        }
+
+        private void schedule() {
+            if ((resync.get() || !buffer.isEmpty()) && scheduled.compareAndSet(false, true)) {
+                senders.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    if (resync.getAndSet(false)) {
+                        emitter.send(SseEmitter.event().name(RESYNC_EVENT_NAME)
+                                .data("Events were dropped, get missed changes from /api/v1/employees/changes"));
+                    }
+                    FeedEvent next = buffer.poll();
+                    if (next == null) break;
+                    emitter.send(SseEmitter.event()
+                            .id(String.valueOf(next.id))
+                            .name(next.event.getType().name().toLowerCase())
+                            .data(next.event, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the client has gone away, or the stream was already completed
+                logger.debug("Dropping subscriber to employee changes: " + e.getMessage());
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return;
+            }
+            scheduled.set(false);
+            // an event may have been added after the buffer was found empty but before scheduled was cleared
+            schedule();
+        }
+    }
+}
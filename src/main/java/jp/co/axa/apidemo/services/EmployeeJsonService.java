@@ -0,0 +1,11 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.message.EncodedEmployee;
+
+public interface EmployeeJsonService {
+
+    // cache of employees serialized as JSON. Entries are evicted by every EmployeeService method that changes an employee
+    String EMPLOYEE_JSON_CACHE_NAME = "employeeJsonCache";
+
+    public EncodedEmployee getEncodedEmployee(Long employeeId);
+}
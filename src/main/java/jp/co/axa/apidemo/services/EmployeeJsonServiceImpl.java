@@ -0,0 +1,46 @@
+package jp.co.axa.apidemo.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.ETags;
+import jp.co.axa.apidemo.message.EncodedEmployee;
+import jp.co.axa.apidemo.tracing.RequestTrace;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+
+@Service
+public class EmployeeJsonServiceImpl implements EmployeeJsonService {
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Gets employee by ID, serialized as JSON.
+     * If the serialized employee is not found in cache, then gets the employee from EmployeeService,
+     * serializes it, and stores the result in cache.
+     * Returns null if employee is not found.
+     * @param employeeId
+     * @return
+     */
+    @Cacheable(value = EMPLOYEE_JSON_CACHE_NAME, key = "#employeeId", unless = "#result==null")
+    public EncodedEmployee getEncodedEmployee(Long employeeId) {
+        Employee employee = employeeService.getEmployee(employeeId);
+        if (employee == null) return null;
+
+        try {
+            long start = System.nanoTime();
+            byte[] json = objectMapper.writeValueAsBytes(employee);
+            RequestTrace.recordSerialization(System.nanoTime() - start);
+            return new EncodedEmployee(json, ETags.forVersion(employee.getVersion()));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,19 +1,52 @@
 package jp.co.axa.apidemo.services;
 
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.BatchItemResult;
+import jp.co.axa.apidemo.message.EmployeeChanges;
+import jp.co.axa.apidemo.message.EmployeeFieldsPage;
+import jp.co.axa.apidemo.message.EmployeeLookup;
+import jp.co.axa.apidemo.message.EmployeePage;
+import jp.co.axa.apidemo.message.EmployeeSearchCriteria;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface EmployeeService {
 
-    public List<Employee> retrieveEmployees();
+    // cache of employees by ID. Filled by getEmployee() misses, writes and the startup warm-up
+    String EMPLOYEE_CACHE_NAME = "employeeCache";
+
+    // IDs recently looked up and not found in database
+    String NOT_FOUND_CACHE_NAME = "employeeNotFoundCache";
+
+    public EmployeePage retrieveEmployees(Long afterId, int limit);
+
+    public EmployeePage searchEmployees(EmployeeSearchCriteria criteria, Long afterId, int limit);
+
+    public EmployeeFieldsPage retrieveEmployeeFields(List<String> fields, Long afterId, int limit);
+
+    public EmployeeFieldsPage searchEmployeeFields(EmployeeSearchCriteria criteria, List<String> fields,
+                                                   Long afterId, int limit);
+
+    public EmployeeChanges getChanges(long since, int limit);
+
+    public void exportEmployees(Consumer<Employee> consumer);
+
+    public void exportEmployeeFields(List<String> fields, Consumer<Map<String, Object>> consumer);
 
     public Employee getEmployee(Long employeeId);
 
+    public EmployeeLookup getEmployees(List<Long> employeeIds);
+
     public Employee saveEmployee(Employee employee);
 
     public void deleteEmployee(Long employeeId);
 
-    public Employee updateEmployee(Employee employee, Long employeeId);
+    public Employee updateEmployee(Employee employee, Long employeeId, Long expectedVersion);
+
+    public List<BatchItemResult> saveEmployees(List<Employee> employees);
+
+    public List<BatchItemResult> updateEmployees(List<Employee> employees);
 }
\ No newline at end of file
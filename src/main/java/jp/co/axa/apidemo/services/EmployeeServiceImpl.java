@@ -1,17 +1,63 @@
 package jp.co.axa.apidemo.services;
 
+import jp.co.axa.apidemo.cache.BulkCacheOperations;
+import jp.co.axa.apidemo.cache.SingleFlight;
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.entities.EmployeeTombstone;
+import jp.co.axa.apidemo.exceptions.CursorExpiredException;
+import jp.co.axa.apidemo.exceptions.EntityNotFoundException;
+import jp.co.axa.apidemo.exceptions.PreconditionFailedException;
+import jp.co.axa.apidemo.message.BatchItemResult;
+import jp.co.axa.apidemo.message.BatchItemResult.Status;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent.Type;
+import jp.co.axa.apidemo.message.EmployeeChanges;
+import jp.co.axa.apidemo.message.EmployeeFieldsPage;
+import jp.co.axa.apidemo.message.EmployeeLookup;
+import jp.co.axa.apidemo.message.EmployeePage;
+import jp.co.axa.apidemo.message.EmployeeSearchCriteria;
 import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.repositories.EmployeeTombstoneRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.persistence.Tuple;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static jp.co.axa.apidemo.datasource.ReplicaRoutingDataSource.callOnPrimary;
+import static jp.co.axa.apidemo.repositories.EmployeeSpecifications.*;
+import static jp.co.axa.apidemo.services.EmployeeJsonService.EMPLOYEE_JSON_CACHE_NAME;
 
 @Service
 public class EmployeeServiceImpl implements EmployeeService{
@@ -19,74 +65,534 @@ public class EmployeeServiceImpl implements EmployeeService{
     @Autowired
     private EmployeeRepository employeeRepository;
 
+    @Autowired
+    private EmployeeTombstoneRepository tombstoneRepository;
+
+    // keeps getChanges() from handing out a cursor past a write that has not committed yet
+    @Autowired
+    private ChangeSequenceWatermark changeWatermark;
+
     @Autowired
     private CacheManager cacheManager;
 
-    private final String EMPLOYEE_CACHE_NAME = "employeeCache";
+    @Autowired
+    private Validator validator;
+
+    // publishes EmployeeChangeEvents, which EmployeeFeedService sends to subscribers after commit
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.changes.tombstone-retention-hours:168}")
+    private long tombstoneRetentionHours;
+
+    // database loads that are in progress, shared by concurrent cache misses for the same employee
+    private final SingleFlight<Long, Employee> employeeLoads = new SingleFlight<>();
 
     public void setEmployeeRepository(EmployeeRepository employeeRepository) {
         this.employeeRepository = employeeRepository;
     }
 
     /**
-     * Gets list of all employees stored in database.
-     * Also stores employees in cache, if not already there.
+     * Gets one page of employees with an ID greater than afterId, ordered by ID.
+     * If more employees exist after this page, the returned page holds the cursor to request them with.
+     * @param afterId ID of the last employee on the previous page, or null for the first page
+     * @param limit maximum number of employees on the page
      * @return
      */
-    public List<Employee> retrieveEmployees() {
-        List<Employee> employees = employeeRepository.findAll();
-        Cache cache = cacheManager.getCache(EMPLOYEE_CACHE_NAME);
-        for (Employee emp : employees) {
-            cache.putIfAbsent(emp.getId(), emp);
+    @Transactional(readOnly = true)
+    public EmployeePage retrieveEmployees(Long afterId, int limit) {
+        // fetch one extra row so that we know whether there is a next page without running a count query
+        List<Employee> employees = employeeRepository.findByIdGreaterThanOrderByIdAsc(
+                afterId == null ? 0L : afterId, PageRequest.of(0, limit + 1));
+        return toPage(employees, limit);
+    }
+
+    /**
+     * Gets one page of employees matching all the given conditions, with an ID greater than afterId, ordered by ID.
+     * Each condition is on an indexed column, so the database does not scan the whole table.
+     * If more matching employees exist after this page, the returned page holds the cursor to request them with.
+     * @param criteria
+     * @param afterId ID of the last employee on the previous page, or null for the first page
+     * @param limit maximum number of employees on the page
+     * @return
+     */
+    @Transactional(readOnly = true)
+    public EmployeePage searchEmployees(EmployeeSearchCriteria criteria, Long afterId, int limit) {
+        return toPage(employeeRepository.findAllOrderById(searchSpec(criteria, afterId), limit + 1), limit);
+    }
+
+    /**
+     * Gets one page of employees as retrieveEmployees() does, holding only the given fields.
+     * Only the columns of these fields are read from the database, and no entities are created
+     * @param fields names of Employee fields, in the order they should be written
+     * @param afterId ID of the last employee on the previous page, or null for the first page
+     * @param limit maximum number of employees on the page
+     * @return
+     */
+    @Transactional(readOnly = true)
+    public EmployeeFieldsPage retrieveEmployeeFields(List<String> fields, Long afterId, int limit) {
+        Specification<Employee> spec = Specification.where(afterId == null ? null : idGreaterThan(afterId));
+        return toFieldsPage(employeeRepository.findAttributesOrderById(spec, fields, limit + 1), fields, limit);
+    }
+
+    /**
+     * Gets one page of employees matching all the given conditions as searchEmployees() does,
+     * holding only the given fields
+     * @param criteria
+     * @param fields names of Employee fields, in the order they should be written
+     * @param afterId ID of the last employee on the previous page, or null for the first page
+     * @param limit maximum number of employees on the page
+     * @return
+     */
+    @Transactional(readOnly = true)
+    public EmployeeFieldsPage searchEmployeeFields(EmployeeSearchCriteria criteria, List<String> fields,
+                                                   Long afterId, int limit) {
+        List<Tuple> rows = employeeRepository.findAttributesOrderById(searchSpec(criteria, afterId), fields, limit + 1);
+        return toFieldsPage(rows, fields, limit);
+    }
+
+    /**
+     * Gets up to limit changes made after the given position in the change sequence, oldest first.
+     * Inserted and updated employees are read from the index on their change sequence, and deleted ones
+     * from their tombstones, so the cost depends on the number of changes rather than the number of employees.
+     * An employee changed several times since the cursor is returned once, with their current data.
+     * Sequence values are taken when a row is written rather than when its transaction commits, so only changes up to
+     * ChangeSequenceWatermark.committedUpTo() are returned: a write still in flight cannot commit below the cursor.
+     * Changes are read from the primary database, which a replica may not have caught up with yet.
+     * Throws error if the cursor is behind a tombstone older than the retention period, as the deletes before it
+     * may have been purged. The client then has to start again from 0
+     * @param since cursor returned by the previous call, or 0 to get every change
+     * @param limit maximum number of upserts and deletes returned together
+     * @return
+     */
+    @Transactional(readOnly = true)
+    public EmployeeChanges getChanges(long since, int limit) {
+        return callOnPrimary(() -> readChanges(since, limit));
+    }
+
+    private EmployeeChanges readChanges(long since, int limit) {
+        long committedUpTo = changeWatermark.committedUpTo();
+        if (since > 0) checkTombstonesKeptSince(since);
+
+        // fetch one extra row of each kind so that we know whether more changes are waiting.
+        // Changes past the watermark are left for a later call, once the writes still in flight have completed
+        PageRequest page = PageRequest.of(0, limit + 1);
+        List<Employee> employees = employeeRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(since, page)
+                .stream().filter(emp -> emp.getChangeSeq() <= committedUpTo).collect(Collectors.toList());
+        List<EmployeeTombstone> tombstones = tombstoneRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(since, page)
+                .stream().filter(tombstone -> tombstone.getChangeSeq() <= committedUpTo).collect(Collectors.toList());
+
+        // merge both lists in sequence order, and stop after limit changes
+        List<Employee> upserts = new ArrayList<>();
+        List<Long> deletes = new ArrayList<>();
+        long cursor = since;
+        int e = 0, t = 0;
+        while (upserts.size() + deletes.size() < limit && (e < employees.size() || t < tombstones.size())) {
+            if (t >= tombstones.size() || (e < employees.size()
+                    && employees.get(e).getChangeSeq() < tombstones.get(t).getChangeSeq())) {
+                Employee emp = employees.get(e++);
+                upserts.add(emp);
+                cursor = emp.getChangeSeq();
+            } else {
+                EmployeeTombstone tombstone = tombstones.get(t++);
+                deletes.add(tombstone.getEmployeeId());
+                cursor = tombstone.getChangeSeq();
+            }
+        }
+        boolean hasMore = e < employees.size() || t < tombstones.size();
+        return new EmployeeChanges(upserts, deletes, cursor, hasMore);
+    }
+
+    /**
+     * Throws error if the oldest tombstone kept is past since and older than the retention period.
+     * Purging keeps the newest tombstone of those it could delete, so a cursor behind it may have missed deletes
+     * @param since
+     */
+    private void checkTombstonesKeptSince(long since) {
+        EmployeeTombstone oldest = tombstoneRepository.findFirstByOrderByChangeSeqAsc();
+        long retentionStart = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(tombstoneRetentionHours);
+        if (oldest != null && oldest.getChangeSeq() > since && oldest.getDeletedAt() < retentionStart)
+            throw new CursorExpiredException("Cursor is older than the deletes kept, sync again from 0 - since: "
+                    + since);
+    }
+
+    /**
+     * Passes every employee stored in database to the given consumer, in ID order.
+     * Employees are read from a database cursor and detached once consumed,
+     * so memory use does not grow with the number of employees
+     * @param consumer
+     */
+    @Transactional(readOnly = true)
+    public void exportEmployees(Consumer<Employee> consumer) {
+        try (Stream<Employee> employees = employeeRepository.streamAllByOrderByIdAsc()) {
+            employees.forEach(emp -> {
+                consumer.accept(emp);
+                employeeRepository.detach(emp);
+            });
+        }
+    }
+
+    /**
+     * Passes the given fields of every employee stored in database to the given consumer, in ID order.
+     * Only the columns of these fields are read, from a database cursor, so memory use does not grow with
+     * the number of employees and no entities are created
+     * @param fields names of Employee fields, in the order they should be written
+     * @param consumer
+     */
+    @Transactional(readOnly = true)
+    public void exportEmployeeFields(List<String> fields, Consumer<Map<String, Object>> consumer) {
+        try (Stream<Tuple> rows = employeeRepository.streamAttributesOrderById(fields)) {
+            rows.forEach(row -> consumer.accept(toFields(row, fields)));
         }
-        return employees;
     }
 
     /**
      * Gets employee by ID.
      * If employee is not found in cache, then retrieves from database.
+     * Concurrent cache misses for the same ID share one database query, rather than each running their own.
      * Returns null if employee is also not found in database.
+     * IDs that are not found are remembered for a short time, so repeated lookups of them do not reach the database.
+     * Employees loaded to be cached are read from the primary, as a replica that lags behind could return a row older
+     * than a write whose eviction has already run, and that row would stay cached until it expires.
      * @param employeeId
      * @return
      */
     @Cacheable(value = EMPLOYEE_CACHE_NAME, key = "#employeeId", unless = "#result==null")
     public Employee getEmployee(Long employeeId) {
-        Optional<Employee> optEmp = employeeRepository.findById(employeeId);
-        return optEmp.orElse(null);
+        Cache notFoundCache = cacheManager.getCache(NOT_FOUND_CACHE_NAME);
+        if (notFoundCache.get(employeeId) != null) return null;
+
+        Cache cache = cacheManager.getCache(EMPLOYEE_CACHE_NAME);
+        return employeeLoads.load(employeeId, () -> {
+            // a load that finished just before this one started may already have filled the cache
+            Employee cached = cache.get(employeeId, Employee.class);
+            if (cached != null) return cached;
+
+            Optional<Employee> optEmp = callOnPrimary(() -> employeeRepository.findById(employeeId));
+            // store in cache before the load is finished, so that later misses find it rather than querying again
+            if (optEmp.isPresent()) {
+                cache.put(employeeId, optEmp.get());
+            } else {
+                notFoundCache.put(employeeId, Boolean.TRUE);
+            }
+            return optEmp.orElse(null);
+        });
     }
 
     /**
-     * Saves employee to database.
-     * Also stores employee in cache.
+     * Gets many employees by ID.
+     * Employees found in cache are returned from there, and all the others are retrieved from database with one query
+     * and stored in cache. As with getEmployee(), concurrent loads of the same ID are shared, they are read from the
+     * primary, and IDs recently found not to exist are not looked up again.
+     * @param employeeIds
+     * @return employees in the order of their first occurrence in employeeIds, and the IDs that were not found
+     */
+    public EmployeeLookup getEmployees(List<Long> employeeIds) {
+        Set<Long> ids = new LinkedHashSet<>(employeeIds);
+        Cache cache = cacheManager.getCache(EMPLOYEE_CACHE_NAME);
+        Cache notFoundCache = cacheManager.getCache(NOT_FOUND_CACHE_NAME);
+
+        Map<Long, Employee> found = BulkCacheOperations.getAll(cache, ids, Employee.class);
+        Set<Long> misses = new LinkedHashSet<>(ids);
+        misses.removeAll(found.keySet());
+        misses.removeAll(BulkCacheOperations.getAll(notFoundCache, misses, Boolean.class).keySet());
+
+        if (!misses.isEmpty()) {
+            found.putAll(employeeLoads.loadAll(misses, toLoad -> {
+                Map<Long, Employee> loaded = callOnPrimary(() -> employeeRepository.findAllById(toLoad)).stream()
+                        .collect(Collectors.toMap(Employee::getId, Function.identity()));
+                Map<Long, Boolean> unknown = new HashMap<>();
+                toLoad.stream().filter(id -> !loaded.containsKey(id)).forEach(id -> unknown.put(id, Boolean.TRUE));
+                BulkCacheOperations.putAll(cache, loaded);
+                BulkCacheOperations.putAll(notFoundCache, unknown);
+                return loaded;
+            }));
+        }
+
+        List<Employee> employees = new ArrayList<>(found.size());
+        List<Long> notFound = new ArrayList<>();
+        for (Long id : ids) {
+            Employee emp = found.get(id);
+            if (emp != null) {
+                employees.add(emp);
+            } else {
+                notFound.add(id);
+            }
+        }
+        return new EmployeeLookup(employees, notFound);
+    }
+
+    /**
+     * Saves employee to database, and publishes the change.
+     * Also stores employee in cache, and forgets any earlier "not found" result or serialized JSON for its ID.
      * @param employee
      * @return
      */
-    @CachePut(value = EMPLOYEE_CACHE_NAME, key = "#result.id")
+    @Caching(put = @CachePut(value = EMPLOYEE_CACHE_NAME, key = "#result.id"),
+             evict = {@CacheEvict(value = NOT_FOUND_CACHE_NAME, key = "#result.id"),
+                      @CacheEvict(value = EMPLOYEE_JSON_CACHE_NAME, key = "#result.id")})
     public Employee saveEmployee(Employee employee){
-        return employeeRepository.save(employee);
+        Employee saved = changeWatermark.write(() -> employeeRepository.save(employee));
+        publishSaved(saved);
+        return saved;
     }
 
     /**
-     * Deletes employee from database.
-     * Also removes employee from cache.
+     * Deletes employee from database, and records a tombstone for them so that clients syncing changes see the delete.
+     * The delete is also published to subscribers of the change stream once committed.
+     * Once committed, also removes employee and its serialized JSON from cache, and records its ID as not found.
      * @param employeeId
      */
-    @CacheEvict(value = EMPLOYEE_CACHE_NAME, key = "#employeeId")
+    @Transactional
     public void deleteEmployee(Long employeeId){
-        employeeRepository.deleteById(employeeId);
+        changeWatermark.write(() -> {
+            employeeRepository.deleteById(employeeId);
+            return tombstoneRepository.save(new EmployeeTombstone(employeeId, System.currentTimeMillis()));
+        });
+        eventPublisher.publishEvent(new EmployeeChangeEvent(Type.DELETED, employeeId, null));
+        afterCommit(() -> {
+            evictFromCache(employeeId);
+            cacheManager.getCache(NOT_FOUND_CACHE_NAME).put(employeeId, Boolean.TRUE);
+        });
     }
 
     /**
-     * Updates employee stored in database with given ID.
-     * Also stores employee in cache with given ID.
+     * Updates employee stored in database with given ID, using a single UPDATE statement rather than reading it first.
+     * If expectedVersion is given, the employee is only updated if that is still its current version.
+     * Otherwise, the new version is read back in the same transaction, so that it is known in either case.
+     * Once committed, also removes employee and its serialized JSON from cache, so that the next read loads the new
+     * version, and publishes the change to subscribers of the change stream.
+     * Throws error if employee violates constraints, if no employee exists with given ID,
+     * or if the employee's version is not expectedVersion.
      * @param employee
      * @param employeeId
-     * @return
+     * @param expectedVersion version the client last read, or null to update whatever the current version is
+     * @return the updated employee, with their new version
      */
-    @CachePut(value = EMPLOYEE_CACHE_NAME, key = "#employeeId")
-    public Employee updateEmployee(Employee employee, Long employeeId) {
+    @Transactional
+    public Employee updateEmployee(Employee employee, Long employeeId, Long expectedVersion) {
         // set ID so that we update existing entry rather than creating a new one
         employee.setId(employeeId);
-        return employeeRepository.save(employee);
+        Set<ConstraintViolation<Employee>> violations = validator.validate(employee);
+        if (!violations.isEmpty()) throw new ConstraintViolationException(violations);
+
+        if (changeWatermark.write(() -> employeeRepository.updateIfVersionMatches(employee, expectedVersion)) == 0) {
+            // only read the employee when the update failed, to find out why
+            if (!employeeRepository.existsById(employeeId))
+                throw new EntityNotFoundException("Employee not found - ID: " + employeeId);
+            throw new PreconditionFailedException("Employee has been modified since version " + expectedVersion
+                    + " - ID: " + employeeId);
+        }
+        // the row stays locked by this transaction, so no other update can have changed the version since
+        employee.setVersion(expectedVersion != null ? expectedVersion + 1
+                                                    : employeeRepository.findVersionById(employeeId));
+        eventPublisher.publishEvent(new EmployeeChangeEvent(Type.UPDATED, employeeId, employee));
+        afterCommit(() -> evictFromCache(employeeId));
+        return employee;
+    }
+
+    /**
+     * Saves list of new employees to database in one transaction, so that the inserts are sent as JDBC batches.
+     * Any ID given in the request is ignored. Employees that violate constraints are skipped and reported as invalid.
+     * Also stores saved employees in cache once committed, and publishes each of them as created.
+     * @param employees
+     * @return result for each employee, in the same order as given
+     */
+    @Transactional
+    public List<BatchItemResult> saveEmployees(List<Employee> employees) {
+        BatchItemResult[] results = new BatchItemResult[employees.size()];
+        List<Employee> valid = new ArrayList<>(employees.size());
+        for (int i = 0; i < employees.size(); i++) {
+            Employee employee = employees.get(i);
+            employee.setId(null);
+            String violations = validate(employee);
+            if (violations != null) {
+                results[i] = new BatchItemResult(i, null, Status.INVALID, violations);
+            } else {
+                valid.add(employee);
+            }
+        }
+
+        // flush so that constraint errors from the database are thrown before anything is put in cache
+        changeWatermark.write(() -> {
+            employeeRepository.saveAll(valid);
+            employeeRepository.flush();
+            return null;
+        });
+        afterCommit(() -> putInCache(valid));
+        valid.forEach(this::publishSaved);
+
+        int next = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                Employee saved = valid.get(next++);
+                results[i] = new BatchItemResult(i, saved.getId(), Status.CREATED, null);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Updates list of existing employees in one transaction.
+     * Existing employees are loaded with a single query and their changes are flushed as JDBC batches.
+     * Employees without an ID, that violate constraints, or that do not exist in database are skipped and reported.
+     * An ID given more than once is only updated from its first occurrence, and its repeats are reported as invalid.
+     * Also stores updated employees in cache once committed, and publishes each of them as updated.
+     * @param employees
+     * @return result for each employee, in the same order as given
+     */
+    @Transactional
+    public List<BatchItemResult> updateEmployees(List<Employee> employees) {
+        Set<Long> ids = employees.stream().map(Employee::getId).filter(id -> id != null).collect(Collectors.toSet());
+        Map<Long, Employee> existing = employeeRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Employee::getId, Function.identity()));
+
+        List<BatchItemResult> results = new ArrayList<>(employees.size());
+        List<Employee> updated = new ArrayList<>(existing.size());
+        Set<Long> seen = new HashSet<>(ids.size() * 4 / 3 + 1);
+        for (int i = 0; i < employees.size(); i++) {
+            Employee employee = employees.get(i);
+            String violations = validate(employee);
+            if (employee.getId() == null) {
+                results.add(new BatchItemResult(i, null, Status.INVALID, "Employee ID is required"));
+            } else if (!seen.add(employee.getId())) {
+                results.add(new BatchItemResult(i, employee.getId(), Status.INVALID,
+                        "Employee ID appears more than once in the batch"));
+            } else if (violations != null) {
+                results.add(new BatchItemResult(i, employee.getId(), Status.INVALID, violations));
+            } else if (!existing.containsKey(employee.getId())) {
+                results.add(new BatchItemResult(i, employee.getId(), Status.NOT_FOUND, "Employee not found"));
+            } else {
+                // changes to the managed entity are written as batched updates when the transaction flushes
+                Employee managed = existing.get(employee.getId());
+                managed.setName(employee.getName());
+                managed.setSalary(employee.getSalary());
+                managed.setDepartment(employee.getDepartment());
+                updated.add(managed);
+                results.add(new BatchItemResult(i, employee.getId(), Status.UPDATED, null));
+            }
+        }
+
+        // saved rather than left to dirty checking, so that employees read from several shards, each in a transaction
+        // of its own, are saved too. Managed employees are returned as they are
+        List<Employee> saved = changeWatermark.write(() -> {
+            List<Employee> written = employeeRepository.saveAll(updated);
+            employeeRepository.flush();
+            return written;
+        });
+        afterCommit(() -> putInCache(saved));
+        saved.forEach(this::publishSaved);
+        return results;
+    }
+
+    /**
+     * Builds page from employees fetched with one more row than the page size.
+     * If that extra row was found, it is dropped and the ID of the last employee on the page becomes the next cursor
+     * @param employees
+     * @param limit
+     * @return
+     */
+    private EmployeePage toPage(List<Employee> employees, int limit) {
+        if (employees.size() <= limit) {
+            return new EmployeePage(employees, null);
+        }
+        List<Employee> page = new ArrayList<>(employees.subList(0, limit));
+        return new EmployeePage(page, page.get(limit - 1).getId());
+    }
+
+    private EmployeeFieldsPage toFieldsPage(List<Tuple> rows, List<String> fields, int limit) {
+        List<Map<String, Object>> page = new ArrayList<>(Math.min(rows.size(), limit));
+        for (int i = 0; i < rows.size() && i < limit; i++) {
+            page.add(toFields(rows.get(i), fields));
+        }
+        Long nextCursor = rows.size() > limit ? rows.get(limit - 1).get("id", Long.class) : null;
+        return new EmployeeFieldsPage(page, nextCursor);
+    }
+
+    private static Map<String, Object> toFields(Tuple row, List<String> fields) {
+        Map<String, Object> employee = new LinkedHashMap<>(fields.size() * 4 / 3 + 1);
+        for (String field : fields) {
+            employee.put(field, row.get(field));
+        }
+        return employee;
+    }
+
+    /**
+     * Builds the conditions of a search, including an ID greater than afterId on pages after the first
+     * @param criteria
+     * @param afterId
+     * @return
+     */
+    private static Specification<Employee> searchSpec(EmployeeSearchCriteria criteria, Long afterId) {
+        // the ID condition is left out of the first page: H2 prefers a range on the primary key to a range on
+        // the salary or name index when it has both, since the primary key also gives the order
+        Specification<Employee> spec = Specification.where(afterId == null ? null : idGreaterThan(afterId));
+        if (criteria.getDepartment() != null) spec = spec.and(inDepartment(criteria.getDepartment()));
+        if (criteria.getMinSalary() != null) spec = spec.and(salaryAtLeast(criteria.getMinSalary()));
+        if (criteria.getMaxSalary() != null) spec = spec.and(salaryAtMost(criteria.getMaxSalary()));
+        if (criteria.getNamePrefix() != null) spec = spec.and(nameStartsWith(criteria.getNamePrefix()));
+        return spec;
+    }
+
+    /**
+     * Checks employee against its constraints
+     * @param employee
+     * @return description of the violated constraints, or null if there are none
+     */
+    private String validate(Employee employee) {
+        Set<ConstraintViolation<Employee>> violations = validator.validate(employee);
+        if (violations.isEmpty()) return null;
+        return violations.stream()
+                .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Publishes saved employee as created if this was their first save (version 0), otherwise as updated
+     * @param employee
+     */
+    private void publishSaved(Employee employee) {
+        Type type = Long.valueOf(0).equals(employee.getVersion()) ? Type.CREATED : Type.UPDATED;
+        eventPublisher.publishEvent(new EmployeeChangeEvent(type, employee.getId(), employee));
+    }
+
+    /**
+     * Runs action once the current transaction has committed, or straight away if there is none.
+     * Cache writes of a transaction are made this way: made before the commit, a concurrent getEmployee() could
+     * load the old row in between and cache it again until it expires
+     * @param action
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Removes employee and its serialized JSON from cache
+     * @param employeeId
+     */
+    private void evictFromCache(Long employeeId) {
+        cacheManager.getCache(EMPLOYEE_CACHE_NAME).evict(employeeId);
+        cacheManager.getCache(EMPLOYEE_JSON_CACHE_NAME).evict(employeeId);
+    }
+
+    /**
+     * Stores employees in cache, and forgets any earlier "not found" results or serialized JSON for their IDs
+     * @param employees
+     */
+    private void putInCache(Collection<Employee> employees) {
+        Map<Long, Employee> byId = employees.stream()
+                .collect(Collectors.toMap(Employee::getId, Function.identity(), (first, last) -> last));
+        BulkCacheOperations.putAll(cacheManager.getCache(EMPLOYEE_CACHE_NAME), byId);
+        BulkCacheOperations.evictAll(cacheManager.getCache(NOT_FOUND_CACHE_NAME), byId.keySet());
+        BulkCacheOperations.evictAll(cacheManager.getCache(EMPLOYEE_JSON_CACHE_NAME), byId.keySet());
     }
-}
\ No newline at end of file
+}
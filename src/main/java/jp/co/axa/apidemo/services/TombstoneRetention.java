@@ -0,0 +1,74 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.repositories.EmployeeTombstoneRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes the tombstones of employees deleted longer ago than app.changes.tombstone-retention-hours, once at startup
+ * and then every hour, so that the tombstone table does not keep every delete ever made.
+ * The newest tombstone that could be deleted is kept: a change feed cursor behind it may have missed deletes that
+ * were purged, and getChanges() tells those clients to sync again from the start
+ */
+@Component
+public class TombstoneRetention {
+    private static final Logger logger = LoggerFactory.getLogger(TombstoneRetention.class);
+
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final EmployeeTombstoneRepository tombstoneRepository;
+
+    private final long retentionMillis;
+
+    private ScheduledExecutorService purger;
+
+    public TombstoneRetention(EmployeeTombstoneRepository tombstoneRepository,
+                              @Value("${app.changes.tombstone-retention-hours:168}") long retentionHours) {
+        this.tombstoneRepository = tombstoneRepository;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        purger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tombstone-purger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(() -> {
+            try {
+                purge();
+            } catch (RuntimeException e) {
+                logger.warn("Failed to purge employee tombstones", e);
+            }
+        }, 0, PURGE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (purger != null) purger.shutdownNow();
+    }
+
+    /**
+     * Deletes the tombstones recorded before the retention period, apart from the newest of them
+     * @return number of tombstones deleted
+     */
+    public int purge() {
+        Long newestExpired = tombstoneRepository.findMaxChangeSeqDeletedBefore(
+                System.currentTimeMillis() - retentionMillis);
+        if (newestExpired == null) return 0;
+        int deleted = tombstoneRepository.deleteByChangeSeqBefore(newestExpired);
+        if (deleted > 0) logger.info("Purged employee tombstones - deleted: " + deleted + ", kept from: "
+                + newestExpired);
+        return deleted;
+    }
+}
@@ -0,0 +1,59 @@
+package jp.co.axa.apidemo.sharding;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * Shard that the connections of the current thread are taken from, read by ShardRoutingDataSource
+ * and by ShardedSequenceGenerator. Threads without a shard use shard 0
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> current = new ThreadLocal<>();
+
+    private ShardContext() {}
+
+    /**
+     * @return shard of the current thread, or null if none was set
+     */
+    public static Integer current() {
+        return current.get();
+    }
+
+    /**
+     * Runs call with its connections taken from the given shard, then restores the shard the thread had before
+     * @param shard
+     * @param call
+     * @return what call returns
+     */
+    public static <T> T callOn(int shard, Supplier<T> call) {
+        Integer previous = current.get();
+        current.set(shard);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Takes the connection of the current transaction from the given shard, if it has not been taken yet,
+     * and the connections of the thread from no shard in particular once the transaction completes
+     * @param shard
+     */
+    static void bindToTransaction(int shard) {
+        current.set(shard);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                current.remove();
+            }
+        });
+    }
+}
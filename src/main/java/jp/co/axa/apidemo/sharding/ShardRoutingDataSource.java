@@ -0,0 +1,36 @@
+package jp.co.axa.apidemo.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DataSource that takes each connection from the shard set in ShardContext, or from shard 0 if none is set.
+ * A transaction keeps the connection it first took, so this is used behind a LazyConnectionDataSourceProxy,
+ * which takes it at the first statement, once the shard is known
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * @param shards DataSource of each shard, by shard number
+     */
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        // an unknown shard number is a bug, rather than something to send to shard 0
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
@@ -0,0 +1,479 @@
+package jp.co.axa.apidemo.sharding;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.springframework.beans.support.PropertyComparator;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.Tuple;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static jp.co.axa.apidemo.repositories.EmployeeRepository.STREAM_FETCH_SIZE;
+import static jp.co.axa.apidemo.repositories.EmployeeSpecifications.idGreaterThan;
+
+/**
+ * EmployeeRepository that splits employees across shards, on top of the Spring Data repository.
+ * Calls about one employee go to its shard. Within a transaction, they run in that transaction, whose connection
+ * is then taken from the shard: a transaction can write to one shard only, and reads of other shards run in
+ * transactions of their own. Outside a transaction, the repository's own transaction is routed to the shard.
+ * Calls about many employees are grouped by shard, and lists, searches and aggregates run on every shard:
+ * each group or shard runs in parallel in a transaction of its own, so a batch that spans shards commits per shard.
+ * Ordered lists are merged in their order and then paged, and streams are merged from pages read from each shard.
+ * The change sequence is per shard, so lists ordered by it are only roughly ordered across shards
+ */
+public class ShardedEmployeeRepository implements EmployeeRepository {
+
+    private static final int STREAM_PAGE_SIZE = Integer.parseInt(STREAM_FETCH_SIZE);
+
+    private static final Comparator<Employee> BY_ID = Comparator.comparing(Employee::getId);
+
+    private static final Comparator<Employee> BY_CHANGE_SEQ = Comparator.comparing(Employee::getChangeSeq);
+
+    private static final Comparator<Tuple> TUPLE_BY_ID = Comparator.comparing(t -> t.get("id", Long.class));
+
+    private final EmployeeRepository target;
+
+    private final Shards shards;
+
+    /**
+     * @param target repository whose calls are routed to the shards
+     * @param shards
+     */
+    public ShardedEmployeeRepository(EmployeeRepository target, Shards shards) {
+        this.target = target;
+        this.shards = shards;
+    }
+
+    public <S extends Employee> S save(S employee) {
+        return onShard(shards.shardFor(employee), true, () -> target.save(employee));
+    }
+
+    public <S extends Employee> S saveAndFlush(S employee) {
+        return onShard(shards.shardFor(employee), true, () -> target.saveAndFlush(employee));
+    }
+
+    /**
+     * Saves employees on their shards, new ones on the shard chosen for them
+     * @return saved employees, in the order given
+     */
+    public <S extends Employee> List<S> saveAll(Iterable<S> employees) {
+        List<S> given = new ArrayList<>();
+        employees.forEach(given::add);
+        // placed once, as placement in turn gives a different shard each time
+        Map<S, Integer> placed = new IdentityHashMap<>();
+        given.forEach(e -> placed.put(e, shards.shardFor(e)));
+
+        List<List<S>> groups = grouped(given, placed::get, true, target::saveAll);
+        // groups are in the order of their first employee, and employees within a group in the order given
+        List<Iterator<S>> savedByGroup = groups.stream().map(List::iterator).collect(Collectors.toList());
+        Map<Integer, Integer> groupOfShard = new LinkedHashMap<>();
+        List<S> saved = new ArrayList<>(given.size());
+        for (S employee : given) {
+            int group = groupOfShard.computeIfAbsent(placed.get(employee), s -> groupOfShard.size());
+            saved.add(savedByGroup.get(group).next());
+        }
+        return saved;
+    }
+
+    public int updateIfVersionMatches(Employee employee, Long expectedVersion) {
+        return onShard(shards.shardFor(employee), true, () -> target.updateIfVersionMatches(employee, expectedVersion));
+    }
+
+    public List<Long> updateAll(List<Employee> employees) {
+        Set<Long> updated = grouped(employees, shards::shardFor, true, target::updateAll).stream()
+                .flatMap(List::stream).collect(Collectors.toCollection(HashSet::new));
+        return employees.stream().map(Employee::getId).filter(updated::contains).collect(Collectors.toList());
+    }
+
+    public Optional<Employee> findById(Long id) {
+        return onShard(shards.shardOf(id), false, () -> target.findById(id));
+    }
+
+    public boolean existsById(Long id) {
+        return onShard(shards.shardOf(id), false, () -> target.existsById(id));
+    }
+
+    /**
+     * Reads the employee straight away, rather than returning a reference loaded on first use, which would be loaded
+     * from whichever shard the thread is on by then
+     * @throws EntityNotFoundException if no employee has this ID
+     */
+    public Employee getOne(Long id) {
+        return findById(id).orElseThrow(() -> new EntityNotFoundException("Unable to find Employee with id " + id));
+    }
+
+    public List<Employee> findAllById(Iterable<Long> ids) {
+        return grouped(ids, shards::shardOf, false, target::findAllById).stream()
+                .flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    public void deleteById(Long id) {
+        onShard(shards.shardOf(id), true, () -> {
+            target.deleteById(id);
+            return null;
+        });
+    }
+
+    public void delete(Employee employee) {
+        onShard(shards.shardFor(employee), true, () -> {
+            target.delete(employee);
+            return null;
+        });
+    }
+
+    public void deleteAll(Iterable<? extends Employee> employees) {
+        grouped(employees, shards::shardFor, true, group -> {
+            target.deleteAll(group);
+            return null;
+        });
+    }
+
+    public void deleteInBatch(Iterable<Employee> employees) {
+        grouped(employees, shards::shardFor, true, group -> {
+            target.deleteInBatch(group);
+            return null;
+        });
+    }
+
+    public void deleteAll() {
+        onEveryShard(true, shard -> {
+            target.deleteAll();
+            return null;
+        });
+    }
+
+    public void deleteAllInBatch() {
+        onEveryShard(true, shard -> {
+            target.deleteAllInBatch();
+            return null;
+        });
+    }
+
+    /**
+     * Only touches the persistence context of this thread
+     */
+    public void flush() {
+        target.flush();
+    }
+
+    /**
+     * Only touches the persistence context of this thread
+     */
+    public void detach(Employee employee) {
+        target.detach(employee);
+    }
+
+    public long count() {
+        return onEveryShard(false, shard -> target.count()).stream().mapToLong(Long::longValue).sum();
+    }
+
+    public <S extends Employee> long count(Example<S> example) {
+        return onEveryShard(false, shard -> target.count(example)).stream().mapToLong(Long::longValue).sum();
+    }
+
+    public <S extends Employee> boolean exists(Example<S> example) {
+        return onEveryShard(false, shard -> target.exists(example)).contains(Boolean.TRUE);
+    }
+
+    /**
+     * @throws IncorrectResultSizeDataAccessException if more than one employee matches, on any shards
+     */
+    public <S extends Employee> Optional<S> findOne(Example<S> example) {
+        List<S> found = onEveryShard(false, shard -> target.findOne(example)).stream()
+                .filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
+        if (found.size() > 1) throw new IncorrectResultSizeDataAccessException(1, found.size());
+        return found.stream().findFirst();
+    }
+
+    public Long findVersionById(Long id) {
+        return onShard(shards.shardOf(id), false, () -> target.findVersionById(id));
+    }
+
+    public Long findMinId() {
+        return onEveryShard(false, shard -> target.findMinId()).stream()
+                .filter(Objects::nonNull).min(Comparator.naturalOrder()).orElse(null);
+    }
+
+    public Long findMaxId() {
+        return onEveryShard(false, shard -> target.findMaxId()).stream()
+                .filter(Objects::nonNull).max(Comparator.naturalOrder()).orElse(null);
+    }
+
+    /**
+     * @return every employee, ordered by ID
+     */
+    public List<Employee> findAll() {
+        return merge(onEveryShard(false, shard -> target.findAll()), BY_ID, 0, Integer.MAX_VALUE);
+    }
+
+    public List<Employee> findAll(Sort sort) {
+        return merge(onEveryShard(false, shard -> target.findAll(sort)), comparator(sort), 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets a page in the pageable's order, then by ID, so that the merged pages of the shards do not overlap
+     */
+    public Page<Employee> findAll(Pageable pageable) {
+        return mergedPage(pageable, target::findAll);
+    }
+
+    /**
+     * @return employees matching the example, ordered by ID
+     */
+    public <S extends Employee> List<S> findAll(Example<S> example) {
+        return merge(onEveryShard(false, shard -> target.findAll(example)), BY_ID, 0, Integer.MAX_VALUE);
+    }
+
+    public <S extends Employee> List<S> findAll(Example<S> example, Sort sort) {
+        return merge(onEveryShard(false, shard -> target.findAll(example, sort)),
+                     comparator(sort), 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets a page as findAll(pageable) does
+     */
+    public <S extends Employee> Page<S> findAll(Example<S> example, Pageable pageable) {
+        return mergedPage(pageable, p -> target.findAll(example, p));
+    }
+
+    public List<Employee> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable) {
+        return page(pageable, BY_ID, top -> target.findByIdGreaterThanOrderByIdAsc(afterId, top));
+    }
+
+    /**
+     * The change sequences of the shards are unrelated, so this only roughly orders employees by their last change
+     */
+    public List<Employee> findByChangeSeqGreaterThanOrderByChangeSeqAsc(Long since, Pageable pageable) {
+        return page(pageable, BY_CHANGE_SEQ, top -> target.findByChangeSeqGreaterThanOrderByChangeSeqAsc(since, top));
+    }
+
+    /**
+     * The change sequences of the shards are unrelated, so this only roughly orders employees by their last change
+     */
+    public List<Long> findChangeSeqsDesc(Pageable pageable) {
+        return page(pageable, Comparator.<Long>reverseOrder(), target::findChangeSeqsDesc);
+    }
+
+    public List<Employee> findChangedSinceInRange(Long afterId, Long toId, Long minChangeSeq, Pageable pageable) {
+        return page(pageable, BY_ID, top -> target.findChangedSinceInRange(afterId, toId, minChangeSeq, top));
+    }
+
+    public List<Employee> findAllOrderById(Specification<Employee> spec, int limit) {
+        return merge(onEveryShard(false, shard -> target.findAllOrderById(spec, limit)), BY_ID, 0, limit);
+    }
+
+    public List<Tuple> findAttributesOrderById(Specification<Employee> spec, List<String> attributes, int limit) {
+        return merge(onEveryShard(false, shard -> target.findAttributesOrderById(spec, attributes, limit)),
+                     TUPLE_BY_ID, 0, limit);
+    }
+
+    public Stream<Employee> streamAllByOrderByIdAsc() {
+        return mergedStream(BY_ID, Employee::getId, (shard, afterId) ->
+                target.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, STREAM_PAGE_SIZE)));
+    }
+
+    public Stream<Tuple> streamAttributesOrderById(List<String> attributes) {
+        return mergedStream(TUPLE_BY_ID, t -> t.get("id", Long.class), (shard, afterId) ->
+                target.findAttributesOrderById(Specification.where(idGreaterThan(afterId)), attributes,
+                                               STREAM_PAGE_SIZE));
+    }
+
+    @Override
+    public String toString() {
+        return "Sharded " + target + " over " + shards.getCount() + " shards";
+    }
+
+    /**
+     * Runs a call about employees of one shard: in the current transaction if it has not used another shard,
+     * otherwise in a transaction of its own
+     */
+    private <T> T onShard(int shard, boolean write, Supplier<T> call) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return ShardContext.callOn(shard, call);
+        }
+        Integer bound = ShardContext.current();
+        if (bound == null) {
+            ShardContext.bindToTransaction(shard);
+            return call.get();
+        }
+        if (bound == shard) return call.get();
+        if (write) {
+            throw new IllegalStateException("Transaction already uses shard " + bound + ", and cannot write to shard " + shard);
+        }
+        return shards.call(shard, true, call);
+    }
+
+    private <T> List<T> onEveryShard(boolean write, IntFunction<T> call) {
+        return shards.callAll(!write, call);
+    }
+
+    /**
+     * Splits items by shard, and runs call with each group: on its shard as onShard() does if there is one group,
+     * otherwise in parallel, each in a transaction of its own
+     * @return what call returns for each group
+     */
+    private <I, T> List<T> grouped(Iterable<I> items, Function<? super I, Integer> shardOf, boolean write,
+                                   Function<List<I>, T> call) {
+        Map<Integer, List<I>> groups = new LinkedHashMap<>();
+        for (I item : items) {
+            groups.computeIfAbsent(shardOf.apply(item), s -> new ArrayList<>()).add(item);
+        }
+        if (groups.isEmpty()) return new ArrayList<>();
+        if (groups.size() == 1) {
+            Map.Entry<Integer, List<I>> group = groups.entrySet().iterator().next();
+            List<T> results = new ArrayList<>(1);
+            results.add(onShard(group.getKey(), write, () -> call.apply(group.getValue())));
+            return results;
+        }
+        return shards.callEach(new ArrayList<>(groups.keySet()), !write, shard -> call.apply(groups.get(shard)));
+    }
+
+    /**
+     * Gets a page of a list ordered across shards: the first offset + size rows of every shard, merged,
+     * hold the rows of the page
+     */
+    private <T> List<T> page(Pageable pageable, Comparator<? super T> order, Function<Pageable, List<T>> query) {
+        int top = (int) pageable.getOffset() + pageable.getPageSize();
+        return merge(onEveryShard(false, shard -> query.apply(PageRequest.of(0, top, pageable.getSort()))),
+                     order, pageable.getOffset(), pageable.getPageSize());
+    }
+
+    /**
+     * Gets a Page as page() does, ordered by the pageable's sort then by ID, and counts the rows of every shard
+     * in the same queries
+     */
+    private <T extends Employee> Page<T> mergedPage(Pageable pageable, Function<Pageable, Page<T>> query) {
+        Sort sort = pageable.getSort().and(Sort.by("id"));
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(merge(onEveryShard(false, shard -> query.apply(Pageable.unpaged()).getContent()),
+                                        comparator(sort), 0, Integer.MAX_VALUE));
+        }
+        int top = (int) pageable.getOffset() + pageable.getPageSize();
+        List<Page<T>> pages = onEveryShard(false, shard -> query.apply(PageRequest.of(0, top, sort)));
+        List<T> content = merge(pages.stream().map(Page::getContent).collect(Collectors.toList()),
+                                comparator(sort), pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(content, pageable, pages.stream().mapToLong(Page::getTotalElements).sum());
+    }
+
+    private static <T> List<T> merge(List<? extends List<T>> lists, Comparator<? super T> order, long offset,
+                                     int limit) {
+        return lists.stream().flatMap(List::stream).sorted(order).skip(offset).limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Orders employees by the properties of a Sort, as the database does apart from where nulls go
+     */
+    private static <T> Comparator<T> comparator(Sort sort) {
+        Comparator<T> order = (a, b) -> 0;
+        for (Sort.Order property : sort) {
+            order = order.thenComparing(new PropertyComparator<>(property.getProperty(), property.isIgnoreCase(),
+                                                                 property.isAscending()));
+        }
+        return order;
+    }
+
+    /**
+     * Merges the rows of every shard into one stream ordered by ID. Each shard is read a page at a time,
+     * each page in a transaction of its own, so no connection is held while the stream is consumed
+     * @param order
+     * @param idOf
+     * @param nextPage reads the page of a shard after the given ID
+     * @return
+     */
+    private <T> Stream<T> mergedStream(Comparator<T> order, Function<T, Long> idOf,
+                                       BiFunction<Integer, Long, List<T>> nextPage) {
+        List<List<T>> firstPages = onEveryShard(false, shard -> nextPage.apply(shard, 0L));
+        PriorityQueue<ShardCursor<T>> cursors = new PriorityQueue<>(Comparator.comparing(ShardCursor::peek, order));
+        for (int shard = 0; shard < firstPages.size(); shard++) {
+            ShardCursor<T> cursor = new ShardCursor<>(shard, firstPages.get(shard), idOf, nextPage);
+            if (cursor.hasNext()) cursors.add(cursor);
+        }
+        Iterator<T> merged = new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return !cursors.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                ShardCursor<T> cursor = cursors.poll();
+                if (cursor == null) throw new NoSuchElementException();
+                T row = cursor.next();
+                if (cursor.hasNext()) cursors.add(cursor);
+                return row;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED), false);
+    }
+
+    /**
+     * Rows of one shard, read a page at a time
+     */
+    private class ShardCursor<T> {
+        private final int shard;
+        private final Deque<T> page;
+        private final Function<T, Long> idOf;
+        private final BiFunction<Integer, Long, List<T>> nextPage;
+        private boolean last;
+
+        private ShardCursor(int shard, List<T> firstPage, Function<T, Long> idOf,
+                            BiFunction<Integer, Long, List<T>> nextPage) {
+            this.shard = shard;
+            this.page = new ArrayDeque<>(firstPage);
+            this.idOf = idOf;
+            this.nextPage = nextPage;
+            this.last = firstPage.size() < STREAM_PAGE_SIZE;
+        }
+
+        private boolean hasNext() {
+            return !page.isEmpty();
+        }
+
+        private T peek() {
+            return page.peekFirst();
+        }
+
+        private T next() {
+            T row = page.pollFirst();
+            if (page.isEmpty() && !last) {
+                List<T> rows = shards.call(shard, true, () -> nextPage.apply(shard, idOf.apply(row)));
+                page.addAll(rows);
+                last = rows.size() < STREAM_PAGE_SIZE;
+            }
+            return row;
+        }
+    }
+}
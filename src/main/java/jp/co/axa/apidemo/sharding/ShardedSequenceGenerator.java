@@ -0,0 +1,61 @@
+package jp.co.axa.apidemo.sharding;
+
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.boot.model.relational.ExportableProducer;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Sequence-based ID generator that makes IDs unique across shards, and tells which shard a row is stored in.
+ * Each shard has its own sequence, and an ID is the next value of the sequence of the shard it is inserted into,
+ * times the number of shards, plus the shard number. With a single shard, IDs are the sequence values themselves.
+ * Each shard's sequence is read through its own SequenceStyleGenerator, so that the pooled optimizer of one shard
+ * never hands out values taken from the sequence of another.
+ * Takes the same parameters as SequenceStyleGenerator, and the number of shards from the SHARD_COUNT_SETTING
+ * Hibernate property
+ */
+public class ShardedSequenceGenerator implements IdentifierGenerator, Configurable, ExportableProducer {
+
+    public static final String SHARD_COUNT_SETTING = "app.sharding.shard-count";
+
+    private final List<SequenceStyleGenerator> generators = new ArrayList<>();
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        Object shardCount = serviceRegistry.getService(ConfigurationService.class).getSettings().get(SHARD_COUNT_SETTING);
+        int shards = shardCount == null ? 1 : Integer.parseInt(shardCount.toString());
+        for (int i = 0; i < shards; i++) {
+            SequenceStyleGenerator generator = new SequenceStyleGenerator();
+            generator.configure(type, params, serviceRegistry);
+            generators.add(generator);
+        }
+    }
+
+    /**
+     * Registers the sequence once, as every shard has the same schema. Each generator still has to be given the
+     * database model, which is how it learns the SQL that reads the sequence
+     * @param database
+     */
+    @Override
+    public void registerExportables(Database database) {
+        generators.forEach(generator -> generator.registerExportables(database));
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        Integer current = ShardContext.current();
+        int shard = current == null ? 0 : current;
+        long value = ((Number) generators.get(shard).generate(session, object)).longValue();
+        return value * generators.size() + shard;
+    }
+}
@@ -0,0 +1,35 @@
+package jp.co.axa.apidemo.sharding;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of employee sharding, under app.sharding
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.sharding")
+public class ShardingProperties {
+
+    // shard 0 also holds every table other than EMPLOYEE
+    private List<Shard> shards = new ArrayList<>();
+
+    private Shards.Placement placement = Shards.Placement.DEPARTMENT;
+
+    // threads that run queries on the shards in parallel. 0 uses two per shard
+    private int fanOutThreads = 0;
+
+    @Getter
+    @Setter
+    public static class Shard {
+        private String url;
+        private String username = "sa";
+        private String password = "";
+        // 0 keeps the pool size of spring.datasource.hikari
+        private int maximumPoolSize = 0;
+    }
+}
@@ -0,0 +1,155 @@
+package jp.co.axa.apidemo.sharding;
+
+import jp.co.axa.apidemo.entities.Employee;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * The shards that employees are split across: which shard holds an employee, and running work on shards in parallel.
+ * An employee's ID tells its shard (see ShardedSequenceGenerator). New employees are placed on a shard chosen
+ * by the placement, after which they stay there, even if their department changes
+ */
+public class Shards {
+
+    public enum Placement {
+        // a hash of the department, so that the employees of a department are stored together.
+        // Employees without a department are spread in turn
+        DEPARTMENT,
+        // each shard in turn
+        ROUND_ROBIN
+    }
+
+    private final int count;
+
+    private final Placement placement;
+
+    private final ExecutorService executor;
+
+    private final TransactionTemplate readTransaction;
+
+    private final TransactionTemplate writeTransaction;
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * @param count number of shards
+     * @param placement
+     * @param threads threads that run work on the shards
+     * @param transactionManager
+     */
+    public Shards(int count, Placement placement, int threads, PlatformTransactionManager transactionManager) {
+        this.count = count;
+        this.placement = placement;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "shard-fan-out-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int shardOf(long employeeId) {
+        return (int) Math.floorMod(employeeId, (long) count);
+    }
+
+    /**
+     * @param employee
+     * @return the shard holding the employee, or where a new employee (without an ID) is to be stored
+     */
+    public int shardFor(Employee employee) {
+        if (employee.getId() != null) return shardOf(employee.getId());
+        if (placement == Placement.DEPARTMENT && employee.getDepartment() != null) {
+            // String.hashCode() is specified, so every node places a department on the same shard
+            return Math.floorMod(employee.getDepartment().hashCode(), count);
+        }
+        return Math.floorMod(nextShard.getAndIncrement(), count);
+    }
+
+    /**
+     * Runs work on the given shard, in a transaction of its own on another thread, and waits for it
+     * @param shard
+     * @param readOnly
+     * @param work
+     * @return what work returns
+     */
+    public <T> T call(int shard, boolean readOnly, Supplier<T> work) {
+        return await(submit(shard, readOnly, work));
+    }
+
+    /**
+     * Runs work on every shard in parallel, each in a transaction of its own, and waits for all of them
+     * @param readOnly
+     * @param work called with each shard number
+     * @return what work returns for each shard, by shard number
+     */
+    public <T> List<T> callAll(boolean readOnly, IntFunction<T> work) {
+        List<Future<T>> futures = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            int s = shard;
+            futures.add(submit(shard, readOnly, () -> work.apply(s)));
+        }
+        List<T> results = new ArrayList<>(count);
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    /**
+     * Runs work on the given shards in parallel, as callAll() does
+     * @param shards
+     * @param readOnly
+     * @param work called with each shard number
+     * @return what work returns for each shard, in the order of shards
+     */
+    public <T> List<T> callEach(List<Integer> shards, boolean readOnly, IntFunction<T> work) {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int shard : shards) {
+            futures.add(submit(shard, readOnly, () -> work.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> Future<T> submit(int shard, boolean readOnly, Supplier<T> work) {
+        TransactionTemplate transaction = readOnly ? readTransaction : writeTransaction;
+        return executor.submit(() -> ShardContext.callOn(shard, () -> transaction.execute(status -> work.get())));
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
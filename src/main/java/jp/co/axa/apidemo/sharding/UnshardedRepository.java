@@ -0,0 +1,79 @@
+package jp.co.axa.apidemo.sharding;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.function.Supplier;
+
+/**
+ * Repository of a table that is not sharded, and is kept on shard 0 only, whose every call is run on shard 0.
+ * Within a transaction that has not used a shard yet, the call runs in that transaction, whose connection is then
+ * taken from shard 0. Within a transaction already on another shard, such as one that deleted an employee,
+ * the call runs in a transaction of its own on shard 0, which commits before the current one
+ */
+public class UnshardedRepository implements InvocationHandler {
+
+    private final Object target;
+
+    private final Shards shards;
+
+    private UnshardedRepository(Object target, Shards shards) {
+        this.target = target;
+        this.shards = shards;
+    }
+
+    /**
+     * @param type repository interface
+     * @param target repository whose calls are run on shard 0
+     * @param shards
+     * @return
+     */
+    public static <R> R create(Class<R> type, R target, Shards shards) {
+        return type.cast(Proxy.newProxyInstance(UnshardedRepository.class.getClassLoader(), new Class<?>[]{type},
+                                                new UnshardedRepository(target, shards)));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "Unsharded " + target + " on shard 0";
+            }
+        }
+        return onShardZero(() -> call(method, args));
+    }
+
+    private Object onShardZero(Supplier<Object> call) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return ShardContext.callOn(0, call);
+        }
+        Integer bound = ShardContext.current();
+        if (bound == null) {
+            ShardContext.bindToTransaction(0);
+            return call.get();
+        }
+        if (bound == 0) return call.get();
+        return shards.call(0, TransactionSynchronizationManager.isCurrentTransactionReadOnly(), call);
+    }
+
+    private Object call(Method method, Object[] args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getTargetException() instanceof RuntimeException) throw (RuntimeException) e.getTargetException();
+            if (e.getTargetException() instanceof Error) throw (Error) e.getTargetException();
+            throw new UndeclaredThrowableException(e.getTargetException());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package jp.co.axa.apidemo.tracing;
+
+import java.util.Locale;
+
+/**
+ * Time spent on SQL, cache and serialization during one request, along with SQL statement and cache hit counts.
+ * The trace of the current request is held by its thread: work done on other threads is not recorded.
+ * The record methods do nothing when no trace is active, so code can call them whether tracing is enabled or not
+ */
+public class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+
+    private int sqlStatements;
+    private long sqlNanos;
+
+    private int cacheHits;
+    private int cacheMisses;
+    private long cacheNanos;
+
+    private long serializationNanos;
+
+    /**
+     * Starts tracing the current thread
+     * @return the new trace
+     */
+    public static RequestTrace start() {
+        RequestTrace trace = new RequestTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * @return the trace of the current thread, or null if it is not being traced
+     */
+    public static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Stops tracing the current thread
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Records one SQL statement (or batch of statements) executed by the current thread
+     * @param nanos
+     */
+    public static void recordSql(long nanos) {
+        RequestTrace trace = CURRENT.get();
+        if (trace == null) return;
+        trace.sqlStatements++;
+        trace.sqlNanos += nanos;
+    }
+
+    /**
+     * Records one cache operation made by the current thread
+     * @param hit true for a lookup that found a value, false for a lookup that did not, null for other operations
+     * @param nanos
+     */
+    public static void recordCache(Boolean hit, long nanos) {
+        RequestTrace trace = CURRENT.get();
+        if (trace == null) return;
+        if (Boolean.TRUE.equals(hit)) trace.cacheHits++;
+        if (Boolean.FALSE.equals(hit)) trace.cacheMisses++;
+        trace.cacheNanos += nanos;
+    }
+
+    /**
+     * Records time the current thread spent serializing a response
+     * @param nanos
+     */
+    public static void recordSerialization(long nanos) {
+        RequestTrace trace = CURRENT.get();
+        if (trace == null) return;
+        trace.serializationNanos += nanos;
+    }
+
+    public int getSqlStatements() {
+        return sqlStatements;
+    }
+
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * @return nanoseconds since the trace was started
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Formats the trace as the value of a Server-Timing header, for example:
+     * sql;dur=1.2;desc="1 statements", cache;dur=0.1;desc="1 hits, 0 misses", ser;dur=0.3, total;dur=2.0
+     * @return
+     */
+    public String toServerTiming() {
+        return String.format(Locale.ROOT,
+                "sql;dur=%.3f;desc=\"%d statements\", cache;dur=%.3f;desc=\"%d hits, %d misses\", ser;dur=%.3f, total;dur=%.3f",
+                millis(sqlNanos), sqlStatements, millis(cacheNanos), cacheHits, cacheMisses,
+                millis(serializationNanos), millis(elapsedNanos()));
+    }
+
+    /**
+     * @return the trace described for a log message
+     */
+    public String describe() {
+        return String.format(Locale.ROOT,
+                "total: %.1f ms, sql: %d statements in %.1f ms, cache: %d hits and %d misses in %.1f ms, serialization: %.1f ms",
+                millis(elapsedNanos()), sqlStatements, millis(sqlNanos), cacheHits, cacheMisses, millis(cacheNanos),
+                millis(serializationNanos));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,159 @@
+package jp.co.axa.apidemo.tracing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traces each request: returns the breakdown of its time in a Server-Timing header, added just before the first byte
+ * of the body is sent, and logs requests slower than the threshold along with their breakdown.
+ * The finished trace is kept in the TRACE_ATTRIBUTE request attribute, so that tests can check, for example,
+ * how many SQL statements an endpoint ran
+ */
+public class RequestTraceFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(RequestTraceFilter.class);
+
+    public static final String TRACE_ATTRIBUTE = RequestTrace.class.getName();
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    private final long slowRequestNanos;
+
+    /**
+     * @param slowRequestMillis requests that take at least this long are logged
+     */
+    public RequestTraceFilter(long slowRequestMillis) {
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMillis);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestTrace trace = RequestTrace.start();
+        request.setAttribute(TRACE_ATTRIBUTE, trace);
+        ServerTimingResponse timedResponse = new ServerTimingResponse(response, trace);
+        try {
+            filterChain.doFilter(request, timedResponse);
+            // for responses without a body
+            timedResponse.addServerTiming();
+        } finally {
+            RequestTrace.end();
+            if (trace.elapsedNanos() >= slowRequestNanos) {
+                logger.warn("Slow request - " + request.getMethod() + " " + request.getRequestURI() + " - "
+                        + trace.describe());
+            }
+        }
+    }
+
+    /**
+     * Response that adds the Server-Timing header once, before anything commits it
+     */
+    private static class ServerTimingResponse extends HttpServletResponseWrapper {
+        private final RequestTrace trace;
+        private boolean timingAdded;
+        private ServletOutputStream outputStream;
+
+        private ServerTimingResponse(HttpServletResponse response, RequestTrace trace) {
+            super(response);
+            this.trace = trace;
+        }
+
+        private void addServerTiming() {
+            if (timingAdded || isCommitted()) return;
+            timingAdded = true;
+            setHeader(SERVER_TIMING_HEADER, trace.toServerTiming());
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) outputStream = new ServerTimingOutputStream(super.getOutputStream(), this);
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            // writers are not used by the JSON endpoints, so the timing is not delayed until their first write
+            addServerTiming();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addServerTiming();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addServerTiming();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addServerTiming();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addServerTiming();
+            super.sendRedirect(location);
+        }
+    }
+
+    private static class ServerTimingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream target;
+        private final ServerTimingResponse response;
+
+        private ServerTimingOutputStream(ServletOutputStream target, ServerTimingResponse response) {
+            this.target = target;
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            response.addServerTiming();
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            response.addServerTiming();
+            target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            response.addServerTiming();
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            response.addServerTiming();
+            target.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return target.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            target.setWriteListener(writeListener);
+        }
+    }
+}
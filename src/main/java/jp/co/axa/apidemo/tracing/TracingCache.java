@@ -0,0 +1,95 @@
+package jp.co.axa.apidemo.tracing;
+
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Cache that records the duration of every operation on the target cache, and whether lookups hit,
+ * in the RequestTrace of the calling thread
+ */
+public class TracingCache implements Cache {
+
+    private final Cache target;
+
+    public TracingCache(Cache target) {
+        this.target = target;
+    }
+
+    /**
+     * @return the cache this one records operations on
+     */
+    public Cache getTarget() {
+        return target;
+    }
+
+    @Override
+    public String getName() {
+        return target.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return target.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        long start = System.nanoTime();
+        ValueWrapper value = target.get(key);
+        RequestTrace.recordCache(value != null, System.nanoTime() - start);
+        return value;
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        long start = System.nanoTime();
+        T value = target.get(key, type);
+        RequestTrace.recordCache(value != null, System.nanoTime() - start);
+        return value;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        boolean[] loaded = {false};
+        long start = System.nanoTime();
+        try {
+            return target.get(key, () -> {
+                loaded[0] = true;
+                return valueLoader.call();
+            });
+        } finally {
+            // the time taken by the loader is included, as the caller waited for it
+            RequestTrace.recordCache(!loaded[0], System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        long start = System.nanoTime();
+        target.put(key, value);
+        RequestTrace.recordCache(null, System.nanoTime() - start);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        long start = System.nanoTime();
+        ValueWrapper existing = target.putIfAbsent(key, value);
+        RequestTrace.recordCache(null, System.nanoTime() - start);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        long start = System.nanoTime();
+        target.evict(key);
+        RequestTrace.recordCache(null, System.nanoTime() - start);
+    }
+
+    @Override
+    public void clear() {
+        long start = System.nanoTime();
+        target.clear();
+        RequestTrace.recordCache(null, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,38 @@
+package jp.co.axa.apidemo.tracing;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CacheManager whose caches record the duration of every operation, and whether lookups hit,
+ * in the RequestTrace of the calling thread.
+ * Operations made directly on a native cache (such as the bulk operations of BulkCacheOperations) are not recorded
+ */
+public class TracingCacheManager implements CacheManager {
+
+    private final CacheManager target;
+
+    private final Map<String, TracingCache> caches = new ConcurrentHashMap<>();
+
+    public TracingCacheManager(CacheManager target) {
+        this.target = target;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TracingCache cache = caches.get(name);
+        if (cache != null) return cache;
+        Cache targetCache = target.getCache(name);
+        if (targetCache == null) return null;
+        return caches.computeIfAbsent(name, n -> new TracingCache(targetCache));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return target.getCacheNames();
+    }
+}
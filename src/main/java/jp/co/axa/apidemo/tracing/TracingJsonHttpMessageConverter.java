@@ -0,0 +1,48 @@
+package jp.co.axa.apidemo.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * JSON converter that records the time spent serializing each response body in the RequestTrace of the calling thread.
+ * While a request is traced, the body is serialized into a buffer first, so that the time does not include
+ * writing to the client, and is known before the first byte (and the Server-Timing header) is sent
+ */
+public class TracingJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    public TracingJsonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        if (RequestTrace.current() == null) {
+            super.writeInternal(object, type, outputMessage);
+            return;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        super.writeInternal(object, type, new HttpOutputMessage() {
+            @Override
+            public OutputStream getBody() {
+                return buffer;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return outputMessage.getHeaders();
+            }
+        });
+        RequestTrace.recordSerialization(System.nanoTime() - start);
+        buffer.writeTo(outputMessage.getBody());
+    }
+}
@@ -0,0 +1,308 @@
+package jp.co.axa.apidemo.writebehind;
+
+import jp.co.axa.apidemo.cache.BulkCacheOperations;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.services.ChangeSequenceWatermark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static jp.co.axa.apidemo.services.EmployeeJsonService.EMPLOYEE_JSON_CACHE_NAME;
+import static jp.co.axa.apidemo.services.EmployeeService.EMPLOYEE_CACHE_NAME;
+
+/**
+ * Queue of employee updates waiting to be written to the database.
+ * Each update is appended to the WriteAheadLog before it is queued, and only the latest update of each employee
+ * is kept, so a burst of updates to the same employee is written once. The queue is flushed every flush interval,
+ * or as soon as it holds maxBatchSize employees, with the UPDATE statements sent as JDBC batches of at most
+ * maxBatchSize, each in a transaction of its own. The change of each employee is published once its batch is committed.
+ * Updates of employees deleted in the meantime are dropped, and their cached copies evicted.
+ * Updates of a batch that fails are queued again, until they have failed maxAttempts times: they are then moved to
+ * the log's dead letters. Updates in the log at startup were acknowledged but not written before the application
+ * stopped, and are written before anything else runs, or queued again if that fails.
+ * Meant for a single node: the versions given to queued updates assume no other node writes the same employees
+ */
+public class EmployeeWriteQueue {
+    private static final Logger logger = LoggerFactory.getLogger(EmployeeWriteQueue.class);
+
+    private final WriteAheadLog log;
+
+    private final EmployeeRepository employeeRepository;
+
+    private final ChangeSequenceWatermark changeWatermark;
+
+    private final TransactionTemplate transaction;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final CacheManager cacheManager;
+
+    private final long flushIntervalMillis;
+
+    private final int maxBatchSize;
+
+    private final int maxAttempts;
+
+    // failed attempts to write the queued update of each employee, for those that have failed
+    private final Map<Long, Integer> attempts = new ConcurrentHashMap<>();
+
+    // guards appending an update to the log together with queueing it, so that rotating the log in flush()
+    // splits the updates in the same place as swapping the queue does
+    private final Object queueLock = new Object();
+
+    // latest update of each employee since the last flush started
+    private volatile Map<Long, Employee> pending = new ConcurrentHashMap<>();
+
+    // updates being written by the current flush, still looked up until they are committed
+    private volatile Map<Long, Employee> flushing = Collections.emptyMap();
+
+    private ScheduledExecutorService flusher;
+
+    public EmployeeWriteQueue(WriteAheadLog log, EmployeeRepository employeeRepository,
+                              ChangeSequenceWatermark changeWatermark, PlatformTransactionManager transactionManager,
+                              ApplicationEventPublisher eventPublisher, CacheManager cacheManager,
+                              long flushIntervalMillis, int maxBatchSize, int maxAttempts) {
+        this.log = log;
+        this.employeeRepository = employeeRepository;
+        this.changeWatermark = changeWatermark;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.cacheManager = cacheManager;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Writes the updates left in the log by the previous run, then starts flushing the queue
+     */
+    public void start() {
+        replay();
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "employee-write-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                                       TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops flushing, after one last flush of the queue. Updates that cannot be written stay in the log
+     */
+    public void stop() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        log.close();
+    }
+
+    /**
+     * Queues an update, once it is in the log. If the employee already has a queued update, it is replaced.
+     * The update is given the version after the one of the employee's queued update, if any, otherwise after
+     * currentVersion. The employee is stored in cache as updated, in the same order as the updates are queued
+     * @param employee new data, including the ID of the employee to update
+     * @param currentVersion version of the employee in the database
+     * @return the queued update
+     */
+    public Employee enqueue(Employee employee, long currentVersion) {
+        boolean full;
+        synchronized (queueLock) {
+            Employee queued = getQueued(employee.getId());
+            employee.setVersion((queued != null ? queued.getVersion() : currentVersion) + 1);
+            log.append(employee);
+            pending.put(employee.getId(), employee);
+            cacheManager.getCache(EMPLOYEE_CACHE_NAME).put(employee.getId(), employee);
+            cacheManager.getCache(EMPLOYEE_JSON_CACHE_NAME).evict(employee.getId());
+            full = pending.size() >= maxBatchSize;
+        }
+        if (full && flusher != null) flusher.execute(this::flushQuietly);
+        return employee;
+    }
+
+    /**
+     * @param employeeId
+     * @return the queued update of the employee that is not yet committed, or null if there is none
+     */
+    public Employee getQueued(Long employeeId) {
+        // pending is read first: flush() makes the updates it takes from pending visible in flushing before that
+        Employee queued = pending.get(employeeId);
+        return queued != null ? queued : flushing.get(employeeId);
+    }
+
+    /**
+     * @return number of queued updates that are not yet committed
+     */
+    public int size() {
+        return pending.size() + flushing.size();
+    }
+
+    /**
+     * Flushes the queue if any of the employees has an update in it, so that a write that goes straight to the
+     * database is not later overwritten by an older queued update
+     * @param employeeIds
+     */
+    public void flushIfQueued(Collection<Long> employeeIds) {
+        for (Long id : employeeIds) {
+            if (id != null && getQueued(id) != null) {
+                flush();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the queued updates to the database. Updates of a batch that fails are queued again as requeue() does,
+     * and the exception is thrown
+     */
+    public synchronized void flush() {
+        Map<Long, Employee> batch;
+        Path segment;
+        synchronized (queueLock) {
+            if (pending.isEmpty()) return;
+            batch = pending;
+            flushing = batch;
+            pending = new ConcurrentHashMap<>();
+            segment = log.rotate();
+        }
+
+        List<Employee> employees = new ArrayList<>(batch.values());
+        employees.sort(Comparator.comparing(Employee::getId));
+        int written = 0;
+        try {
+            while (written < employees.size()) {
+                List<Employee> chunk = employees.subList(written, Math.min(written + maxBatchSize, employees.size()));
+                write(chunk);
+                written += chunk.size();
+            }
+        } catch (RuntimeException e) {
+            // appended again, as the segment holding them is deleted below
+            requeue(employees.subList(written, employees.size()));
+            log.delete(segment);
+            throw e;
+        }
+        flushing = Collections.emptyMap();
+        log.delete(segment);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to write queued employee updates, will retry - queued: " + size(), e);
+        }
+    }
+
+    /**
+     * Queues again, and appends to the log again, updates that failed to be written, unless the employee has been
+     * updated again since. Updates that have now failed maxAttempts times are moved to the dead letters instead,
+     * and the cached copies of their employees evicted
+     * @param failed
+     */
+    private void requeue(List<Employee> failed) {
+        List<Employee> deadLetters = new ArrayList<>();
+        synchronized (queueLock) {
+            for (Employee employee : failed) {
+                Long id = employee.getId();
+                if (pending.containsKey(id)) {
+                    attempts.remove(id);
+                } else if (attempts.merge(id, 1, Integer::sum) >= maxAttempts) {
+                    attempts.remove(id);
+                    deadLetters.add(employee);
+                } else {
+                    log.append(employee);
+                    pending.put(id, employee);
+                }
+            }
+            flushing = Collections.emptyMap();
+        }
+        if (deadLetters.isEmpty()) return;
+        log.deadLetter(deadLetters);
+        List<Long> ids = deadLetters.stream().map(Employee::getId).collect(Collectors.toList());
+        evict(ids);
+        logger.error("Gave up writing queued employee updates after " + maxAttempts + " attempts, moved them to "
+                     + log.getDeadLetterPath() + " - employees: " + ids);
+    }
+
+    /**
+     * Writes the latest update of each employee found in the log at startup. Cached copies of the employees are
+     * evicted, as a persistent cache may hold data older than the log. Updates of a batch that fails are queued
+     * again, so that a database that is not reachable yet, or one bad update, does not stop the application
+     */
+    private void replay() {
+        Map<Long, Employee> latest = new LinkedHashMap<>();
+        log.recover().forEach(employee -> latest.put(employee.getId(), employee));
+        if (!latest.isEmpty()) {
+            List<Employee> employees = new ArrayList<>(latest.values());
+            for (int from = 0; from < employees.size(); from += maxBatchSize) {
+                List<Employee> chunk = employees.subList(from, Math.min(from + maxBatchSize, employees.size()));
+                try {
+                    write(chunk);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to replay queued employee updates, will retry - employees: " + chunk.size(), e);
+                    requeue(chunk);
+                }
+            }
+            evict(latest.keySet());
+            logger.info("Replayed queued employee updates from write-ahead log - employees: " + latest.size());
+        }
+        log.deleteRecovered();
+    }
+
+    /**
+     * Writes updates in one JDBC batch and one transaction, and publishes those that changed a row as updated
+     * once committed. The others are of employees deleted since they were queued, and their cached copies,
+     * stored when they were queued, are evicted
+     */
+    private void write(List<Employee> employees) {
+        Set<Long> updated = transaction.execute(status -> {
+            Set<Long> ids = new HashSet<>(changeWatermark.write(() -> employeeRepository.updateAll(employees)));
+            employees.stream().filter(employee -> ids.contains(employee.getId()))
+                    .forEach(employee -> eventPublisher.publishEvent(
+                            new EmployeeChangeEvent(EmployeeChangeEvent.Type.UPDATED, employee.getId(), employee)));
+            return ids;
+        });
+        List<Long> skipped = new ArrayList<>();
+        for (Employee employee : employees) {
+            attempts.remove(employee.getId());
+            if (!updated.contains(employee.getId())) skipped.add(employee.getId());
+        }
+        if (!skipped.isEmpty()) {
+            evict(skipped);
+            logger.warn("Skipped queued updates of employees deleted since - employees: " + skipped);
+        }
+    }
+
+    private void evict(Collection<Long> employeeIds) {
+        for (String name : new String[] {EMPLOYEE_CACHE_NAME, EMPLOYEE_JSON_CACHE_NAME}) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) BulkCacheOperations.evictAll(cache, employeeIds);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package jp.co.axa.apidemo.writebehind;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.entities.Employee;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Log of the employee writes queued by EmployeeWriteQueue, kept in a directory on local disk so that they survive
+ * a crash. Each write is appended to the current segment as one line of JSON, and forced to disk before append()
+ * returns. Segments are numbered files (wal-1.log, wal-2.log, ...): rotate() closes the current segment and starts
+ * the next one, and a segment is deleted once the writes in it are in the database.
+ * Segments found in the directory at startup are left from the previous run, and are read back with recover().
+ * Writes that cannot be put in the database are moved to dead-letter.log, in the same format, which is never replayed
+ * and is left for an operator to look at
+ */
+public class WriteAheadLog implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final String PREFIX = "wal-";
+
+    private static final String SUFFIX = ".log";
+
+    private static final String DEAD_LETTER = "dead-letter.log";
+
+    private final Path directory;
+
+    private final ObjectMapper objectMapper;
+
+    private final List<Path> recovered;
+
+    private long sequence;
+
+    private Path currentPath;
+
+    private FileChannel current;
+
+    /**
+     * Opens the log in the given directory, creating it if needed, and starts a new segment after any existing ones
+     * @param directory
+     * @param objectMapper
+     * @throws IOException
+     */
+    public WriteAheadLog(Path directory, ObjectMapper objectMapper) throws IOException {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            recovered = files.filter(WriteAheadLog::isSegment)
+                    .sorted((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)))
+                    .collect(Collectors.toList());
+        }
+        sequence = recovered.isEmpty() ? 0 : sequenceOf(recovered.get(recovered.size() - 1));
+        openNext();
+    }
+
+    /**
+     * Appends a write to the current segment, and returns once it is on disk
+     * @param employee
+     */
+    public synchronized void append(Employee employee) {
+        try {
+            write(current, employee);
+            current.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to write-ahead log " + currentPath, e);
+        }
+    }
+
+    /**
+     * Appends writes to the dead letters, and returns once they are on disk
+     * @param employees
+     */
+    public synchronized void deadLetter(List<Employee> employees) {
+        Path path = getDeadLetterPath();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.APPEND)) {
+            for (Employee employee : employees) {
+                write(channel, employee);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to dead letters " + path, e);
+        }
+    }
+
+    public Path getDeadLetterPath() {
+        return directory.resolve(DEAD_LETTER);
+    }
+
+    /**
+     * Closes the current segment and starts the next one
+     * @return the closed segment
+     */
+    public synchronized Path rotate() {
+        Path closed = currentPath;
+        try {
+            current.close();
+            openNext();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to rotate write-ahead log " + closed, e);
+        }
+        return closed;
+    }
+
+    /**
+     * Reads the writes in the segments left from the previous run, oldest first.
+     * A line cut short by a crash while it was being appended was never acknowledged, and is skipped
+     * @return the writes, in the order they were appended
+     */
+    public List<Employee> recover() {
+        List<Employee> employees = new ArrayList<>();
+        for (Path segment : recovered) {
+            try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+                    try {
+                        employees.add(objectMapper.readValue(line, Employee.class));
+                    } catch (IOException e) {
+                        logger.warn("Skipped unreadable line of write-ahead log " + segment + ": " + line);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read write-ahead log " + segment, e);
+            }
+        }
+        return employees;
+    }
+
+    /**
+     * Deletes the segments left from the previous run, once their writes are in the database
+     */
+    public void deleteRecovered() {
+        recovered.forEach(this::delete);
+        recovered.clear();
+    }
+
+    /**
+     * Deletes a segment closed by rotate(), once its writes are in the database
+     * @param segment
+     */
+    public void delete(Path segment) {
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete write-ahead log " + segment, e);
+        }
+    }
+
+    /**
+     * Closes the current segment, and deletes it if nothing was appended to it
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            boolean empty = current.size() == 0;
+            current.close();
+            if (empty) Files.deleteIfExists(currentPath);
+        } catch (IOException e) {
+            logger.warn("Failed to close write-ahead log " + currentPath, e);
+        }
+    }
+
+    private void write(FileChannel channel, Employee employee) throws IOException {
+        byte[] line = (objectMapper.writeValueAsString(employee) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void openNext() throws IOException {
+        sequence++;
+        currentPath = directory.resolve(PREFIX + sequence + SUFFIX);
+        current = FileChannel.open(currentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.APPEND);
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX)
+                && name.substring(PREFIX.length(), name.length() - SUFFIX.length()).matches("\\d+");
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,135 @@
+package jp.co.axa.apidemo.writebehind;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exceptions.EntityNotFoundException;
+import jp.co.axa.apidemo.message.BatchItemResult;
+import jp.co.axa.apidemo.message.EmployeeChanges;
+import jp.co.axa.apidemo.message.EmployeeFieldsPage;
+import jp.co.axa.apidemo.message.EmployeeLookup;
+import jp.co.axa.apidemo.message.EmployeePage;
+import jp.co.axa.apidemo.message.EmployeeSearchCriteria;
+import jp.co.axa.apidemo.services.EmployeeService;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * EmployeeService in write-behind mode: updates of single employees without an expected version are put in cache
+ * and queued in EmployeeWriteQueue, instead of being written to the database before they are acknowledged.
+ * Employees are read from their queued update, if they have one, then as EmployeeService reads them.
+ * Lists, searches, exports and the change feed read the database, so they show a queued update once it is flushed.
+ * Every other write goes straight to the database as before, after flushing the queue if it holds an update
+ * of one of its employees
+ */
+public class WriteBehindEmployeeService implements EmployeeService {
+
+    private final EmployeeService target;
+
+    private final EmployeeWriteQueue queue;
+
+    private final Validator validator;
+
+    public WriteBehindEmployeeService(EmployeeService target, EmployeeWriteQueue queue, Validator validator) {
+        this.target = target;
+        this.queue = queue;
+        this.validator = validator;
+    }
+
+    public EmployeePage retrieveEmployees(Long afterId, int limit) {
+        return target.retrieveEmployees(afterId, limit);
+    }
+
+    public EmployeePage searchEmployees(EmployeeSearchCriteria criteria, Long afterId, int limit) {
+        return target.searchEmployees(criteria, afterId, limit);
+    }
+
+    public EmployeeFieldsPage retrieveEmployeeFields(List<String> fields, Long afterId, int limit) {
+        return target.retrieveEmployeeFields(fields, afterId, limit);
+    }
+
+    public EmployeeFieldsPage searchEmployeeFields(EmployeeSearchCriteria criteria, List<String> fields,
+                                                   Long afterId, int limit) {
+        return target.searchEmployeeFields(criteria, fields, afterId, limit);
+    }
+
+    public EmployeeChanges getChanges(long since, int limit) {
+        return target.getChanges(since, limit);
+    }
+
+    public void exportEmployees(Consumer<Employee> consumer) {
+        target.exportEmployees(consumer);
+    }
+
+    public void exportEmployeeFields(List<String> fields, Consumer<Map<String, Object>> consumer) {
+        target.exportEmployeeFields(fields, consumer);
+    }
+
+    public Employee getEmployee(Long employeeId) {
+        Employee queued = queue.getQueued(employeeId);
+        return queued != null ? queued : target.getEmployee(employeeId);
+    }
+
+    public EmployeeLookup getEmployees(List<Long> employeeIds) {
+        EmployeeLookup lookup = target.getEmployees(employeeIds);
+        List<Employee> employees = lookup.getEmployees().stream().map(emp -> {
+            Employee queued = queue.getQueued(emp.getId());
+            return queued != null ? queued : emp;
+        }).collect(Collectors.toList());
+        return new EmployeeLookup(employees, lookup.getNotFound());
+    }
+
+    public Employee saveEmployee(Employee employee) {
+        return target.saveEmployee(employee);
+    }
+
+    public void deleteEmployee(Long employeeId) {
+        queue.flushIfQueued(Collections.singleton(employeeId));
+        target.deleteEmployee(employeeId);
+    }
+
+    /**
+     * Queues the update if expectedVersion is null, after checking that the employee exists.
+     * Updates with an expected version are checked against the database, and written there.
+     * Throws error if employee violates constraints, if no employee exists with given ID,
+     * or if the employee's version is not expectedVersion
+     * @param employee
+     * @param employeeId
+     * @param expectedVersion
+     * @return the updated employee, with their new version
+     */
+    public Employee updateEmployee(Employee employee, Long employeeId, Long expectedVersion) {
+        if (expectedVersion != null) {
+            queue.flushIfQueued(Collections.singleton(employeeId));
+            return target.updateEmployee(employee, employeeId, expectedVersion);
+        }
+
+        employee.setId(employeeId);
+        Set<ConstraintViolation<Employee>> violations = validator.validate(employee);
+        if (!violations.isEmpty()) throw new ConstraintViolationException(violations);
+
+        long currentVersion = 0;
+        if (queue.getQueued(employeeId) == null) {
+            // usually found in cache, so that a burst of updates does not read the database either
+            Employee current = target.getEmployee(employeeId);
+            if (current == null) throw new EntityNotFoundException("Employee not found - ID: " + employeeId);
+            if (current.getVersion() != null) currentVersion = current.getVersion();
+        }
+        return queue.enqueue(employee, currentVersion);
+    }
+
+    public List<BatchItemResult> saveEmployees(List<Employee> employees) {
+        return target.saveEmployees(employees);
+    }
+
+    public List<BatchItemResult> updateEmployees(List<Employee> employees) {
+        queue.flushIfQueued(employees.stream().map(Employee::getId).collect(Collectors.toList()));
+        return target.updateEmployees(employees);
+    }
+}
@@ -0,0 +1,28 @@
+package jp.co.axa.apidemo;
+
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+/**
+ * Keeps component scanning from picking up the test configurations of other tests, as the Spring Boot test support
+ * does, for applications started with SpringApplicationBuilder from the test classpath
+ */
+public class TestConfigurationExcludeFilter extends TypeExcludeFilter {
+
+    /**
+     * @return initializer that registers the filter in the application context
+     */
+    public static ApplicationContextInitializer<ConfigurableApplicationContext> initializer() {
+        return context -> context.getBeanFactory().registerSingleton(TestConfigurationExcludeFilter.class.getName(),
+                                                                     new TestConfigurationExcludeFilter());
+    }
+
+    @Override
+    public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+        return metadataReader.getAnnotationMetadata().hasAnnotation(TestConfiguration.class.getName());
+    }
+}
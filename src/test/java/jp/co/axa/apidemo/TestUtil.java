@@ -3,6 +3,8 @@ package jp.co.axa.apidemo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jp.co.axa.apidemo.entities.Employee;
 
+import java.util.List;
+
 public final class TestUtil {
 
     private TestUtil() {}
@@ -15,6 +17,7 @@ public final class TestUtil {
         Employee employee = new Employee();
         employee.setId(1L);
         employee.setName("Name");
+        employee.setVersion(0L);
         return employee;
     }
 
@@ -30,4 +33,17 @@ public final class TestUtil {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Waits until all given threads are parked (for example waiting on a latch or on another thread's result).
+     * Used by concurrency tests to make sure every thread has reached the point under test before releasing them
+     * @param threads
+     */
+    public static void awaitAllWaiting(List<Thread> threads) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!threads.stream().allMatch(t -> t.getState() == Thread.State.WAITING)) {
+            if (System.currentTimeMillis() > deadline) throw new IllegalStateException("Threads did not start waiting");
+            Thread.sleep(5);
+        }
+    }
 }
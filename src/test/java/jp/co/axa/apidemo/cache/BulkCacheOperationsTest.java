@@ -0,0 +1,70 @@
+package jp.co.axa.apidemo.cache;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.jcache.JCacheCache;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BulkCacheOperationsTest {
+
+    private final CacheManager jcacheManager = Caching.getCachingProvider().getCacheManager();
+
+    @After
+    public void destroyCache() {
+        jcacheManager.destroyCache("bulkTest");
+    }
+
+    /**
+     * Tests bulk operations on a JCache cache, which go through the native getAll, putAll and removeAll
+     */
+    @Test
+    public void shouldReadAndWriteJCacheInBulk() {
+        Cache cache = new JCacheCache(jcacheManager.createCache("bulkTest",
+                new MutableConfiguration<Object, Object>().setStoreByValue(false)));
+        checkBulkOperations(cache);
+    }
+
+    /**
+     * Tests bulk operations on other caches, which fall back to one operation per key
+     */
+    @Test
+    public void shouldReadAndWriteOtherCachesOneKeyAtATime() {
+        checkBulkOperations(new ConcurrentMapCache("bulkTest"));
+    }
+
+    private void checkBulkOperations(Cache cache) {
+        Map<Long, String> values = new HashMap<>();
+        values.put(1L, "one");
+        values.put(2L, "two");
+        BulkCacheOperations.putAll(cache, values);
+        // values of another type are ignored
+        cache.put(3L, 3);
+
+        assertThat(BulkCacheOperations.getAll(cache, new HashSet<>(Arrays.asList(1L, 2L, 3L, 4L)), String.class))
+                .isEqualTo(values);
+
+        BulkCacheOperations.evictAll(cache, Arrays.asList(1L, 3L));
+        assertThat(cache.get(1L)).isNull();
+        assertThat(cache.get(2L).get()).isEqualTo("two");
+        assertThat(cache.get(3L)).isNull();
+
+        // only the keys that are not cached yet are stored
+        Map<Long, String> stale = new HashMap<>();
+        stale.put(1L, "one again");
+        stale.put(2L, "two again");
+        assertThat(BulkCacheOperations.putAllIfAbsent(cache, stale)).isEqualTo(1);
+        assertThat(cache.get(1L).get()).isEqualTo("one again");
+        assertThat(cache.get(2L).get()).isEqualTo("two");
+    }
+}
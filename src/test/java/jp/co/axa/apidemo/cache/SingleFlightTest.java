@@ -0,0 +1,165 @@
+package jp.co.axa.apidemo.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static jp.co.axa.apidemo.TestUtil.awaitAllWaiting;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTest {
+
+    private static final int THREADS = 16;
+
+    private final SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+
+    /**
+     * Tests that concurrent loads of the same key run the loader once and all callers get its result
+     */
+    @Test
+    public void shouldRunOneLoadPerKeyUnderContention() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ConcurrentLinkedQueue<String> results = new ConcurrentLinkedQueue<>();
+
+        List<Thread> threads = startThreads(() -> results.add(singleFlight.load(1L, () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "value";
+        })));
+        awaitAllWaiting(threads);
+        release.countDown();
+        joinAll(threads);
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(results).hasSize(THREADS).containsOnly("value");
+    }
+
+    /**
+     * Tests that a load started after the previous one finished runs the loader again
+     */
+    @Test
+    public void shouldLoadAgainAfterLoadFinishes() {
+        AtomicInteger loads = new AtomicInteger();
+        singleFlight.load(1L, () -> "value" + loads.incrementAndGet());
+        String value = singleFlight.load(1L, () -> "value" + loads.incrementAndGet());
+
+        assertThat(value).isEqualTo("value2");
+    }
+
+    /**
+     * Tests that an error thrown by the loader is passed on to every waiting caller
+     */
+    @Test
+    public void shouldPassLoaderErrorToWaitingCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+
+        List<Thread> threads = startThreads(() -> {
+            try {
+                singleFlight.load(1L, () -> {
+                    await(release);
+                    throw new IllegalStateException("load failed");
+                });
+            } catch (IllegalStateException e) {
+                errors.add(e);
+            }
+        });
+        awaitAllWaiting(threads);
+        release.countDown();
+        joinAll(threads);
+
+        assertThat(errors).hasSize(THREADS).allMatch(e -> e.getMessage().equals("load failed"));
+        // the failed load is not remembered
+        assertThat(singleFlight.load(1L, () -> "value")).isEqualTo("value");
+    }
+
+    /**
+     * Tests that loadAll() waits for keys already being loaded by single loads,
+     * and passes only the remaining keys to its loader
+     */
+    @Test
+    public void shouldLoadOnlyKeysNotAlreadyInFlight() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Thread single = new Thread(() -> singleFlight.load(1L, () -> {
+            await(release);
+            return "one";
+        }));
+        single.start();
+        awaitAllWaiting(Collections.singletonList(single));
+
+        List<Set<Long>> requested = new ArrayList<>();
+        Map<Long, String>[] result = new Map[1];
+        Thread bulk = new Thread(() -> result[0] = singleFlight.loadAll(Arrays.asList(1L, 2L, 3L), keys -> {
+            requested.add(keys);
+            Map<Long, String> values = new HashMap<>();
+            values.put(2L, "two");
+            return values;
+        }));
+        bulk.start();
+        awaitAllWaiting(Collections.singletonList(bulk));
+        release.countDown();
+        joinAll(Arrays.asList(single, bulk));
+
+        assertThat(requested).hasSize(1);
+        assertThat(requested.get(0)).containsExactlyInAnyOrder(2L, 3L);
+        // key 3 has no value so is left out of the result
+        assertThat(result[0]).containsOnlyKeys(1L, 2L).containsEntry(1L, "one").containsEntry(2L, "two");
+    }
+
+    /**
+     * Tests that concurrent bulk loads of overlapping keys load each key once
+     */
+    @Test
+    public void shouldRunOneBulkLoadPerKeyUnderContention() throws Exception {
+        AtomicInteger loadedKeys = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Thread> threads = startThreads(() -> singleFlight.loadAll(Arrays.asList(1L, 2L, 3L), keys -> {
+            loadedKeys.addAndGet(keys.size());
+            await(release);
+            Map<Long, String> values = new HashMap<>();
+            keys.forEach(key -> values.put(key, "value" + key));
+            return values;
+        }));
+        awaitAllWaiting(threads);
+        release.countDown();
+        joinAll(threads);
+
+        assertThat(loadedKeys.get()).isEqualTo(3);
+    }
+
+    private List<Thread> startThreads(Runnable task) {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(task);
+            threads.add(thread);
+            thread.start();
+        }
+        return threads;
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
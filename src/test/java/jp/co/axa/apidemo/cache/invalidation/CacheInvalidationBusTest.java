@@ -0,0 +1,114 @@
+package jp.co.axa.apidemo.cache.invalidation;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static jp.co.axa.apidemo.services.EmployeeJsonService.EMPLOYEE_JSON_CACHE_NAME;
+import static jp.co.axa.apidemo.services.EmployeeService.EMPLOYEE_CACHE_NAME;
+import static jp.co.axa.apidemo.services.EmployeeService.NOT_FOUND_CACHE_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CacheInvalidationBusTest {
+
+    private final RecordingTransport transport = new RecordingTransport();
+
+    private final ConcurrentMapCacheManager cacheManager =
+            new ConcurrentMapCacheManager(EMPLOYEE_CACHE_NAME, EMPLOYEE_JSON_CACHE_NAME, NOT_FOUND_CACHE_NAME);
+
+    /**
+     * Tests that repeated changes to the same employees between flushes are sent once,
+     * in batches of at most the maximum batch size
+     */
+    @Test
+    public void shouldCoalesceChangesIntoBatches() {
+        CacheInvalidationBus bus = new CacheInvalidationBus(cacheManager, transport, 3_600_000, 2);
+        for (long id : new long[]{1, 2, 1, 3, 2, 1}) {
+            bus.onEmployeeChange(updated(id));
+        }
+
+        bus.flush();
+        bus.flush();
+
+        assertThat(transport.published).hasSize(2);
+        assertThat(transport.published.get(0)).hasSize(2);
+        Set<Long> sent = new HashSet<>();
+        transport.published.forEach(sent::addAll);
+        assertThat(sent).containsExactlyInAnyOrder(1L, 2L, 3L);
+    }
+
+    /**
+     * Tests that a batch that fails to send is sent by the next flush
+     */
+    @Test
+    public void shouldRetryFailedBatch() {
+        CacheInvalidationBus bus = new CacheInvalidationBus(cacheManager, transport, 3_600_000, 500);
+        bus.onEmployeeChange(updated(1));
+        transport.failing = true;
+        bus.flush();
+        transport.failing = false;
+        bus.flush();
+
+        assertThat(transport.published).containsExactly(Arrays.asList(1L));
+    }
+
+    /**
+     * Tests that IDs received from other nodes are evicted from every employee cache, and only those IDs
+     */
+    @Test
+    public void shouldEvictReceivedIds() {
+        CacheInvalidationBus bus = new CacheInvalidationBus(cacheManager, transport, 3_600_000, 500);
+        bus.start();
+        try {
+            for (String name : Arrays.asList(EMPLOYEE_CACHE_NAME, EMPLOYEE_JSON_CACHE_NAME, NOT_FOUND_CACHE_NAME)) {
+                cacheManager.getCache(name).put(1L, "cached");
+                cacheManager.getCache(name).put(2L, "cached");
+            }
+
+            transport.receiver.accept(new HashSet<>(Arrays.asList(1L, 5L)));
+
+            for (String name : Arrays.asList(EMPLOYEE_CACHE_NAME, EMPLOYEE_JSON_CACHE_NAME, NOT_FOUND_CACHE_NAME)) {
+                assertThat(cacheManager.getCache(name).get(1L)).isNull();
+                assertThat(cacheManager.getCache(name).get(2L)).isNotNull();
+            }
+        } finally {
+            bus.stop();
+        }
+    }
+
+    private static EmployeeChangeEvent updated(long id) {
+        Employee employee = new Employee();
+        employee.setId(id);
+        return new EmployeeChangeEvent(EmployeeChangeEvent.Type.UPDATED, id, employee);
+    }
+
+    private static class RecordingTransport implements InvalidationTransport {
+        private final List<List<Long>> published = new ArrayList<>();
+        private Consumer<Set<Long>> receiver;
+        private boolean failing;
+
+        @Override
+        public void publish(Collection<Long> employeeIds) {
+            if (failing) throw new IllegalStateException("Database unavailable");
+            published.add(new ArrayList<>(employeeIds));
+        }
+
+        @Override
+        public void start(Consumer<Set<Long>> receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package jp.co.axa.apidemo.cache.invalidation;
+
+import jp.co.axa.apidemo.entities.CacheInvalidation;
+import jp.co.axa.apidemo.repositories.CacheInvalidationRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+// a row inserted by a transaction that stays open is needed, so rows are committed rather than rolled back
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DirtiesContext
+public class OutboxInvalidationTransportTest {
+
+    @Autowired
+    private CacheInvalidationRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private OutboxInvalidationTransport nodeA;
+
+    private OutboxInvalidationTransport nodeB;
+
+    private final List<Set<Long>> receivedByA = new ArrayList<>();
+
+    private final List<Set<Long>> receivedByB = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        repository.deleteAll();
+        // polled by hand rather than on a schedule
+        nodeA = new OutboxInvalidationTransport(repository, "A", 3_600_000, 300_000);
+        nodeB = new OutboxInvalidationTransport(repository, "B", 3_600_000, 300_000);
+        nodeA.start(receivedByA::add);
+        nodeB.start(receivedByB::add);
+    }
+
+    @After
+    public void tearDown() {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    /**
+     * Tests that IDs published by one node are delivered to the other, in one set per poll, but not back to itself
+     */
+    @Test
+    public void shouldDeliverIdsToOtherNodes() {
+        nodeA.publish(Arrays.asList(1L, 2L));
+        nodeA.publish(Arrays.asList(2L, 3L));
+
+        nodeA.poll();
+        nodeB.poll();
+        nodeB.poll();
+
+        assertThat(receivedByA).isEmpty();
+        assertThat(receivedByB).containsExactly(new HashSet<>(Arrays.asList(1L, 2L, 3L)));
+    }
+
+    /**
+     * Tests that a row whose insert commits after that of a row with a higher ID is still delivered,
+     * by the poll after its commit
+     */
+    @Test
+    public void shouldDeliverRowsCommittedOutOfOrder() throws InterruptedException {
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread slowWriter = new Thread(() -> new TransactionTemplate(transactionManager).execute(status -> {
+            repository.saveAndFlush(new CacheInvalidation("A", "1", System.currentTimeMillis()));
+            inserted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        slowWriter.start();
+        inserted.await();
+
+        nodeA.publish(Arrays.asList(2L));
+        nodeB.poll();
+        assertThat(receivedByB).containsExactly(new HashSet<>(Arrays.asList(2L)));
+        assertThat(nodeB.getGapCount()).isEqualTo(1);
+
+        release.countDown();
+        slowWriter.join();
+        nodeB.poll();
+        assertThat(receivedByB).containsExactly(new HashSet<>(Arrays.asList(2L)), new HashSet<>(Arrays.asList(1L)));
+        assertThat(nodeB.getGapCount()).isZero();
+    }
+
+    /**
+     * Tests that rows inserted before the transport started are not delivered
+     */
+    @Test
+    public void shouldStartFromRowsInsertedAfterStart() {
+        nodeA.publish(Arrays.asList(1L));
+        OutboxInvalidationTransport nodeC = new OutboxInvalidationTransport(repository, "C", 3_600_000, 300_000);
+        List<Set<Long>> receivedByC = new ArrayList<>();
+        nodeC.start(receivedByC::add);
+        try {
+            nodeA.publish(Arrays.asList(2L));
+            nodeC.poll();
+            assertThat(receivedByC).containsExactly(new HashSet<>(Arrays.asList(2L)));
+        } finally {
+            nodeC.stop();
+        }
+    }
+}
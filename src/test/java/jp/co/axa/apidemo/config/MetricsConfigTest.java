@@ -0,0 +1,50 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class MetricsConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    /**
+     * Tests that the Prometheus endpoint reports endpoint latency histograms, employeeCache statistics
+     * (including its size), connection pool wait times and Hibernate query counts
+     * @throws Exception
+     */
+    @Test
+    public void shouldExposeMetricsForPrometheus() throws Exception {
+        Employee employee = new Employee();
+        employee.setName("Metrics");
+        employee = employeeService.saveEmployee(employee);
+        employeeService.getEmployee(employee.getId());
+        mockMvc.perform(get("/api/v1/employees").param("limit", "1")).andExpect(status().isOk());
+
+        String scrape = mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(scrape).containsPattern("http_server_requests_seconds_bucket\\{[^}]*uri=\"/api/v1/employees\"");
+        assertThat(scrape).containsPattern("cache_gets_total\\{cache=\"employeeCache\",[^}]*result=\"hit\",?\\} [1-9]");
+        assertThat(scrape).containsPattern("cache_size\\{cache=\"employeeCache\",[^}]*\\} [1-9]");
+        assertThat(scrape).containsPattern("cache_evictions_total\\{cache=\"employeeCache\"");
+        assertThat(scrape).containsPattern("hikaricp_connections_acquire_seconds_bucket\\{");
+        assertThat(scrape).containsPattern("hibernate_query_executions_total\\{");
+    }
+}
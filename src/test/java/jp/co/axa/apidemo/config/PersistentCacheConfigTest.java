@@ -0,0 +1,65 @@
+package jp.co.axa.apidemo.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jp.co.axa.apidemo.ApiDemoApplication;
+import jp.co.axa.apidemo.TestConfigurationExcludeFilter;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersistentCacheConfigTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that employees cached before a restart are still cached after it, read back from the disk tier,
+     * and that the tier metrics report it
+     */
+    @Test
+    public void shouldKeepCachedEmployeesAcrossRestart() throws Exception {
+        File data = folder.newFolder();
+        Long id;
+        try (ConfigurableApplicationContext context = start(data)) {
+            Employee employee = new Employee();
+            employee.setName("Persistent");
+            id = context.getBean(EmployeeService.class).saveEmployee(employee).getId();
+            assertThat(employeeCache(context).get(id)).isNotNull();
+        }
+
+        try (ConfigurableApplicationContext context = start(data)) {
+            Cache.ValueWrapper cached = employeeCache(context).get(id);
+            assertThat(cached).isNotNull();
+            assertThat(((Employee) cached.get()).getName()).isEqualTo("Persistent");
+
+            MeterRegistry registry = context.getBean(MeterRegistry.class);
+            double diskHits = registry.get("cache.tier.gets")
+                    .tags("cache", "employeeCache", "tier", "disk", "result", "hit").functionCounter().count();
+            assertThat(diskHits).isEqualTo(1);
+            double heapSize = registry.get("cache.tier.size")
+                    .tags("cache", "employeeCache", "tier", "onheap").gauge().value();
+            assertThat(heapSize).isEqualTo(1);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(File data) {
+        return new SpringApplicationBuilder(ApiDemoApplication.class)
+                .profiles("persistent-cache")
+                .initializers(TestConfigurationExcludeFilter.initializer())
+                .run("--server.port=0", "--app.data.directory=" + data);
+    }
+
+    private static Cache employeeCache(ConfigurableApplicationContext context) {
+        return context.getBean(CacheManager.class).getCache("employeeCache");
+    }
+}
@@ -0,0 +1,114 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.datasource.ReadYourWritesFilter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.servlet.http.Cookie;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-config;DB_CLOSE_DELAY=-1",
+        "app.datasource.routing.enabled=true",
+        "app.datasource.routing.replicas[0].url=jdbc:h2:mem:routing-config;DB_CLOSE_DELAY=-1",
+        "app.datasource.routing.replicas[1].url=jdbc:h2:mem:routing-config;DB_CLOSE_DELAY=-1",
+        "app.datasource.routing.read-your-writes-window-ms=60000"})
+@AutoConfigureMockMvc
+public class ReplicaRoutingConfigTest {
+
+    @TestConfiguration
+    static class ReplicaRoutingConfigTestContextConfiguration {
+
+        @Bean
+        public static RoutedConnections routedConnections() {
+            return new RoutedConnections();
+        }
+
+        /**
+         * Counts the connections the routing DataSource hands out, between it and the LazyConnectionDataSourceProxy.
+         * The background health checks take theirs from the replica pools directly, so they are not counted
+         */
+        @Bean
+        public static BeanPostProcessor countRoutedConnections(RoutedConnections routedConnections) {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof LazyConnectionDataSourceProxy)) return bean;
+                    LazyConnectionDataSourceProxy proxy = (LazyConnectionDataSourceProxy) bean;
+                    proxy.setTargetDataSource(new DelegatingDataSource(proxy.getTargetDataSource()) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            return routedConnections.count(super.getConnection());
+                        }
+                    });
+                    return proxy;
+                }
+            };
+        }
+    }
+
+    // connections handed out by the routing DataSource. Replica connections are the ones it wraps in a proxy,
+    // to know how many of them are open, while primary connections come straight from the pool
+    static class RoutedConnections {
+        private final AtomicLong primary = new AtomicLong();
+        private final AtomicLong replicas = new AtomicLong();
+
+        private Connection count(Connection connection) {
+            (Proxy.isProxyClass(connection.getClass()) ? replicas : primary).incrementAndGet();
+            return connection;
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RoutedConnections routed;
+
+    /**
+     * Tests that reads go to the replica pools, while writes and the reads of a client that has just written
+     * go to the primary pool
+     * @throws Exception
+     */
+    @Test
+    public void shouldRouteReadsToReplicasAndWritesToPrimary() throws Exception {
+        long primary = routed.primary.get();
+        long replicas = routed.replicas.get();
+        mockMvc.perform(get("/api/v1/employees")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/employees")).andExpect(status().isOk());
+        assertThat(routed.replicas.get()).isEqualTo(replicas + 2);
+        assertThat(routed.primary.get()).isEqualTo(primary);
+
+        Cookie cookie = mockMvc.perform(post("/api/v1/employees").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Routed\"}")).andExpect(status().isOk())
+                .andReturn().getResponse().getCookie(ReadYourWritesFilter.COOKIE_NAME);
+        assertThat(cookie).isNotNull();
+        assertThat(routed.primary.get()).isGreaterThan(primary);
+
+        primary = routed.primary.get();
+        replicas = routed.replicas.get();
+        mockMvc.perform(get("/api/v1/employees").cookie(cookie)).andExpect(status().isOk());
+        assertThat(routed.primary.get()).isEqualTo(primary + 1);
+        assertThat(routed.replicas.get()).isEqualTo(replicas);
+    }
+}
@@ -0,0 +1,175 @@
+package jp.co.axa.apidemo.config;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.EmployeePage;
+import jp.co.axa.apidemo.message.EmployeeSearchCriteria;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.repositories.EmployeeTombstoneRepository;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "app.sharding.enabled=true",
+        "app.sharding.shards[0].url=" + ShardingConfigTest.SHARD_URL + "0;DB_CLOSE_DELAY=-1",
+        "app.sharding.shards[1].url=" + ShardingConfigTest.SHARD_URL + "1;DB_CLOSE_DELAY=-1",
+        "app.sharding.shards[2].url=" + ShardingConfigTest.SHARD_URL + "2;DB_CLOSE_DELAY=-1",
+        "app.changes.enabled=false"})
+public class ShardingConfigTest {
+
+    static final String SHARD_URL = "jdbc:h2:mem:sharding-config-";
+
+    // String.hashCode() modulo 3 of each department is its index here
+    private static final String[] DEPARTMENTS = {"Sales", "Engineering", "Legal"};
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private EmployeeTombstoneRepository tombstoneRepository;
+
+    private final List<Employee> saved = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        employeeRepository.deleteAll();
+        for (int i = 0; i < 12; i++) {
+            Employee employee = new Employee();
+            employee.setName("Sharded " + i);
+            employee.setSalary(1000 * i);
+            employee.setDepartment(DEPARTMENTS[i % DEPARTMENTS.length]);
+            saved.add(employeeService.saveEmployee(employee));
+        }
+    }
+
+    /**
+     * Tests that each employee is stored on the shard of its department, and only there, and that its ID tells which
+     */
+    @Test
+    public void shouldStoreEmployeesOnShardOfTheirDepartment() {
+        for (int shard = 0; shard < DEPARTMENTS.length; shard++) {
+            assertThat(shard(shard).queryForList("SELECT DEPARTMENT FROM EMPLOYEE", String.class))
+                    .hasSize(4).containsOnly(DEPARTMENTS[shard]);
+            List<Long> ids = shard(shard).queryForList("SELECT ID FROM EMPLOYEE", Long.class);
+            int expected = shard;
+            assertThat(ids).allMatch(id -> id % DEPARTMENTS.length == expected);
+        }
+        assertThat(saved.stream().map(Employee::getId).distinct()).hasSize(saved.size());
+        assertThat(employeeRepository.count()).isEqualTo(saved.size());
+        for (Employee employee : saved) {
+            assertThat(employeeService.getEmployee(employee.getId()).getName()).isEqualTo(employee.getName());
+        }
+    }
+
+    /**
+     * Tests that pages of employees are merged from every shard in ID order, with a cursor to the next page
+     */
+    @Test
+    public void shouldPageThroughEveryShardInIdOrder() {
+        List<Long> ids = new ArrayList<>();
+        Long after = null;
+        do {
+            EmployeePage page = employeeService.retrieveEmployees(after, 5);
+            page.getEmployees().forEach(emp -> ids.add(emp.getId()));
+            after = page.getNextCursor();
+        } while (after != null);
+        assertThat(ids).isSorted().containsExactlyElementsOf(
+                saved.stream().map(Employee::getId).sorted().collect(Collectors.toList()));
+
+        EmployeePage page = employeeService.searchEmployees(new EmployeeSearchCriteria(null, 5000, null, null), null, 3);
+        assertThat(page.getEmployees()).extracting(Employee::getName).containsExactly("Sharded 5", "Sharded 6", "Sharded 7");
+        assertThat(page.getNextCursor()).isEqualTo(saved.get(7).getId());
+    }
+
+    /**
+     * Tests that updating and deleting employees on several shards in one batch reaches every shard
+     */
+    @Test
+    public void shouldUpdateAndDeleteAcrossShards() {
+        List<Employee> updates = saved.subList(0, 3).stream().map(emp -> {
+            Employee update = new Employee();
+            update.setId(emp.getId());
+            update.setName(emp.getName() + " updated");
+            update.setSalary(emp.getSalary());
+            update.setDepartment(emp.getDepartment());
+            return update;
+        }).collect(Collectors.toList());
+        employeeService.updateEmployees(updates);
+        for (int shard = 0; shard < DEPARTMENTS.length; shard++) {
+            assertThat(shard(shard).queryForObject("SELECT EMPLOYEE_NAME FROM EMPLOYEE WHERE ID = ?", String.class,
+                    saved.get(shard).getId())).isEqualTo("Sharded " + shard + " updated");
+        }
+
+        employeeService.deleteEmployee(saved.get(1).getId());
+        assertThat(shard(1).queryForObject("SELECT COUNT(*) FROM EMPLOYEE", Long.class)).isEqualTo(3);
+        assertThat(employeeRepository.count()).isEqualTo(saved.size() - 1);
+    }
+
+    /**
+     * Tests that the tombstone of an employee deleted on another shard is recorded on shard 0, with the other tables
+     */
+    @Test
+    public void shouldRecordTombstonesOnShardZero() {
+        Long deleted = saved.get(1).getId();
+        employeeService.deleteEmployee(deleted);
+        assertThat(shard(0).queryForList("SELECT EMPLOYEE_ID FROM EMPLOYEE_TOMBSTONE", Long.class)).contains(deleted);
+        assertThat(shard(1).queryForObject("SELECT COUNT(*) FROM EMPLOYEE_TOMBSTONE", Long.class)).isZero();
+        assertThat(tombstoneRepository.findAll()).extracting(t -> t.getEmployeeId()).contains(deleted);
+    }
+
+    /**
+     * Tests that the Spring Data methods not used by the services also gather from every shard
+     */
+    @Test
+    public void shouldSortPageAndCountAcrossShards() {
+        Page<Employee> page = employeeRepository.findAll(PageRequest.of(1, 4, Sort.by("salary").descending()));
+        assertThat(page.getContent()).extracting(Employee::getSalary).containsExactly(7000, 6000, 5000, 4000);
+        assertThat(page.getTotalElements()).isEqualTo(saved.size());
+
+        assertThat(employeeRepository.findAll(Sort.by("salary"))).extracting(Employee::getSalary).isSorted()
+                .hasSize(saved.size());
+        Employee legal = new Employee();
+        legal.setDepartment("Legal");
+        assertThat(employeeRepository.count(Example.of(legal))).isEqualTo(4);
+        assertThat(employeeRepository.getOne(saved.get(2).getId()).getName()).isEqualTo("Sharded 2");
+        assertThat(employeeRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(0L, PageRequest.of(0, 100)))
+                .hasSize(saved.size());
+    }
+
+    /**
+     * Tests that the application does not start sharded with the change feed, which needs one order across shards
+     */
+    @Test
+    public void shouldNotStartWithChangeFeed() {
+        new ApplicationContextRunner().withUserConfiguration(ShardingConfig.class)
+                .withPropertyValues("app.sharding.enabled=true", "app.sharding.shards[0].url=" + SHARD_URL + "0",
+                                    "app.changes.enabled=true")
+                .run(context -> assertThat(context).hasFailed().getFailure()
+                        .hasStackTraceContaining("app.changes.enabled=false"));
+    }
+
+    private static JdbcTemplate shard(int shard) {
+        return new JdbcTemplate(new DriverManagerDataSource(SHARD_URL + shard, "sa", ""));
+    }
+}
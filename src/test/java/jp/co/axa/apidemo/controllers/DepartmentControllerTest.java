@@ -0,0 +1,66 @@
+package jp.co.axa.apidemo.controllers;
+
+import jp.co.axa.apidemo.index.DepartmentStatsIndex;
+import jp.co.axa.apidemo.index.EmployeeIndexUpdater;
+import jp.co.axa.apidemo.message.DepartmentStats;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Collections;
+
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.doReturn;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(DepartmentController.class)
+public class DepartmentControllerTest {
+
+    private String baseApiUrl = "/api/v1";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private DepartmentStatsIndex departmentStatsIndex;
+
+    @MockBean
+    private EmployeeIndexUpdater employeeIndexUpdater;
+
+    /**
+     * Tests that getDepartmentStats() returns OK status and the stats of each department
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnDepartmentStats() throws Exception {
+        doReturn(true).when(employeeIndexUpdater).isReady();
+        doReturn(Collections.singletonList(new DepartmentStats("Sales", 2, 300, 100, 200, 150.0)))
+                .when(departmentStatsIndex).getStats();
+
+        mockMvc.perform(get(baseApiUrl + "/departments/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("[0].department", is("Sales")))
+                .andExpect(jsonPath("[0].headcount", is(2)))
+                .andExpect(jsonPath("[0].averageSalary", is(150.0)));
+    }
+
+    /**
+     * Tests that getDepartmentStats() returns Service Unavailable status while the stats are still being loaded
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnServiceUnavailableBeforeStatsAreLoaded() throws Exception {
+        doReturn(false).when(employeeIndexUpdater).isReady();
+
+        mockMvc.perform(get(baseApiUrl + "/departments/stats"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("message", is("Department stats are still being loaded")));
+    }
+}
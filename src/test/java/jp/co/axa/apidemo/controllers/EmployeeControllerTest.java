@@ -1,32 +1,66 @@
 package jp.co.axa.apidemo.controllers;
 
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.exceptions.CursorExpiredException;
+import jp.co.axa.apidemo.exceptions.EntityNotFoundException;
+import jp.co.axa.apidemo.exceptions.PreconditionFailedException;
+import jp.co.axa.apidemo.exceptions.ServiceUnavailableException;
+import jp.co.axa.apidemo.index.EmployeeIndexUpdater;
+import jp.co.axa.apidemo.index.NameIndex;
+import jp.co.axa.apidemo.index.SalaryIndex;
+import jp.co.axa.apidemo.message.BatchItemResult;
+import jp.co.axa.apidemo.message.EmployeeChanges;
+import jp.co.axa.apidemo.message.EmployeeFieldsPage;
+import jp.co.axa.apidemo.message.EmployeeLookup;
+import jp.co.axa.apidemo.message.EmployeePage;
+import jp.co.axa.apidemo.message.EmployeeSearchCriteria;
+import jp.co.axa.apidemo.message.NameSuggestion;
+import jp.co.axa.apidemo.services.EmployeeFeedService;
+import jp.co.axa.apidemo.services.EmployeeJsonServiceImpl;
 import jp.co.axa.apidemo.services.EmployeeService;
 
 import static jp.co.axa.apidemo.TestUtil.*;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.core.Is.is;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(EmployeeController.class)
+@Import(EmployeeJsonServiceImpl.class)
 public class EmployeeControllerTest {
 
     private String baseApiUrl = "/api/v1";
@@ -37,22 +71,423 @@ public class EmployeeControllerTest {
     @MockBean
     private EmployeeService employeeService;
 
+    @MockBean
+    private EmployeeFeedService employeeFeedService;
+
+    @MockBean
+    private SalaryIndex salaryIndex;
+
+    @MockBean
+    private NameIndex nameIndex;
+
+    @MockBean
+    private EmployeeIndexUpdater employeeIndexUpdater;
+
     /**
-     * Tests that getEmployees() returns OK status and list of employees upon successful retrieval
+     * Tests that getEmployees() returns OK status and page of employees upon successful retrieval
      * @throws Exception
      */
     @Test
     public void shouldReturnEmployees() throws Exception {
-        // mock service will return list of employees
+        // mock service will return page of employees
         Employee employee = getTestEmployee();
         List<Employee> employees = new ArrayList<>();
         employees.add(employee);
-        doReturn(employees).when(employeeService).retrieveEmployees();
+        doReturn(new EmployeePage(employees, employee.getId())).when(employeeService).retrieveEmployees(null, 100);
 
-        // confirm that response contains list of employees
+        // confirm that response contains page of employees and cursor for the next page
         mockMvc.perform(get(baseApiUrl + "/employees"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].name", is(employee.getName())));
+                .andExpect(jsonPath("employees[0].name", is(employee.getName())))
+                .andExpect(jsonPath("nextCursor", is(employee.getId().intValue())));
+    }
+
+    /**
+     * Tests that getEmployees() returns an ETag for the page, and returns Not Modified status
+     * when the client already has the same page
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnNotModifiedForUnchangedPage() throws Exception {
+        Employee employee = getTestEmployee();
+        doReturn(new EmployeePage(Collections.singletonList(employee), null)).when(employeeService).retrieveEmployees(null, 100);
+        String eTag = mockMvc.perform(get(baseApiUrl + "/employees"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get(baseApiUrl + "/employees").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+
+        // a new version of an employee on the page changes the ETag
+        employee.setVersion(1L);
+        mockMvc.perform(get(baseApiUrl + "/employees").header("If-None-Match", eTag))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * Tests that getEmployees() passes cursor and limit parameters to service
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnEmployeesAfterCursor() throws Exception {
+        Employee employee = getTestEmployee();
+        List<Employee> employees = new ArrayList<>();
+        employees.add(employee);
+        doReturn(new EmployeePage(employees, null)).when(employeeService).retrieveEmployees(5L, 10);
+
+        mockMvc.perform(get(baseApiUrl + "/employees").param("after", "5").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("employees[0].name", is(employee.getName())))
+                .andExpect(jsonPath("nextCursor").doesNotExist());
+    }
+
+    /**
+     * Tests that getEmployees() returns Bad Request status and error message when limit is out of range
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForInvalidLimit() throws Exception {
+        mockMvc.perform(get(baseApiUrl + "/employees").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("Limit must be between 1 and 1000 - limit: 0")));
+    }
+
+    /**
+     * Tests that searchEmployees() passes search conditions, cursor and limit to service, and returns the page found
+     * @throws Exception
+     */
+    @Test
+    public void shouldSearchEmployees() throws Exception {
+        Employee employee = getTestEmployee();
+        ArgumentCaptor<EmployeeSearchCriteria> criteria = ArgumentCaptor.forClass(EmployeeSearchCriteria.class);
+        doReturn(new EmployeePage(Collections.singletonList(employee), null))
+                .when(employeeService).searchEmployees(criteria.capture(), eq(5L), eq(10));
+
+        mockMvc.perform(get(baseApiUrl + "/employees/search").param("department", "Sales")
+                    .param("minSalary", "100").param("maxSalary", "200").param("namePrefix", "Na")
+                    .param("after", "5").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("employees[0].name", is(employee.getName())));
+        assertThat(criteria.getValue().getDepartment()).isEqualTo("Sales");
+        assertThat(criteria.getValue().getMinSalary()).isEqualTo(100);
+        assertThat(criteria.getValue().getMaxSalary()).isEqualTo(200);
+        assertThat(criteria.getValue().getNamePrefix()).isEqualTo("Na");
+    }
+
+    /**
+     * Tests that getEmployeeFields() passes the requested fields to service, in the order they were given
+     * @throws Exception
+     */
+    @Test
+    public void shouldGetEmployeeFields() throws Exception {
+        doReturn(new EmployeeFieldsPage(Collections.singletonList(Collections.singletonMap("name", "Name1")), 1L))
+                .when(employeeService).retrieveEmployeeFields(Arrays.asList("name", "id"), null, 1);
+
+        mockMvc.perform(get(baseApiUrl + "/employees").param("fields", "name, id,name").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("employees[0].name", is("Name1")))
+                .andExpect(jsonPath("employees[0].salary").doesNotExist())
+                .andExpect(jsonPath("nextCursor", is(1)));
+    }
+
+    /**
+     * Tests that searchEmployeeFields() passes the search conditions and the requested fields to service
+     * @throws Exception
+     */
+    @Test
+    public void shouldSearchEmployeeFields() throws Exception {
+        ArgumentCaptor<EmployeeSearchCriteria> criteria = ArgumentCaptor.forClass(EmployeeSearchCriteria.class);
+        doReturn(new EmployeeFieldsPage(Collections.singletonList(Collections.singletonMap("id", 1L)), null))
+                .when(employeeService).searchEmployeeFields(criteria.capture(), eq(Arrays.asList("id")), isNull(), eq(100));
+
+        mockMvc.perform(get(baseApiUrl + "/employees/search").param("department", "Sales").param("fields", "id"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("employees[0].id", is(1)));
+        assertThat(criteria.getValue().getDepartment()).isEqualTo("Sales");
+    }
+
+    /**
+     * Tests that getEmployeeFields() returns Bad Request status and error message for an unknown field
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForUnknownField() throws Exception {
+        mockMvc.perform(get(baseApiUrl + "/employees").param("fields", "id,password"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("Unknown field - field: password, known fields: id,name,salary,department,version")));
+    }
+
+    /**
+     * Tests that searchEmployees() returns Bad Request status and error message when the salary range is empty
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForInvalidSalaryRange() throws Exception {
+        mockMvc.perform(get(baseApiUrl + "/employees/search").param("minSalary", "200").param("maxSalary", "100"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("minSalary must not be greater than maxSalary - minSalary: 200, maxSalary: 100")));
+    }
+
+    /**
+     * Tests that getTopEarners() looks up the employees ranked highest by the salary index, keeping their order
+     * @throws Exception
+     */
+    @Test
+    public void shouldGetTopEarners() throws Exception {
+        Employee employee = getTestEmployee();
+        doReturn(true).when(employeeIndexUpdater).isReady();
+        doReturn(new long[]{2L, 1L}).when(salaryIndex).topEarners("Sales", 2);
+        doReturn(new EmployeeLookup(Collections.singletonList(employee), Collections.emptyList()))
+                .when(employeeService).getEmployees(Arrays.asList(2L, 1L));
+
+        mockMvc.perform(get(baseApiUrl + "/employees/top").param("n", "2").param("department", "Sales"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("[0].name", is(employee.getName())));
+    }
+
+    /**
+     * Tests that getTopEarners() returns Service Unavailable status while the indexes are still being loaded
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnServiceUnavailableBeforeIndexesAreLoaded() throws Exception {
+        doReturn(false).when(employeeIndexUpdater).isReady();
+
+        mockMvc.perform(get(baseApiUrl + "/employees/top"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("message", is("Employee indexes are still being loaded")));
+    }
+
+    /**
+     * Tests that getSalaryPercentiles() asks the salary index for the requested percentiles in ascending order,
+     * and names each salary after its percentile
+     * @throws Exception
+     */
+    @Test
+    public void shouldGetSalaryPercentiles() throws Exception {
+        doReturn(true).when(employeeIndexUpdater).isReady();
+        doReturn(new int[]{100, 200, 300}).when(salaryIndex).percentiles("Sales", new double[]{50, 90, 99.9});
+        doReturn(10).when(salaryIndex).count("Sales");
+
+        mockMvc.perform(get(baseApiUrl + "/employees/salary-percentiles").param("department", "Sales")
+                    .param("p", "99.9,50,90"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("department", is("Sales")))
+                .andExpect(jsonPath("count", is(10)))
+                .andExpect(jsonPath("percentiles.p50", is(100)))
+                .andExpect(jsonPath("percentiles.p90", is(200)))
+                .andExpect(jsonPath("percentiles['p99.9']", is(300)));
+    }
+
+    /**
+     * Tests that getSalaryPercentiles() returns Bad Request status and error message for a percentile out of range
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForInvalidPercentile() throws Exception {
+        mockMvc.perform(get(baseApiUrl + "/employees/salary-percentiles").param("p", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("Percentile must be greater than 0 and at most 100 - p: 0.0")));
+    }
+
+    /**
+     * Tests that suggestEmployees() returns the suggestions of the name index
+     * @throws Exception
+     */
+    @Test
+    public void shouldSuggestEmployees() throws Exception {
+        doReturn(true).when(employeeIndexUpdater).isReady();
+        doReturn(Collections.singletonList(new NameSuggestion(1L, "Yamada Taro"))).when(nameIndex).suggest("yam", 5);
+
+        mockMvc.perform(get(baseApiUrl + "/employees/suggest").param("q", "yam").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("[0].id", is(1)))
+                .andExpect(jsonPath("[0].name", is("Yamada Taro")));
+    }
+
+    /**
+     * Tests that suggestEmployees() returns Bad Request status and error message for a blank query
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForBlankSuggestQuery() throws Exception {
+        mockMvc.perform(get(baseApiUrl + "/employees/suggest").param("q", " "))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("q must not be blank")));
+    }
+
+    /**
+     * Tests that getChanges() passes cursor and limit to service and returns upserts, deletes and the new cursor
+     * @throws Exception
+     */
+    @Test
+    public void shouldGetChangesSinceCursor() throws Exception {
+        Employee employee = getTestEmployee();
+        doReturn(new EmployeeChanges(Collections.singletonList(employee), Collections.singletonList(2L), 42L, false))
+                .when(employeeService).getChanges(40L, 100);
+
+        mockMvc.perform(get(baseApiUrl + "/employees/changes").param("since", "40"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("upserts[0].name", is(employee.getName())))
+                .andExpect(jsonPath("upserts[0].changeSeq").doesNotExist())
+                .andExpect(jsonPath("deletes[0]", is(2)))
+                .andExpect(jsonPath("cursor", is(42)))
+                .andExpect(jsonPath("hasMore", is(false)));
+    }
+
+    /**
+     * Tests that getChanges() returns Bad Request status and error message when the cursor is negative
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForNegativeCursor() throws Exception {
+        mockMvc.perform(get(baseApiUrl + "/employees/changes").param("since", "-1"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("Cursor must not be negative - since: -1")));
+    }
+
+    /**
+     * Tests that getChanges() returns Gone status and error message when the cursor is behind purged deletes
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForExpiredCursor() throws Exception {
+        doThrow(new CursorExpiredException("Cursor is older than the deletes kept, sync again from 0 - since: 40"))
+                .when(employeeService).getChanges(40L, 100);
+
+        mockMvc.perform(get(baseApiUrl + "/employees/changes").param("since", "40"))
+                .andExpect(status().isGone())
+                .andExpect(jsonPath("message", is("Cursor is older than the deletes kept, sync again from 0 - since: 40")));
+    }
+
+    /**
+     * Tests that streamChanges() subscribes with the Last-Event-ID header and starts an asynchronous event stream
+     * @throws Exception
+     */
+    @Test
+    public void shouldSubscribeToChangesFromLastEventId() throws Exception {
+        doReturn(new SseEmitter()).when(employeeFeedService).subscribe(7L);
+
+        mockMvc.perform(get(baseApiUrl + "/employees/stream").header("Last-Event-ID", "7"))
+                .andExpect(request().asyncStarted());
+        verify(employeeFeedService).subscribe(7L);
+    }
+
+    /**
+     * Tests that streamChanges() returns Service Unavailable status and error message when there are too many subscribers
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageWhenTooManySubscribers() throws Exception {
+        doThrow(new ServiceUnavailableException("Too many subscribers")).when(employeeFeedService).subscribe(isNull());
+
+        mockMvc.perform(get(baseApiUrl + "/employees/stream"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("message", is("Too many subscribers")));
+    }
+
+    /**
+     * Tests that getEmployeesById() passes the requested IDs to service and returns the found employees and unknown IDs
+     * @throws Exception
+     */
+    @Test
+    public void shouldGetEmployeesById() throws Exception {
+        Employee employee = getTestEmployee();
+        doReturn(new EmployeeLookup(Collections.singletonList(employee), Collections.singletonList(2L)))
+                .when(employeeService).getEmployees(Arrays.asList(1L, 2L));
+
+        mockMvc.perform(get(baseApiUrl + "/employees").param("ids", "1,2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("employees[0].name", is(employee.getName())))
+                .andExpect(jsonPath("notFound[0]", is(2)));
+    }
+
+    /**
+     * Tests that lookupEmployees() accepts the IDs as a JSON array in the request body
+     * @throws Exception
+     */
+    @Test
+    public void shouldLookupEmployees() throws Exception {
+        Employee employee = getTestEmployee();
+        doReturn(new EmployeeLookup(Collections.singletonList(employee), Collections.emptyList()))
+                .when(employeeService).getEmployees(Collections.singletonList(1L));
+
+        mockMvc.perform(post(baseApiUrl + "/employees/lookup")
+                        .contentType(APPLICATION_JSON)
+                        .content(asJson(Collections.singletonList(1L))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("employees[0].name", is(employee.getName())));
+    }
+
+    /**
+     * Tests that getEmployeesById() returns Bad Request status and error message when too many IDs are requested
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForOversizedLookup() throws Exception {
+        StringBuilder ids = new StringBuilder("1");
+        for (int i = 2; i <= 501; i++) {
+            ids.append(',').append(i);
+        }
+
+        mockMvc.perform(get(baseApiUrl + "/employees").param("ids", ids.toString()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("Lookup must contain at most 500 IDs - size: 501")));
+    }
+
+    /**
+     * Tests that getEmployeesById() and lookupEmployees() return Bad Request status and error message
+     * when an ID in the list is empty, without calling the service
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForEmptyLookupId() throws Exception {
+        mockMvc.perform(get(baseApiUrl + "/employees").param("ids", "1,,2"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("Lookup IDs must not be empty - position: 1")));
+        mockMvc.perform(post(baseApiUrl + "/employees/lookup").contentType(APPLICATION_JSON).content("[1,null]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("Lookup IDs must not be empty - position: 1")));
+        verify(employeeService, never()).getEmployees(any());
+    }
+
+    /**
+     * Tests that exportEmployees() writes each employee passed on by the service as one line of JSON
+     * @throws Exception
+     */
+    @Test
+    public void shouldExportEmployeesAsNdjson() throws Exception {
+        Employee first = getTestEmployee();
+        Employee second = getTestEmployee();
+        second.setId(2L);
+        doAnswer(invocation -> {
+            Consumer<Employee> consumer = invocation.getArgument(0);
+            consumer.accept(first);
+            consumer.accept(second);
+            return null;
+        }).when(employeeService).exportEmployees(any());
+
+        mockMvc.perform(get(baseApiUrl + "/employees/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(EmployeeController.APPLICATION_NDJSON_VALUE))
+                .andExpect(content().string(asJson(first) + "\n" + asJson(second) + "\n"));
+    }
+
+    /**
+     * Tests that exportEmployees() writes only the requested fields when fields are given
+     * @throws Exception
+     */
+    @Test
+    public void shouldExportEmployeeFieldsAsNdjson() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Map<String, Object>> consumer = invocation.getArgument(1);
+            consumer.accept(Collections.singletonMap("name", "Name1"));
+            return null;
+        }).when(employeeService).exportEmployeeFields(eq(Arrays.asList("name")), any());
+
+        mockMvc.perform(get(baseApiUrl + "/employees/export").param("fields", "name"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"name\":\"Name1\"}\n"));
     }
 
     /**
@@ -68,6 +503,23 @@ public class EmployeeControllerTest {
                 .andExpect(jsonPath("name", is(employee.getName())));
     }
 
+    /**
+     * Tests that getEmployee() returns the employee's version as ETag,
+     * and returns Not Modified status when the client already has that version
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnNotModifiedForMatchingETag() throws Exception {
+        Employee employee = getTestEmployee();
+        doReturn(employee).when(employeeService).getEmployee(employee.getId());
+        mockMvc.perform(get(baseApiUrl + "/employees/" + employee.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"0\""));
+
+        mockMvc.perform(get(baseApiUrl + "/employees/" + employee.getId()).header("If-None-Match", "\"0\""))
+                .andExpect(status().isNotModified());
+    }
+
     /**
      * Tests that getEmployee() returns Not Found status and error message when employee does not exist in database
      * @throws Exception
@@ -111,20 +563,41 @@ public class EmployeeControllerTest {
     }
 
     /**
-     * Tests that updateEmployee returns OK status and success message when employee is successfully updated
+     * Tests that updateEmployee returns OK status, success message and the ETag of the new version
+     * when employee is successfully updated without If-Match
      * @throws Exception
      */
     @Test
     public void shouldUpdateEmployee() throws Exception {
         Employee employee = getTestEmployee();
-        doReturn(employee).when(employeeService).getEmployee(employee.getId());
-        doReturn(employee).when(employeeService).updateEmployee(employee, employee.getId());
+        Employee updated = getTestEmployee();
+        updated.setVersion(1L);
+        doReturn(updated).when(employeeService).updateEmployee(any(), eq(employee.getId()), isNull());
         mockMvc.perform(
                 put(baseApiUrl + "/employees/" + employee.getId()).content(asJson(employee)).contentType(APPLICATION_JSON))
                 .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""))
                 .andExpect(jsonPath("message", is("Employee updated successfully - ID: " + employee.getId())));
     }
 
+    /**
+     * Tests that updateEmployee() passes the version from the If-Match header to service,
+     * and returns the ETag of the new version
+     * @throws Exception
+     */
+    @Test
+    public void shouldUpdateEmployeeIfMatchesVersion() throws Exception {
+        Employee employee = getTestEmployee();
+        Employee updated = getTestEmployee();
+        updated.setVersion(4L);
+        doReturn(updated).when(employeeService).updateEmployee(any(), eq(employee.getId()), eq(3L));
+        mockMvc.perform(
+                put(baseApiUrl + "/employees/" + employee.getId()).header("If-Match", "\"3\"")
+                        .content(asJson(employee)).contentType(APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""));
+    }
+
     /**
      * Tests that updateEmployee() returns Not Found status and error message
      * when employee to update does not exist in database
@@ -133,10 +606,96 @@ public class EmployeeControllerTest {
     @Test
     public void shouldReturnErrorMessageForUpdateEmployee() throws Exception {
         long id = 1L;
-        doReturn(null).when(employeeService).getEmployee(id);
+        doThrow(new EntityNotFoundException("Employee not found - ID: " + id))
+                .when(employeeService).updateEmployee(any(), eq(id), isNull());
 
-        mockMvc.perform(get(baseApiUrl + "/employees/" + id))
+        mockMvc.perform(put(baseApiUrl + "/employees/" + id).content(asJson(getTestEmployee())).contentType(APPLICATION_JSON))
                 .andExpect(status().isNotFound())
                 .andExpect(jsonPath("message", is("Employee not found - ID: " + id)));
     }
+
+    /**
+     * Tests that updateEmployee() returns Precondition Failed status when If-Match is not an ETag of this API,
+     * without calling service
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnPreconditionFailedForUnknownIfMatch() throws Exception {
+        Employee employee = getTestEmployee();
+        mockMvc.perform(
+                put(baseApiUrl + "/employees/" + employee.getId()).header("If-Match", "W/\"3\"")
+                        .content(asJson(employee)).contentType(APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed());
+        verify(employeeService, never()).updateEmployee(any(), any(), any());
+    }
+
+    /**
+     * Tests that updateEmployee() returns Precondition Failed status and error message
+     * when service finds that the employee has changed since the If-Match version
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForStaleIfMatch() throws Exception {
+        Employee employee = getTestEmployee();
+        doThrow(new PreconditionFailedException("Employee has been modified since version 3 - ID: 1"))
+                .when(employeeService).updateEmployee(any(), eq(employee.getId()), eq(3L));
+        mockMvc.perform(
+                put(baseApiUrl + "/employees/" + employee.getId()).header("If-Match", "\"3\"")
+                        .content(asJson(employee)).contentType(APPLICATION_JSON))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("message", is("Employee has been modified since version 3 - ID: 1")));
+    }
+
+    /**
+     * Tests that saveEmployees() returns OK status and the per-item results from the service
+     * @throws Exception
+     */
+    @Test
+    public void shouldSaveEmployeeBatch() throws Exception {
+        Employee employee = getTestEmployee();
+        List<Employee> employees = Collections.singletonList(employee);
+        doReturn(Collections.singletonList(new BatchItemResult(0, 5L, BatchItemResult.Status.CREATED, null)))
+                .when(employeeService).saveEmployees(any());
+
+        mockMvc.perform(post(baseApiUrl + "/employees/batch")
+                        .contentType(APPLICATION_JSON)
+                        .content(asJson(employees)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", is(5)))
+                .andExpect(jsonPath("$[0].status", is("CREATED")));
+    }
+
+    /**
+     * Tests that updateEmployees() returns OK status and the per-item results from the service
+     * @throws Exception
+     */
+    @Test
+    public void shouldUpdateEmployeeBatch() throws Exception {
+        Employee employee = getTestEmployee();
+        List<Employee> employees = Collections.singletonList(employee);
+        doReturn(Collections.singletonList(new BatchItemResult(0, employee.getId(), BatchItemResult.Status.NOT_FOUND, "Employee not found")))
+                .when(employeeService).updateEmployees(any());
+
+        mockMvc.perform(put(baseApiUrl + "/employees/batch")
+                        .contentType(APPLICATION_JSON)
+                        .content(asJson(employees)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("NOT_FOUND")))
+                .andExpect(jsonPath("$[0].message", is("Employee not found")));
+    }
+
+    /**
+     * Tests that saveEmployees() returns Bad Request status and error message when the batch is too large
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnErrorMessageForOversizedBatch() throws Exception {
+        List<Employee> employees = Collections.nCopies(10001, getTestEmployee());
+
+        mockMvc.perform(post(baseApiUrl + "/employees/batch")
+                        .contentType(APPLICATION_JSON)
+                        .content(asJson(employees)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("message", is("Batch must contain at most 10000 employees - size: 10001")));
+    }
 }
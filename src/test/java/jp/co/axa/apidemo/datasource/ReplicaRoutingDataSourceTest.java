@@ -0,0 +1,130 @@
+package jp.co.axa.apidemo.datasource;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private final DataSource primary = database("primary");
+
+    private final DataSource replica1 = database("replica1");
+
+    private final DataSource replica2 = database("replica2");
+
+    @After
+    public void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReplicaRoutingDataSource.setPrimaryRequired(false);
+    }
+
+    /**
+     * Tests that only connections of read-only transactions go to the replicas, each in turn,
+     * unless the thread requires the primary
+     * @throws SQLException
+     */
+    @Test
+    public void shouldSendReadOnlyTransactionsToReplicas() throws SQLException {
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Selection.ROUND_ROBIN, replica1, replica2);
+        assertThat(databaseOf(routing)).isEqualTo("primary");
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertThat(databaseOf(routing)).isEqualTo("replica1");
+        assertThat(databaseOf(routing)).isEqualTo("replica2");
+        assertThat(databaseOf(routing)).isEqualTo("replica1");
+
+        ReplicaRoutingDataSource.setPrimaryRequired(true);
+        assertThat(databaseOf(routing)).isEqualTo("primary");
+    }
+
+    /**
+     * Tests that callOnPrimary() sends the reads of the call to the primary, and then restores the previous setting
+     * @throws SQLException
+     */
+    @Test
+    public void shouldSendReadsOfCallToPrimary() throws SQLException {
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Selection.ROUND_ROBIN, replica1);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(ReplicaRoutingDataSource.<String>callOnPrimary(() -> {
+            try {
+                return databaseOf(routing);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        })).isEqualTo("primary");
+        assertThat(ReplicaRoutingDataSource.isPrimaryRequired()).isFalse();
+        assertThat(databaseOf(routing)).isEqualTo("replica1");
+    }
+
+    /**
+     * Tests that with the least connections selection, a replica whose connection is still open is passed over
+     * @throws SQLException
+     */
+    @Test
+    public void shouldSelectReplicaWithFewestConnections() throws SQLException {
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Selection.LEAST_CONNECTIONS,
+                                                   replica1, replica2);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try (Connection held = routing.getConnection()) {
+            assertThat(held.getMetaData().getURL()).contains("replica1");
+            assertThat(databaseOf(routing)).isEqualTo("replica2");
+            assertThat(databaseOf(routing)).isEqualTo("replica2");
+        }
+        assertThat(databaseOf(routing)).isEqualTo("replica2");
+        assertThat(databaseOf(routing)).isEqualTo("replica1");
+    }
+
+    /**
+     * Tests that a replica that fails a health check or a connection attempt is skipped until it passes a check,
+     * and that reads go to the primary when no replica is healthy
+     * @throws SQLException
+     */
+    @Test
+    public void shouldSkipUnhealthyReplicas() throws SQLException {
+        DataSource failing = mock(DataSource.class);
+        when(failing.getConnection()).thenThrow(new SQLException("Connection refused"));
+        ReplicaRoutingDataSource routing = routing(ReplicaRoutingDataSource.Selection.ROUND_ROBIN, replica1, failing);
+
+        routing.checkHealth(1);
+        assertThat(routing.getHealthyReplicas()).containsExactly("replica-1");
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertThat(databaseOf(routing)).isEqualTo("replica1");
+        assertThat(databaseOf(routing)).isEqualTo("replica1");
+
+        ReplicaRoutingDataSource allFailing = routing(ReplicaRoutingDataSource.Selection.ROUND_ROBIN, failing);
+        // the connection attempt fails over to the primary, and the replica is skipped from then on
+        assertThat(databaseOf(allFailing)).isEqualTo("primary");
+        assertThat(allFailing.getHealthyReplicas()).isEmpty();
+        assertThat(databaseOf(allFailing)).isEqualTo("primary");
+    }
+
+    private ReplicaRoutingDataSource routing(ReplicaRoutingDataSource.Selection selection, DataSource... replicas) {
+        Map<String, DataSource> named = new LinkedHashMap<>();
+        for (int i = 0; i < replicas.length; i++) {
+            named.put("replica-" + (i + 1), replicas[i]);
+        }
+        return new ReplicaRoutingDataSource(primary, named, selection);
+    }
+
+    private static DataSource database(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    private static String databaseOf(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getMetaData().getURL().substring("jdbc:h2:mem:".length());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package jp.co.axa.apidemo.health;
+
+import jp.co.axa.apidemo.message.CacheWarmupStatus;
+import jp.co.axa.apidemo.message.CacheWarmupStatus.State;
+import jp.co.axa.apidemo.services.EmployeeCacheWarmupService;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CacheWarmupHealthIndicatorTest {
+
+    /**
+     * Tests that the node is out of service while the warm-up is pending or running,
+     * and up once it is over, even if it timed out
+     */
+    @Test
+    public void shouldBeOutOfServiceUntilWarmupIsOver() {
+        EmployeeCacheWarmupService warmupService = mock(EmployeeCacheWarmupService.class);
+        CacheWarmupHealthIndicator indicator = new CacheWarmupHealthIndicator();
+        indicator.setWarmupService(warmupService);
+
+        when(warmupService.getStatus()).thenReturn(new CacheWarmupStatus(State.PENDING, 0, 0, 0));
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        when(warmupService.getStatus()).thenReturn(new CacheWarmupStatus(State.RUNNING, 500, 1000, 20));
+        Health running = indicator.health();
+        assertThat(running.getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        assertThat(running.getDetails()).containsEntry("cached", 500L).containsEntry("target", 1000L);
+
+        when(warmupService.getStatus()).thenReturn(new CacheWarmupStatus(State.TIMED_OUT, 800, 1000, 120000));
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+    }
+}
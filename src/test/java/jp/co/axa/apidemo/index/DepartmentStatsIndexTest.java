@@ -0,0 +1,86 @@
+package jp.co.axa.apidemo.index;
+
+import jp.co.axa.apidemo.message.DepartmentStats;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class DepartmentStatsIndexTest {
+
+    private final DepartmentStatsIndex index = new DepartmentStatsIndex();
+
+    /**
+     * Tests that getStats() returns headcount, total, min, max and average salary per department,
+     * counting employees without a salary in the headcount only
+     */
+    @Test
+    public void shouldAggregateByDepartment() {
+        index.update(null, employee(1, "Sales", 100));
+        index.update(null, employee(2, "Sales", 300));
+        index.update(null, employee(3, "Sales", null));
+        index.update(null, employee(4, "IT", 500));
+        index.update(null, employee(5, null, 50));
+
+        assertThat(index.getStats()).extracting(DepartmentStats::getDepartment, DepartmentStats::getHeadcount,
+                    DepartmentStats::getTotalSalary, DepartmentStats::getMinSalary, DepartmentStats::getMaxSalary,
+                    DepartmentStats::getAverageSalary)
+                .containsExactly(tuple(null, 1L, 50L, 50, 50, 50.0),
+                                 tuple("IT", 1L, 500L, 500, 500, 500.0),
+                                 tuple("Sales", 3L, 400L, 100, 300, 200.0));
+    }
+
+    /**
+     * Tests that moving an employee to another department, changing their salary and deleting them
+     * update both departments, including min and max, and that empty departments are left out
+     */
+    @Test
+    public void shouldApplyMovesSalaryChangesAndDeletes() {
+        index.update(null, employee(1, "Sales", 100));
+        index.update(null, employee(2, "Sales", 300));
+        index.update(employee(2, "Sales", 300), employee(2, "IT", 400));
+        index.update(employee(1, "Sales", 100), employee(1, "Sales", 150));
+
+        assertThat(index.getStats()).extracting(DepartmentStats::getDepartment, DepartmentStats::getHeadcount,
+                    DepartmentStats::getMinSalary, DepartmentStats::getMaxSalary)
+                .containsExactly(tuple("IT", 1L, 400, 400), tuple("Sales", 1L, 150, 150));
+
+        index.update(employee(2, "IT", 400), null);
+        assertThat(index.getStats()).extracting(DepartmentStats::getDepartment).containsExactly("Sales");
+    }
+
+    /**
+     * Tests that concurrent updates to the same department are all counted
+     */
+    @Test
+    public void shouldCountConcurrentUpdates() throws Exception {
+        int threads = 8;
+        int perThread = 10000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * perThread;
+            workers.add(new Thread(() -> {
+                for (int i = first; i < first + perThread; i++) {
+                    index.update(null, employee(i, "Sales", i % 100));
+                    if (i % 2 == 0) index.update(employee(i, "Sales", i % 100), null);
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        DepartmentStats stats = index.getStats().get(0);
+        assertThat(stats.getHeadcount()).isEqualTo(threads * perThread / 2);
+        assertThat(stats.getMinSalary()).isEqualTo(1);
+        assertThat(stats.getMaxSalary()).isEqualTo(99);
+    }
+
+    private static IndexedEmployee employee(long id, String department, Integer salary) {
+        return new IndexedEmployee(id, "Name", department, salary, 0L);
+    }
+}
@@ -0,0 +1,144 @@
+package jp.co.axa.apidemo.index;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent.Type;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static jp.co.axa.apidemo.TestUtil.getTestEmployee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class EmployeeIndexUpdaterTest {
+
+    private final EmployeeService employeeService = mock(EmployeeService.class);
+
+    private final List<String> changes = new ArrayList<>();
+
+    private final EmployeeIndexUpdater updater = new EmployeeIndexUpdater();
+
+    @Before
+    public void setUp() {
+        updater.setEmployeeService(employeeService);
+        // records each change as "previous -> current", describing employees by ID and department
+        updater.setIndexes(Collections.singletonList((previous, current) ->
+                changes.add(describe(previous) + " -> " + describe(current))));
+    }
+
+    /**
+     * Tests that seed() adds every employee to the indexes, and that the updater is only ready afterwards
+     */
+    @Test
+    public void shouldSeedIndexes() {
+        seedWith(employee(1L, "Sales", 0L), employee(2L, "IT", 0L));
+        assertThat(updater.isReady()).isFalse();
+
+        updater.seed();
+        assertThat(changes).containsExactlyInAnyOrder("null -> 1:Sales", "null -> 2:IT");
+        assertThat(updater.isReady()).isTrue();
+    }
+
+    /**
+     * Tests that changes are passed to the indexes along with the data they replaced
+     */
+    @Test
+    public void shouldPassPreviousDataOfChangedEmployee() {
+        seedWith();
+        updater.seed();
+        updater.onEmployeeChange(new EmployeeChangeEvent(Type.CREATED, 1L, employee(1L, "Sales", 0L)));
+        updater.onEmployeeChange(new EmployeeChangeEvent(Type.UPDATED, 1L, employee(1L, "IT", 1L)));
+        updater.onEmployeeChange(new EmployeeChangeEvent(Type.DELETED, 1L, null));
+        assertThat(changes).containsExactly("null -> 1:Sales", "1:Sales -> 1:IT", "1:IT -> null");
+    }
+
+    /**
+     * Tests that a change older than the version already applied is ignored
+     */
+    @Test
+    public void shouldIgnoreOutOfOrderChange() {
+        seedWith();
+        updater.seed();
+        updater.onEmployeeChange(new EmployeeChangeEvent(Type.UPDATED, 1L, employee(1L, "IT", 2L)));
+        updater.onEmployeeChange(new EmployeeChangeEvent(Type.UPDATED, 1L, employee(1L, "Sales", 1L)));
+        assertThat(changes).containsExactly("null -> 1:IT");
+    }
+
+    /**
+     * Tests that changes made before the indexes are loaded are recorded, and loaded along with the seeded employees
+     */
+    @Test
+    public void shouldLoadChangesMadeBeforeSeeding() {
+        updater.onEmployeeChange(new EmployeeChangeEvent(Type.CREATED, 3L, employee(3L, "HR", 0L)));
+        assertThat(changes).isEmpty();
+
+        seedWith(employee(1L, "Sales", 0L));
+        updater.seed();
+        assertThat(changes).containsExactlyInAnyOrder("null -> 1:Sales", "null -> 3:HR");
+    }
+
+    /**
+     * Tests that seeding does not add back an employee deleted after the seed read them,
+     * nor overwrite an employee changed while seeding
+     */
+    @Test
+    public void shouldPreferChangesMadeWhileSeeding() {
+        doAnswer(invocation -> {
+            Consumer<Employee> consumer = invocation.getArgument(0);
+            updater.onEmployeeChange(new EmployeeChangeEvent(Type.DELETED, 1L, null));
+            updater.onEmployeeChange(new EmployeeChangeEvent(Type.UPDATED, 2L, employee(2L, "IT", 1L)));
+            consumer.accept(employee(1L, "Sales", 0L));
+            consumer.accept(employee(2L, "Sales", 0L));
+            return null;
+        }).when(employeeService).exportEmployees(any());
+
+        updater.seed();
+        assertThat(changes).containsExactly("null -> 2:IT");
+    }
+
+    /**
+     * Tests that employees of the same department share one instance of its name
+     */
+    @Test
+    public void shouldShareDepartmentNames() {
+        List<IndexedEmployee> indexed = new ArrayList<>();
+        updater.setIndexes(Collections.singletonList((previous, current) -> indexed.add(current)));
+        seedWith(employee(1L, new String("Sales"), 0L), employee(2L, new String("Sales"), 0L));
+        updater.seed();
+        updater.onEmployeeChange(new EmployeeChangeEvent(Type.CREATED, 3L, employee(3L, new String("Sales"), 0L)));
+
+        assertThat(indexed).hasSize(3);
+        assertThat(indexed.get(1).getDepartment()).isSameAs(indexed.get(0).getDepartment());
+        assertThat(indexed.get(2).getDepartment()).isSameAs(indexed.get(0).getDepartment());
+    }
+
+    private void seedWith(Employee... employees) {
+        doAnswer(invocation -> {
+            Consumer<Employee> consumer = invocation.getArgument(0);
+            for (Employee employee : employees) {
+                consumer.accept(employee);
+            }
+            return null;
+        }).when(employeeService).exportEmployees(any());
+    }
+
+    private static Employee employee(Long id, String department, Long version) {
+        Employee employee = getTestEmployee();
+        employee.setId(id);
+        employee.setDepartment(department);
+        employee.setVersion(version);
+        return employee;
+    }
+
+    private static String describe(IndexedEmployee employee) {
+        return employee == null ? "null" : employee.getId() + ":" + employee.getDepartment();
+    }
+}
@@ -0,0 +1,104 @@
+package jp.co.axa.apidemo.index;
+
+import jp.co.axa.apidemo.message.NameSuggestion;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NameIndexTest {
+
+    private final NameIndex index = new NameIndex();
+
+    /**
+     * Tests that names starting with the query come first, followed by names containing it, ignoring case
+     */
+    @Test
+    public void shouldSuggestPrefixMatchesBeforeSubstringMatches() {
+        index.update(null, employee(1, "Taro Yamada"));
+        index.update(null, employee(2, "Yamamoto Ken"));
+        index.update(null, employee(3, "Hanako Sato"));
+        index.update(null, employee(4, "yamaguchi"));
+
+        assertThat(ids(index.suggest("YAMA", 10))).containsExactly(2L, 4L, 1L);
+        assertThat(ids(index.suggest("yamam", 10))).containsExactly(2L);
+        assertThat(ids(index.suggest("ko sa", 10))).containsExactly(3L);
+        assertThat(ids(index.suggest("suzuki", 10))).isEmpty();
+        assertThat(ids(index.suggest("YAMA", 2))).containsExactly(2L, 4L);
+    }
+
+    /**
+     * Tests that a name sharing its first characters with a longer query, but containing the query only later,
+     * is suggested as a substring match
+     */
+    @Test
+    public void shouldSuggestSubstringMatchesOfNamesSharingTheQueryPrefix() {
+        index.update(null, employee(1, "Ann Annette"));
+        index.update(null, employee(2, "Bob Annette"));
+        index.update(null, employee(3, "Annette Ito"));
+
+        assertThat(ids(index.suggest("anne", 10))).containsExactly(3L, 1L, 2L);
+        assertThat(ids(index.suggest("ann", 10))).containsExactly(1L, 3L, 2L);
+    }
+
+    /**
+     * Tests that queries shorter than three characters only match prefixes
+     */
+    @Test
+    public void shouldOnlyMatchPrefixesOfShortQueries() {
+        index.update(null, employee(1, "Taro Yamada"));
+        index.update(null, employee(2, "Yamamoto Ken"));
+
+        assertThat(ids(index.suggest("ya", 10))).containsExactly(2L);
+        assertThat(ids(index.suggest("t", 10))).containsExactly(1L);
+    }
+
+    /**
+     * Tests that renames and deletes are reflected in the suggestions
+     */
+    @Test
+    public void shouldApplyRenamesAndDeletes() {
+        index.update(null, employee(1, "Taro Yamada"));
+        index.update(null, employee(2, "Yamamoto Ken"));
+
+        index.update(employee(1, "Taro Yamada"), employee(1, "Taro Suzuki"));
+        assertThat(ids(index.suggest("yama", 10))).containsExactly(2L);
+        assertThat(ids(index.suggest("suzu", 10))).containsExactly(1L);
+
+        index.update(employee(2, "Yamamoto Ken"), null);
+        assertThat(ids(index.suggest("yama", 10))).isEmpty();
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    /**
+     * Tests that loading in bulk gives the same suggestions as adding employees one at a time
+     */
+    @Test
+    public void shouldLoadSameIndexAsUpdates() {
+        List<IndexedEmployee> employees = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            employees.add(employee(id, "Name" + (id * 7919 % 1000) + " Family" + (id % 13)));
+        }
+        NameIndex updated = new NameIndex();
+        employees.forEach(e -> updated.update(null, e));
+        index.load(employees);
+
+        for (String query : Arrays.asList("n", "name1", "me99", "family1", "ly7", "12 f")) {
+            assertThat(ids(index.suggest(query, 50))).as(query).isEqualTo(ids(updated.suggest(query, 50)));
+        }
+        assertThat(index.size()).isEqualTo(1000);
+        assertThat(index.memoryBytes()).isPositive();
+    }
+
+    private static List<Long> ids(List<NameSuggestion> suggestions) {
+        return suggestions.stream().map(NameSuggestion::getId).collect(Collectors.toList());
+    }
+
+    private static IndexedEmployee employee(long id, String name) {
+        return new IndexedEmployee(id, name, "Sales", 100, 0L);
+    }
+}
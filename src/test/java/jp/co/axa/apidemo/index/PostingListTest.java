@@ -0,0 +1,48 @@
+package jp.co.axa.apidemo.index;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostingListTest {
+
+    /**
+     * Tests that IDs are kept sorted and unique whatever order they are added and removed in
+     */
+    @Test
+    public void shouldKeepIdsSortedAndUnique() {
+        PostingList list = new PostingList(new long[]{5, 1, 3, 1, 9}, 5);
+        list.add(4);
+        list.add(10);
+        list.add(3);
+        list.remove(9);
+        list.remove(7);
+
+        assertThat(list.size()).isEqualTo(5);
+        long[] ids = new long[list.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = list.get(i);
+        }
+        assertThat(ids).containsExactly(1, 3, 4, 5, 10);
+        assertThat(list.contains(4)).isTrue();
+        assertThat(list.contains(9)).isFalse();
+    }
+
+    /**
+     * Tests that seek() finds the first position not less than the ID, from any starting position
+     */
+    @Test
+    public void shouldSeekForward() {
+        PostingList list = new PostingList();
+        for (long id = 2; id <= 200; id += 2) {
+            list.add(id);
+        }
+
+        assertThat(list.seek(2, 0)).isEqualTo(0);
+        assertThat(list.seek(3, 0)).isEqualTo(1);
+        assertThat(list.seek(150, 10)).isEqualTo(74);
+        assertThat(list.seek(151, 74)).isEqualTo(75);
+        assertThat(list.seek(1, 50)).isEqualTo(50);
+        assertThat(list.seek(201, 0)).isEqualTo(100);
+    }
+}
@@ -0,0 +1,51 @@
+package jp.co.axa.apidemo.index;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SalaryIndexTest {
+
+    private final SalaryIndex index = new SalaryIndex();
+
+    /**
+     * Tests that employees are ranked both overall and within their department,
+     * and that employees without a salary are not ranked
+     */
+    @Test
+    public void shouldRankOverallAndByDepartment() {
+        index.update(null, employee(1, "Sales", 100));
+        index.update(null, employee(2, "IT", 300));
+        index.update(null, employee(3, "Sales", 200));
+        index.update(null, employee(4, "Sales", null));
+
+        assertThat(index.topEarners(null, 2)).containsExactly(2, 3);
+        assertThat(index.topEarners("Sales", 10)).containsExactly(3, 1);
+        assertThat(index.topEarners("HR", 10)).isEmpty();
+        assertThat(index.percentiles("Sales", new double[]{50, 100})).containsExactly(100, 200);
+        assertThat(index.count(null)).isEqualTo(3);
+    }
+
+    /**
+     * Tests that moves between departments, salary changes and deletes are reflected in the rankings
+     */
+    @Test
+    public void shouldApplyMovesSalaryChangesAndDeletes() {
+        index.update(null, employee(1, "Sales", 100));
+        index.update(null, employee(2, "Sales", 200));
+        index.update(employee(2, "Sales", 200), employee(2, "IT", 50));
+        index.update(employee(1, "Sales", 100), employee(1, "Sales", 500));
+
+        assertThat(index.topEarners(null, 10)).containsExactly(1, 2);
+        assertThat(index.topEarners("Sales", 10)).containsExactly(1);
+        assertThat(index.topEarners("IT", 10)).containsExactly(2);
+
+        index.update(employee(1, "Sales", 500), null);
+        assertThat(index.topEarners(null, 10)).containsExactly(2);
+        assertThat(index.count("Sales")).isEqualTo(0);
+    }
+
+    private static IndexedEmployee employee(long id, String department, Integer salary) {
+        return new IndexedEmployee(id, "Name", department, salary, 0L);
+    }
+}
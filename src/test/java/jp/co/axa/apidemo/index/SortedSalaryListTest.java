@@ -0,0 +1,67 @@
+package jp.co.axa.apidemo.index;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SortedSalaryListTest {
+
+    private final SortedSalaryList list = new SortedSalaryList();
+
+    /**
+     * Tests that highest() returns IDs by salary, highest first, with ties broken by higher ID
+     */
+    @Test
+    public void shouldReturnHighestSalaries() {
+        list.add(100, 1);
+        list.add(300, 2);
+        list.add(200, 3);
+        list.add(300, 4);
+
+        assertThat(list.highest(3)).containsExactly(4, 2, 3);
+        assertThat(list.highest(10)).containsExactly(4, 2, 3, 1);
+    }
+
+    /**
+     * Tests that percentiles() uses the nearest-rank method
+     */
+    @Test
+    public void shouldReturnNearestRankPercentiles() {
+        for (int i = 1; i <= 10; i++) {
+            list.add(i * 10, i);
+        }
+        assertThat(list.percentiles(new double[]{10, 50, 55, 90, 100})).containsExactly(10, 50, 60, 90, 100);
+        assertThat(new SortedSalaryList().percentiles(new double[]{50})).isEmpty();
+    }
+
+    /**
+     * Tests that many random adds and removes, enough to split blocks and empty them again,
+     * leave the list in the same order as a simple sorted list
+     */
+    @Test
+    public void shouldStaySortedAcrossBlocks() {
+        Random random = new Random(42);
+        List<long[]> expected = new ArrayList<>();
+        for (long id = 0; id < 10 * SortedSalaryList.BLOCK_SIZE; id++) {
+            int salary = random.nextInt(1000);
+            list.add(salary, id);
+            expected.add(new long[]{salary, id});
+        }
+        for (int i = 0; i < 5 * SortedSalaryList.BLOCK_SIZE; i++) {
+            long[] removed = expected.remove(random.nextInt(expected.size()));
+            assertThat(list.remove((int) removed[0], removed[1])).isTrue();
+        }
+        assertThat(list.remove(5000, 1)).isFalse();
+
+        expected.sort(Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]).reversed());
+        long[] expectedIds = expected.stream().mapToLong(e -> e[1]).toArray();
+        assertThat(list.size()).isEqualTo(expected.size());
+        assertThat(list.highest(expected.size())).containsExactly(expectedIds);
+        assertThat(list.percentiles(new double[]{100})).containsExactly((int) expected.get(0)[0]);
+    }
+}
@@ -1,16 +1,24 @@
 package jp.co.axa.apidemo.repositories;
 
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.entities.EmployeeTombstone;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.persistence.Tuple;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static jp.co.axa.apidemo.repositories.EmployeeSpecifications.*;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @RunWith(SpringRunner.class)
@@ -23,6 +31,9 @@ public class EmployeeRepositoryTest {
     @Autowired
     private EmployeeRepository employeeRepository;
 
+    @Autowired
+    private EmployeeTombstoneRepository tombstoneRepository;
+
     /**
      * Tests that findAll() retrieves list of all employees
      */
@@ -37,6 +48,39 @@ public class EmployeeRepositoryTest {
         assertThat(result.get(0)).isEqualTo(employee);
     }
 
+    /**
+     * Tests that findByIdGreaterThanOrderByIdAsc() retrieves only employees after the cursor, in ID order, up to the page size
+     */
+    @Test
+    public void shouldReturnEmployeesAfterCursor() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ids.add(entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class));
+        }
+        entityManager.flush();
+
+        List<Employee> result = employeeRepository.findByIdGreaterThanOrderByIdAsc(ids.get(0), PageRequest.of(0, 2));
+        assertThat(result).extracting(Employee::getId).containsExactly(ids.get(1), ids.get(2));
+    }
+
+    /**
+     * Tests that streamAllByOrderByIdAsc() streams all employees in ID order, and that detach() removes them from the persistence context
+     */
+    @Test
+    public void shouldStreamAllEmployees() {
+        Long firstId = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        Long secondId = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Employee> result;
+        try (Stream<Employee> employees = employeeRepository.streamAllByOrderByIdAsc()) {
+            result = employees.peek(employeeRepository::detach).collect(Collectors.toList());
+        }
+        assertThat(result).extracting(Employee::getId).containsExactly(firstId, secondId);
+        assertThat(entityManager.getEntityManager().contains(result.get(0))).isFalse();
+    }
+
     /**
      * Tests that findById() retrieves the employee entry with given ID
      */
@@ -62,6 +106,195 @@ public class EmployeeRepositoryTest {
         assertThat(employee.getId()).isEqualTo(found.getId());
     }
 
+    /**
+     * Tests that updateIfVersionMatches() overwrites employee data and increments the version
+     * when the expected version is the current one, or when no version is expected
+     */
+    @Test
+    public void shouldUpdateEmployeeWhenVersionMatches() {
+        Long id = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        entityManager.flush();
+        entityManager.clear();
+
+        Employee update = getTestEmployeeNoId();
+        update.setId(id);
+        update.setName("New Name");
+        assertThat(employeeRepository.updateIfVersionMatches(update, 0L)).isEqualTo(1);
+        assertThat(employeeRepository.updateIfVersionMatches(update, null)).isEqualTo(1);
+        assertThat(employeeRepository.findVersionById(id)).isEqualTo(2L);
+
+        Employee found = entityManager.find(Employee.class, id);
+        assertThat(found.getName()).isEqualTo("New Name");
+        assertThat(found.getVersion()).isEqualTo(2L);
+    }
+
+    /**
+     * Tests that updateIfVersionMatches() does not update anything when the expected version is not the current one,
+     * or when no employee has the ID
+     */
+    @Test
+    public void shouldNotUpdateEmployeeWhenVersionDiffers() {
+        Long id = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        entityManager.flush();
+        entityManager.clear();
+
+        Employee update = getTestEmployeeNoId();
+        update.setId(id);
+        update.setName("New Name");
+        assertThat(employeeRepository.updateIfVersionMatches(update, 5L)).isEqualTo(0);
+        update.setId(id + 1000);
+        assertThat(employeeRepository.updateIfVersionMatches(update, null)).isEqualTo(0);
+
+        assertThat(entityManager.find(Employee.class, id).getName()).isEqualTo("Name");
+    }
+
+    /**
+     * Tests that updateAll() overwrites the data and version of each employee, and skips employees that do not exist
+     */
+    @Test
+    public void shouldUpdateAllEmployeesInBatch() {
+        Long firstId = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        Long secondId = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Employee> updates = new ArrayList<>();
+        for (Long id : Arrays.asList(firstId, secondId, secondId + 1000)) {
+            Employee update = getTestEmployeeNoId();
+            update.setId(id);
+            update.setName("Name " + id);
+            update.setVersion(7L);
+            updates.add(update);
+        }
+        assertThat(employeeRepository.updateAll(updates)).containsExactly(firstId, secondId);
+
+        for (Long id : Arrays.asList(firstId, secondId)) {
+            Employee found = entityManager.find(Employee.class, id);
+            assertThat(found.getName()).isEqualTo("Name " + id);
+            assertThat(found.getVersion()).isEqualTo(7L);
+        }
+    }
+
+    /**
+     * Tests that the database moves an employee's change sequence forward on insert, on update through Hibernate
+     * and on bulk update, and that findByChangeSeqGreaterThanOrderByChangeSeqAsc() returns them in that order
+     * after a cursor. Also tests that tombstones take their sequence from the same ordering
+     */
+    @Test
+    public void shouldReturnEmployeesChangedSinceCursor() {
+        Long firstId = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        Long secondId = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        Long thirdId = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        entityManager.flush();
+        entityManager.clear();
+        Long cursor = entityManager.find(Employee.class, firstId).getChangeSeq();
+
+        entityManager.find(Employee.class, thirdId).setName("New Name");
+        entityManager.flush();
+        Employee update = getTestEmployeeNoId();
+        update.setId(firstId);
+        employeeRepository.updateIfVersionMatches(update, null);
+        EmployeeTombstone tombstone = tombstoneRepository.saveAndFlush(new EmployeeTombstone(99L, System.currentTimeMillis()));
+        entityManager.clear();
+
+        List<Employee> result = employeeRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(cursor, PageRequest.of(0, 10));
+        assertThat(result).extracting(Employee::getId).containsExactly(secondId, thirdId, firstId);
+        assertThat(tombstone.getChangeSeq()).isGreaterThan(result.get(2).getChangeSeq());
+        assertThat(tombstoneRepository.findByChangeSeqGreaterThanOrderByChangeSeqAsc(result.get(2).getChangeSeq(), PageRequest.of(0, 10)))
+                .extracting(EmployeeTombstone::getEmployeeId).containsExactly(99L);
+    }
+
+    /**
+     * Tests that findChangeSeqCurrentValue() returns the last value taken from the change sequence
+     */
+    @Test
+    public void shouldFindChangeSeqCurrentValue() {
+        EmployeeTombstone tombstone = tombstoneRepository.saveAndFlush(new EmployeeTombstone(99L, 0L));
+        assertThat(tombstoneRepository.findChangeSeqCurrentValue()).isEqualTo(tombstone.getChangeSeq());
+
+        Long employeeId = entityManager.persistAndGetId(getTestEmployeeNoId(), Long.class);
+        entityManager.flush();
+        entityManager.clear();
+        assertThat(tombstoneRepository.findChangeSeqCurrentValue())
+                .isEqualTo(entityManager.find(Employee.class, employeeId).getChangeSeq());
+    }
+
+    /**
+     * Tests that findAllOrderById() returns only employees matching every condition, in ID order, up to the limit,
+     * and that a name prefix containing LIKE wildcards only matches them literally
+     */
+    @Test
+    public void shouldSearchEmployees() {
+        Long firstId = entityManager.persistAndGetId(getTestEmployee("Alice", 500, "Sales"), Long.class);
+        entityManager.persist(getTestEmployee("Alan", 900, "Sales"));
+        Long thirdId = entityManager.persistAndGetId(getTestEmployee("Alfred", 600, "Sales"), Long.class);
+        entityManager.persist(getTestEmployee("Alice", 500, "IT"));
+        entityManager.persist(getTestEmployee("Bob", 500, "Sales"));
+        Long percentId = entityManager.persistAndGetId(getTestEmployee("Al%", 500, "Sales"), Long.class);
+        entityManager.flush();
+
+        Specification<Employee> spec = Specification.where(inDepartment("Sales"))
+                .and(salaryAtLeast(400)).and(salaryAtMost(600)).and(nameStartsWith("Al"));
+        assertThat(employeeRepository.findAllOrderById(spec, 10)).extracting(Employee::getId)
+                .containsExactly(firstId, thirdId, percentId);
+        assertThat(employeeRepository.findAllOrderById(spec, 2)).extracting(Employee::getId)
+                .containsExactly(firstId, thirdId);
+        assertThat(employeeRepository.findAllOrderById(Specification.where(nameStartsWith("Al%")), 10))
+                .extracting(Employee::getId).containsExactly(percentId);
+    }
+
+    /**
+     * Tests that findAttributesOrderById() selects only the given attributes plus the ID, in ID order,
+     * and applies the conditions and the limit
+     */
+    @Test
+    public void shouldFindOnlyGivenAttributes() {
+        Long firstId = entityManager.persistAndGetId(getTestEmployee("Alice", 500, "Sales"), Long.class);
+        entityManager.persist(getTestEmployee("Bob", 600, "IT"));
+        Long thirdId = entityManager.persistAndGetId(getTestEmployee("Carol", 700, "Sales"), Long.class);
+        entityManager.flush();
+
+        List<Tuple> rows = employeeRepository.findAttributesOrderById(Specification.where(inDepartment("Sales")),
+                Arrays.asList("name", "salary"), 10);
+        assertThat(rows).extracting(row -> row.get("id")).containsExactly(firstId, thirdId);
+        assertThat(rows).extracting(row -> row.get("name")).containsExactly("Alice", "Carol");
+        assertThat(rows.get(0).getElements()).hasSize(3);
+        assertThat(employeeRepository.findAttributesOrderById(Specification.where(null),
+                Arrays.asList("id", "name"), 2)).extracting(row -> row.getElements().size()).containsExactly(2, 2);
+    }
+
+    /**
+     * Tests that streamAttributesOrderById() streams the given attributes of all employees in ID order
+     */
+    @Test
+    public void shouldStreamOnlyGivenAttributes() {
+        for (int i = 0; i < 3; i++) {
+            entityManager.persist(getTestEmployee("Name" + i, i, "Sales"));
+        }
+        entityManager.flush();
+
+        try (Stream<Tuple> rows = employeeRepository.streamAttributesOrderById(Arrays.asList("name"))) {
+            assertThat(rows.map(row -> row.get("name"))).containsExactly("Name0", "Name1", "Name2");
+        }
+    }
+
+    /**
+     * Tests that the database uses the indexes on department, salary and name for the queries the search conditions
+     * generate, rather than scanning the whole table or walking the primary key
+     */
+    @Test
+    public void shouldUseIndexesForSearch() {
+        for (int i = 0; i < 1000; i++) {
+            entityManager.persist(getTestEmployee("Name" + i, i * 100, "Department" + (i % 20)));
+        }
+        entityManager.flush();
+
+        assertThat(explain("DEPARTMENT = 'Department1'")).contains("IDX_EMPLOYEE_DEPARTMENT");
+        assertThat(explain("EMPLOYEE_SALARY >= 1000 AND EMPLOYEE_SALARY <= 2000")).contains("IDX_EMPLOYEE_SALARY");
+        assertThat(explain("EMPLOYEE_NAME LIKE 'Name1%' ESCAPE '\\'")).contains("IDX_EMPLOYEE_NAME");
+        assertThat(explain("ID > 500 AND DEPARTMENT = 'Department1'")).contains("IDX_EMPLOYEE_DEPARTMENT");
+    }
+
     /**
      * Tests that deleteById() deletes the employee entry with given ID
      */
@@ -78,6 +311,25 @@ public class EmployeeRepositoryTest {
         assertThat(found).isNull();
     }
 
+    /**
+     * Gets the database's plan for a search query with the given condition, in the form generated by findAllOrderById()
+     * @param condition
+     * @return
+     */
+    private String explain(String condition) {
+        return (String) entityManager.getEntityManager().createNativeQuery(
+                "EXPLAIN SELECT * FROM EMPLOYEE WHERE " + condition + " ORDER BY ID LIMIT 101")
+                .getSingleResult();
+    }
+
+    private Employee getTestEmployee(String name, Integer salary, String department) {
+        Employee employee = getTestEmployeeNoId();
+        employee.setName(name);
+        employee.setSalary(salary);
+        employee.setDepartment(department);
+        return employee;
+    }
+
     /**
      * Creates employee object with dummy data that can be used for tests.
      * Repository tests require that ID is not set in advance, as it will be generated by persistence provider
@@ -0,0 +1,73 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.repositories.EmployeeTombstoneRepository;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ChangeSequenceWatermarkTest {
+
+    private final EmployeeTombstoneRepository tombstoneRepository = mock(EmployeeTombstoneRepository.class);
+
+    private final ChangeSequenceWatermark watermark = new ChangeSequenceWatermark(tombstoneRepository, true);
+
+    /**
+     * Tests that committedUpTo() stays at the sequence value read before a write while the write runs,
+     * and follows the sequence again once it has returned, when there is no transaction
+     */
+    @Test
+    public void shouldHoldBackWhileWriteRuns() {
+        doReturn(10L).when(tombstoneRepository).findChangeSeqCurrentValue();
+
+        Long during = watermark.write(() -> {
+            doReturn(12L).when(tombstoneRepository).findChangeSeqCurrentValue();
+            return watermark.committedUpTo();
+        });
+        assertThat(during).isEqualTo(10L);
+        assertThat(watermark.committedUpTo()).isEqualTo(12L);
+    }
+
+    /**
+     * Tests that committedUpTo() stays at the sequence value read before a write until its transaction completes,
+     * whether it commits or rolls back
+     */
+    @Test
+    public void shouldHoldBackUntilTransactionCompletes() {
+        doReturn(10L).when(tombstoneRepository).findChangeSeqCurrentValue();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            watermark.write(() -> 1);
+            assertThatThrownBy(() -> watermark.write(() -> {
+                throw new IllegalStateException("write failed");
+            })).isInstanceOf(IllegalStateException.class);
+            doReturn(12L).when(tombstoneRepository).findChangeSeqCurrentValue();
+            assertThat(watermark.committedUpTo()).isEqualTo(10L);
+
+            TransactionSynchronizationManager.getSynchronizations().get(0)
+                    .afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            assertThat(watermark.committedUpTo()).isEqualTo(10L);
+            TransactionSynchronizationManager.getSynchronizations().get(1)
+                    .afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            assertThat(watermark.committedUpTo()).isEqualTo(12L);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    /**
+     * Tests that write() does not read the sequence when the change feed is turned off
+     */
+    @Test
+    public void shouldNotTrackWritesWhenDisabled() {
+        ChangeSequenceWatermark disabled = new ChangeSequenceWatermark(tombstoneRepository, false);
+        assertThat(disabled.write(() -> 1)).isEqualTo(1);
+        verify(tombstoneRepository, never()).findChangeSeqCurrentValue();
+    }
+}
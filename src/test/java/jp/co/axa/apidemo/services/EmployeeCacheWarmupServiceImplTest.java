@@ -0,0 +1,99 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.CacheWarmupStatus;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static jp.co.axa.apidemo.services.EmployeeService.EMPLOYEE_CACHE_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+// the warm-up reads from its own threads, so employees are committed rather than rolled back after each test
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DirtiesContext
+public class EmployeeCacheWarmupServiceImplTest {
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    /**
+     * Tests that warmUp() caches only the most recently inserted or updated employees, up to the cap,
+     * reading ID ranges across several workers
+     */
+    @Test
+    public void shouldCacheMostRecentlyChangedEmployees() {
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Employee employee = new Employee();
+            employee.setName("Employee " + i);
+            employees.add(employeeRepository.save(employee));
+        }
+        // the five oldest employees become the five most recently changed
+        for (Employee employee : employees.subList(0, 5)) {
+            employee.setSalary(1000);
+            employeeRepository.save(employee);
+        }
+
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(EMPLOYEE_CACHE_NAME);
+        EmployeeCacheWarmupServiceImpl warmupService = new EmployeeCacheWarmupServiceImpl();
+        warmupService.setEmployeeRepository(employeeRepository);
+        warmupService.setCacheManager(cacheManager);
+        warmupService.warmUp(10, 3, 10_000);
+
+        List<Long> expected = new ArrayList<>();
+        employees.subList(0, 5).forEach(e -> expected.add(e.getId()));
+        employees.subList(25, 30).forEach(e -> expected.add(e.getId()));
+        Cache cache = cacheManager.getCache(EMPLOYEE_CACHE_NAME);
+        List<Long> cached = employees.stream().map(Employee::getId)
+                .filter(id -> cache.get(id) != null).collect(Collectors.toList());
+        assertThat(cached).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(((Employee) cache.get(employees.get(0).getId()).get()).getSalary()).isEqualTo(1000);
+
+        CacheWarmupStatus status = warmupService.getStatus();
+        assertThat(status.getState()).isEqualTo(CacheWarmupStatus.State.DONE);
+        assertThat(status.getCached()).isEqualTo(10);
+        assertThat(status.getTarget()).isEqualTo(10);
+        assertThat(status.isFinished()).isTrue();
+    }
+
+    /**
+     * Tests that warmUp() does not replace an employee that was cached while it ran,
+     * such as a newer version stored by a write
+     */
+    @Test
+    public void shouldNotReplaceEmployeesAlreadyCached() {
+        Employee stored = new Employee();
+        stored.setName("Stored");
+        stored = employeeRepository.save(stored);
+        Employee newer = new Employee();
+        newer.setId(stored.getId());
+        newer.setName("Newer");
+        newer.setVersion(stored.getVersion() + 1);
+
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(EMPLOYEE_CACHE_NAME);
+        Cache cache = cacheManager.getCache(EMPLOYEE_CACHE_NAME);
+        cache.put(stored.getId(), newer);
+        EmployeeCacheWarmupServiceImpl warmupService = new EmployeeCacheWarmupServiceImpl();
+        warmupService.setEmployeeRepository(employeeRepository);
+        warmupService.setCacheManager(cacheManager);
+        warmupService.warmUp(10, 1, 10_000);
+
+        assertThat(cache.get(stored.getId()).get()).isSameAs(newer);
+        assertThat(warmupService.getStatus().getState()).isEqualTo(CacheWarmupStatus.State.DONE);
+    }
+}
@@ -0,0 +1,119 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.exceptions.ServiceUnavailableException;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static jp.co.axa.apidemo.TestUtil.getTestEmployee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EmployeeFeedServiceImplTest {
+
+    private EmployeeFeedServiceImpl feedService;
+
+    @Before
+    public void setUp() {
+        // send events on the calling thread, so that tests can check them straight away
+        feedService = new EmployeeFeedServiceImpl(Runnable::run);
+    }
+
+    /**
+     * Tests that onEmployeeChange() sends each change to every subscriber, named after its type and with increasing IDs
+     */
+    @Test
+    public void shouldSendChangesToSubscribers() {
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        feedService.subscribe(null, first);
+        feedService.subscribe(null, second);
+
+        feedService.onEmployeeChange(new EmployeeChangeEvent(EmployeeChangeEvent.Type.CREATED, 1L, getTestEmployee()));
+        feedService.onEmployeeChange(new EmployeeChangeEvent(EmployeeChangeEvent.Type.DELETED, 1L, null));
+        assertThat(first.events).containsExactly("1 created", "2 deleted");
+        assertThat(second.events).containsExactly("1 created", "2 deleted");
+    }
+
+    /**
+     * Tests that subscribe() first sends the events after Last-Event-ID when they are still kept,
+     * and a resync event when they are not
+     */
+    @Test
+    public void shouldResumeFromLastEventId() {
+        for (int i = 0; i < 3; i++) {
+            feedService.onEmployeeChange(new EmployeeChangeEvent(EmployeeChangeEvent.Type.UPDATED, 1L, getTestEmployee()));
+        }
+
+        RecordingEmitter resumed = new RecordingEmitter();
+        feedService.subscribe(1L, resumed);
+        assertThat(resumed.events).containsExactly("2 updated", "3 updated");
+
+        RecordingEmitter unknown = new RecordingEmitter();
+        feedService.subscribe(99L, unknown);
+        assertThat(unknown.events).containsExactly("resync");
+    }
+
+    /**
+     * Tests that a subscriber whose buffer overflows has the buffered events replaced by a resync event,
+     * and is then sent later events as normal
+     */
+    @Test
+    public void shouldSendResyncWhenSubscriberFallsBehind() {
+        List<Runnable> pending = new ArrayList<>();
+        feedService = new EmployeeFeedServiceImpl(pending::add);
+        RecordingEmitter slow = new RecordingEmitter();
+        feedService.subscribe(null, slow);
+
+        // the sender task does not run until the loop finishes, so the buffer overflows
+        int events = EmployeeFeedServiceImpl.SUBSCRIBER_BUFFER_SIZE + 2;
+        for (int i = 0; i < events; i++) {
+            feedService.onEmployeeChange(new EmployeeChangeEvent(EmployeeChangeEvent.Type.UPDATED, 1L, getTestEmployee()));
+        }
+        pending.forEach(Runnable::run);
+        assertThat(slow.events).containsExactly("resync", events + " updated");
+    }
+
+    /**
+     * Tests that subscribe() throws Service Unavailable error once there are MAX_SUBSCRIBERS subscribers
+     */
+    @Test
+    public void shouldLimitNumberOfSubscribers() {
+        for (int i = 0; i < EmployeeFeedServiceImpl.MAX_SUBSCRIBERS; i++) {
+            feedService.subscribe(null, new RecordingEmitter());
+        }
+        assertThatThrownBy(() -> feedService.subscribe(null, new RecordingEmitter()))
+                .isInstanceOf(ServiceUnavailableException.class);
+    }
+
+    /**
+     * Emitter that records the ID and name of each event sent to it, or just the name when there is no ID
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            Set<DataWithMediaType> parts = builder.build();
+            String text = parts.stream().map(DataWithMediaType::getData)
+                    .filter(data -> data instanceof String).map(String.class::cast)
+                    .collect(Collectors.joining());
+            String id = field(text, "id:");
+            String name = field(text, "event:");
+            events.add(id == null ? name : id + " " + name);
+        }
+
+        private static String field(String text, String prefix) {
+            for (String line : text.split("\n")) {
+                if (line.startsWith(prefix)) return line.substring(prefix.length());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.EncodedEmployee;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+
+import static jp.co.axa.apidemo.TestUtil.asJson;
+import static jp.co.axa.apidemo.TestUtil.getTestEmployee;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(EmployeeJsonServiceImpl.class)
+public class EmployeeJsonServiceImplTest {
+
+    @TestConfiguration
+    static class EmployeeJsonServiceImplTestContextConfiguration {
+
+        @Bean
+        public EmployeeJsonService employeeJsonService() {
+            return new EmployeeJsonServiceImpl();
+        }
+    }
+
+    @Autowired
+    private EmployeeJsonService employeeJsonService;
+
+    @MockBean
+    private EmployeeService employeeService;
+
+    /**
+     * Tests that getEncodedEmployee() serializes employee from EmployeeService to JSON and tags it with their version
+     */
+    @Test
+    public void shouldEncodeEmployee() {
+        Employee employee = getTestEmployee();
+        doReturn(employee).when(employeeService).getEmployee(employee.getId());
+
+        EncodedEmployee encoded = employeeJsonService.getEncodedEmployee(employee.getId());
+        assertThat(new String(encoded.getJson(), StandardCharsets.UTF_8)).isEqualTo(asJson(employee));
+        assertThat(encoded.getETag()).isEqualTo("\"0\"");
+    }
+
+    /**
+     * Tests that the ETag changes when the employee version changes
+     */
+    @Test
+    public void shouldChangeETagWhenEmployeeChanges() {
+        Employee employee = getTestEmployee();
+        doReturn(employee).when(employeeService).getEmployee(employee.getId());
+        String before = employeeJsonService.getEncodedEmployee(employee.getId()).getETag();
+
+        employee.setVersion(1L);
+        String after = employeeJsonService.getEncodedEmployee(employee.getId()).getETag();
+        assertThat(after).isNotEqualTo(before);
+    }
+
+    /**
+     * Tests that getEncodedEmployee() returns null when employee does not exist
+     */
+    @Test
+    public void shouldReturnNullIfNoEmployee() {
+        doReturn(null).when(employeeService).getEmployee(1L);
+        assertThat(employeeJsonService.getEncodedEmployee(1L)).isNull();
+    }
+}
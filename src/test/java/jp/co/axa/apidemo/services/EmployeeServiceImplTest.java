@@ -1,7 +1,21 @@
 package jp.co.axa.apidemo.services;
 
+import jp.co.axa.apidemo.datasource.ReplicaRoutingDataSource;
 import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.entities.EmployeeTombstone;
+import jp.co.axa.apidemo.exceptions.CursorExpiredException;
+import jp.co.axa.apidemo.exceptions.EntityNotFoundException;
+import jp.co.axa.apidemo.exceptions.PreconditionFailedException;
+import jp.co.axa.apidemo.message.BatchItemResult;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import jp.co.axa.apidemo.message.EmployeeChanges;
+import jp.co.axa.apidemo.message.EmployeeFieldsPage;
+import jp.co.axa.apidemo.message.EmployeeLookup;
+import jp.co.axa.apidemo.message.EmployeePage;
+import jp.co.axa.apidemo.message.EmployeeSearchCriteria;
 import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.repositories.EmployeeTombstoneRepository;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -10,15 +24,38 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.persistence.Tuple;
+import javax.validation.ConstraintViolationException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
 
+import static jp.co.axa.apidemo.TestUtil.awaitAllWaiting;
 import static jp.co.axa.apidemo.TestUtil.getTestEmployee;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @RunWith(SpringRunner.class)
@@ -32,30 +69,251 @@ public class EmployeeServiceImplTest {
         public EmployeeService employeeService() {
             return new EmployeeServiceImpl();
         }
+
+        // simple in-memory caches, so that tests can check the caching behaviour of the service
+        @Bean
+        public CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager("employeeCache", "employeeNotFoundCache", "employeeJsonCache");
+        }
+
+        @Bean
+        public ChangeSequenceWatermark changeSequenceWatermark(EmployeeTombstoneRepository tombstoneRepository) {
+            return new ChangeSequenceWatermark(tombstoneRepository, true);
+        }
+
+        @Bean
+        public PublishedEvents publishedEvents() {
+            return new PublishedEvents();
+        }
+    }
+
+    // records the change events published by the service
+    static class PublishedEvents {
+        private final List<EmployeeChangeEvent> events = new ArrayList<>();
+
+        @EventListener
+        public void onEmployeeChange(EmployeeChangeEvent event) {
+            events.add(event);
+        }
     }
 
     @Autowired
     private EmployeeService employeeService;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private PublishedEvents publishedEvents;
+
     @MockBean
     private EmployeeRepository employeeRepository;
 
+    @MockBean
+    private EmployeeTombstoneRepository tombstoneRepository;
+
     // captor used to check value of arguments passed to methods of mocked objects
     @Captor
     ArgumentCaptor<Employee> captor;
 
+    @Captor
+    ArgumentCaptor<Iterable<Long>> captorForIds;
+
+    @Before
+    public void clearCaches() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        publishedEvents.events.clear();
+    }
+
     /**
-     * Tests that retrieveEmployees() returns list of employees retrieved from repository
+     * Tests that retrieveEmployees() returns page of employees retrieved from repository,
+     * with no cursor when there are no more employees
      */
     @Test
     public void shouldRetrieveEmployees() {
         Employee employee = getTestEmployee();
         List<Employee> employees = new ArrayList<>();
         employees.add(employee);
-        doReturn(employees).when(employeeRepository).findAll();
+        doReturn(employees).when(employeeRepository).findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 11));
+
+        EmployeePage page = employeeService.retrieveEmployees(null, 10);
+        assertThat(page.getEmployees()).isEqualTo(employees);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    /**
+     * Tests that retrieveEmployees() trims the extra row fetched from repository
+     * and returns the ID of the last employee on the page as the next cursor
+     */
+    @Test
+    public void shouldReturnNextCursorWhenMoreEmployeesExist() {
+        List<Employee> employees = new ArrayList<>();
+        for (long id = 6; id <= 8; id++) {
+            Employee employee = getTestEmployee();
+            employee.setId(id);
+            employees.add(employee);
+        }
+        doReturn(employees).when(employeeRepository).findByIdGreaterThanOrderByIdAsc(5L, PageRequest.of(0, 3));
+
+        EmployeePage page = employeeService.retrieveEmployees(5L, 2);
+        assertThat(page.getEmployees()).containsExactly(employees.get(0), employees.get(1));
+        assertThat(page.getNextCursor()).isEqualTo(7L);
+    }
+
+    /**
+     * Tests that searchEmployees() fetches one extra row from repository to find out whether there is a next page,
+     * and returns the ID of the last employee on the page as the next cursor
+     */
+    @Test
+    public void shouldSearchEmployees() {
+        List<Employee> employees = new ArrayList<>();
+        for (long id = 6; id <= 8; id++) {
+            Employee employee = getTestEmployee();
+            employee.setId(id);
+            employees.add(employee);
+        }
+        doReturn(employees).when(employeeRepository).findAllOrderById(any(), eq(3));
+
+        EmployeePage page = employeeService.searchEmployees(new EmployeeSearchCriteria("Sales", 100, 200, "Na"), 5L, 2);
+        assertThat(page.getEmployees()).containsExactly(employees.get(0), employees.get(1));
+        assertThat(page.getNextCursor()).isEqualTo(7L);
+    }
+
+    /**
+     * Tests that retrieveEmployeeFields() returns only the given fields, in the order they were given,
+     * and takes the next cursor from the ID selected along with them
+     */
+    @Test
+    public void shouldRetrieveEmployeeFields() {
+        List<Tuple> rows = Arrays.asList(row(6L, "Name6"), row(7L, "Name7"), row(8L, "Name8"));
+        doReturn(rows).when(employeeRepository).findAttributesOrderById(any(), eq(Arrays.asList("name")), eq(3));
+
+        EmployeeFieldsPage page = employeeService.retrieveEmployeeFields(Arrays.asList("name"), 5L, 2);
+        assertThat(page.getEmployees()).containsExactly(Collections.singletonMap("name", "Name6"),
+                Collections.singletonMap("name", "Name7"));
+        assertThat(page.getNextCursor()).isEqualTo(7L);
+    }
+
+    /**
+     * Tests that exportEmployeeFields() passes only the given fields of each streamed row to the consumer
+     */
+    @Test
+    public void shouldExportEmployeeFields() {
+        doReturn(Stream.of(row(1L, "Name1"))).when(employeeRepository).streamAttributesOrderById(Arrays.asList("name"));
 
-        List<Employee> returnedList = employeeService.retrieveEmployees();
-        assertThat(returnedList).isEqualTo(employees);
+        List<Map<String, Object>> exported = new ArrayList<>();
+        employeeService.exportEmployeeFields(Arrays.asList("name"), exported::add);
+        assertThat(exported).containsExactly(Collections.singletonMap("name", "Name1"));
+    }
+
+    /**
+     * Tests that getChanges() merges upserts and deletes in change sequence order,
+     * stops after limit changes and returns the sequence of the last one as the cursor
+     */
+    @Test
+    public void shouldGetChangesSinceCursor() {
+        Employee first = employeeWithChangeSeq(1L, 11L);
+        Employee second = employeeWithChangeSeq(2L, 13L);
+        Employee third = employeeWithChangeSeq(3L, 14L);
+        EmployeeTombstone tombstone = new EmployeeTombstone(4L, System.currentTimeMillis());
+        ReflectionTestUtils.setField(tombstone, "changeSeq", 12L);
+        doReturn(14L).when(tombstoneRepository).findChangeSeqCurrentValue();
+        doReturn(Arrays.asList(first, second, third)).when(employeeRepository)
+                .findByChangeSeqGreaterThanOrderByChangeSeqAsc(10L, PageRequest.of(0, 4));
+        doReturn(Collections.singletonList(tombstone)).when(tombstoneRepository)
+                .findByChangeSeqGreaterThanOrderByChangeSeqAsc(10L, PageRequest.of(0, 4));
+
+        EmployeeChanges changes = employeeService.getChanges(10L, 3);
+        assertThat(changes.getUpserts()).containsExactly(first, second);
+        assertThat(changes.getDeletes()).containsExactly(4L);
+        assertThat(changes.getCursor()).isEqualTo(13L);
+        assertThat(changes.isHasMore()).isTrue();
+    }
+
+    /**
+     * Tests that getChanges() returns the given cursor unchanged when nothing has changed since it
+     */
+    @Test
+    public void shouldKeepCursorWhenNoChanges() {
+        EmployeeChanges changes = employeeService.getChanges(10L, 3);
+        assertThat(changes.getUpserts()).isEmpty();
+        assertThat(changes.getDeletes()).isEmpty();
+        assertThat(changes.getCursor()).isEqualTo(10L);
+        assertThat(changes.isHasMore()).isFalse();
+    }
+
+    /**
+     * Tests that getChanges() leaves out changes past the last value of the change sequence it read first,
+     * which may belong to writes that have not completed, and does not report them as waiting
+     */
+    @Test
+    public void shouldNotGetChangesPastWatermark() {
+        Employee first = employeeWithChangeSeq(1L, 11L);
+        Employee second = employeeWithChangeSeq(2L, 13L);
+        doReturn(12L).when(tombstoneRepository).findChangeSeqCurrentValue();
+        doReturn(Arrays.asList(first, second)).when(employeeRepository)
+                .findByChangeSeqGreaterThanOrderByChangeSeqAsc(10L, PageRequest.of(0, 4));
+
+        EmployeeChanges changes = employeeService.getChanges(10L, 3);
+        assertThat(changes.getUpserts()).containsExactly(first);
+        assertThat(changes.getCursor()).isEqualTo(11L);
+        assertThat(changes.isHasMore()).isFalse();
+    }
+
+    /**
+     * Tests that getChanges() reads changes from the primary database
+     */
+    @Test
+    public void shouldGetChangesFromPrimary() {
+        doAnswer(invocation -> {
+            assertThat(ReplicaRoutingDataSource.isPrimaryRequired()).isTrue();
+            return Collections.emptyList();
+        }).when(employeeRepository).findByChangeSeqGreaterThanOrderByChangeSeqAsc(any(), any());
+
+        employeeService.getChanges(10L, 3);
+        verify(employeeRepository).findByChangeSeqGreaterThanOrderByChangeSeqAsc(any(), any());
+        assertThat(ReplicaRoutingDataSource.isPrimaryRequired()).isFalse();
+    }
+
+    /**
+     * Tests that getChanges() throws error for a cursor behind the oldest tombstone kept once it is past retention,
+     * as deletes before it may have been purged, but not for a cursor at that tombstone or for a first sync
+     */
+    @Test
+    public void shouldRejectCursorBehindPurgedTombstones() {
+        EmployeeTombstone oldest = new EmployeeTombstone(4L, 0L);
+        ReflectionTestUtils.setField(oldest, "changeSeq", 12L);
+        doReturn(oldest).when(tombstoneRepository).findFirstByOrderByChangeSeqAsc();
+
+        assertThatThrownBy(() -> employeeService.getChanges(10L, 3)).isInstanceOf(CursorExpiredException.class);
+        assertThat(employeeService.getChanges(12L, 3).getCursor()).isEqualTo(12L);
+        assertThat(employeeService.getChanges(0L, 3).getCursor()).isEqualTo(0L);
+    }
+
+    /**
+     * Tests that getChanges() accepts a cursor behind the oldest tombstone while it is within retention
+     */
+    @Test
+    public void shouldAcceptCursorBehindTombstonesWithinRetention() {
+        EmployeeTombstone oldest = new EmployeeTombstone(4L, System.currentTimeMillis());
+        ReflectionTestUtils.setField(oldest, "changeSeq", 12L);
+        doReturn(oldest).when(tombstoneRepository).findFirstByOrderByChangeSeqAsc();
+
+        assertThat(employeeService.getChanges(10L, 3).getCursor()).isEqualTo(10L);
+    }
+
+    /**
+     * Tests that exportEmployees() passes each streamed employee to the consumer and then detaches it
+     */
+    @Test
+    public void shouldExportEmployees() {
+        Employee employee = getTestEmployee();
+        doReturn(Stream.of(employee)).when(employeeRepository).streamAllByOrderByIdAsc();
+
+        List<Employee> exported = new ArrayList<>();
+        employeeService.exportEmployees(exported::add);
+        assertThat(exported).containsExactly(employee);
+        verify(employeeRepository, times(1)).detach(employee);
     }
 
     /**
@@ -70,6 +328,37 @@ public class EmployeeServiceImplTest {
         assertThat(emp).isEqualTo(employee);
     }
 
+    /**
+     * Tests that concurrent getEmployee() calls for the same employee query the repository once,
+     * and that every caller gets the loaded employee
+     */
+    @Test
+    public void shouldQueryRepositoryOncePerEmployeeUnderContention() throws Exception {
+        Employee employee = getTestEmployee();
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return Optional.of(employee);
+        }).when(employeeRepository).findById(employee.getId());
+
+        ConcurrentLinkedQueue<Employee> results = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Thread thread = new Thread(() -> results.add(employeeService.getEmployee(employee.getId())));
+            threads.add(thread);
+            thread.start();
+        }
+        // every thread is either running the query or waiting for its result
+        awaitAllWaiting(threads);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        verify(employeeRepository, times(1)).findById(employee.getId());
+        assertThat(results).hasSize(16).containsOnly(employee);
+    }
+
     /**
      * Tests that getEmployee() returns null when repository does not contain requested employee
      */
@@ -82,6 +371,91 @@ public class EmployeeServiceImplTest {
         assertThat(emp).isNull();
     }
 
+    /**
+     * Tests that getEmployee() remembers IDs that were not found, so that looking them up again does not query repository
+     */
+    @Test
+    public void shouldNotQueryRepositoryAgainForUnknownEmployee() {
+        Long id = 404L;
+        doReturn(Optional.empty()).when(employeeRepository).findById(id);
+
+        assertThat(employeeService.getEmployee(id)).isNull();
+        assertThat(employeeService.getEmployee(id)).isNull();
+        verify(employeeRepository, times(1)).findById(id);
+    }
+
+    /**
+     * Tests that saveEmployee() forgets an earlier "not found" result for the ID of the saved employee
+     */
+    @Test
+    public void shouldFindEmployeeSavedAfterNotFound() {
+        Employee employee = getTestEmployee();
+        doReturn(Optional.empty()).when(employeeRepository).findById(employee.getId());
+        assertThat(employeeService.getEmployee(employee.getId())).isNull();
+
+        doReturn(employee).when(employeeRepository).save(employee);
+        employeeService.saveEmployee(employee);
+        assertThat(employeeService.getEmployee(employee.getId())).isEqualTo(employee);
+    }
+
+    /**
+     * Tests that deleteEmployee() records the deleted ID as not found, so that looking it up does not query repository
+     */
+    @Test
+    public void shouldNotQueryRepositoryForDeletedEmployee() {
+        Employee employee = getTestEmployee();
+        doNothing().when(employeeRepository).deleteById(employee.getId());
+
+        employeeService.deleteEmployee(employee.getId());
+        assertThat(employeeService.getEmployee(employee.getId())).isNull();
+        verify(employeeRepository, never()).findById(employee.getId());
+    }
+
+    /**
+     * Tests that getEmployees() returns cached employees without querying them, loads all other IDs with one query,
+     * and returns the employees in the requested order along with the IDs that were not found
+     */
+    @Test
+    public void shouldGetEmployeesFromCacheAndRepository() {
+        Employee cached = getTestEmployee();
+        cacheManager.getCache("employeeCache").put(cached.getId(), cached);
+        Employee stored = getTestEmployee();
+        stored.setId(3L);
+        doReturn(Collections.singletonList(stored)).when(employeeRepository).findAllById(anyCollection());
+
+        EmployeeLookup lookup = employeeService.getEmployees(Arrays.asList(3L, 2L, 1L, 3L));
+        assertThat(lookup.getEmployees()).containsExactly(stored, cached);
+        assertThat(lookup.getNotFound()).containsExactly(2L);
+
+        // only the IDs missing from cache are queried, and the results are cached for next time
+        verify(employeeRepository, times(1)).findAllById(captorForIds.capture());
+        assertThat(captorForIds.getValue()).containsExactlyInAnyOrder(3L, 2L);
+        lookup = employeeService.getEmployees(Arrays.asList(1L, 2L, 3L));
+        assertThat(lookup.getEmployees()).containsExactly(cached, stored);
+        verify(employeeRepository, times(1)).findAllById(anyCollection());
+    }
+
+    /**
+     * Tests that getEmployee() and getEmployees() read the employees they cache from the primary,
+     * and leave the thread's reads to the replicas afterwards
+     */
+    @Test
+    public void shouldLoadEmployeesToCacheFromPrimary() {
+        Employee employee = getTestEmployee();
+        doAnswer(invocation -> {
+            assertThat(ReplicaRoutingDataSource.isPrimaryRequired()).isTrue();
+            return Optional.of(employee);
+        }).when(employeeRepository).findById(employee.getId());
+        doAnswer(invocation -> {
+            assertThat(ReplicaRoutingDataSource.isPrimaryRequired()).isTrue();
+            return Collections.emptyList();
+        }).when(employeeRepository).findAllById(anyCollection());
+
+        assertThat(employeeService.getEmployee(employee.getId())).isEqualTo(employee);
+        assertThat(employeeService.getEmployees(Collections.singletonList(2L)).getNotFound()).containsExactly(2L);
+        assertThat(ReplicaRoutingDataSource.isPrimaryRequired()).isFalse();
+    }
+
     /**
      * Tests that saveEmployee() saves employee data to repository
      */
@@ -95,6 +469,77 @@ public class EmployeeServiceImplTest {
         assertThat(returnedEmployee).isEqualTo(employee);
     }
 
+    /**
+     * Tests that saveEmployee(), updateEmployee() and deleteEmployee() publish a change event for the employee,
+     * with saveEmployee() publishing a create for an employee saved for the first time
+     */
+    @Test
+    public void shouldPublishChanges() {
+        Employee employee = getTestEmployee();
+        doReturn(employee).when(employeeRepository).save(employee);
+        doReturn(1).when(employeeRepository).updateIfVersionMatches(employee, null);
+
+        employeeService.saveEmployee(employee);
+        employeeService.updateEmployee(employee, employee.getId(), null);
+        employeeService.deleteEmployee(employee.getId());
+        assertThat(publishedEvents.events)
+                .extracting(EmployeeChangeEvent::getType, EmployeeChangeEvent::getEmployeeId)
+                .containsExactly(tuple(EmployeeChangeEvent.Type.CREATED, 1L),
+                                 tuple(EmployeeChangeEvent.Type.UPDATED, 1L),
+                                 tuple(EmployeeChangeEvent.Type.DELETED, 1L));
+    }
+
+    /**
+     * Tests that saveEmployee(), updateEmployee() and deleteEmployee() remove the employee's serialized JSON from cache
+     */
+    @Test
+    public void shouldEvictSerializedEmployeeOnWrite() {
+        Employee employee = getTestEmployee();
+        doReturn(employee).when(employeeRepository).save(employee);
+        Cache jsonCache = cacheManager.getCache("employeeJsonCache");
+
+        jsonCache.put(employee.getId(), "json");
+        employeeService.saveEmployee(employee);
+        assertThat(jsonCache.get(employee.getId())).isNull();
+
+        jsonCache.put(employee.getId(), "json");
+        doReturn(1).when(employeeRepository).updateIfVersionMatches(employee, null);
+        employeeService.updateEmployee(employee, employee.getId(), null);
+        assertThat(jsonCache.get(employee.getId())).isNull();
+
+        jsonCache.put(employee.getId(), "json");
+        employeeService.deleteEmployee(employee.getId());
+        assertThat(jsonCache.get(employee.getId())).isNull();
+    }
+
+    /**
+     * Tests that updateEmployee() and deleteEmployee() only remove the employee from cache once their transaction
+     * has committed, so that a read during the transaction cannot cache the old row again after the eviction
+     */
+    @Test
+    public void shouldEvictEmployeeAfterCommit() {
+        Employee employee = getTestEmployee();
+        Cache cache = cacheManager.getCache("employeeCache");
+        doReturn(1).when(employeeRepository).updateIfVersionMatches(employee, null);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.put(employee.getId(), employee);
+            employeeService.updateEmployee(employee, employee.getId(), null);
+            employeeService.deleteEmployee(employee.getId());
+            assertThat(cache.get(employee.getId())).isNotNull();
+            assertThat(cacheManager.getCache("employeeNotFoundCache").get(employee.getId())).isNull();
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            assertThat(cache.get(employee.getId())).isNull();
+            assertThat(cacheManager.getCache("employeeNotFoundCache").get(employee.getId())).isNotNull();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
     /**
      * Tests that deleteEmployee() deletes employee with given ID from repository
      */
@@ -105,31 +550,178 @@ public class EmployeeServiceImplTest {
 
         employeeService.deleteEmployee(employee.getId());
         verify(employeeRepository, times(1)).deleteById(employee.getId());
+        ArgumentCaptor<EmployeeTombstone> tombstone = ArgumentCaptor.forClass(EmployeeTombstone.class);
+        verify(tombstoneRepository, times(1)).save(tombstone.capture());
+        assertThat(tombstone.getValue().getEmployeeId()).isEqualTo(employee.getId());
     }
 
     /**
-     * Tests that updateEmployee() saves employee data to repository using given ID
+     * Tests that updateEmployee() updates employee data in repository using given ID, without reading it first,
+     * and returns the employee with the version the update wrote
      */
     @Test
     public void shouldUpdateEmployee() {
         // test employee data to save with test id
         Employee employee = getTestEmployee();
         Long testId = 100L;
+        doReturn(1).when(employeeRepository).updateIfVersionMatches(any(), isNull());
+        doReturn(5L).when(employeeRepository).findVersionById(testId);
 
-        // test employee that represents expected state of entry after it is updated (should have given test id)
-        Employee employeeWithTestId = getTestEmployee();
-        employeeWithTestId.setId(testId);
-        doReturn(employeeWithTestId).when(employeeRepository).save(employee);
-
-        Employee returnedEmployee = employeeService.updateEmployee(employee, testId);
+        Employee returnedEmployee = employeeService.updateEmployee(employee, testId, null);
 
-        // confirm that the service provided repository with correct id and employee data when attempting to save
-        verify(employeeRepository, times(1)).save(captor.capture());
+        // confirm that the service provided repository with correct id and employee data when attempting to update
+        verify(employeeRepository, times(1)).updateIfVersionMatches(captor.capture(), isNull());
+        verify(employeeRepository, never()).findById(any());
         assertThat(captor.getValue().getId()).isEqualTo(testId);
         assertThat(captor.getValue().getName()).isEqualTo(employee.getName());
 
         // confirm that the returned employee object contains the same data as what was provided to repository
         assertThat(returnedEmployee.getId()).isEqualTo(testId);
         assertThat(returnedEmployee.getName()).isEqualTo(employee.getName());
+        assertThat(returnedEmployee.getVersion()).isEqualTo(5L);
+    }
+
+    /**
+     * Tests that updateEmployee() passes the expected version to repository and returns the employee with the next version
+     */
+    @Test
+    public void shouldUpdateEmployeeIfVersionMatches() {
+        Employee employee = getTestEmployee();
+        doReturn(1).when(employeeRepository).updateIfVersionMatches(employee, 3L);
+
+        Employee returnedEmployee = employeeService.updateEmployee(employee, employee.getId(), 3L);
+        assertThat(returnedEmployee.getVersion()).isEqualTo(4L);
+    }
+
+    /**
+     * Tests that updateEmployee() throws Not Found error when nothing was updated because the employee does not exist
+     */
+    @Test
+    public void shouldThrowNotFoundWhenUpdatingUnknownEmployee() {
+        Employee employee = getTestEmployee();
+        doReturn(0).when(employeeRepository).updateIfVersionMatches(employee, 3L);
+        doReturn(false).when(employeeRepository).existsById(employee.getId());
+
+        assertThatThrownBy(() -> employeeService.updateEmployee(employee, employee.getId(), 3L))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
+
+    /**
+     * Tests that updateEmployee() throws Precondition Failed error when nothing was updated because the version has changed
+     */
+    @Test
+    public void shouldThrowPreconditionFailedWhenVersionChanged() {
+        Employee employee = getTestEmployee();
+        doReturn(0).when(employeeRepository).updateIfVersionMatches(employee, 3L);
+        doReturn(true).when(employeeRepository).existsById(employee.getId());
+
+        assertThatThrownBy(() -> employeeService.updateEmployee(employee, employee.getId(), 3L))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessage("Employee has been modified since version 3 - ID: 1");
+    }
+
+    /**
+     * Tests that updateEmployee() checks constraints before updating repository
+     */
+    @Test
+    public void shouldNotUpdateInvalidEmployee() {
+        Employee employee = getTestEmployee();
+        employee.setName(null);
+
+        assertThatThrownBy(() -> employeeService.updateEmployee(employee, employee.getId(), null))
+                .isInstanceOf(ConstraintViolationException.class);
+        verify(employeeRepository, never()).updateIfVersionMatches(any(), any());
+    }
+
+    /**
+     * Tests that saveEmployees() saves valid employees in one call to repository,
+     * ignores given IDs, and reports invalid employees without saving them
+     */
+    @Test
+    public void shouldSaveEmployees() {
+        Employee valid = getTestEmployee();
+        Employee invalid = getTestEmployee();
+        invalid.setName(null);
+        doAnswer(invocation -> {
+            List<Employee> toSave = invocation.getArgument(0);
+            assertThat(toSave).containsExactly(valid);
+            // simulate ID generated by the database
+            valid.setId(50L);
+            return toSave;
+        }).when(employeeRepository).saveAll(anyCollection());
+
+        List<BatchItemResult> results = employeeService.saveEmployees(Arrays.asList(invalid, valid));
+        verify(employeeRepository, times(1)).saveAll(anyCollection());
+        assertThat(results).extracting(BatchItemResult::getIndex, BatchItemResult::getId, BatchItemResult::getStatus)
+                .containsExactly(tuple(0, null, BatchItemResult.Status.INVALID),
+                                 tuple(1, 50L, BatchItemResult.Status.CREATED));
+        assertThat(results.get(0).getMessage()).isEqualTo("name must not be null");
+    }
+
+    /**
+     * Tests that updateEmployees() loads existing employees with one query,
+     * copies new data onto them, and reports employees that do not exist or have no ID
+     */
+    @Test
+    public void shouldUpdateEmployees() {
+        Employee stored = getTestEmployee();
+        Employee update = getTestEmployee();
+        update.setName("New Name");
+        update.setSalary(100);
+        Employee missing = getTestEmployee();
+        missing.setId(2L);
+        Employee noId = getTestEmployee();
+        noId.setId(null);
+        doReturn(Collections.singletonList(stored)).when(employeeRepository).findAllById(anyCollection());
+
+        List<BatchItemResult> results = employeeService.updateEmployees(Arrays.asList(update, missing, noId));
+        verify(employeeRepository, times(1)).findAllById(anyCollection());
+        assertThat(results).extracting(BatchItemResult::getId, BatchItemResult::getStatus)
+                .containsExactly(tuple(1L, BatchItemResult.Status.UPDATED),
+                                 tuple(2L, BatchItemResult.Status.NOT_FOUND),
+                                 tuple(null, BatchItemResult.Status.INVALID));
+        assertThat(stored.getName()).isEqualTo("New Name");
+        assertThat(stored.getSalary()).isEqualTo(100);
+    }
+
+    /**
+     * Tests that updateEmployees() updates an employee given twice in the batch once, from its first occurrence,
+     * reports the repeat as invalid, and still stores the updated employee in cache
+     */
+    @Test
+    public void shouldReportRepeatedIdInBatchUpdate() {
+        Employee stored = getTestEmployee();
+        Employee first = getTestEmployee();
+        first.setName("First");
+        Employee repeat = getTestEmployee();
+        repeat.setName("Repeat");
+        doReturn(Collections.singletonList(stored)).when(employeeRepository).findAllById(anyCollection());
+        doAnswer(invocation -> {
+            List<Employee> toSave = invocation.getArgument(0);
+            assertThat(toSave).containsExactly(stored);
+            return toSave;
+        }).when(employeeRepository).saveAll(anyCollection());
+
+        List<BatchItemResult> results = employeeService.updateEmployees(Arrays.asList(first, repeat));
+        assertThat(results).extracting(BatchItemResult::getId, BatchItemResult::getStatus)
+                .containsExactly(tuple(1L, BatchItemResult.Status.UPDATED),
+                                 tuple(1L, BatchItemResult.Status.INVALID));
+        assertThat(results.get(1).getMessage()).isEqualTo("Employee ID appears more than once in the batch");
+        assertThat(stored.getName()).isEqualTo("First");
+        assertThat(cacheManager.getCache("employeeCache").get(1L, Employee.class)).isSameAs(stored);
+    }
+
+    private Tuple row(Long id, String name) {
+        Tuple row = mock(Tuple.class);
+        doReturn(id).when(row).get("id", Long.class);
+        doReturn(name).when(row).get("name");
+        return row;
+    }
+
+    private Employee employeeWithChangeSeq(Long id, Long changeSeq) {
+        Employee employee = getTestEmployee();
+        employee.setId(id);
+        ReflectionTestUtils.setField(employee, "changeSeq", changeSeq);
+        return employee;
     }
 }
@@ -0,0 +1,41 @@
+package jp.co.axa.apidemo.services;
+
+import jp.co.axa.apidemo.entities.EmployeeTombstone;
+import jp.co.axa.apidemo.repositories.EmployeeTombstoneRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class TombstoneRetentionTest {
+
+    @Autowired
+    private EmployeeTombstoneRepository tombstoneRepository;
+
+    /**
+     * Tests that purge() deletes tombstones older than the retention period apart from the newest of them,
+     * and keeps those within it
+     */
+    @Test
+    public void shouldPurgeExpiredTombstonesButTheNewest() {
+        long expired = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+        tombstoneRepository.saveAndFlush(new EmployeeTombstone(1L, expired));
+        tombstoneRepository.saveAndFlush(new EmployeeTombstone(2L, expired));
+        EmployeeTombstone newestExpired = tombstoneRepository.saveAndFlush(new EmployeeTombstone(3L, expired));
+        tombstoneRepository.saveAndFlush(new EmployeeTombstone(4L, System.currentTimeMillis()));
+
+        TombstoneRetention retention = new TombstoneRetention(tombstoneRepository, 1);
+        assertThat(retention.purge()).isEqualTo(2);
+        assertThat(tombstoneRepository.findAll()).extracting(EmployeeTombstone::getEmployeeId).containsExactly(3L, 4L);
+        assertThat(tombstoneRepository.findFirstByOrderByChangeSeqAsc().getChangeSeq())
+                .isEqualTo(newestExpired.getChangeSeq());
+        assertThat(retention.purge()).isZero();
+    }
+}
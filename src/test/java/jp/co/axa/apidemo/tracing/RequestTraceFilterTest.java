@@ -0,0 +1,103 @@
+package jp.co.axa.apidemo.tracing;
+
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.services.EmployeeService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "app.tracing.enabled=true")
+@AutoConfigureMockMvc
+public class RequestTraceFilterTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EmployeeService employeeService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * Tests that a cache miss on getEmployee() is reported in the Server-Timing header
+     * along with the SQL statement that loaded the employee and the time spent serializing them
+     * @throws Exception
+     */
+    @Test
+    public void shouldReturnServerTiming() throws Exception {
+        Long id = saveEmployees(1).get(0);
+        clearCaches();
+
+        MvcResult result = mockMvc.perform(get("/api/v1/employees/" + id)).andExpect(status().isOk()).andReturn();
+        assertThat(result.getResponse().getHeader(RequestTraceFilter.SERVER_TIMING_HEADER))
+                .matches("sql;dur=[0-9.]+;desc=\"1 statements\", cache;dur=[0-9.]+;desc=\"0 hits, [1-9] misses\", "
+                        + "ser;dur=[0-9.]+, total;dur=[0-9.]+");
+
+        // served from the JSON cache the second time
+        RequestTrace trace = trace(mockMvc.perform(get("/api/v1/employees/" + id)).andReturn());
+        assertThat(trace.getSqlStatements()).isZero();
+        assertThat(trace.getCacheHits()).isEqualTo(1);
+    }
+
+    /**
+     * Tests that looking up many uncached employees by ID runs one query for all of them rather than one each,
+     * and that listing a page of employees runs one query (N+1 guard)
+     * @throws Exception
+     */
+    @Test
+    public void shouldNotRunOneQueryPerEmployee() throws Exception {
+        List<Long> ids = saveEmployees(20);
+        clearCaches();
+
+        String idList = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+        RequestTrace lookup = trace(mockMvc.perform(get("/api/v1/employees").param("ids", idList)).andReturn());
+        assertThat(lookup.getSqlStatements()).isEqualTo(1);
+
+        RequestTrace page = trace(mockMvc.perform(get("/api/v1/employees").param("limit", "20")).andReturn());
+        assertThat(page.getSqlStatements()).isEqualTo(1);
+    }
+
+    /**
+     * Tests that cache metrics are still read from Ehcache when the caches are wrapped for tracing
+     * @throws Exception
+     */
+    @Test
+    public void shouldKeepCacheMetrics() throws Exception {
+        String scrape = mockMvc.perform(get("/actuator/prometheus")).andReturn().getResponse().getContentAsString();
+        assertThat(scrape).containsPattern("cache_size\\{cache=\"employeeCache\"");
+    }
+
+    private List<Long> saveEmployees(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Employee employee = new Employee();
+            employee.setName("Traced " + i);
+            ids.add(employeeService.saveEmployee(employee).getId());
+        }
+        return ids;
+    }
+
+    private void clearCaches() {
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    private static RequestTrace trace(MvcResult result) {
+        return (RequestTrace) result.getRequest().getAttribute(RequestTraceFilter.TRACE_ATTRIBUTE);
+    }
+}
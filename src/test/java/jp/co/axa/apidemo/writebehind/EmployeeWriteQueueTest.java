@@ -0,0 +1,214 @@
+package jp.co.axa.apidemo.writebehind;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.entities.Employee;
+import jp.co.axa.apidemo.message.EmployeeChangeEvent;
+import jp.co.axa.apidemo.repositories.EmployeeRepository;
+import jp.co.axa.apidemo.repositories.EmployeeTombstoneRepository;
+import jp.co.axa.apidemo.services.ChangeSequenceWatermark;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static jp.co.axa.apidemo.services.EmployeeJsonService.EMPLOYEE_JSON_CACHE_NAME;
+import static jp.co.axa.apidemo.services.EmployeeService.EMPLOYEE_CACHE_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class EmployeeWriteQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final EmployeeRepository employeeRepository = mock(EmployeeRepository.class);
+
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    private final ConcurrentMapCacheManager cacheManager =
+            new ConcurrentMapCacheManager(EMPLOYEE_CACHE_NAME, EMPLOYEE_JSON_CACHE_NAME);
+
+    // each batch passed to updateAll(), copied as the queue passes views of its own list
+    private final List<List<Employee>> batches = new ArrayList<>();
+
+    /**
+     * Tests that repeated updates to the same employee are written once, with the latest data and a version
+     * incremented by every update, in batches of at most the maximum batch size, and that they are cached right away
+     * @throws Exception
+     */
+    @Test
+    public void shouldCoalesceUpdatesIntoBatches() throws Exception {
+        recordBatches();
+        EmployeeWriteQueue queue = queue(2);
+        queue.enqueue(employee(1L, "First"), 5);
+        queue.enqueue(employee(2L, "Second"), 0);
+        queue.enqueue(employee(1L, "Third"), 5);
+        queue.enqueue(employee(3L, "Fourth"), 0);
+
+        assertThat(cacheManager.getCache(EMPLOYEE_CACHE_NAME).get(1L, Employee.class).getName()).isEqualTo("Third");
+        assertThat(queue.getQueued(1L).getVersion()).isEqualTo(7);
+        queue.flush();
+
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(0)).extracting(Employee::getId).containsExactly(1L, 2L);
+        assertThat(batches.get(0).get(0).getName()).isEqualTo("Third");
+        assertThat(batches.get(1)).extracting(Employee::getId).containsExactly(3L);
+        assertThat(queue.size()).isZero();
+        assertThat(queue.getQueued(1L)).isNull();
+    }
+
+    /**
+     * Tests that updates acknowledged but not written before the application stopped are written at the next start,
+     * once per employee, and that they are not written again after that
+     * @throws Exception
+     */
+    @Test
+    public void shouldReplayLogAtStart() throws Exception {
+        recordBatches();
+        EmployeeWriteQueue crashed = queue(500);
+        crashed.enqueue(employee(1L, "Lost"), 0);
+        crashed.enqueue(employee(2L, "Other"), 0);
+        crashed.enqueue(employee(1L, "Latest"), 0);
+
+        EmployeeWriteQueue restarted = queue(500);
+        restarted.start();
+        restarted.stop();
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).extracting(Employee::getName).containsExactlyInAnyOrder("Latest", "Other");
+
+        EmployeeWriteQueue again = queue(500);
+        again.start();
+        again.stop();
+        assertThat(batches).hasSize(1);
+    }
+
+    /**
+     * Tests that updates of a batch that fails are kept, both queued and in the log, unless updated again since
+     * @throws Exception
+     */
+    @Test
+    public void shouldKeepUpdatesOfFailedBatch() throws Exception {
+        EmployeeWriteQueue queue = queue(500);
+        queue.enqueue(employee(1L, "Failed"), 0);
+        doThrow(new IllegalStateException("Database is down")).when(employeeRepository).updateAll(anyList());
+        assertThatThrownBy(queue::flush).isInstanceOf(IllegalStateException.class);
+        assertThat(queue.getQueued(1L).getName()).isEqualTo("Failed");
+
+        recordBatches();
+        EmployeeWriteQueue restarted = queue(500);
+        restarted.start();
+        restarted.stop();
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).extracting(Employee::getName).containsExactly("Failed");
+    }
+
+    /**
+     * Tests that the update of an employee deleted since it was queued is not published, and that its cached copy
+     * is evicted, while the other updates of the batch are published
+     * @throws Exception
+     */
+    @Test
+    public void shouldDropUpdatesOfDeletedEmployees() throws Exception {
+        EmployeeWriteQueue queue = queue(500);
+        queue.enqueue(employee(1L, "Kept"), 0);
+        queue.enqueue(employee(2L, "Deleted"), 0);
+        doReturn(Collections.singletonList(1L)).when(employeeRepository).updateAll(anyList());
+        queue.flush();
+
+        ArgumentCaptor<EmployeeChangeEvent> events = ArgumentCaptor.forClass(EmployeeChangeEvent.class);
+        verify(eventPublisher).publishEvent(events.capture());
+        assertThat(events.getValue().getEmployeeId()).isEqualTo(1L);
+        assertThat(cacheManager.getCache(EMPLOYEE_CACHE_NAME).get(1L)).isNotNull();
+        assertThat(cacheManager.getCache(EMPLOYEE_CACHE_NAME).get(2L)).isNull();
+        assertThat(queue.getQueued(2L)).isNull();
+    }
+
+    /**
+     * Tests that an update that keeps failing is moved to the dead letters after the maximum number of attempts,
+     * and its cached copy evicted, so that it is neither retried nor read again
+     * @throws Exception
+     */
+    @Test
+    public void shouldMoveUpdatesToDeadLettersAfterMaxAttempts() throws Exception {
+        EmployeeWriteQueue queue = queue(500, 2);
+        queue.enqueue(employee(1L, "Rejected"), 0);
+        doThrow(new IllegalStateException("Value too long")).when(employeeRepository).updateAll(anyList());
+        assertThatThrownBy(queue::flush).isInstanceOf(IllegalStateException.class);
+        assertThat(queue.getQueued(1L).getName()).isEqualTo("Rejected");
+
+        assertThatThrownBy(queue::flush).isInstanceOf(IllegalStateException.class);
+        assertThat(queue.getQueued(1L)).isNull();
+        assertThat(cacheManager.getCache(EMPLOYEE_CACHE_NAME).get(1L)).isNull();
+        assertThat(Files.readAllLines(folder.getRoot().toPath().resolve("dead-letter.log"))).hasSize(1);
+
+        recordBatches();
+        EmployeeWriteQueue restarted = queue(500);
+        restarted.start();
+        restarted.stop();
+        assertThat(batches).isEmpty();
+    }
+
+    /**
+     * Tests that updates in the log that fail to be written at startup are queued again instead of stopping startup
+     * @throws Exception
+     */
+    @Test
+    public void shouldQueueAgainUpdatesThatFailToReplay() throws Exception {
+        EmployeeWriteQueue crashed = queue(500);
+        crashed.enqueue(employee(1L, "Replayed"), 0);
+
+        doThrow(new IllegalStateException("Database is down")).when(employeeRepository).updateAll(anyList());
+        EmployeeWriteQueue restarted = queue(500);
+        restarted.start();
+        assertThat(restarted.getQueued(1L).getName()).isEqualTo("Replayed");
+
+        recordBatches();
+        restarted.flush();
+        assertThat(batches).hasSize(1);
+        assertThat(restarted.getQueued(1L)).isNull();
+        restarted.stop();
+    }
+
+    private void recordBatches() {
+        doAnswer(invocation -> {
+            List<Employee> batch = new ArrayList<>(invocation.getArgument(0));
+            batches.add(batch);
+            return batch.stream().map(Employee::getId).collect(Collectors.toList());
+        }).when(employeeRepository).updateAll(anyList());
+    }
+
+    private EmployeeWriteQueue queue(int maxBatchSize) throws IOException {
+        return queue(maxBatchSize, 20);
+    }
+
+    private EmployeeWriteQueue queue(int maxBatchSize, int maxAttempts) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(folder.getRoot().toPath(), new ObjectMapper());
+        ChangeSequenceWatermark changeWatermark =
+                new ChangeSequenceWatermark(mock(EmployeeTombstoneRepository.class), false);
+        return new EmployeeWriteQueue(log, employeeRepository, changeWatermark, mock(PlatformTransactionManager.class),
+                                      eventPublisher, cacheManager, 3_600_000, maxBatchSize, maxAttempts);
+    }
+
+    private static Employee employee(Long id, String name) {
+        Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName(name);
+        return employee;
+    }
+}
@@ -0,0 +1,70 @@
+package jp.co.axa.apidemo.writebehind;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jp.co.axa.apidemo.entities.Employee;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Tests that writes appended before a crash are read back by the next run, oldest segment first,
+     * skipping a line that was cut short while it was being appended
+     * @throws Exception
+     */
+    @Test
+    public void shouldRecoverWritesOfPreviousRun() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        WriteAheadLog log = new WriteAheadLog(directory, objectMapper);
+        log.append(employee(1L, "First"));
+        log.rotate();
+        log.append(employee(2L, "Second"));
+        log.append(employee(1L, "Third"));
+        Path current = log.rotate();
+        Files.write(current, "{\"id\":3,\"na".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        WriteAheadLog next = new WriteAheadLog(directory, objectMapper);
+        assertThat(next.recover()).extracting(Employee::getName).containsExactly("First", "Second", "Third");
+
+        next.deleteRecovered();
+        next.close();
+        assertThat(directory.toFile().list()).isEmpty();
+    }
+
+    /**
+     * Tests that a segment deleted once its writes are in the database is not read back
+     * @throws Exception
+     */
+    @Test
+    public void shouldNotRecoverDeletedSegments() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        WriteAheadLog log = new WriteAheadLog(directory, objectMapper);
+        log.append(employee(1L, "Written"));
+        log.delete(log.rotate());
+        log.append(employee(2L, "Queued"));
+
+        assertThat(new WriteAheadLog(directory, objectMapper).recover())
+                .extracting(Employee::getName).containsExactly("Queued");
+    }
+
+    private static Employee employee(Long id, String name) {
+        Employee employee = new Employee();
+        employee.setId(id);
+        employee.setName(name);
+        employee.setVersion(1L);
+        return employee;
+    }
+}